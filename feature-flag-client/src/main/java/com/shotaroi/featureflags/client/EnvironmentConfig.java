@@ -0,0 +1,58 @@
+package com.shotaroi.featureflags.client;
+
+import tools.jackson.databind.DeserializationFeature;
+import tools.jackson.databind.ObjectMapper;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Immutable config of one environment, parsed from the body of {@code GET /api/flags/snapshot}. Replaced as a
+ * whole on refresh, so an evaluation always sees one consistent revision.
+ */
+final class EnvironmentConfig {
+
+    private static final ObjectMapper JSON = JsonMapper.builder()
+            .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)
+            .build();
+
+    final String environment;
+    final long revision;
+    private final Map<String, Flag> flags;
+
+    private EnvironmentConfig(String environment, long revision, Map<String, Flag> flags) {
+        this.environment = environment;
+        this.revision = revision;
+        this.flags = flags;
+    }
+
+    static EnvironmentConfig parse(byte[] json) {
+        Payload payload = JSON.readValue(json, Payload.class);
+        Map<String, Flag> flags = new HashMap<>();
+        if (payload.flags() != null) {
+            for (FlagPayload f : payload.flags()) {
+                Set<String> targets = f.targets() == null ? Set.of() : Set.copyOf(f.targets());
+                flags.put(f.featureKey(), new Flag(f.featureKey(), f.enabled(), f.rolloutPercent(),
+                        f.bucketingVersion() == null ? Bucketing.LEGACY_SHA256 : f.bucketingVersion(), targets));
+            }
+        }
+        return new EnvironmentConfig(payload.environment(), payload.revision(), Map.copyOf(flags));
+    }
+
+    Flag flag(String featureKey) {
+        return flags.get(featureKey);
+    }
+
+    int size() {
+        return flags.size();
+    }
+
+    record Flag(String featureKey, boolean enabled, int rolloutPercent, int bucketingVersion, Set<String> targets) {}
+
+    private record Payload(String environment, long revision, List<FlagPayload> flags) {}
+
+    private record FlagPayload(String featureKey, boolean enabled, int rolloutPercent, Integer bucketingVersion, List<String> targets) {}
+}
@@ -0,0 +1,40 @@
+package com.shotaroi.featureflags.client;
+
+/**
+ * Result of a local evaluation. {@code reason} uses the same values as the server's
+ * {@code GET /api/flags/{featureKey}/evaluate} (FLAG_NOT_FOUND, FLAG_DISABLED, TARGETED_USER, ROLLOUT_0,
+ * ROLLOUT_100, ROLLOUT_BUCKET_&lt;n&gt;), plus two that only a client can produce:
+ * {@value #NOT_READY} (no config loaded yet) and {@value #UNSUPPORTED_BUCKETING} (flag uses a newer bucketing
+ * version than this client knows).
+ */
+public record Evaluation(boolean enabled, String reason) {
+
+    public static final String NOT_READY = "CLIENT_NOT_READY";
+    public static final String UNSUPPORTED_BUCKETING = "UNSUPPORTED_BUCKETING_VERSION";
+
+    static final Evaluation FLAG_NOT_FOUND = off("FLAG_NOT_FOUND");
+    static final Evaluation FLAG_DISABLED = off("FLAG_DISABLED");
+    static final Evaluation TARGETED_USER = new Evaluation(true, "TARGETED_USER");
+    static final Evaluation ROLLOUT_0 = off("ROLLOUT_0");
+    static final Evaluation ROLLOUT_100 = new Evaluation(true, "ROLLOUT_100");
+    static final Evaluation CLIENT_NOT_READY = off(NOT_READY);
+    static final Evaluation UNSUPPORTED_BUCKETING_VERSION = off(UNSUPPORTED_BUCKETING);
+
+    // [bucket * 2 + (on ? 1 : 0)], so bucketed evaluations allocate nothing
+    private static final Evaluation[] BUCKETED = new Evaluation[200];
+
+    static {
+        for (int bucket = 0; bucket < 100; bucket++) {
+            BUCKETED[bucket * 2] = off("ROLLOUT_BUCKET_" + bucket);
+            BUCKETED[bucket * 2 + 1] = new Evaluation(true, "ROLLOUT_BUCKET_" + bucket);
+        }
+    }
+
+    static Evaluation bucketed(int bucket, boolean on) {
+        return BUCKETED[bucket * 2 + (on ? 1 : 0)];
+    }
+
+    private static Evaluation off(String reason) {
+        return new Evaluation(false, reason);
+    }
+}
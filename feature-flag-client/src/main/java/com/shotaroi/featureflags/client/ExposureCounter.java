@@ -0,0 +1,63 @@
+package com.shotaroi.featureflags.client;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * {@link ExposureListener} that counts evaluations per flag and result. Counting is a map lookup and a
+ * {@link LongAdder} increment; call {@link #drain()} periodically to report the counts (e.g. as metrics or to an
+ * analytics pipeline).
+ * <p>
+ * At most {@code maxKeys} distinct keys are counted separately; evaluations of further keys (e.g. typos or keys
+ * that do not exist) are counted under {@value #OTHER_KEY}.
+ */
+public final class ExposureCounter implements ExposureListener {
+
+    public static final String OTHER_KEY = "__other__";
+
+    private final int maxKeys;
+    private final ConcurrentHashMap<String, Counter> counters = new ConcurrentHashMap<>();
+    private final Counter other = new Counter();
+
+    public ExposureCounter() {
+        this(1000);
+    }
+
+    public ExposureCounter(int maxKeys) {
+        this.maxKeys = maxKeys;
+    }
+
+    @Override
+    public void onExposure(String featureKey, String userId, Evaluation evaluation) {
+        Counter counter = counters.get(featureKey);
+        if (counter == null) {
+            counter = counters.size() < maxKeys ? counters.computeIfAbsent(featureKey, k -> new Counter()) : other;
+        }
+        (evaluation.enabled() ? counter.on : counter.off).increment();
+    }
+
+    /**
+     * Counts since the previous drain, keyed and sorted by featureKey. Flags with no evaluations are omitted.
+     */
+    public Map<String, Exposures> drain() {
+        Map<String, Exposures> result = new TreeMap<>();
+        counters.forEach((featureKey, counter) -> {
+            long on = counter.on.sumThenReset();
+            long off = counter.off.sumThenReset();
+            if (on + off > 0) result.put(featureKey, new Exposures(on, off));
+        });
+        long on = other.on.sumThenReset();
+        long off = other.off.sumThenReset();
+        if (on + off > 0) result.put(OTHER_KEY, new Exposures(on, off));
+        return result;
+    }
+
+    public record Exposures(long on, long off) {}
+
+    private static final class Counter {
+        final LongAdder on = new LongAdder();
+        final LongAdder off = new LongAdder();
+    }
+}
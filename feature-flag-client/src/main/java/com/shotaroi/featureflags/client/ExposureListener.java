@@ -0,0 +1,12 @@
+package com.shotaroi.featureflags.client;
+
+/**
+ * Called on the evaluating thread after every {@link FeatureFlagClient#evaluate}. Must be fast and must not
+ * block: hand work off (e.g. {@link ExposureCounter}) rather than doing I/O here. Exceptions are caught and
+ * ignored so they never change an evaluation result.
+ */
+@FunctionalInterface
+public interface ExposureListener {
+
+    void onExposure(String featureKey, String userId, Evaluation evaluation);
+}
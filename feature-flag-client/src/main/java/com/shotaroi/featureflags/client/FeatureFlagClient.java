@@ -0,0 +1,285 @@
+package com.shotaroi.featureflags.client;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Evaluates feature flags in-process from a locally cached copy of one environment's config.
+ * <p>
+ * The config is fetched from {@code GET /api/flags/snapshot} and re-checked every {@code refreshInterval} with
+ * {@code If-None-Match}, so an unchanged environment costs one 304 per interval. Evaluation is a map lookup, a set
+ * lookup for targets and one hash for rollouts; it never blocks or does I/O, and returns the same result and
+ * reason as the server's {@code GET /api/flags/{featureKey}/evaluate} for the same revision.
+ * <p>
+ * If the server is unreachable the client keeps evaluating against the last config it loaded. With
+ * {@link Builder#lastKnownGoodFile}, every loaded config is also written to disk and read back on startup, so a
+ * service can start while the flag server is down.
+ *
+ * <pre>{@code
+ * FeatureFlagClient flags = FeatureFlagClient.builder(URI.create("http://flags:8080"), apiKey, "PROD")
+ *         .lastKnownGoodFile(Path.of("/var/cache/flags-prod.json"))
+ *         .build();
+ * if (flags.isEnabled("new-checkout", userId)) { ... }
+ * }</pre>
+ */
+public final class FeatureFlagClient implements AutoCloseable {
+
+    private static final System.Logger log = System.getLogger(FeatureFlagClient.class.getName());
+
+    private final HttpClient http;
+    private final boolean ownsHttp;
+    private final URI snapshotUri;
+    private final String apiKey;
+    private final Duration requestTimeout;
+    private final Path lastKnownGoodFile;
+    private final ExposureListener exposureListener;
+    private final ScheduledExecutorService refresher;
+
+    private volatile EnvironmentConfig config;
+    private volatile String etag;
+    private volatile Instant lastRefresh;
+    private volatile boolean failing;
+
+    private FeatureFlagClient(Builder builder) {
+        this.http = builder.httpClient != null ? builder.httpClient
+                : HttpClient.newBuilder().connectTimeout(builder.requestTimeout).build();
+        this.ownsHttp = builder.httpClient == null;
+        this.snapshotUri = builder.serverUrl.resolve("/api/flags/snapshot?environment="
+                + URLEncoder.encode(builder.environment, StandardCharsets.UTF_8));
+        this.apiKey = builder.apiKey;
+        this.requestTimeout = builder.requestTimeout;
+        this.lastKnownGoodFile = builder.lastKnownGoodFile;
+        this.exposureListener = builder.exposureListener;
+        this.refresher = Executors.newSingleThreadScheduledExecutor(
+                Thread.ofPlatform().name("feature-flag-client-refresh").daemon().factory());
+    }
+
+    public static Builder builder(URI serverUrl, String apiKey, String environment) {
+        return new Builder(serverUrl, apiKey, environment);
+    }
+
+    /** Shorthand for {@code evaluate(featureKey, userId).enabled()}. */
+    public boolean isEnabled(String featureKey, String userId) {
+        return evaluate(featureKey, userId).enabled();
+    }
+
+    /**
+     * Evaluates the flag for the user against the cached config and reports it to the exposure listener.
+     * Returns {@value Evaluation#NOT_READY} (off) until a config has been loaded.
+     */
+    public Evaluation evaluate(String featureKey, String userId) {
+        Evaluation result = evaluate(config, featureKey, userId);
+        if (exposureListener != null) {
+            try {
+                exposureListener.onExposure(featureKey, userId, result);
+            } catch (RuntimeException e) {
+                log.log(System.Logger.Level.DEBUG, "Exposure listener failed", e);
+            }
+        }
+        return result;
+    }
+
+    /** Same decision order as the server's {@code FeatureEvaluationService}. */
+    static Evaluation evaluate(EnvironmentConfig config, String featureKey, String userId) {
+        if (config == null) return Evaluation.CLIENT_NOT_READY;
+        EnvironmentConfig.Flag flag = config.flag(featureKey);
+        if (flag == null) return Evaluation.FLAG_NOT_FOUND;
+        if (!flag.enabled()) return Evaluation.FLAG_DISABLED;
+
+        if (userId != null && !userId.isBlank() && flag.targets().contains(userId)) {
+            return Evaluation.TARGETED_USER;
+        }
+
+        int rollout = flag.rolloutPercent();
+        if (rollout <= 0) return Evaluation.ROLLOUT_0;
+        if (rollout >= 100) return Evaluation.ROLLOUT_100;
+
+        if (!Bucketing.isSupported(flag.bucketingVersion())) return Evaluation.UNSUPPORTED_BUCKETING_VERSION;
+        int bucket = Bucketing.bucket(flag.bucketingVersion(), flag.featureKey(), userId);
+        return Evaluation.bucketed(bucket, bucket < rollout);
+    }
+
+    /** True once a config has been loaded from the server or the last-known-good file. */
+    public boolean isReady() {
+        return config != null;
+    }
+
+    /** Revision of the cached config, or -1 if none is loaded. */
+    public long revision() {
+        EnvironmentConfig c = config;
+        return c == null ? -1 : c.revision;
+    }
+
+    /** When the server last confirmed the cached config (200 or 304), or null if it never has. */
+    public Instant lastSuccessfulRefresh() {
+        return lastRefresh;
+    }
+
+    /**
+     * Fetches the config now, on the calling thread. On failure the cached config is kept and the exception is
+     * thrown; background refreshes keep running either way.
+     */
+    public void refresh() throws IOException, InterruptedException {
+        HttpRequest.Builder request = HttpRequest.newBuilder(snapshotUri)
+                .timeout(requestTimeout)
+                .header("X-API-Key", apiKey)
+                .header("Accept", "application/json")
+                .header("Accept-Encoding", "gzip");
+        String currentEtag = etag;
+        if (currentEtag != null && config != null) request.header("If-None-Match", currentEtag);
+
+        HttpResponse<byte[]> response = http.send(request.build(), HttpResponse.BodyHandlers.ofByteArray());
+        int status = response.statusCode();
+        if (status == 304) {
+            lastRefresh = Instant.now();
+            return;
+        }
+        if (status != 200) {
+            throw new IOException("GET " + snapshotUri + " returned " + status);
+        }
+
+        byte[] json = decode(response);
+        EnvironmentConfig loaded = EnvironmentConfig.parse(json);
+        config = loaded;
+        etag = response.headers().firstValue("ETag").orElse(null);
+        lastRefresh = Instant.now();
+        if (lastKnownGoodFile != null) writeLastKnownGood(json);
+    }
+
+    @Override
+    public void close() {
+        refresher.shutdownNow();
+        if (ownsHttp) http.close();
+    }
+
+    private void start(Duration refreshInterval) {
+        if (lastKnownGoodFile != null && Files.exists(lastKnownGoodFile)) {
+            try {
+                config = EnvironmentConfig.parse(Files.readAllBytes(lastKnownGoodFile));
+            } catch (IOException | RuntimeException e) {
+                log.log(System.Logger.Level.WARNING, "Ignoring unreadable last-known-good config " + lastKnownGoodFile, e);
+            }
+        }
+        refreshQuietly();
+        long period = refreshInterval.toMillis();
+        refresher.scheduleWithFixedDelay(this::refreshQuietly, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    private void refreshQuietly() {
+        try {
+            refresh();
+            if (failing) {
+                failing = false;
+                log.log(System.Logger.Level.INFO, "Flag config refresh recovered at revision {0}", revision());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            // Log the first failure only; keep serving the cached config
+            if (!failing) {
+                failing = true;
+                log.log(System.Logger.Level.WARNING, "Flag config refresh failed; using revision " + revision(), e);
+            }
+        }
+    }
+
+    private static byte[] decode(HttpResponse<byte[]> response) throws IOException {
+        boolean gzip = response.headers().firstValue("Content-Encoding").map(v -> v.contains("gzip")).orElse(false);
+        if (!gzip) return response.body();
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(response.body()))) {
+            return in.readAllBytes();
+        }
+    }
+
+    /** Written to a temp file and moved into place, so a crash never leaves a truncated file. */
+    private void writeLastKnownGood(byte[] json) {
+        try {
+            Path dir = lastKnownGoodFile.toAbsolutePath().getParent();
+            Files.createDirectories(dir);
+            Path tmp = Files.createTempFile(dir, lastKnownGoodFile.getFileName().toString(), ".tmp");
+            Files.write(tmp, json);
+            Files.move(tmp, lastKnownGoodFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.log(System.Logger.Level.WARNING, "Could not write last-known-good config " + lastKnownGoodFile, e);
+        }
+    }
+
+    public static final class Builder {
+
+        private final URI serverUrl;
+        private final String apiKey;
+        private final String environment;
+        private Duration refreshInterval = Duration.ofSeconds(30);
+        private Duration requestTimeout = Duration.ofSeconds(5);
+        private Path lastKnownGoodFile;
+        private ExposureListener exposureListener;
+        private HttpClient httpClient;
+
+        private Builder(URI serverUrl, String apiKey, String environment) {
+            this.serverUrl = Objects.requireNonNull(serverUrl, "serverUrl");
+            this.apiKey = Objects.requireNonNull(apiKey, "apiKey");
+            this.environment = Objects.requireNonNull(environment, "environment");
+        }
+
+        /** How often the config is re-checked (default 30s). Changes reach the client within this delay. */
+        public Builder refreshInterval(Duration refreshInterval) {
+            this.refreshInterval = refreshInterval;
+            return this;
+        }
+
+        /** Connect and request timeout of each refresh (default 5s). */
+        public Builder requestTimeout(Duration requestTimeout) {
+            this.requestTimeout = requestTimeout;
+            return this;
+        }
+
+        /** File that keeps the last loaded config, read on startup if the server cannot be reached. */
+        public Builder lastKnownGoodFile(Path lastKnownGoodFile) {
+            this.lastKnownGoodFile = lastKnownGoodFile;
+            return this;
+        }
+
+        public Builder exposureListener(ExposureListener exposureListener) {
+            this.exposureListener = exposureListener;
+            return this;
+        }
+
+        /** Shared {@link HttpClient} to use instead of a client of its own. It is not closed by {@link #close()}. */
+        public Builder httpClient(HttpClient httpClient) {
+            this.httpClient = httpClient;
+            return this;
+        }
+
+        /**
+         * Loads the last-known-good file (if any), makes one synchronous fetch and starts background refreshes.
+         * Never fails because the server is unreachable; check {@link FeatureFlagClient#isReady()}.
+         */
+        public FeatureFlagClient build() {
+            FeatureFlagClient client = new FeatureFlagClient(this);
+            try {
+                client.start(refreshInterval);
+            } catch (RuntimeException e) {
+                client.close();
+                throw e;
+            }
+            return client;
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package com.shotaroi.featureflags.client;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BucketingTest {
+
+    /** Generated from the server's Bucketing, which checks the same file. */
+    @Test
+    void goldenVectors_matchServer() throws Exception {
+        int checked = 0;
+        try (var in = new BufferedReader(new InputStreamReader(
+                getClass().getResourceAsStream("/bucketing-vectors.tsv"), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.startsWith("#")) continue;
+                String[] f = line.split("\t", -1);
+                assertEquals(Integer.parseInt(f[3]), Bucketing.bucket(Integer.parseInt(f[0]), f[1], f[2]), line);
+                checked++;
+            }
+        }
+        assertTrue(checked > 100);
+    }
+
+    @Test
+    void nullUser_bucketsLikeEmpty() {
+        assertEquals(Bucketing.bucket(Bucketing.MURMUR3, "f", ""), Bucketing.bucket(Bucketing.MURMUR3, "f", null));
+        assertEquals(Bucketing.bucket(Bucketing.LEGACY_SHA256, "f", ""), Bucketing.bucket(Bucketing.LEGACY_SHA256, "f", null));
+    }
+}
@@ -0,0 +1,163 @@
+package com.shotaroi.featureflags.client;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FeatureFlagClientTest {
+
+    private static final String SNAPSHOT = """
+            {"environment":"PROD","revision":7,"flags":[
+              {"featureKey":"off","enabled":false,"rolloutPercent":100,"bucketingVersion":2,"targets":["alice"]},
+              {"featureKey":"targeted","enabled":true,"rolloutPercent":0,"bucketingVersion":2,"targets":["42","alice"]},
+              {"featureKey":"everyone","enabled":true,"rolloutPercent":100,"bucketingVersion":2},
+              {"featureKey":"half","enabled":true,"rolloutPercent":50,"bucketingVersion":1},
+              {"featureKey":"future","enabled":true,"rolloutPercent":50,"bucketingVersion":9}
+            ]}""";
+
+    private HttpServer server;
+    private volatile String body = SNAPSHOT;
+    private volatile int status = 200;
+    private final AtomicInteger requests = new AtomicInteger();
+    private final AtomicInteger notModified = new AtomicInteger();
+
+    @TempDir
+    Path dir;
+
+    @BeforeEach
+    void startServer() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/api/flags/snapshot", exchange -> {
+            requests.incrementAndGet();
+            String etag = "\"" + Integer.toHexString(body.hashCode()) + "\"";
+            if (status != 200) {
+                exchange.sendResponseHeaders(status, -1);
+            } else if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                notModified.incrementAndGet();
+                exchange.sendResponseHeaders(304, -1);
+            } else {
+                var gzipped = new ByteArrayOutputStream();
+                try (var out = new GZIPOutputStream(gzipped)) {
+                    out.write(body.getBytes(StandardCharsets.UTF_8));
+                }
+                exchange.getResponseHeaders().add("ETag", etag);
+                exchange.getResponseHeaders().add("Content-Encoding", "gzip");
+                exchange.sendResponseHeaders(200, gzipped.size());
+                exchange.getResponseBody().write(gzipped.toByteArray());
+            }
+            exchange.close();
+        });
+        server.start();
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.stop(0);
+    }
+
+    @Test
+    void evaluate_matchesServerDecisionOrder() {
+        try (var client = client(null, null)) {
+            assertTrue(client.isReady());
+            assertEquals(7, client.revision());
+
+            assertEquals(new Evaluation(false, "FLAG_NOT_FOUND"), client.evaluate("missing", "alice"));
+            assertEquals(new Evaluation(false, "FLAG_DISABLED"), client.evaluate("off", "alice"));
+            assertEquals(new Evaluation(true, "TARGETED_USER"), client.evaluate("targeted", "42"));
+            assertEquals(new Evaluation(false, "ROLLOUT_0"), client.evaluate("targeted", "bob"));
+            assertEquals(new Evaluation(false, "ROLLOUT_0"), client.evaluate("targeted", " "));
+            assertEquals(new Evaluation(true, "ROLLOUT_100"), client.evaluate("everyone", null));
+
+            int bucket = Bucketing.bucket(Bucketing.LEGACY_SHA256, "half", "carol");
+            assertEquals(new Evaluation(bucket < 50, "ROLLOUT_BUCKET_" + bucket), client.evaluate("half", "carol"));
+            assertEquals(new Evaluation(false, Evaluation.UNSUPPORTED_BUCKETING), client.evaluate("future", "carol"));
+        }
+    }
+
+    @Test
+    void refresh_usesEtag_andPicksUpNewConfig() throws Exception {
+        try (var client = client(null, null)) {
+            client.refresh();
+            assertEquals(1, notModified.get());
+
+            body = SNAPSHOT.replace("\"revision\":7", "\"revision\":8").replace("\"enabled\":false", "\"enabled\":true");
+            client.refresh();
+
+            assertEquals(8, client.revision());
+            assertEquals(new Evaluation(true, "TARGETED_USER"), client.evaluate("off", "alice"));
+        }
+    }
+
+    @Test
+    void serverFailure_keepsLastKnownGoodConfig() throws Exception {
+        Path file = dir.resolve("flags.json");
+        try (var client = client(file, null)) {
+            status = 503;
+            assertThrows(Exception.class, client::refresh);
+            assertEquals(7, client.revision());
+            assertTrue(client.isEnabled("everyone", "bob"));
+        }
+
+        // A new client starts from the file while the server is still failing
+        try (var restarted = client(file, null)) {
+            assertTrue(restarted.isReady());
+            assertEquals(7, restarted.revision());
+            assertNull(restarted.lastSuccessfulRefresh());
+            assertTrue(restarted.isEnabled("everyone", "bob"));
+        }
+    }
+
+    @Test
+    void unreachableServer_withoutFile_isNotReady() {
+        status = 500;
+        try (var client = client(null, null)) {
+            assertFalse(client.isReady());
+            assertEquals(new Evaluation(false, Evaluation.NOT_READY), client.evaluate("everyone", "bob"));
+        }
+    }
+
+    @Test
+    void exposureCounter_countsPerFlagAndResult() {
+        var counter = new ExposureCounter(2);
+        try (var client = client(null, counter)) {
+            client.evaluate("everyone", "a");
+            client.evaluate("everyone", "b");
+            client.evaluate("off", "a");
+            client.evaluate("typo", "a");
+
+            var counts = counter.drain();
+            assertEquals(new ExposureCounter.Exposures(2, 0), counts.get("everyone"));
+            assertEquals(new ExposureCounter.Exposures(0, 1), counts.get("off"));
+            assertEquals(new ExposureCounter.Exposures(0, 1), counts.get(ExposureCounter.OTHER_KEY));
+            assertTrue(counter.drain().isEmpty());
+        }
+    }
+
+    @Test
+    void failingExposureListener_doesNotChangeResult() {
+        try (var client = client(null, (key, user, result) -> { throw new IllegalStateException("boom"); })) {
+            assertTrue(client.isEnabled("everyone", "bob"));
+        }
+    }
+
+    private FeatureFlagClient client(Path lastKnownGood, ExposureListener listener) {
+        var builder = FeatureFlagClient.builder(URI.create("http://127.0.0.1:" + server.getAddress().getPort()), "key", "PROD")
+                .refreshInterval(Duration.ofHours(1))
+                .exposureListener(listener);
+        if (lastKnownGood != null) builder.lastKnownGoodFile(lastKnownGood);
+        return builder.build();
+    }
+}
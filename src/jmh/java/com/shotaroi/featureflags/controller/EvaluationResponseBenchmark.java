@@ -0,0 +1,63 @@
+package com.shotaroi.featureflags.controller;
+
+import com.shotaroi.featureflags.service.Bucketing;
+import com.shotaroi.featureflags.service.FeatureEvaluationService.EvaluationResult;
+import org.openjdk.jmh.annotations.*;
+import tools.jackson.core.StreamWriteFeature;
+import tools.jackson.databind.ObjectWriter;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Response body of {@code GET /api/flags/{featureKey}/evaluate}: serializing the result with Jackson on every
+ * request (what the message converter did) vs. copying the body {@link EvaluationResponseBodies} encoded once.
+ * Results cycle through every rollout bucket, on and off. The output stream discards what it gets, so only the
+ * encoding is measured.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EvaluationResponseBenchmark {
+
+    EvaluationResult[] results;
+    ObjectWriter writer;
+    EvaluationResponseBodies bodies;
+    OutputStream out;
+
+    @Setup
+    public void setUp() {
+        var mapper = JsonMapper.builder().build();
+        // The converter leaves the servlet stream open too
+        writer = mapper.writerFor(EvaluationResult.class).without(StreamWriteFeature.AUTO_CLOSE_TARGET);
+        bodies = new EvaluationResponseBodies(mapper);
+        out = OutputStream.nullOutputStream();
+        List<EvaluationResult> all = EvaluationResult.all();
+        results = all.subList(all.size() - 2 * Bucketing.BUCKETS, all.size()).toArray(EvaluationResult[]::new);
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+    }
+
+    @Benchmark
+    public void jackson(Cursor cursor) throws IOException {
+        writer.writeValue(out, next(cursor));
+    }
+
+    @Benchmark
+    public void preEncoded(Cursor cursor) throws IOException {
+        out.write(bodies.body(next(cursor)));
+    }
+
+    private EvaluationResult next(Cursor cursor) {
+        return results[cursor.next++ % results.length];
+    }
+}
@@ -0,0 +1,76 @@
+package com.shotaroi.featureflags.service;
+
+import com.shotaroi.featureflags.domain.ApiKey;
+import com.shotaroi.featureflags.domain.Environment;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-request cost of API key authentication: the SHA-256 hash that a cache miss pays
+ * ({@link ApiKeyService#hashKey}) and the {@link ApiKeyCache} hit that almost every request takes.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ApiKeyBenchmark {
+
+    /** Distinct keys in use, e.g. one per calling service. */
+    @Param({"1", "100"})
+    int keyCount;
+
+    String[] rawKeys;
+    ApiKeyCache cache;
+
+    @Setup
+    public void setUp() {
+        rawKeys = new String[keyCount];
+        var random = new Random(42);
+        Map<String, ApiKey> byHash = new HashMap<>();
+        for (int i = 0; i < keyCount; i++) {
+            rawKeys[i] = "fk_" + HexFormat.of().formatHex(bytes(random));
+            ApiKey key = new ApiKey();
+            key.setId((long) i);
+            key.setName("service-" + i);
+            key.setEnvironment(Environment.PROD);
+            byHash.put(ApiKeyService.hashKey(rawKeys[i]), key);
+        }
+        cache = new ApiKeyCache(InMemoryRepositories.apiKeys(byHash), Duration.ofHours(1), 1000, System::nanoTime);
+        for (String rawKey : rawKeys) cache.get(rawKey);
+    }
+
+    private static byte[] bytes(Random random) {
+        byte[] bytes = new byte[16];
+        random.nextBytes(bytes);
+        return bytes;
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+    }
+
+    @Benchmark
+    public String hashKey(Cursor cursor) {
+        return ApiKeyService.hashKey(rawKeys[cursor.next++ % keyCount]);
+    }
+
+    @Benchmark
+    public Object cacheHit(Cursor cursor) {
+        return cache.get(rawKeys[cursor.next++ % keyCount]);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public Object cacheHitContended(Cursor cursor) {
+        return cache.get(rawKeys[cursor.next++ % keyCount]);
+    }
+}
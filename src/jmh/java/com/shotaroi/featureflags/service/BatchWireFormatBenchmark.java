@@ -0,0 +1,136 @@
+package com.shotaroi.featureflags.service;
+
+import com.shotaroi.featureflags.service.FeatureEvaluationService.EvaluationResult;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import tools.jackson.core.StreamWriteFeature;
+import tools.jackson.databind.MappingIterator;
+import tools.jackson.databind.ObjectReader;
+import tools.jackson.databind.ObjectWriter;
+import tools.jackson.databind.SequenceWriter;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Encoding and decoding one bulk evaluation of 1M results: NDJSON as {@link BatchEvaluationService#evaluate} writes
+ * it vs. {@link BinaryBatchResults} with and without reason codes. Results are evaluated up front (a 50% rollout),
+ * so only the wire format is measured; encoding writes chunk by chunk as the service does.
+ * <p>
+ * {@code shape} is users × flags. The payload sizes, plain and gzipped, are printed during setup.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BatchWireFormatBenchmark {
+
+    @Param({"1000000x1", "100000x10"})
+    String shape;
+
+    @Param({"json", "binary", "binary+reasons"})
+    String format;
+
+    int users;
+    List<String> featureKeys;
+    String[] userIds;
+    EvaluationResult[] results;
+    ObjectWriter lineWriter;
+    ObjectReader lineReader;
+    byte[] encoded;
+
+    @Setup
+    public void setUp() throws IOException {
+        String[] dims = shape.split("x");
+        users = Integer.parseInt(dims[0]);
+        int flags = Integer.parseInt(dims[1]);
+        featureKeys = new ArrayList<>();
+        for (int f = 0; f < flags; f++) featureKeys.add("flag_" + f);
+
+        Random random = new Random(42);
+        userIds = new String[users];
+        results = new EvaluationResult[users * flags];
+        for (int i = 0; i < users; i++) {
+            userIds[i] = "user-" + i;
+            for (int f = 0; f < flags; f++) {
+                int bucket = random.nextInt(Bucketing.BUCKETS);
+                results[i * flags + f] = EvaluationResult.bucket(bucket, bucket < 50);
+            }
+        }
+
+        var mapper = JsonMapper.builder().build();
+        lineWriter = mapper.writerFor(BatchEvaluationService.BatchResultLine.class)
+                .withRootValueSeparator("\n")
+                .without(StreamWriteFeature.AUTO_CLOSE_TARGET);
+        lineReader = mapper.readerFor(BatchEvaluationService.BatchResultLine.class);
+
+        var out = new ByteArrayOutputStream();
+        encode(out);
+        encoded = out.toByteArray();
+        var gzipped = new ByteArrayOutputStream();
+        try (var gz = new GZIPOutputStream(gzipped)) {
+            gz.write(encoded);
+        }
+        System.out.printf("%n%s %s: %,d bytes, %,d gzipped%n", shape, format, encoded.length, gzipped.size());
+    }
+
+    @Benchmark
+    public void encode() throws IOException {
+        encode(OutputStream.nullOutputStream());
+    }
+
+    @Benchmark
+    public void decode(Blackhole blackhole) throws IOException {
+        if (format.equals("json")) {
+            try (MappingIterator<BatchEvaluationService.BatchResultLine> lines = lineReader.readValues(encoded)) {
+                while (lines.hasNextValue()) blackhole.consume(lines.nextValue());
+            }
+            return;
+        }
+        var reader = new BinaryBatchResults.Reader(new ByteArrayInputStream(encoded));
+        int flags = reader.featureKeys().size();
+        for (int frame = reader.nextFrame(); frame > 0; frame = reader.nextFrame()) {
+            for (int i = 0; i < frame; i++) {
+                for (int f = 0; f < flags; f++) {
+                    blackhole.consume(reader.hasReasons() ? reader.result(i, f) : reader.enabled(i, f));
+                }
+            }
+        }
+    }
+
+    private void encode(OutputStream out) throws IOException {
+        int flags = featureKeys.size();
+        int chunk = BatchEvaluationService.CHUNK_SIZE;
+        if (format.equals("json")) {
+            try (SequenceWriter writer = lineWriter.writeValues(out)) {
+                for (int i = 0; i < users; i++) {
+                    Map<String, EvaluationResult> userResults = new LinkedHashMap<>(flags * 2);
+                    for (int f = 0; f < flags; f++) userResults.put(featureKeys.get(f), results[i * flags + f]);
+                    writer.write(new BatchEvaluationService.BatchResultLine(userIds[i], userResults));
+                }
+            }
+            out.write('\n');
+            return;
+        }
+        var writer = new BinaryBatchResults.Writer(out, featureKeys, format.equals("binary+reasons"));
+        EvaluationResult[] frame = new EvaluationResult[chunk * flags];
+        for (int start = 0; start < users; start += chunk) {
+            int count = Math.min(chunk, users - start);
+            System.arraycopy(results, start * flags, frame, 0, count * flags);
+            writer.writeFrame(frame, count);
+        }
+        writer.finish();
+    }
+}
@@ -0,0 +1,49 @@
+package com.shotaroi.featureflags.service;
+
+import com.shotaroi.featureflags.domain.ApiKey;
+import com.shotaroi.featureflags.repository.ApiKeyRepository;
+import com.shotaroi.featureflags.repository.FeatureTargetRepository;
+import org.springframework.data.domain.Limit;
+
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Repository stand-ins for benchmarks: only the finder methods the hot paths call on a cache miss are
+ * implemented. Everything here is read once during setup, never inside a measured method.
+ */
+final class InMemoryRepositories {
+
+    private InMemoryRepositories() {
+    }
+
+    /** Every flag gets the same allowlist, sorted as the database would return it. */
+    static FeatureTargetRepository targets(List<String> sortedUserIds) {
+        return proxy(FeatureTargetRepository.class, (method, args) -> {
+            if (!method.equals("findUserIdPage")) throw new UnsupportedOperationException(method);
+            String after = (String) args[1];
+            int limit = ((Limit) args[2]).max();
+            int from = after.isEmpty() ? 0 : Math.abs(Collections.binarySearch(sortedUserIds, after) + 1);
+            return List.copyOf(sortedUserIds.subList(from, Math.min(sortedUserIds.size(), from + limit)));
+        });
+    }
+
+    static ApiKeyRepository apiKeys(Map<String, ApiKey> byHash) {
+        return proxy(ApiKeyRepository.class, (method, args) -> {
+            if (!method.equals("findByKeyHashAndEnabledTrue")) throw new UnsupportedOperationException(method);
+            return Optional.ofNullable(byHash.get((String) args[0]));
+        });
+    }
+
+    private interface Handler {
+        Object invoke(String method, Object[] args);
+    }
+
+    private static <T> T proxy(Class<T> type, Handler handler) {
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type},
+                (p, method, args) -> handler.invoke(method.getName(), args)));
+    }
+}
@@ -0,0 +1,69 @@
+package com.shotaroi.featureflags.service;
+
+import com.shotaroi.featureflags.domain.Environment;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.prometheusmetrics.PrometheusConfig;
+import io.micrometer.prometheusmetrics.PrometheusMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Metrics recorded by one evaluation through {@link EvaluationMetrics}: meter lookup, result counter and
+ * latency timer, in isolation from the evaluation itself.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MetricsBenchmark {
+
+    @Param({"prometheus", "simple"})
+    String registry;
+
+    @Param({"10", "1000"})
+    int flagCount;
+
+    EvaluationMetrics metrics;
+    String[] featureKeys;
+
+    @Setup
+    public void setUp() {
+        MeterRegistry meterRegistry = "prometheus".equals(registry)
+                ? new PrometheusMeterRegistry(PrometheusConfig.DEFAULT) : new SimpleMeterRegistry();
+        metrics = new EvaluationMetrics(meterRegistry, 1000, List.of());
+        featureKeys = new String[flagCount];
+        for (int i = 0; i < flagCount; i++) {
+            featureKeys[i] = "flag_" + i;
+            record(featureKeys[i], i);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+    }
+
+    @Benchmark
+    public void record(Cursor cursor) {
+        int i = cursor.next++;
+        record(featureKeys[i % flagCount], i);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public void recordContended(Cursor cursor) {
+        int i = cursor.next++;
+        record(featureKeys[i % flagCount], i);
+    }
+
+    private void record(String featureKey, int i) {
+        EvaluationMetrics.FlagMeters meters = metrics.forFlag(featureKey, Environment.PROD, true);
+        meters.count(EvaluationMetrics.ROLLOUT_BUCKET, (i & 1) == 0);
+        meters.recordDuration(150 + (i & 127));
+    }
+}
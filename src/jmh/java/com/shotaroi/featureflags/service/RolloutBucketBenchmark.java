@@ -0,0 +1,53 @@
+package com.shotaroi.featureflags.service;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of one rollout bucket ({@link Bucketing#bucket}) per bucketing version and user ID length. The JMH
+ * counterpart of {@code BucketingBenchmark} in the test sources, with allocation reported by {@code -prof gc}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RolloutBucketBenchmark {
+
+    private static final int USERS = 4096;
+
+    @Param({"1", "2"})
+    int bucketingVersion;
+
+    @Param({"8", "36"})
+    int userIdLength;
+
+    String[] users;
+
+    @Setup
+    public void setUp() {
+        users = new String[USERS];
+        for (int i = 0; i < USERS; i++) {
+            String id = Integer.toString(10_000_000 + i) + "-0000-0000-0000-000000000000";
+            users[i] = id.substring(0, userIdLength);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+    }
+
+    @Benchmark
+    public int bucket(Cursor cursor) {
+        return Bucketing.bucket(bucketingVersion, "new_checkout_flow", users[cursor.next++ & (USERS - 1)]);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public int bucketContended(Cursor cursor) {
+        return Bucketing.bucket(bucketingVersion, "new_checkout_flow", users[cursor.next++ & (USERS - 1)]);
+    }
+}
@@ -1,28 +1,37 @@
 package com.shotaroi.featureflags.config;
 
-import com.shotaroi.featureflags.domain.ApiKey;
 import com.shotaroi.featureflags.service.ApiKeyService;
+import com.shotaroi.featureflags.service.ValidatedKey;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.dao.DataAccessException;
 import org.springframework.http.HttpHeaders;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.transaction.TransactionException;
 import org.springframework.web.filter.OncePerRequestFilter;
 
 import java.io.IOException;
+import java.time.Instant;
 import java.util.List;
+import java.util.Optional;
 
 /**
  * Authenticates requests to /api/flags/** using the X-API-Key header.
- * If the key is valid and enabled, sets SecurityContext and continues; otherwise returns 401.
+ * If the key is valid and enabled, sets SecurityContext and continues; otherwise returns 401, or 503 if the key
+ * is not cached and the database is unreachable.
  */
 public class ApiKeyAuthenticationFilter extends OncePerRequestFilter {
 
     public static final String API_KEY_HEADER = "X-API-Key";
 
+    private static final List<GrantedAuthority> AUTHORITIES = List.of(new SimpleGrantedAuthority("ROLE_API_CLIENT"));
+
     private final ApiKeyService apiKeyService;
 
     public ApiKeyAuthenticationFilter(ApiKeyService apiKeyService) {
@@ -42,7 +51,19 @@ public class ApiKeyAuthenticationFilter extends OncePerRequestFilter {
             return;
         }
 
-        var apiKey = apiKeyService.validate(key);
+        Optional<ValidatedKey> apiKey;
+        try {
+            apiKey = apiKeyService.validate(key);
+        } catch (DataAccessException | TransactionException e) {
+            // Key not cached and the database is unreachable. Filters run outside the controller advice, so this is
+            // the same response as ApiExceptionHandler#databaseUnavailable
+            response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+            response.setHeader(HttpHeaders.RETRY_AFTER, "1");
+            response.setContentType("application/json");
+            response.getWriter().write("{\"timestamp\":\"" + Instant.now() + "\",\"status\":503,"
+                    + "\"error\":\"DATABASE_UNAVAILABLE\",\"message\":\"No database connection available, retry later\"}");
+            return;
+        }
         if (apiKey.isEmpty()) {
             response.setStatus(HttpServletResponse.SC_UNAUTHORIZED);
             response.setHeader(HttpHeaders.WWW_AUTHENTICATE, "ApiKey");
@@ -51,19 +72,16 @@ public class ApiKeyAuthenticationFilter extends OncePerRequestFilter {
             return;
         }
 
-        ApiKey keyEntity = apiKey.get();
-        var auth = new UsernamePasswordAuthenticationToken(
-                keyEntity.getName(),
-                null,
-                List.of(new SimpleGrantedAuthority("ROLE_API_CLIENT"))
-        );
+        // A token is mutable (setDetails, eraseCredentials), so each request gets its own; the authority list is shared
+        Authentication auth = UsernamePasswordAuthenticationToken.authenticated(apiKey.get().name(), null, AUTHORITIES);
         SecurityContextHolder.getContext().setAuthentication(auth);
         filterChain.doFilter(request, response);
     }
 
     @Override
     protected boolean shouldNotFilter(HttpServletRequest request) {
-        String path = request.getServletPath();
+        // Servlet path is empty when the dispatcher is not mapped to "/" (e.g. MockMvc), so match on the URI
+        String path = request.getRequestURI().substring(request.getContextPath().length());
         // Only apply to evaluation endpoint, not admin or h2-console
         return !path.startsWith("/api/flags");
     }
@@ -0,0 +1,28 @@
+package com.shotaroi.featureflags.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.hibernate.autoconfigure.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@ConditionalOnProperty(name = "feature-flags.evaluation-only.enabled", havingValue = "true")
+public class EvaluationOnlyJpaConfig {
+
+    /**
+     * Hibernate connects while it boots to detect the dialect. When the dialect is configured
+     * ({@code spring.jpa.database-platform}), skip that connection so the node starts while the database is down;
+     * otherwise keep detecting it, whatever the database is.
+     */
+    @Bean
+    HibernatePropertiesCustomizer jdbcMetadataAccessUnlessDialectIsSet(
+            @Value("${spring.jpa.database-platform:}") String databasePlatform
+    ) {
+        return properties -> {
+            if (!databasePlatform.isBlank()) {
+                properties.put("hibernate.boot.allow_jdbc_metadata_access", false);
+            }
+        };
+    }
+}
@@ -3,10 +3,13 @@ package com.shotaroi.featureflags.config;
 import javax.sql.DataSource;
 
 import org.flywaydb.core.Flyway;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.jpa.autoconfigure.EntityManagerFactoryDependsOnPostProcessor;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
 @Configuration
+@ConditionalOnProperty(name = "feature-flags.evaluation-only.enabled", havingValue = "false", matchIfMissing = true)
 public class FlywayConfig {
 
     @Bean(initMethod = "migrate")
@@ -17,4 +20,12 @@ public class FlywayConfig {
                 .baselineOnMigrate(true)
                 .load();
     }
+
+    /**
+     * Hibernate and the in-memory caches read the schema at startup, so migrations must run first.
+     */
+    @Bean
+    static EntityManagerFactoryDependsOnPostProcessor entityManagerFactoryDependsOnFlyway() {
+        return new EntityManagerFactoryDependsOnPostProcessor("flyway");
+    }
 }
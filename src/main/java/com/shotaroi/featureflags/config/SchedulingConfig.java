@@ -0,0 +1,12 @@
+package com.shotaroi.featureflags.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+/**
+ * Background jobs, e.g. change feed compaction in {@code ChangeFeedCompaction}.
+ */
+@Configuration
+@EnableScheduling
+public class SchedulingConfig {
+}
@@ -1,6 +1,7 @@
 package com.shotaroi.featureflags.config;
 
 import com.shotaroi.featureflags.service.ApiKeyService;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.config.Customizer;
@@ -13,24 +14,38 @@ import org.springframework.security.web.authentication.UsernamePasswordAuthentic
 public class SecurityConfig {
 
     @Bean
-    SecurityFilterChain securityFilterChain(HttpSecurity http, ApiKeyService apiKeyService) throws Exception {
+    SecurityFilterChain securityFilterChain(
+            HttpSecurity http,
+            ApiKeyService apiKeyService,
+            @Value("${feature-flags.relay.enabled:false}") boolean relay,
+            @Value("${feature-flags.evaluation-only.enabled:false}") boolean evaluationOnly
+    ) throws Exception {
         var apiKeyFilter = new ApiKeyAuthenticationFilter(apiKeyService);
 
         return http
                 .csrf(csrf -> csrf.disable())
                 .sessionManagement(sm -> sm.sessionCreationPolicy(SessionCreationPolicy.STATELESS))
 
-                .authorizeHttpRequests(auth -> auth
-                        .requestMatchers("/api/flags/**").authenticated()
-                        .requestMatchers("/h2-console/**").permitAll()
-                        .requestMatchers("/api/admin/**").hasRole("ADMIN")
-                        // Health: public for load balancers / k8s probes
-                        .requestMatchers("/actuator/health", "/actuator/health/**").permitAll()
-                        .requestMatchers("/actuator/**").hasRole("ADMIN")
-                        // OpenAPI / Swagger UI: admin only
-                        .requestMatchers("/swagger-ui/**", "/v3/api-docs/**").hasRole("ADMIN")
-                        .anyRequest().authenticated()
-                )
+                .authorizeHttpRequests(auth -> {
+                    if (relay) {
+                        // A relay is a read-only replica: changes go to the upstream
+                        auth.requestMatchers("/api/admin/**").denyAll();
+                    }
+                    if (evaluationOnly) {
+                        // No admin controllers, OpenAPI or H2 console on evaluation-only nodes
+                        auth.requestMatchers("/api/admin/**", "/h2-console/**", "/swagger-ui/**", "/v3/api-docs/**").denyAll();
+                    }
+                    auth
+                            .requestMatchers("/api/flags/**").authenticated()
+                            .requestMatchers("/h2-console/**").permitAll()
+                            .requestMatchers("/api/admin/**").hasRole("ADMIN")
+                            // Health: public for load balancers / k8s probes
+                            .requestMatchers("/actuator/health", "/actuator/health/**").permitAll()
+                            .requestMatchers("/actuator/**").hasRole("ADMIN")
+                            // OpenAPI / Swagger UI: admin only
+                            .requestMatchers("/swagger-ui/**", "/v3/api-docs/**").hasRole("ADMIN")
+                            .anyRequest().authenticated();
+                })
 
                 .httpBasic(Customizer.withDefaults())
                 .addFilterBefore(apiKeyFilter, UsernamePasswordAuthenticationFilter.class)
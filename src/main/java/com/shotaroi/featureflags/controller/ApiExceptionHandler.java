@@ -1,7 +1,11 @@
 package com.shotaroi.featureflags.controller;
 
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.transaction.CannotCreateTransactionException;
 import org.springframework.web.bind.MethodArgumentNotValidException;
 import org.springframework.web.bind.annotation.*;
 
@@ -34,6 +38,17 @@ public class ApiExceptionHandler {
         return ErrorResponse.of(404, "NOT_FOUND", e.getMessage());
     }
 
+    /**
+     * No database connection within {@code spring.datasource.hikari.connection-timeout}: the pool is the limit on
+     * concurrent database work, so shed the request instead of queueing it further.
+     */
+    @ExceptionHandler({CannotCreateTransactionException.class, DataAccessResourceFailureException.class})
+    public ResponseEntity<ErrorResponse> databaseUnavailable(Exception e) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .body(ErrorResponse.of(503, "DATABASE_UNAVAILABLE", "No database connection available, retry later"));
+    }
+
     @ExceptionHandler(Exception.class)
     @ResponseStatus(HttpStatus.INTERNAL_SERVER_ERROR)
     public ErrorResponse fallback(Exception e) {
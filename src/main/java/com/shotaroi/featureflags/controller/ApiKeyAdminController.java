@@ -6,6 +6,7 @@ import com.shotaroi.featureflags.service.ApiKeyService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.validation.Valid;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.http.HttpStatus;
 import org.springframework.web.bind.annotation.*;
 
@@ -13,6 +14,7 @@ import java.util.List;
 import java.util.Map;
 
 @RestController
+@ConditionalOnProperty(name = "feature-flags.evaluation-only.enabled", havingValue = "false", matchIfMissing = true)
 @RequestMapping("/api/admin/api-keys")
 @Tag(name = "Admin – API keys", description = "Create, list, and revoke API keys for the evaluation endpoint. Requires HTTP Basic (admin).")
 public class ApiKeyAdminController {
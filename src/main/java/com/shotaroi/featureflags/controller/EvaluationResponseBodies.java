@@ -0,0 +1,42 @@
+package com.shotaroi.featureflags.controller;
+
+import com.shotaroi.featureflags.service.FeatureEvaluationService.EvaluationResult;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.MediaType;
+import tools.jackson.databind.ObjectMapper;
+import tools.jackson.databind.ObjectWriter;
+
+import java.io.IOException;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * JSON bodies of {@code GET /api/flags/{featureKey}/evaluate}, encoded once for every shared
+ * {@link EvaluationResult} and written to the servlet output stream as they are, without a message converter.
+ * The bytes come from the application's {@link ObjectMapper}, so they are the same as a converter would write.
+ */
+final class EvaluationResponseBodies {
+
+    private final ObjectWriter writer;
+    private final Map<EvaluationResult, byte[]> bodies = new IdentityHashMap<>();
+
+    EvaluationResponseBodies(ObjectMapper objectMapper) {
+        this.writer = objectMapper.writerFor(EvaluationResult.class);
+        for (EvaluationResult result : EvaluationResult.all()) {
+            bodies.put(result, writer.writeValueAsBytes(result));
+        }
+    }
+
+    /** Encoded body of the result; results that are not shared instances are encoded on the fly. */
+    byte[] body(EvaluationResult result) {
+        byte[] body = bodies.get(result);
+        return body != null ? body : writer.writeValueAsBytes(result);
+    }
+
+    void write(EvaluationResult result, HttpServletResponse response) throws IOException {
+        byte[] body = body(result);
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.setContentLength(body.length);
+        response.getOutputStream().write(body);
+    }
+}
@@ -2,27 +2,41 @@ package com.shotaroi.featureflags.controller;
 
 import com.shotaroi.featureflags.domain.Environment;
 import com.shotaroi.featureflags.domain.FeatureFlag;
-import com.shotaroi.featureflags.domain.FlagChangeLog;
 import com.shotaroi.featureflags.dto.AdminDtos;
+import com.shotaroi.featureflags.service.ChangeHistoryService;
 import com.shotaroi.featureflags.service.FeatureAdminService;
+import com.shotaroi.featureflags.service.TargetImportService;
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.List;
 
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
 
 @RestController
+@ConditionalOnProperty(name = "feature-flags.evaluation-only.enabled", havingValue = "false", matchIfMissing = true)
 @RequestMapping("/api/admin/flags")
 @Tag(name = "Admin – Feature flags", description = "CRUD and targets. Requires HTTP Basic (admin).")
 public class FeatureAdminController {
     private final FeatureAdminService adminService;
+    private final ChangeHistoryService historyService;
+    private final TargetImportService importService;
 
-    public FeatureAdminController(FeatureAdminService adminService) {
+    public FeatureAdminController(FeatureAdminService adminService, ChangeHistoryService historyService,
+                                  TargetImportService importService) {
         this.adminService = adminService;
+        this.historyService = historyService;
+        this.importService = importService;
     }
 
     @Operation(summary = "Get a flag by key and environment")
@@ -50,7 +64,7 @@ public class FeatureAdminController {
         return adminService.create(req, auth != null ? auth.getName() : "anonymous");
     }
 
-    @Operation(summary = "Update a flag (enabled, rolloutPercent)")
+    @Operation(summary = "Update a flag (enabled, rolloutPercent, optional bucketingVersion)")
     @PatchMapping("/{featureKey}")
     public FeatureFlag update(
             @PathVariable String featureKey,
@@ -84,12 +98,59 @@ public class FeatureAdminController {
         adminService.removeTarget(featureKey, environment, userId, auth != null ? auth.getName() : "anonymous");
     }
 
-    @Operation(summary = "Get change history for a flag")
-    @GetMapping("/{featureKey}/history")
-    public List<FlagChangeLog> history(
+    @Operation(summary = "Add many users to the flag allowlist",
+            description = "Body: text/csv (userId in the first column, optional header) or NDJSON ({\"userId\":\"...\"} per line). "
+                    + "Users already on the allowlist are skipped. Returns received/inserted/skipped counts.")
+    @PostMapping(value = "/{featureKey}/targets/import", consumes = {"text/csv", "text/plain", MediaType.APPLICATION_NDJSON_VALUE})
+    public TargetImportService.BulkTargetResult importTargets(
             @PathVariable String featureKey,
-            @RequestParam Environment environment
+            @RequestParam Environment environment,
+            @RequestHeader(HttpHeaders.CONTENT_TYPE) MediaType contentType,
+            InputStream body,
+            Authentication auth
     ) {
-        return adminService.listHistory(featureKey, environment);
+        return importService.importTargets(featureKey, environment, format(contentType), body,
+                auth != null ? auth.getName() : "anonymous");
+    }
+
+    @Operation(summary = "Remove many users from the flag allowlist",
+            description = "Same body formats as import. Users not on the allowlist are skipped. Returns received/removed/skipped counts.")
+    @PostMapping(value = "/{featureKey}/targets/remove", consumes = {"text/csv", "text/plain", MediaType.APPLICATION_NDJSON_VALUE})
+    public TargetImportService.BulkTargetResult removeTargets(
+            @PathVariable String featureKey,
+            @RequestParam Environment environment,
+            @RequestHeader(HttpHeaders.CONTENT_TYPE) MediaType contentType,
+            InputStream body,
+            Authentication auth
+    ) {
+        return importService.removeTargets(featureKey, environment, format(contentType), body,
+                auth != null ? auth.getName() : "anonymous");
+    }
+
+    @Operation(summary = "Get change history for a flag, newest first",
+            description = "With `limit` or `cursor`, returns one page of at most `limit` entries (default 100, max 1000); "
+                    + "when more exist, the X-Next-Cursor response header holds the `cursor` for the next page. "
+                    + "Without either, returns the whole history, streamed from the database.")
+    @GetMapping("/{featureKey}/history")
+    public ResponseEntity<List<ChangeHistoryService.HistoryEntry>> history(
+            @PathVariable String featureKey,
+            @RequestParam Environment environment,
+            @RequestParam(required = false) Integer limit,
+            @RequestParam(required = false) String cursor,
+            HttpServletResponse response
+    ) throws IOException {
+        var query = new ChangeHistoryService.HistoryQuery(featureKey, environment, null, null);
+        if (limit == null && cursor == null) {
+            // Unpaged, as before pagination existed; streamed, so a long history does not need to fit in memory
+            response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+            historyService.writeAll(query, response.getOutputStream());
+            return null;
+        }
+        var page = historyService.page(query, cursor, limit != null ? limit : ChangeHistoryService.DEFAULT_LIMIT);
+        return HistoryAdminController.pageResponse(page);
+    }
+
+    private static TargetImportService.Format format(MediaType contentType) {
+        return MediaType.APPLICATION_NDJSON.includes(contentType) ? TargetImportService.Format.NDJSON : TargetImportService.Format.CSV;
     }
 }
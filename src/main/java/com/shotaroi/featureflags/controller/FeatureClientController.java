@@ -1,10 +1,31 @@
 package com.shotaroi.featureflags.controller;
 
 import com.shotaroi.featureflags.domain.Environment;
+import com.shotaroi.featureflags.service.BatchEvaluationService;
+import com.shotaroi.featureflags.service.BinaryBatchResults;
+import com.shotaroi.featureflags.service.BinarySnapshot;
+import com.shotaroi.featureflags.service.ChangeFeedService;
 import com.shotaroi.featureflags.service.FeatureEvaluationService;
+import com.shotaroi.featureflags.service.FlagStreamService;
+import com.shotaroi.featureflags.service.SnapshotService;
 import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import tools.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Map;
 
 @RestController
 @RequestMapping("/api/flags")
@@ -12,18 +33,163 @@ import org.springframework.web.bind.annotation.*;
 public class FeatureClientController {
 
     private final FeatureEvaluationService service;
+    private final BatchEvaluationService batchService;
+    private final FlagStreamService streamService;
+    private final SnapshotService snapshotService;
+    private final ChangeFeedService changeFeedService;
+    private final EvaluationResponseBodies evaluationBodies;
 
-    public FeatureClientController(FeatureEvaluationService service) {
+    public FeatureClientController(
+            FeatureEvaluationService service,
+            BatchEvaluationService batchService,
+            FlagStreamService streamService,
+            SnapshotService snapshotService,
+            ChangeFeedService changeFeedService,
+            ObjectMapper objectMapper
+    ) {
         this.service = service;
+        this.batchService = batchService;
+        this.streamService = streamService;
+        this.snapshotService = snapshotService;
+        this.changeFeedService = changeFeedService;
+        this.evaluationBodies = new EvaluationResponseBodies(objectMapper);
     }
 
+    /** Writes the pre-encoded body of the result; the hot path skips message converters (see {@link EvaluationResponseBodies}). */
     @Operation(summary = "Evaluate a feature flag for a user", description = "Returns enabled (true/false) and reason. Requires X-API-Key.")
+    @ApiResponse(responseCode = "200", content = @Content(mediaType = MediaType.APPLICATION_JSON_VALUE,
+            schema = @Schema(implementation = FeatureEvaluationService.EvaluationResult.class)))
     @GetMapping("/{featureKey}/evaluate")
-    public FeatureEvaluationService.EvaluationResult evaluate(
+    public void evaluate(
             @PathVariable String featureKey,
             @RequestParam Environment environment,
-            @RequestParam(required = false) String userId
+            @RequestParam(required = false) String userId,
+            HttpServletResponse response
+    ) throws IOException {
+        evaluationBodies.write(service.evaluate(featureKey, environment, userId), response);
+    }
+
+    @Operation(summary = "Evaluate all flags for a user",
+            description = "Returns featureKey → {enabled, reason} for every flag in the environment, or only for `keys` "
+                    + "(comma-separated; unknown keys return FLAG_NOT_FOUND). Requires X-API-Key.")
+    @GetMapping("/evaluate")
+    public Map<String, FeatureEvaluationService.EvaluationResult> evaluateAll(
+            @RequestParam Environment environment,
+            @RequestParam(required = false) String userId,
+            @RequestParam(required = false) List<String> keys
+    ) {
+        return service.evaluateAll(environment, userId, keys);
+    }
+
+    @Operation(summary = "Evaluate flags for a stream of users (NDJSON)",
+            description = "Body: one {\"userId\":\"...\"} per line. Response: one {\"userId\",\"results\"} line per user, "
+                    + "in input order. Evaluates `keys` (comma-separated), or every flag in the environment. With Accept: "
+                    + BinaryBatchResults.MEDIA_TYPE + " the response is the compact binary format instead (bit-packed results, "
+                    + "plus reason codes if `reasons=true`). Requires X-API-Key.")
+    @PostMapping(value = "/batch/evaluate", consumes = MediaType.APPLICATION_NDJSON_VALUE,
+            produces = {MediaType.APPLICATION_NDJSON_VALUE, BinaryBatchResults.MEDIA_TYPE})
+    public void evaluateBatch(
+            @RequestParam Environment environment,
+            @RequestParam(required = false) List<String> keys,
+            @RequestParam(defaultValue = "false") boolean reasons,
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept,
+            InputStream body,
+            HttpServletResponse response
+    ) throws IOException {
+        if (accepts(accept, BinaryBatchResults.MEDIA_TYPE)) {
+            response.setContentType(BinaryBatchResults.MEDIA_TYPE);
+            batchService.evaluateBinary(environment, keys, reasons, body, response.getOutputStream());
+        } else {
+            response.setContentType(MediaType.APPLICATION_NDJSON_VALUE);
+            batchService.evaluate(environment, keys, body, response.getOutputStream());
+        }
+    }
+
+    @Operation(summary = "Stream flag changes (Server-Sent Events)",
+            description = "Sends a `snapshot` event with every flag and its targets, then a `change` event per admin change. "
+                    + "Reconnect with Last-Event-ID to receive only missed changes. Requires X-API-Key.")
+    @GetMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter stream(
+            @RequestParam Environment environment,
+            @RequestHeader(value = "Last-Event-ID", required = false) String lastEventId
     ) {
-        return service.evaluate(featureKey, environment, userId);
+        return streamService.subscribe(environment, lastEventId);
+    }
+
+    @Operation(summary = "Full evaluation config of an environment",
+            description = "Flags, rollout, bucketing version and targets at a revision. Send If-None-Match with the last ETag "
+                    + "to get 304 when nothing changed. Gzip-encoded if the client accepts it. With Accept: "
+                    + BinarySnapshot.MEDIA_TYPE + " the same config in a compact binary format (not gzipped). Requires X-API-Key.")
+    @GetMapping("/snapshot")
+    public ResponseEntity<byte[]> snapshot(
+            @RequestParam Environment environment,
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+            WebRequest request
+    ) {
+        SnapshotService.Snapshot snapshot = snapshotService.snapshot(environment);
+        boolean binary = accepts(accept, BinarySnapshot.MEDIA_TYPE);
+        boolean gzip = !binary && acceptsEncoding(acceptEncoding, "gzip");
+        String etag = binary ? snapshot.binaryEtag() : gzip ? snapshot.gzipEtag() : snapshot.etag();
+        if (request.checkNotModified(etag)) {
+            return null;
+        }
+        var response = ResponseEntity.ok()
+                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT + ", " + HttpHeaders.ACCEPT_ENCODING)
+                .header("X-Revision", Long.toString(snapshot.revision()));
+        if (binary) {
+            return response.contentType(MediaType.parseMediaType(BinarySnapshot.MEDIA_TYPE)).body(snapshot.binary());
+        }
+        response.contentType(MediaType.APPLICATION_JSON);
+        return gzip
+                ? response.header(HttpHeaders.CONTENT_ENCODING, "gzip").body(snapshot.gzip())
+                : response.body(snapshot.json());
+    }
+
+    @Operation(summary = "Flag changes since a revision",
+            description = "Current config of every flag changed after `sinceRevision`, and the net add/remove per target. "
+                    + "Poll again with the returned revision while hasMore is true. resetRequired means the revision was "
+                    + "compacted away: reload /snapshot. Requires X-API-Key.")
+    @GetMapping("/changes")
+    public ChangeFeedService.Changes changes(
+            @RequestParam Environment environment,
+            @RequestParam long sinceRevision
+    ) {
+        return changeFeedService.changesSince(environment, sinceRevision);
+    }
+
+    /**
+     * Whether an {@code Accept-Encoding} header allows {@code coding}: listed with a non-zero q-value, or not listed
+     * and {@code *} allowed.
+     */
+    private static boolean acceptsEncoding(String acceptEncoding, String coding) {
+        if (acceptEncoding == null) return false;
+        Boolean wildcard = null;
+        for (String element : acceptEncoding.split(",")) {
+            String[] parts = element.split(";");
+            String name = parts[0].trim();
+            boolean allowed = true;
+            for (int i = 1; i < parts.length; i++) {
+                String param = parts[i].trim();
+                if (param.regionMatches(true, 0, "q=", 0, 2)) {
+                    try {
+                        allowed = Double.parseDouble(param.substring(2).trim()) > 0;
+                    } catch (NumberFormatException e) {
+                        allowed = false;
+                    }
+                }
+            }
+            if (name.equalsIgnoreCase(coding)) return allowed;
+            if (name.equals("*")) wildcard = allowed;
+        }
+        return Boolean.TRUE.equals(wildcard);
+    }
+
+    /** Whether {@code accept} explicitly lists {@code mediaType}; a wildcard keeps the JSON default. */
+    private static boolean accepts(String accept, String mediaType) {
+        if (accept == null) return false;
+        MediaType type = MediaType.parseMediaType(mediaType);
+        return MediaType.parseMediaTypes(accept).stream()
+                .anyMatch(m -> m.getQualityValue() > 0 && type.equalsTypeAndSubtype(m));
     }
 }
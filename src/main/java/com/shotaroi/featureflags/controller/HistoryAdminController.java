@@ -0,0 +1,66 @@
+package com.shotaroi.featureflags.controller;
+
+import com.shotaroi.featureflags.domain.Environment;
+import com.shotaroi.featureflags.service.ChangeHistoryService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.List;
+
+@RestController
+@ConditionalOnProperty(name = "feature-flags.evaluation-only.enabled", havingValue = "false", matchIfMissing = true)
+@RequestMapping("/api/admin/history")
+@Tag(name = "Admin – Change history", description = "Audit log across flags. Requires HTTP Basic (admin).")
+public class HistoryAdminController {
+
+    static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
+    private final ChangeHistoryService historyService;
+
+    public HistoryAdminController(ChangeHistoryService historyService) {
+        this.historyService = historyService;
+    }
+
+    @Operation(summary = "List changes across flags, newest first",
+            description = "Optional filters: `environment`, `from` (inclusive) and `to` (exclusive) as ISO-8601 instants. "
+                    + "Returns at most `limit` entries (default 100, max 1000); X-Next-Cursor holds the `cursor` for the next page.")
+    @GetMapping
+    public ResponseEntity<List<ChangeHistoryService.HistoryEntry>> list(
+            @RequestParam(required = false) Environment environment,
+            @RequestParam(required = false) Instant from,
+            @RequestParam(required = false) Instant to,
+            @RequestParam(defaultValue = "" + ChangeHistoryService.DEFAULT_LIMIT) int limit,
+            @RequestParam(required = false) String cursor
+    ) {
+        return pageResponse(historyService.page(new ChangeHistoryService.HistoryQuery(null, environment, from, to), cursor, limit));
+    }
+
+    @Operation(summary = "Export changes (NDJSON)",
+            description = "One entry per line, oldest first, with the same filters as the list plus `featureKey`. "
+                    + "Streams from the database, so any range can be exported in one request.")
+    @GetMapping(value = "/export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public void export(
+            @RequestParam(required = false) String featureKey,
+            @RequestParam(required = false) Environment environment,
+            @RequestParam(required = false) Instant from,
+            @RequestParam(required = false) Instant to,
+            HttpServletResponse response
+    ) throws IOException {
+        var query = new ChangeHistoryService.HistoryQuery(featureKey, environment, from, to);
+        response.setContentType(MediaType.APPLICATION_NDJSON_VALUE);
+        historyService.export(query, response.getOutputStream());
+    }
+
+    static ResponseEntity<List<ChangeHistoryService.HistoryEntry>> pageResponse(ChangeHistoryService.HistoryPage page) {
+        var response = ResponseEntity.ok();
+        if (page.nextCursor() != null) response.header(NEXT_CURSOR_HEADER, page.nextCursor());
+        return response.body(page.entries());
+    }
+}
@@ -0,0 +1,33 @@
+package com.shotaroi.featureflags.domain;
+
+import jakarta.persistence.*;
+
+/**
+ * Change counter of one environment. Every flag or target change increments {@code revision} in its own
+ * transaction while holding this row's lock, so revisions are committed in order.
+ */
+@Entity
+@Table(name = "environment_revisions")
+public class EnvironmentRevision {
+
+    @Id
+    @Enumerated(EnumType.STRING)
+    @Column(name = "environment", length = 50)
+    private Environment environment;
+
+    @Column(nullable = false)
+    private long revision;
+
+    /** Changes up to and including this revision have been compacted out of flag_changes. */
+    @Column(name = "min_revision", nullable = false)
+    private long minRevision;
+
+    public Environment getEnvironment() { return environment; }
+    public void setEnvironment(Environment environment) { this.environment = environment; }
+
+    public long getRevision() { return revision; }
+    public void setRevision(long revision) { this.revision = revision; }
+
+    public long getMinRevision() { return minRevision; }
+    public void setMinRevision(long minRevision) { this.minRevision = minRevision; }
+}
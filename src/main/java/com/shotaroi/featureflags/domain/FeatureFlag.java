@@ -30,6 +30,10 @@ public class FeatureFlag {
     @Column(name = "rollout_percent", nullable = false)
     private int rolloutPercent;
 
+    /** Rollout hash algorithm, see {@code service.Bucketing}. Rows that predate the column are version 1. */
+    @Column(name = "bucketing_version", nullable = false)
+    private int bucketingVersion = 1;
+
     @Column(name = "created_at", nullable = false)
     private Instant createdAt;
 
@@ -63,6 +67,9 @@ public class FeatureFlag {
     public int getRolloutPercent() { return rolloutPercent; }
     public void setRolloutPercent(int rolloutPercent) { this.rolloutPercent = rolloutPercent; }
 
+    public int getBucketingVersion() { return bucketingVersion; }
+    public void setBucketingVersion(int bucketingVersion) { this.bucketingVersion = bucketingVersion; }
+
     public Instant getCreatedAt() { return createdAt; }
     public Instant getUpdatedAt() { return updatedAt; }
 }
@@ -0,0 +1,73 @@
+package com.shotaroi.featureflags.domain;
+
+import jakarta.persistence.*;
+import java.time.Instant;
+
+/**
+ * One entry of the change feed: which flag (or target) changed at which environment revision.
+ * Unlike {@link FlagChangeLog} this is machine-readable and compacted after a retention period.
+ */
+@Entity
+@Table(name = "flag_changes", indexes = {
+    @Index(name = "idx_flag_changes_env_revision", columnList = "environment, revision", unique = true)
+})
+public class FlagChange {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "environment", nullable = false, length = 50)
+    private Environment environment;
+
+    @Column(nullable = false)
+    private long revision;
+
+    @Column(name = "feature_key", nullable = false)
+    private String featureKey;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "change_type", nullable = false, length = 50)
+    private FlagChangeType changeType;
+
+    /** Set for TARGET_ADDED / TARGET_REMOVED. */
+    @Column(name = "user_id")
+    private String userId;
+
+    @Column(name = "created_at", nullable = false)
+    private Instant createdAt;
+
+    /** Node that assigned the revision ({@code ChangeFeedService#origin}); null for relayed changes. */
+    @Column(name = "origin", length = 64)
+    private String origin;
+
+    @PrePersist
+    void onCreate() {
+        if (createdAt == null) createdAt = Instant.now();
+    }
+
+    public Long getId() { return id; }
+    public void setId(Long id) { this.id = id; }
+
+    public Environment getEnvironment() { return environment; }
+    public void setEnvironment(Environment environment) { this.environment = environment; }
+
+    public long getRevision() { return revision; }
+    public void setRevision(long revision) { this.revision = revision; }
+
+    public String getFeatureKey() { return featureKey; }
+    public void setFeatureKey(String featureKey) { this.featureKey = featureKey; }
+
+    public FlagChangeType getChangeType() { return changeType; }
+    public void setChangeType(FlagChangeType changeType) { this.changeType = changeType; }
+
+    public String getUserId() { return userId; }
+    public void setUserId(String userId) { this.userId = userId; }
+
+    public Instant getCreatedAt() { return createdAt; }
+    public void setCreatedAt(Instant createdAt) { this.createdAt = createdAt; }
+
+    public String getOrigin() { return origin; }
+    public void setOrigin(String origin) { this.origin = origin; }
+}
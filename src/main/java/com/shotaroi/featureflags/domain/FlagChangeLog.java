@@ -8,7 +8,7 @@ import java.time.Instant;
  */
 @Entity
 @Table(name = "flag_change_logs", indexes = {
-    @Index(name = "idx_change_log_feature_env", columnList = "feature_key, environment"),
+    @Index(name = "idx_change_log_feature_env_created", columnList = "feature_key, environment, created_at, id"),
     @Index(name = "idx_change_log_created_at", columnList = "created_at")
 })
 public class FlagChangeLog {
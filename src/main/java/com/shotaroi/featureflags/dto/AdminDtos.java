@@ -9,12 +9,15 @@ public class AdminDtos {
             @NotBlank String featureKey,
             @NotNull Environment environment,
             boolean enabled,
-            @Min(0) @Max(100) int rolloutPercent
+            @Min(0) @Max(100) int rolloutPercent,
+            @Min(1) @Max(2) Integer bucketingVersion
     ) {}
 
+    /** {@code bucketingVersion} is optional; set it only to migrate the flag to another rollout hash. */
     public record UpdateFlagRequest(
             boolean enabled,
-            @Min(0) @Max(100) int rolloutPercent
+            @Min(0) @Max(100) int rolloutPercent,
+            @Min(1) @Max(2) Integer bucketingVersion
     ) {}
 
     public record AddTargetRequest(@NotBlank String userId) {}
@@ -0,0 +1,31 @@
+package com.shotaroi.featureflags.relay;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.health.contributor.Health;
+import org.springframework.boot.health.contributor.HealthIndicator;
+import org.springframework.stereotype.Component;
+
+/**
+ * {@code relay} component of {@code /actuator/health}: DOWN until every relayed environment has applied an
+ * upstream snapshot, then UP with connection state, revisions and lag per environment. A relay that loses its
+ * upstream stays UP and keeps serving its last revision; watch {@code lag} and {@code connected}.
+ */
+@Component
+@ConditionalOnProperty(name = "feature-flags.relay.enabled", havingValue = "true")
+public class RelayHealthIndicator implements HealthIndicator {
+
+    private final RelaySync sync;
+
+    public RelayHealthIndicator(RelaySync sync) {
+        this.sync = sync;
+    }
+
+    @Override
+    public Health health() {
+        var status = sync.status();
+        boolean synced = status.values().stream().allMatch(RelaySync.Status::synced);
+        Health.Builder health = synced ? Health.up() : Health.down();
+        status.forEach((environment, s) -> health.withDetail(environment.name(), s));
+        return health.build();
+    }
+}
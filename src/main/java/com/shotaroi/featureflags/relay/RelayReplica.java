@@ -0,0 +1,172 @@
+package com.shotaroi.featureflags.relay;
+
+import com.shotaroi.featureflags.domain.Environment;
+import com.shotaroi.featureflags.domain.FeatureFlag;
+import com.shotaroi.featureflags.domain.FeatureTarget;
+import com.shotaroi.featureflags.domain.FlagChangeType;
+import com.shotaroi.featureflags.repository.FeatureFlagRepository;
+import com.shotaroi.featureflags.repository.FeatureTargetRepository;
+import com.shotaroi.featureflags.service.ChangeFeedService;
+import com.shotaroi.featureflags.service.FlagChangedEvent;
+import com.shotaroi.featureflags.service.FlagRevisions;
+import com.shotaroi.featureflags.service.SnapshotService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Applies upstream snapshots and changes to this relay's embedded database, then publishes
+ * {@link FlagChangedEvent}s under the upstream revision. The caches, snapshot, stream and change feed of the
+ * relay therefore work exactly as on the upstream, from local memory.
+ */
+@Service
+@ConditionalOnProperty(name = "feature-flags.relay.enabled", havingValue = "true")
+public class RelayReplica {
+
+    private static final Logger log = LoggerFactory.getLogger(RelayReplica.class);
+    private static final int TARGET_PAGE = 10_000;
+
+    private final FeatureFlagRepository flagRepo;
+    private final FeatureTargetRepository targetRepo;
+    private final ChangeFeedService changeFeed;
+    private final FlagRevisions revisions;
+    private final ApplicationEventPublisher events;
+
+    public RelayReplica(
+            FeatureFlagRepository flagRepo,
+            FeatureTargetRepository targetRepo,
+            ChangeFeedService changeFeed,
+            FlagRevisions revisions,
+            ApplicationEventPublisher events
+    ) {
+        this.flagRepo = flagRepo;
+        this.targetRepo = targetRepo;
+        this.changeFeed = changeFeed;
+        this.revisions = revisions;
+        this.events = events;
+    }
+
+    /**
+     * Makes the environment equal to the upstream snapshot. Only differences are written and published, so
+     * re-applying the same snapshot after a reconnect changes nothing.
+     */
+    @Transactional
+    public void applySnapshot(Environment environment, SnapshotPayload snapshot) {
+        long revision = snapshot.revision();
+        Map<String, FeatureFlag> existing = flagRepo.findAllByEnvironment(environment).stream()
+                .collect(Collectors.toMap(FeatureFlag::getFeatureKey, Function.identity()));
+
+        for (SnapshotService.FlagConfig config : snapshot.flags()) {
+            FeatureFlag flag = existing.remove(config.featureKey());
+            FlagChangeType type = flag == null ? FlagChangeType.FLAG_CREATED : FlagChangeType.FLAG_UPDATED;
+            if (flag == null) {
+                flag = new FeatureFlag();
+                flag.setFeatureKey(config.featureKey());
+                flag.setEnvironment(environment);
+            }
+            if (type == FlagChangeType.FLAG_CREATED || !sameConfig(flag, config)) {
+                flag = saveFlag(flag, config);
+                events.publishEvent(new FlagChangedEvent(type, flag, null, revision));
+            }
+            syncTargets(flag, config.targets() == null ? List.of() : config.targets(), revision);
+        }
+        if (!existing.isEmpty()) {
+            // The server has no flag deletion; only an upstream database reset gets here
+            log.warn("Relay keeps {} flags of {} that are not in the upstream snapshot: {}",
+                    existing.size(), environment, existing.keySet());
+        }
+        changeFeed.resetTo(environment, revision);
+    }
+
+    /**
+     * Applies one upstream change. Returns false (and changes nothing) if it is not newer than the replica.
+     */
+    @Transactional
+    public boolean applyChange(Environment environment, ChangePayload change) {
+        if (change.revision() <= revisions.current(environment)) return false;
+
+        FeatureFlag flag = flagRepo.findByFeatureKeyAndEnvironment(change.featureKey(), environment).orElse(null);
+        switch (change.type()) {
+            case FLAG_CREATED, FLAG_UPDATED -> {
+                if (flag == null) {
+                    flag = new FeatureFlag();
+                    flag.setFeatureKey(change.featureKey());
+                    flag.setEnvironment(environment);
+                }
+                flag = saveFlag(flag, change.flag());
+            }
+            case TARGET_ADDED, TARGET_REMOVED -> {
+                if (flag == null) {
+                    throw new IllegalStateException("Upstream change for unknown flag " + change.featureKey() + " in " + environment);
+                }
+                if (change.type() == FlagChangeType.TARGET_ADDED) {
+                    addTarget(flag, change.userId());
+                } else {
+                    targetRepo.deleteByFeatureFlag_IdAndUserId(flag.getId(), change.userId());
+                }
+            }
+        }
+        changeFeed.recordReplicated(environment, change.featureKey(), change.type(), change.userId(), change.revision());
+        events.publishEvent(new FlagChangedEvent(change.type(), flag, change.userId(), change.revision()));
+        return true;
+    }
+
+    private void syncTargets(FeatureFlag flag, List<String> wanted, long revision) {
+        Set<String> current = new HashSet<>();
+        String after = "";
+        List<String> page;
+        do {
+            page = targetRepo.findUserIdPage(flag.getId(), after, Limit.of(TARGET_PAGE));
+            current.addAll(page);
+            if (!page.isEmpty()) after = page.get(page.size() - 1);
+        } while (page.size() == TARGET_PAGE);
+
+        for (String userId : wanted) {
+            if (!current.remove(userId)) {
+                addTarget(flag, userId);
+                events.publishEvent(new FlagChangedEvent(FlagChangeType.TARGET_ADDED, flag, userId, revision));
+            }
+        }
+        for (String userId : current) {
+            targetRepo.deleteByFeatureFlag_IdAndUserId(flag.getId(), userId);
+            events.publishEvent(new FlagChangedEvent(FlagChangeType.TARGET_REMOVED, flag, userId, revision));
+        }
+    }
+
+    private void addTarget(FeatureFlag flag, String userId) {
+        FeatureTarget target = new FeatureTarget();
+        target.setFeatureFlag(flag);
+        target.setUserId(userId);
+        targetRepo.save(target);
+    }
+
+    private FeatureFlag saveFlag(FeatureFlag flag, SnapshotService.FlagConfig config) {
+        flag.setEnabled(config.enabled());
+        flag.setRolloutPercent(config.rolloutPercent());
+        flag.setBucketingVersion(config.bucketingVersion());
+        return flagRepo.save(flag);
+    }
+
+    private static boolean sameConfig(FeatureFlag flag, SnapshotService.FlagConfig config) {
+        return flag.isEnabled() == config.enabled()
+                && flag.getRolloutPercent() == config.rolloutPercent()
+                && flag.getBucketingVersion() == config.bucketingVersion();
+    }
+
+    /** Body of the upstream {@code snapshot} event and of {@code GET /api/flags/snapshot}. */
+    public record SnapshotPayload(Environment environment, long revision, List<SnapshotService.FlagConfig> flags) {}
+
+    /** Body of an upstream {@code change} event. */
+    public record ChangePayload(long revision, FlagChangeType type, String featureKey, SnapshotService.FlagConfig flag, String userId) {}
+}
@@ -0,0 +1,268 @@
+package com.shotaroi.featureflags.relay;
+
+import com.shotaroi.featureflags.domain.Environment;
+import com.shotaroi.featureflags.service.FlagRevisions;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import tools.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Relay mode: keeps the configured environments in sync with an upstream instance over one
+ * {@code GET /api/flags/stream} connection per environment, and applies what it receives through
+ * {@link RelayReplica}. Reconnects resume with {@code Last-Event-ID}; the upstream sends a fresh snapshot when
+ * it cannot resume.
+ * <p>
+ * Every {@code lag-check-interval} the upstream's current revision is read from {@code HEAD /api/flags/snapshot}
+ * ({@code X-Revision}), so the lag is known even while the stream is down. It is exported as the
+ * {@code feature.flag.relay.lag} gauge and in the {@code relay} health component.
+ */
+@Component
+@ConditionalOnProperty(name = "feature-flags.relay.enabled", havingValue = "true")
+public class RelaySync {
+
+    private static final Logger log = LoggerFactory.getLogger(RelaySync.class);
+
+    private final RelayReplica replica;
+    private final FlagRevisions revisions;
+    private final ObjectMapper objectMapper;
+    private final URI upstreamUrl;
+    private final String apiKey;
+    private final Duration reconnectDelay;
+    private final Duration lagCheckInterval;
+    private final HttpClient http;
+    private final Map<Environment, Upstream> upstreams = new EnumMap<>(Environment.class);
+    private final ScheduledExecutorService lagChecks =
+            Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform().name("relay-lag-check").daemon().factory());
+    private final List<Thread> streams = new ArrayList<>();
+    private volatile boolean running = true;
+
+    public RelaySync(
+            RelayReplica replica,
+            FlagRevisions revisions,
+            ObjectMapper objectMapper,
+            MeterRegistry meterRegistry,
+            @Value("${feature-flags.relay.upstream-url}") URI upstreamUrl,
+            @Value("${feature-flags.relay.api-key}") String apiKey,
+            @Value("${feature-flags.relay.environments:DEV,STAGING,PROD}") List<Environment> environments,
+            @Value("${feature-flags.relay.reconnect-delay:1s}") Duration reconnectDelay,
+            @Value("${feature-flags.relay.lag-check-interval:10s}") Duration lagCheckInterval
+    ) {
+        this.replica = replica;
+        this.revisions = revisions;
+        this.objectMapper = objectMapper;
+        this.upstreamUrl = upstreamUrl;
+        this.apiKey = apiKey;
+        this.reconnectDelay = reconnectDelay;
+        this.lagCheckInterval = lagCheckInterval;
+        this.http = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build();
+        for (Environment env : environments) {
+            Upstream upstream = new Upstream(env);
+            upstreams.put(env, upstream);
+            Gauge.builder("feature.flag.relay.lag", this, s -> s.lag(env))
+                    .description("Upstream revisions not yet applied by this relay")
+                    .tag("environment", env.name())
+                    .register(meterRegistry);
+            Gauge.builder("feature.flag.relay.connected", upstream, u -> u.connected ? 1 : 0)
+                    .description("1 while the upstream stream is open")
+                    .tag("environment", env.name())
+                    .register(meterRegistry);
+        }
+    }
+
+    /** Started once the context is ready, so the cache and stream listeners see the first snapshot. */
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        for (Upstream upstream : upstreams.values()) {
+            streams.add(Thread.ofPlatform().name("relay-" + upstream.environment).daemon().start(() -> run(upstream)));
+        }
+        long period = lagCheckInterval.toMillis();
+        lagChecks.scheduleWithFixedDelay(this::checkLag, 0, period, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    void stop() {
+        running = false;
+        lagChecks.shutdownNow();
+        for (Upstream upstream : upstreams.values()) upstream.closeStream();
+        streams.forEach(Thread::interrupt);
+        http.close();
+    }
+
+    /** Sync state of every relayed environment. */
+    public Map<Environment, Status> status() {
+        Map<Environment, Status> status = new EnumMap<>(Environment.class);
+        for (Upstream u : upstreams.values()) {
+            status.put(u.environment, new Status(u.connected, u.synced, revisions.current(u.environment),
+                    u.upstreamRevision, lag(u.environment), u.lastEventAt));
+        }
+        return status;
+    }
+
+    /** Upstream revisions not yet applied here; 0 until the upstream revision is known. */
+    public long lag(Environment environment) {
+        Upstream upstream = upstreams.get(environment);
+        if (upstream == null || upstream.upstreamRevision < 0) return 0;
+        return Math.max(0, upstream.upstreamRevision - revisions.current(environment));
+    }
+
+    private void run(Upstream upstream) {
+        while (running) {
+            try {
+                stream(upstream);
+            } catch (InterruptedException e) {
+                return;
+            } catch (Exception e) {
+                if (running) log.warn("Relay stream for {} failed: {}", upstream.environment, e.toString());
+            } finally {
+                upstream.connected = false;
+            }
+            try {
+                Thread.sleep(reconnectDelay);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    private void stream(Upstream upstream) throws IOException, InterruptedException {
+        HttpRequest.Builder request = HttpRequest.newBuilder(uri("/api/flags/stream", upstream.environment))
+                .header("X-API-Key", apiKey)
+                .header("Accept", "text/event-stream");
+        if (upstream.synced) {
+            request.header("Last-Event-ID", Long.toString(revisions.current(upstream.environment)));
+        }
+        HttpResponse<Stream<String>> response = http.send(request.build(), HttpResponse.BodyHandlers.ofLines());
+        if (response.statusCode() != 200) {
+            response.body().close();
+            throw new IOException("Upstream stream returned " + response.statusCode());
+        }
+
+        try (Stream<String> lines = response.body()) {
+            upstream.open = lines;
+            upstream.connected = true;
+            log.info("Relay stream for {} connected to {}", upstream.environment, upstreamUrl);
+
+            String event = null;
+            StringBuilder data = new StringBuilder();
+            Iterator<String> it = lines.iterator();
+            while (running && it.hasNext()) {
+                String line = it.next();
+                upstream.lastEventAt = Instant.now();
+                if (line.isEmpty()) {
+                    if (event != null && !data.isEmpty()) {
+                        try {
+                            dispatch(upstream, event, data.toString());
+                        } catch (RuntimeException e) {
+                            // Could not apply: reconnect without Last-Event-ID to start over from a snapshot
+                            upstream.synced = false;
+                            throw e;
+                        }
+                    }
+                    event = null;
+                    data.setLength(0);
+                } else if (line.startsWith("event:")) {
+                    event = line.substring(6).strip();
+                } else if (line.startsWith("data:")) {
+                    if (!data.isEmpty()) data.append('\n');
+                    data.append(line.substring(5));
+                }
+                // id: is the revision, which the payload also carries; ':' lines are heartbeats
+            }
+        } finally {
+            upstream.open = null;
+        }
+    }
+
+    private void dispatch(Upstream upstream, String event, String data) {
+        Environment env = upstream.environment;
+        switch (event) {
+            case "snapshot" -> {
+                var snapshot = objectMapper.readValue(data, RelayReplica.SnapshotPayload.class);
+                replica.applySnapshot(env, snapshot);
+                // Listeners have run on commit; also covers a snapshot with no differences
+                revisions.advanceTo(env, snapshot.revision());
+                upstream.seen(snapshot.revision());
+                if (!upstream.synced) log.info("Relay synced {} at revision {}", env, snapshot.revision());
+                upstream.synced = true;
+            }
+            case "change" -> {
+                var change = objectMapper.readValue(data, RelayReplica.ChangePayload.class);
+                replica.applyChange(env, change);
+                upstream.seen(change.revision());
+            }
+            default -> log.debug("Ignoring upstream event {}", event);
+        }
+    }
+
+    private void checkLag() {
+        for (Upstream upstream : upstreams.values()) {
+            try {
+                HttpRequest request = HttpRequest.newBuilder(uri("/api/flags/snapshot", upstream.environment))
+                        .method("HEAD", HttpRequest.BodyPublishers.noBody())
+                        .timeout(Duration.ofSeconds(5))
+                        .header("X-API-Key", apiKey)
+                        .build();
+                HttpResponse<Void> response = http.send(request, HttpResponse.BodyHandlers.discarding());
+                response.headers().firstValue("X-Revision").map(Long::parseLong).ifPresent(upstream::seen);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                log.debug("Relay lag check for {} failed: {}", upstream.environment, e.toString());
+            }
+        }
+    }
+
+    private URI uri(String path, Environment environment) {
+        return upstreamUrl.resolve(path + "?environment=" + environment.name());
+    }
+
+    public record Status(boolean connected, boolean synced, long revision, long upstreamRevision, long lag, Instant lastEventAt) {}
+
+    private static final class Upstream {
+        final Environment environment;
+        volatile boolean connected;
+        volatile boolean synced;
+        volatile long upstreamRevision = -1;
+        volatile Instant lastEventAt;
+        volatile Stream<String> open;
+
+        Upstream(Environment environment) {
+            this.environment = environment;
+        }
+
+        synchronized void seen(long revision) {
+            if (revision > upstreamRevision) upstreamRevision = revision;
+        }
+
+        void closeStream() {
+            Stream<String> s = open;
+            if (s != null) s.close();
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.shotaroi.featureflags.relay;
+
+import com.shotaroi.featureflags.domain.Environment;
+import com.shotaroi.featureflags.service.ValidatedKey;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Relay mode: the relay holds no API keys, so client keys are checked against the upstream with
+ * {@code HEAD /api/flags/snapshot}. Results go through {@code ApiKeyCache} like database lookups, so a key is
+ * re-checked at most once per {@code feature-flags.api-keys.cache-ttl}.
+ * <p>
+ * While the upstream is unreachable, keys it has accepted before keep working, so the relay keeps serving its
+ * clients through an upstream outage. A key the upstream rejects is forgotten.
+ */
+@Component
+@ConditionalOnProperty(name = "feature-flags.relay.enabled", havingValue = "true")
+public class UpstreamApiKeys {
+
+    private static final Logger log = LoggerFactory.getLogger(UpstreamApiKeys.class);
+
+    private final URI probeUri;
+    private final Environment environment;
+    private final int maxKnownKeys;
+    private final HttpClient http = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build();
+    /** SHA-256 of keys the upstream has accepted, so raw keys are not kept beyond the TTL cache. */
+    private final ConcurrentHashMap<String, ValidatedKey> accepted = new ConcurrentHashMap<>();
+
+    public UpstreamApiKeys(
+            @Value("${feature-flags.relay.upstream-url}") URI upstreamUrl,
+            @Value("${feature-flags.relay.environments:DEV,STAGING,PROD}") List<Environment> environments,
+            @Value("${feature-flags.api-keys.cache-max-size:1000}") int maxKnownKeys
+    ) {
+        this.environment = environments.get(0);
+        this.probeUri = upstreamUrl.resolve("/api/flags/snapshot?environment=" + environment.name());
+        this.maxKnownKeys = maxKnownKeys;
+    }
+
+    public Optional<ValidatedKey> validate(String rawKey) {
+        String hash = sha256(rawKey);
+        try {
+            HttpRequest request = HttpRequest.newBuilder(probeUri)
+                    .method("HEAD", HttpRequest.BodyPublishers.noBody())
+                    .timeout(Duration.ofSeconds(5))
+                    .header("X-API-Key", rawKey)
+                    .build();
+            int status = http.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+            if (status == 200 || status == 304) {
+                // The upstream does not reveal the key's id or name; every relayed key shares this identity
+                ValidatedKey key = new ValidatedKey(-1L, "upstream", environment);
+                if (accepted.size() < maxKnownKeys) accepted.put(hash, key);
+                return Optional.of(key);
+            }
+            if (status == 401 || status == 403) {
+                accepted.remove(hash);
+                return Optional.empty();
+            }
+            throw new IOException("Upstream returned " + status);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return Optional.ofNullable(accepted.get(hash));
+        } catch (IOException e) {
+            log.warn("Could not validate API key with upstream, using last known result: {}", e.toString());
+            return Optional.ofNullable(accepted.get(hash));
+        }
+    }
+
+    private static String sha256(String rawKey) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(rawKey.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 unavailable", e);
+        }
+    }
+}
@@ -2,10 +2,23 @@ package com.shotaroi.featureflags.repository;
 
 import com.shotaroi.featureflags.domain.ApiKey;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 
+import java.util.List;
 import java.util.Optional;
 
 public interface ApiKeyRepository extends JpaRepository<ApiKey, Long> {
 
     Optional<ApiKey> findByKeyHashAndEnabledTrue(String keyHash);
+
+    List<ApiKey> findAllByEnabledTrue();
+
+    @Query("select k.id from ApiKey k where k.enabled = false")
+    List<Long> findDisabledIds();
+
+    /** Tells every node's {@code RevisionPoller} to evict disabled keys; run in the transaction that disables one. */
+    @Modifying
+    @Query(value = "update cache_revisions set revision = revision + 1 where name = 'api_keys'", nativeQuery = true)
+    int incrementCacheRevision();
 }
@@ -0,0 +1,16 @@
+package com.shotaroi.featureflags.repository;
+
+import com.shotaroi.featureflags.domain.Environment;
+import com.shotaroi.featureflags.domain.EnvironmentRevision;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+
+public interface EnvironmentRevisionRepository extends JpaRepository<EnvironmentRevision, Environment> {
+
+    /** SELECT ... FOR UPDATE: serializes writers of one environment until their transaction ends. */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select r from EnvironmentRevision r where r.environment = :environment")
+    EnvironmentRevision lockByEnvironment(Environment environment);
+}
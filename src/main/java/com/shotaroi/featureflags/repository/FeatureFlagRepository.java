@@ -4,6 +4,7 @@ import com.shotaroi.featureflags.domain.Environment;
 import com.shotaroi.featureflags.domain.FeatureFlag;
 import org.springframework.data.jpa.repository.JpaRepository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -12,4 +13,6 @@ public interface FeatureFlagRepository extends JpaRepository<FeatureFlag, Long>
     Optional<FeatureFlag> findByFeatureKeyAndEnvironment(String featureKey, Environment environment);
 
     List<FeatureFlag> findAllByEnvironment(Environment environment);
+
+    List<FeatureFlag> findAllByEnvironmentAndFeatureKeyIn(Environment environment, Collection<String> featureKeys);
 }
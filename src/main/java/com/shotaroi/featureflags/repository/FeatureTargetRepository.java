@@ -1,11 +1,21 @@
 package com.shotaroi.featureflags.repository;
 
 import com.shotaroi.featureflags.domain.FeatureTarget;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.List;
 
 public interface FeatureTargetRepository extends JpaRepository<FeatureTarget, Long> {
 
-    boolean existsByFeatureFlag_IdAndUserId(Long featureFlagId, String userId);
+    /**
+     * One page of a flag's user IDs after {@code afterUserId}, in user_id order (keyset pagination over
+     * uk_feature_user), so very large allowlists can be read without materializing them all at once.
+     */
+    @Query("select t.userId from FeatureTarget t where t.featureFlag.id = :featureFlagId and t.userId > :afterUserId order by t.userId")
+    List<String> findUserIdPage(@Param("featureFlagId") Long featureFlagId, @Param("afterUserId") String afterUserId, Limit limit);
 
     long deleteByFeatureFlag_IdAndUserId(Long featureFlagId, String userId);
 }
@@ -0,0 +1,25 @@
+package com.shotaroi.featureflags.repository;
+
+import com.shotaroi.featureflags.domain.Environment;
+import com.shotaroi.featureflags.domain.FlagChange;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+
+import java.time.Instant;
+import java.util.List;
+
+public interface FlagChangeRepository extends JpaRepository<FlagChange, Long> {
+
+    /** Changes with fromRevision <= revision <= toRevision, oldest first (uses idx_flag_changes_env_revision). */
+    List<FlagChange> findByEnvironmentAndRevisionBetweenOrderByRevision(
+            Environment environment, long fromRevision, long toRevision, Limit limit);
+
+    @Query("select max(c.revision) from FlagChange c where c.environment = :environment and c.createdAt < :before")
+    Long findMaxRevisionCreatedBefore(Environment environment, Instant before);
+
+    @Modifying
+    @Query("delete from FlagChange c where c.environment = :environment and c.revision <= :revision")
+    int deleteUpToRevision(Environment environment, long revision);
+}
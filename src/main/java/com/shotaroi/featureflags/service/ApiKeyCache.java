@@ -0,0 +1,134 @@
+package com.shotaroi.featureflags.service;
+
+import com.shotaroi.featureflags.relay.UpstreamApiKeys;
+import com.shotaroi.featureflags.repository.ApiKeyRepository;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.TransactionException;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+/**
+ * Bounded, TTL-based cache of validated API keys, keyed by the raw key from the X-API-Key header.
+ * <p>
+ * A hit costs one {@link ConcurrentHashMap#get}: no SHA-256 and no database query. Only valid keys are
+ * cached, so a new key works immediately and invalid keys always go to the database.
+ * <p>
+ * A revoke evicts the key on this node as soon as its transaction commits. Other nodes evict it when their
+ * {@link RevisionPoller} sees the revoke (within {@code feature-flags.coherence.poll-interval}); without the
+ * poller they keep serving it until their entry expires, i.e. for at most {@code feature-flags.api-keys.cache-ttl}.
+ * <p>
+ * If the database is unreachable, an expired entry is served for another TTL, and keys restored from a
+ * {@link SnapshotFile} at startup are accepted (last known good), so evaluations keep working during an outage.
+ * <p>
+ * In relay mode keys are looked up on the upstream ({@link UpstreamApiKeys}) instead of the database.
+ */
+@Component
+public class ApiKeyCache {
+
+    private final ApiKeyRepository apiKeyRepo;
+    private final UpstreamApiKeys upstream;
+    private final long ttlNanos;
+    private final int maxSize;
+    private final LongSupplier nanoClock;
+
+    private final ConcurrentHashMap<String, Entry> byRawKey = new ConcurrentHashMap<>();
+    /** Keys revoked through this node; a load that raced with the revoke must not re-cache them. */
+    private final Set<Long> revoked = ConcurrentHashMap.newKeySet();
+    /** Key hash → key, from the snapshot files; only consulted while the database is unreachable. */
+    private final ConcurrentHashMap<String, ValidatedKey> restored = new ConcurrentHashMap<>();
+
+    @Autowired
+    public ApiKeyCache(
+            ApiKeyRepository apiKeyRepo,
+            ObjectProvider<UpstreamApiKeys> upstream,
+            @Value("${feature-flags.api-keys.cache-ttl:30s}") Duration ttl,
+            @Value("${feature-flags.api-keys.cache-max-size:1000}") int maxSize
+    ) {
+        this(apiKeyRepo, upstream.getIfAvailable(), ttl, maxSize, System::nanoTime);
+    }
+
+    ApiKeyCache(ApiKeyRepository apiKeyRepo, Duration ttl, int maxSize, LongSupplier nanoClock) {
+        this(apiKeyRepo, null, ttl, maxSize, nanoClock);
+    }
+
+    private ApiKeyCache(ApiKeyRepository apiKeyRepo, UpstreamApiKeys upstream, Duration ttl, int maxSize, LongSupplier nanoClock) {
+        this.apiKeyRepo = apiKeyRepo;
+        this.upstream = upstream;
+        this.ttlNanos = ttl.toNanos();
+        this.maxSize = maxSize;
+        this.nanoClock = nanoClock;
+    }
+
+    public Optional<ValidatedKey> get(String rawKey) {
+        long now = nanoClock.getAsLong();
+        Entry entry = byRawKey.get(rawKey);
+        if (entry != null && now - entry.expiresAt < 0) {
+            return Optional.of(entry.key);
+        }
+
+        Optional<ValidatedKey> loaded;
+        if (upstream != null) {
+            loaded = upstream.validate(rawKey);
+        } else {
+            String hash = ApiKeyService.hashKey(rawKey);
+            try {
+                loaded = apiKeyRepo.findByKeyHashAndEnabledTrue(hash).map(ValidatedKey::of);
+            } catch (DataAccessException | TransactionException e) {
+                // Database unreachable: last known good
+                ValidatedKey known = entry != null ? entry.key : restored.get(hash);
+                if (known == null || revoked.contains(known.id())) throw e;
+                loaded = Optional.of(known);
+            }
+        }
+        if (loaded.isPresent()) {
+            remember(rawKey, new Entry(loaded.get(), now + ttlNanos), now);
+        } else if (entry != null) {
+            byRawKey.remove(rawKey, entry);
+        }
+        return loaded;
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT)
+    public void onApiKeyRevoked(ApiKeyRevokedEvent event) {
+        evict(Set.of(event.apiKeyId()));
+    }
+
+    /** Keys to accept while the database is unreachable, e.g. from a {@link SnapshotFile} at startup. */
+    public void restore(Map<String, ValidatedKey> byKeyHash) {
+        restored.putAll(byKeyHash);
+    }
+
+    /** Evicts revoked keys and keeps a racing load from caching them again. */
+    public synchronized void evict(Collection<Long> apiKeyIds) {
+        revoked.addAll(apiKeyIds);
+        byRawKey.values().removeIf(e -> apiKeyIds.contains(e.key.id()));
+    }
+
+    int size() {
+        return byRawKey.size();
+    }
+
+    private synchronized void remember(String rawKey, Entry entry, long now) {
+        if (revoked.contains(entry.key.id())) return;
+        if (byRawKey.size() >= maxSize && !byRawKey.containsKey(rawKey)) {
+            byRawKey.values().removeIf(e -> now - e.expiresAt >= 0);
+            // Still full: serve from the database until entries expire rather than grow.
+            if (byRawKey.size() >= maxSize) return;
+        }
+        byRawKey.put(rawKey, entry);
+    }
+
+    private record Entry(ValidatedKey key, long expiresAt) {}
+}
@@ -0,0 +1,6 @@
+package com.shotaroi.featureflags.service;
+
+/**
+ * Published by {@link ApiKeyService#revoke} inside its transaction; caches react after commit.
+ */
+public record ApiKeyRevokedEvent(Long apiKeyId) {}
@@ -3,6 +3,7 @@ package com.shotaroi.featureflags.service;
 import com.shotaroi.featureflags.domain.ApiKey;
 import com.shotaroi.featureflags.domain.Environment;
 import com.shotaroi.featureflags.repository.ApiKeyRepository;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -21,19 +22,22 @@ public class ApiKeyService {
     private static final int KEY_BYTES = 16;
 
     private final ApiKeyRepository apiKeyRepo;
+    private final ApiKeyCache apiKeyCache;
+    private final ApplicationEventPublisher events;
 
-    public ApiKeyService(ApiKeyRepository apiKeyRepo) {
+    public ApiKeyService(ApiKeyRepository apiKeyRepo, ApiKeyCache apiKeyCache, ApplicationEventPublisher events) {
         this.apiKeyRepo = apiKeyRepo;
+        this.apiKeyCache = apiKeyCache;
+        this.events = events;
     }
 
     /**
-     * Validates the raw API key and returns the associated ApiKey if valid and enabled.
+     * Validates the raw API key and returns the associated key if valid and enabled.
+     * Served from {@link ApiKeyCache}; not transactional, so a cache hit touches neither the database nor a transaction.
      */
-    @Transactional(readOnly = true)
-    public Optional<ApiKey> validate(String rawKey) {
+    public Optional<ValidatedKey> validate(String rawKey) {
         if (rawKey == null || rawKey.isBlank()) return Optional.empty();
-        String hash = hashKey(rawKey);
-        return apiKeyRepo.findByKeyHashAndEnabledTrue(hash);
+        return apiKeyCache.get(rawKey);
     }
 
     /**
@@ -65,6 +69,8 @@ public class ApiKeyService {
                 .orElseThrow(() -> new IllegalArgumentException("API key not found: " + id));
         apiKey.setEnabled(false);
         apiKeyRepo.save(apiKey);
+        apiKeyRepo.incrementCacheRevision();
+        events.publishEvent(new ApiKeyRevokedEvent(apiKey.getId()));
     }
 
     private static String generateRawKey() {
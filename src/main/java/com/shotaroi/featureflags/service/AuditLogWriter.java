@@ -0,0 +1,93 @@
+package com.shotaroi.featureflags.service;
+
+import com.shotaroi.featureflags.domain.Environment;
+import com.shotaroi.featureflags.domain.FlagChangeType;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes {@code flag_change_logs} rows with JDBC batch inserts instead of one JPA {@code save} (and one
+ * IDENTITY round trip) per row.
+ * <p>
+ * Inside a transaction, entries are buffered and inserted in one batch just before commit, on the transaction's
+ * own connection, so an audit row exists if and only if the change it describes committed. A transaction that
+ * logs more than {@code feature-flags.audit.batch-size} entries (bulk operations) flushes a batch each time the
+ * buffer fills, still inside the transaction. Outside a transaction, an entry is written immediately.
+ */
+@Component
+@ConditionalOnProperty(name = "feature-flags.evaluation-only.enabled", havingValue = "false", matchIfMissing = true)
+public class AuditLogWriter {
+
+    static final String INSERT = "insert into flag_change_logs "
+            + "(feature_key, environment, change_type, changed_by, details, created_at) values (?, ?, ?, ?, ?, ?)";
+
+    private final JdbcTemplate jdbc;
+    private final int batchSize;
+
+    public AuditLogWriter(JdbcTemplate jdbc, @Value("${feature-flags.audit.batch-size:500}") int batchSize) {
+        this.jdbc = jdbc;
+        this.batchSize = batchSize;
+    }
+
+    public void append(String featureKey, Environment environment, FlagChangeType changeType, String changedBy, String details) {
+        Entry entry = new Entry(featureKey, environment, changeType, changedBy != null ? changedBy : "system", details, Instant.now());
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            insert(List.of(entry));
+            return;
+        }
+        Buffer buffer = (Buffer) TransactionSynchronizationManager.getResource(this);
+        if (buffer == null) {
+            buffer = new Buffer();
+            TransactionSynchronizationManager.bindResource(this, buffer);
+            TransactionSynchronizationManager.registerSynchronization(buffer);
+        }
+        buffer.entries.add(entry);
+        if (buffer.entries.size() >= batchSize) buffer.write();
+    }
+
+    private void insert(List<Entry> entries) {
+        jdbc.batchUpdate(INSERT, entries, entries.size(), (ps, e) -> {
+            ps.setString(1, e.featureKey());
+            ps.setString(2, e.environment().name());
+            ps.setString(3, e.changeType().name());
+            ps.setString(4, e.changedBy());
+            ps.setString(5, e.details());
+            ps.setObject(6, OffsetDateTime.ofInstant(e.createdAt(), ZoneOffset.UTC));
+        });
+    }
+
+    private record Entry(String featureKey, Environment environment, FlagChangeType changeType,
+                         String changedBy, String details, Instant createdAt) {}
+
+    /** Entries of one transaction, in the order they were logged. */
+    private final class Buffer implements TransactionSynchronization {
+
+        final List<Entry> entries = new ArrayList<>();
+
+        void write() {
+            if (entries.isEmpty()) return;
+            insert(entries);
+            entries.clear();
+        }
+
+        @Override
+        public void beforeCommit(boolean readOnly) {
+            write();
+        }
+
+        @Override
+        public void afterCompletion(int status) {
+            TransactionSynchronizationManager.unbindResourceIfPossible(AuditLogWriter.this);
+        }
+    }
+}
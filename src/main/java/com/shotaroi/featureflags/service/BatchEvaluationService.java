@@ -0,0 +1,180 @@
+package com.shotaroi.featureflags.service;
+
+import com.shotaroi.featureflags.domain.Environment;
+import org.springframework.stereotype.Service;
+import tools.jackson.core.JacksonException;
+import tools.jackson.core.StreamWriteFeature;
+import tools.jackson.databind.MappingIterator;
+import tools.jackson.databind.ObjectMapper;
+import tools.jackson.databind.ObjectReader;
+import tools.jackson.databind.ObjectWriter;
+import tools.jackson.databind.SequenceWriter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/**
+ * Streaming evaluation of one or more flags for a large number of users (offline jobs, campaigns).
+ * <p>
+ * Input is NDJSON, one user per line. Output is NDJSON as well, or the compact {@link BinaryBatchResults} format.
+ * Users are processed in chunks of {@link #CHUNK_SIZE}: each chunk is evaluated in parallel across cores and
+ * written out in input order before the next chunk is read, so memory stays constant regardless of the number
+ * of users.
+ * <p>
+ * Flags are resolved once per batch and evaluated with the same code as
+ * {@link FeatureEvaluationService#evaluate}, so results (including the rollout bucket) are identical.
+ */
+@Service
+public class BatchEvaluationService {
+
+    static final int CHUNK_SIZE = 4096;
+
+    private final FlagCache flagCache;
+    private final FeatureEvaluationService evaluationService;
+    private final ObjectReader lineReader;
+    private final ObjectWriter lineWriter;
+
+    public BatchEvaluationService(FlagCache flagCache, FeatureEvaluationService evaluationService, ObjectMapper objectMapper) {
+        this.flagCache = flagCache;
+        this.evaluationService = evaluationService;
+        this.lineReader = objectMapper.readerFor(BatchRequestLine.class);
+        this.lineWriter = objectMapper.writerFor(BatchResultLine.class)
+                .withRootValueSeparator("\n")
+                .without(StreamWriteFeature.AUTO_CLOSE_TARGET);
+    }
+
+    /**
+     * Reads {@code {"userId":"..."}} lines from {@code in} and writes one
+     * {@code {"userId":"...","results":{featureKey: {enabled, reason}}}} line per user to {@code out}.
+     *
+     * @param featureKeys flags to evaluate; all flags of the environment if null or empty
+     * @return number of users evaluated
+     * @throws IllegalArgumentException for a line that is not an object with a userId
+     */
+    public long evaluate(Environment environment, Collection<String> featureKeys, InputStream in, OutputStream out) {
+        List<ResolvedFlag> flags = resolve(environment, featureKeys);
+        try (SequenceWriter writer = lineWriter.writeValues(out)) {
+            long total = evaluateChunks(environment, flags, in, (userIds, results, count) -> {
+                for (int i = 0; i < count; i++) {
+                    Map<String, FeatureEvaluationService.EvaluationResult> userResults = new LinkedHashMap<>(flags.size() * 2);
+                    for (int f = 0; f < flags.size(); f++) {
+                        userResults.put(flags.get(f).featureKey(), results[i * flags.size() + f]);
+                    }
+                    writer.write(new BatchResultLine(userIds[i], userResults));
+                }
+                writer.flush();
+            });
+            // terminate the last line
+            if (total > 0) out.write('\n');
+            return total;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Same evaluation as {@link #evaluate}, written in the compact {@link BinaryBatchResults} format: the flag keys
+     * once, then one frame of bit-packed results per chunk of users.
+     *
+     * @param reasons also write a reason code per result
+     * @return number of users evaluated
+     */
+    public long evaluateBinary(Environment environment, Collection<String> featureKeys, boolean reasons,
+                               InputStream in, OutputStream out) {
+        List<ResolvedFlag> flags = resolve(environment, featureKeys);
+        try {
+            var writer = new BinaryBatchResults.Writer(out, flags.stream().map(ResolvedFlag::featureKey).toList(), reasons);
+            long total = evaluateChunks(environment, flags, in, (userIds, results, count) -> {
+                writer.writeFrame(results, count);
+                out.flush();
+            });
+            writer.finish();
+            return total;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Reads the users chunk by chunk, evaluates each chunk in parallel and hands it to {@code chunks} before reading
+     * the next one. Results are passed user by user, {@code flags.size()} per user, in the order of {@code flags}.
+     */
+    private long evaluateChunks(Environment environment, List<ResolvedFlag> flags, InputStream in, ChunkWriter chunks) throws IOException {
+        int flagCount = flags.size();
+        String[] userIds = new String[CHUNK_SIZE];
+        FeatureEvaluationService.EvaluationResult[] results = new FeatureEvaluationService.EvaluationResult[CHUNK_SIZE * flagCount];
+        long total = 0;
+
+        try (MappingIterator<BatchRequestLine> lines = lineReader.readValues(in)) {
+            while (lines.hasNextValue()) {
+                int count = 0;
+                while (count < CHUNK_SIZE && lines.hasNextValue()) {
+                    userIds[count++] = nextUserId(lines);
+                }
+                // The parallel section runs on the common pool: load targets here (a no-op once they are in memory,
+                // also after an invalidation mid-batch) so its workers never wait on a database query
+                for (ResolvedFlag flag : flags) {
+                    evaluationService.preloadTargets(flag.flag());
+                }
+                IntStream.range(0, count).parallel().forEach(i -> {
+                    for (int f = 0; f < flagCount; f++) {
+                        ResolvedFlag flag = flags.get(f);
+                        results[i * flagCount + f] = evaluationService.evaluateFlag(flag.featureKey(), environment, flag.flag(), userIds[i]);
+                    }
+                });
+                chunks.write(userIds, results, count);
+                total += count;
+            }
+        }
+        return total;
+    }
+
+    /** The next line's userId; a line that is not an object with a userId is a client error naming the line. */
+    private static String nextUserId(MappingIterator<BatchRequestLine> lines) {
+        BatchRequestLine line;
+        try {
+            line = lines.nextValue();
+        } catch (JacksonException e) {
+            throw new IllegalArgumentException("Line " + lines.currentLocation().getLineNr() + ": " + e.getOriginalMessage());
+        }
+        if (line == null || line.userId() == null) {
+            throw new IllegalArgumentException("Line " + lines.currentLocation().getLineNr() + ": missing userId");
+        }
+        return line.userId();
+    }
+
+    private List<ResolvedFlag> resolve(Environment environment, Collection<String> featureKeys) {
+        List<ResolvedFlag> flags = new ArrayList<>();
+        if (featureKeys == null || featureKeys.isEmpty()) {
+            flagCache.all(environment).stream()
+                    .sorted(Comparator.comparing(CachedFlag::featureKey))
+                    .forEach(flag -> flags.add(new ResolvedFlag(flag.featureKey(), flag)));
+        } else {
+            Map<String, CachedFlag> found = flagCache.getAll(featureKeys, environment);
+            featureKeys.stream().distinct().forEach(key -> flags.add(new ResolvedFlag(key, found.get(key))));
+        }
+        return flags;
+    }
+
+    /** A requested key and its flag at the start of the batch (null if it does not exist). */
+    private record ResolvedFlag(String featureKey, CachedFlag flag) {}
+
+    /** Receives each evaluated chunk; the arrays are reused for the next chunk. */
+    @FunctionalInterface
+    private interface ChunkWriter {
+        void write(String[] userIds, FeatureEvaluationService.EvaluationResult[] results, int count) throws IOException;
+    }
+
+    public record BatchRequestLine(String userId) {}
+
+    public record BatchResultLine(String userId, Map<String, FeatureEvaluationService.EvaluationResult> results) {}
+}
@@ -0,0 +1,184 @@
+package com.shotaroi.featureflags.service;
+
+import com.shotaroi.featureflags.service.FeatureEvaluationService.EvaluationResult;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact binary response of {@code POST /api/flags/batch/evaluate}, sent for {@code Accept: }{@value #MEDIA_TYPE}.
+ * <p>
+ * Layout ({@code varint} is unsigned LEB128, {@code str} a varint byte length followed by UTF-8):
+ * <pre>
+ * int    magic "FFBR"
+ * byte   format version
+ * byte   options: bit 0 set if reason codes follow the bits
+ * varint flag count F, then F × str featureKey: the dictionary, result f of a user is for featureKey f
+ * frames, each:
+ *   varint users U in the frame (0 ends the stream)
+ *   ⌈U × F / 8⌉ bytes: enabled bits, user by user in input order, result k in byte k / 8, bit k % 8 (LSB first)
+ *   U × F bytes reason codes, if requested
+ * </pre>
+ * User IDs are not repeated: results are in input order, one user per input line. A frame holds one chunk of
+ * {@link BatchEvaluationService#CHUNK_SIZE} users, so neither side buffers more than that. Reason codes are 0
+ * {@code FLAG_NOT_FOUND}, 1 {@code FLAG_DISABLED}, 2 {@code TARGETED_USER}, 3 {@code ROLLOUT_0}, 4
+ * {@code ROLLOUT_100} and {@code 5 + n} for {@code ROLLOUT_BUCKET_<n>}.
+ */
+public final class BinaryBatchResults {
+
+    public static final String MEDIA_TYPE = "application/vnd.feature-flags.batch";
+
+    static final int MAGIC = 0x46464252;
+    static final byte FORMAT_VERSION = 1;
+
+    private static final int OPTION_REASONS = 1;
+    private static final int FIRST_BUCKET_CODE = 5;
+    private static final EvaluationResult[] FIXED = {
+            EvaluationResult.FLAG_NOT_FOUND, EvaluationResult.FLAG_DISABLED, EvaluationResult.TARGETED_USER,
+            EvaluationResult.ROLLOUT_0, EvaluationResult.ROLLOUT_100};
+    private static final Map<String, Integer> CODES = new HashMap<>();
+
+    static {
+        for (int code = 0; code < FIXED.length; code++) CODES.put(FIXED[code].reason(), code);
+        for (int bucket = 0; bucket < Bucketing.BUCKETS; bucket++) {
+            CODES.put(EvaluationResult.bucket(bucket, true).reason(), FIRST_BUCKET_CODE + bucket);
+        }
+    }
+
+    private BinaryBatchResults() {
+    }
+
+    static int reasonCode(EvaluationResult result) {
+        Integer code = CODES.get(result.reason());
+        if (code == null) throw new IllegalArgumentException("No reason code for " + result.reason());
+        return code;
+    }
+
+    static EvaluationResult result(int reasonCode, boolean enabled) throws IOException {
+        if (reasonCode < FIRST_BUCKET_CODE) return FIXED[reasonCode];
+        if (reasonCode >= FIRST_BUCKET_CODE + Bucketing.BUCKETS) throw new IOException("Unknown reason code " + reasonCode);
+        return EvaluationResult.bucket(reasonCode - FIRST_BUCKET_CODE, enabled);
+    }
+
+    /** Writes the header on creation, then one frame per chunk; {@link #finish} ends the stream. */
+    static final class Writer {
+
+        private final OutputStream out;
+        private final int flagCount;
+        private final boolean reasons;
+        private byte[] bits = new byte[0];
+        private byte[] codes = new byte[0];
+
+        Writer(OutputStream out, List<String> featureKeys, boolean reasons) throws IOException {
+            this.out = out;
+            this.flagCount = featureKeys.size();
+            this.reasons = reasons;
+            var data = new DataOutputStream(out);
+            data.writeInt(MAGIC);
+            data.writeByte(FORMAT_VERSION);
+            data.writeByte(reasons ? OPTION_REASONS : 0);
+            Varints.write(out, flagCount);
+            for (String featureKey : featureKeys) Varints.writeString(out, featureKey);
+        }
+
+        /** {@code results} holds the users' results one after another, {@code F} per user. */
+        void writeFrame(EvaluationResult[] results, int users) throws IOException {
+            if (users == 0) return;
+            int count = users * flagCount;
+            int bitBytes = (count + 7) >>> 3;
+            if (bits.length < bitBytes) bits = new byte[bitBytes];
+            Arrays.fill(bits, 0, bitBytes, (byte) 0);
+            for (int k = 0; k < count; k++) {
+                if (results[k].enabled()) bits[k >>> 3] |= (byte) (1 << (k & 7));
+            }
+            Varints.write(out, users);
+            out.write(bits, 0, bitBytes);
+            if (reasons) {
+                if (codes.length < count) codes = new byte[count];
+                for (int k = 0; k < count; k++) codes[k] = (byte) reasonCode(results[k]);
+                out.write(codes, 0, count);
+            }
+        }
+
+        void finish() throws IOException {
+            Varints.write(out, 0);
+            out.flush();
+        }
+    }
+
+    /**
+     * Streaming decoder: reads the header on creation, then one frame per {@link #nextFrame()}. The buffers of a
+     * frame are reused for the next one.
+     */
+    public static final class Reader {
+
+        private final DataInputStream in;
+        private final List<String> featureKeys;
+        private final boolean reasons;
+        private int users;
+        private byte[] bits = new byte[0];
+        private byte[] codes = new byte[0];
+
+        public Reader(InputStream in) throws IOException {
+            this.in = new DataInputStream(in);
+            if (this.in.readInt() != MAGIC) throw new IOException("Not a binary batch response");
+            byte version = this.in.readByte();
+            if (version != FORMAT_VERSION) throw new IOException("Unsupported batch format version " + version);
+            this.reasons = (this.in.readByte() & OPTION_REASONS) != 0;
+            int flagCount = Varints.readCount(this.in);
+            List<String> keys = new ArrayList<>(flagCount);
+            for (int f = 0; f < flagCount; f++) keys.add(Varints.readString(this.in));
+            this.featureKeys = List.copyOf(keys);
+        }
+
+        /** The dictionary: the flag of each result position, in the order of the request's {@code keys}, or every flag by key. */
+        public List<String> featureKeys() {
+            return featureKeys;
+        }
+
+        public boolean hasReasons() {
+            return reasons;
+        }
+
+        /** Reads the next frame and returns its number of users; 0 at the end of the stream. */
+        public int nextFrame() throws IOException {
+            users = Varints.readCount(in);
+            if (users == 0) return 0;
+            long count = (long) users * featureKeys.size();
+            if (count > Integer.MAX_VALUE) throw new IOException("Frame of " + count + " results");
+            int bitBytes = (int) ((count + 7) >>> 3);
+            if (bits.length < bitBytes) bits = new byte[bitBytes];
+            in.readFully(bits, 0, bitBytes);
+            if (reasons) {
+                if (codes.length < count) codes = new byte[(int) count];
+                in.readFully(codes, 0, (int) count);
+            }
+            return users;
+        }
+
+        /** Whether the flag is on for the user, by position in the current frame and in {@link #featureKeys()}. */
+        public boolean enabled(int user, int flag) {
+            int k = index(user, flag);
+            return (bits[k >>> 3] & (1 << (k & 7))) != 0;
+        }
+
+        /** Full result with its reason; only if the response has reasons. */
+        public EvaluationResult result(int user, int flag) throws IOException {
+            if (!reasons) throw new IllegalStateException("Response was written without reasons");
+            return BinaryBatchResults.result(codes[index(user, flag)] & 0xFF, enabled(user, flag));
+        }
+
+        private int index(int user, int flag) {
+            if (user >= users || flag >= featureKeys.size()) throw new IndexOutOfBoundsException(user + "/" + flag);
+            return user * featureKeys.size() + flag;
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.shotaroi.featureflags.service;
+
+import com.shotaroi.featureflags.domain.Environment;
+import com.shotaroi.featureflags.service.SnapshotService.FlagConfig;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Compact binary form of {@code GET /api/flags/snapshot}, sent for {@code Accept: }{@value #MEDIA_TYPE}. It holds the
+ * same config as the JSON snapshot.
+ * <p>
+ * Layout ({@code varint} is unsigned LEB128, {@code str} a varint byte length followed by UTF-8):
+ * <pre>
+ * int    magic "FFSB"
+ * byte   format version
+ * str    environment
+ * long   revision
+ * varint flag count, then per flag:
+ *          str featureKey, byte enabled, byte rolloutPercent, varint bucketingVersion,
+ *          varint n, n × varint numeric user IDs (ascending; the first as is, then the difference to the previous),
+ *          varint m, m × str other user IDs
+ * </pre>
+ * Numeric user IDs are the canonical decimal IDs of {@link SortedLongSet#parseId}; large allowlists of sequential
+ * IDs take one or two bytes per user.
+ */
+public final class BinarySnapshot {
+
+    public static final String MEDIA_TYPE = "application/vnd.feature-flags.snapshot";
+
+    static final int MAGIC = 0x46465342;
+    static final byte FORMAT_VERSION = 1;
+
+    private BinarySnapshot() {
+    }
+
+    static byte[] encode(Environment environment, long revision, List<FlagConfig> flags) {
+        var bytes = new ByteArrayOutputStream();
+        try {
+            write(bytes, environment, revision, flags);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    static void write(OutputStream os, Environment environment, long revision, List<FlagConfig> flags) throws IOException {
+        var out = new DataOutputStream(os);
+        out.writeInt(MAGIC);
+        out.writeByte(FORMAT_VERSION);
+        Varints.writeString(out, environment.name());
+        out.writeLong(revision);
+        Varints.write(out, flags.size());
+        long[] numeric = new long[0];
+        List<String> others = new ArrayList<>();
+        for (FlagConfig flag : flags) {
+            Varints.writeString(out, flag.featureKey());
+            out.writeBoolean(flag.enabled());
+            out.writeByte(flag.rolloutPercent());
+            Varints.write(out, flag.bucketingVersion());
+
+            List<String> targets = flag.targets() == null ? List.of() : flag.targets();
+            if (numeric.length < targets.size()) numeric = new long[targets.size()];
+            int n = 0;
+            others.clear();
+            for (String userId : targets) {
+                long id = SortedLongSet.parseId(userId);
+                if (id >= 0) numeric[n++] = id;
+                else others.add(userId);
+            }
+            Arrays.sort(numeric, 0, n);
+            Varints.write(out, n);
+            long previous = 0;
+            for (int i = 0; i < n; i++) {
+                Varints.write(out, numeric[i] - previous);
+                previous = numeric[i];
+            }
+            Varints.write(out, others.size());
+            for (String userId : others) Varints.writeString(out, userId);
+        }
+        out.flush();
+    }
+
+    /** Decodes a binary snapshot; targets come back as strings, numeric IDs first. */
+    public static Contents read(byte[] body) throws IOException {
+        return read(new ByteArrayInputStream(body));
+    }
+
+    public static Contents read(InputStream is) throws IOException {
+        var in = new DataInputStream(is);
+        if (in.readInt() != MAGIC) throw new IOException("Not a binary snapshot");
+        byte version = in.readByte();
+        if (version != FORMAT_VERSION) throw new IOException("Unsupported snapshot format version " + version);
+        Environment environment;
+        try {
+            environment = Environment.valueOf(Varints.readString(in));
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Unknown environment in snapshot", e);
+        }
+        long revision = in.readLong();
+        int flagCount = Varints.readCount(in);
+        List<FlagConfig> flags = new ArrayList<>();
+        for (int i = 0; i < flagCount; i++) {
+            String featureKey = Varints.readString(in);
+            boolean enabled = in.readBoolean();
+            int rolloutPercent = in.readUnsignedByte();
+            int bucketingVersion = Varints.readCount(in);
+            int n = Varints.readCount(in);
+            List<String> targets = new ArrayList<>();
+            long id = 0;
+            for (int j = 0; j < n; j++) {
+                id += Varints.read(in);
+                targets.add(Long.toString(id));
+            }
+            int m = Varints.readCount(in);
+            for (int j = 0; j < m; j++) targets.add(Varints.readString(in));
+            flags.add(new FlagConfig(featureKey, enabled, rolloutPercent, bucketingVersion, targets));
+        }
+        return new Contents(environment, revision, flags);
+    }
+
+    /** A decoded snapshot. */
+    public record Contents(Environment environment, long revision, List<FlagConfig> flags) {}
+}
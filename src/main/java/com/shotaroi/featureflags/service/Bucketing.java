@@ -0,0 +1,147 @@
+package com.shotaroi.featureflags.service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Maps (featureKey, userId) to a stable rollout bucket in [0, 100).
+ * <p>
+ * Each flag stores the algorithm version it was rolled out with ({@code feature_flags.bucketing_version}), so
+ * changing the algorithm never reshuffles users of an existing rollout:
+ * <ul>
+ *   <li>{@link #LEGACY_SHA256} (1): first byte of SHA-256("key:user") mod 100. Kept bit-for-bit for existing flags.</li>
+ *   <li>{@link #MURMUR3} (2): MurmurHash3 x86_32 over the UTF-8 bytes of "key:user", computed straight from the
+ *       two strings (no concatenation, no byte[]), reduced with a multiply-shift instead of the biased {@code % 100}.</li>
+ * </ul>
+ * New flags use {@link #CURRENT}; existing flags move only when an admin migrates them.
+ */
+public final class Bucketing {
+
+    public static final int LEGACY_SHA256 = 1;
+    public static final int MURMUR3 = 2;
+    public static final int CURRENT = MURMUR3;
+
+    /** Buckets are in [0, BUCKETS); a rollout of p percent covers buckets below p. */
+    public static final int BUCKETS = 100;
+
+    private static final int C1 = 0xcc9e2d51;
+    private static final int C2 = 0x1b873593;
+
+    private static final ThreadLocal<MessageDigest> SHA256 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 unavailable", e);
+        }
+    });
+
+    private Bucketing() {
+    }
+
+    public static boolean isSupported(int version) {
+        return version == LEGACY_SHA256 || version == MURMUR3;
+    }
+
+    /**
+     * Bucket in [0, 100) for the user under the given algorithm version. A null userId is hashed as "".
+     */
+    public static int bucket(int version, String featureKey, String userId) {
+        String user = userId == null ? "" : userId;
+        return switch (version) {
+            case LEGACY_SHA256 -> legacyBucket(featureKey, user);
+            case MURMUR3 -> (int) (((murmur3(featureKey, user) & 0xFFFFFFFFL) * BUCKETS) >>> 32);
+            default -> throw new IllegalArgumentException("Unknown bucketing version: " + version);
+        };
+    }
+
+    static int legacyBucket(String featureKey, String userId) {
+        MessageDigest md = SHA256.get();
+        byte[] hash = md.digest((featureKey + ":" + userId).getBytes(StandardCharsets.UTF_8));
+        return (hash[0] & 0xFF) % BUCKETS;
+    }
+
+    /**
+     * MurmurHash3 x86_32 (seed 0) of UTF-8("featureKey:userId"), encoding characters on the fly.
+     * Unpaired surrogates are hashed as '?', like {@link String#getBytes} does.
+     */
+    static int murmur3(String featureKey, String userId) {
+        int h1 = 0;
+        int k1 = 0;
+        int shift = 0;
+        int length = 0;
+
+        for (int segment = 0; segment < 3; segment++) {
+            String s = segment == 0 ? featureKey : segment == 1 ? ":" : userId;
+            int n = s.length();
+            for (int i = 0; i < n; i++) {
+                int cp = s.charAt(i);
+
+                // UTF-8 bytes of cp, little-endian in 'utf8', 'count' of them
+                int utf8;
+                int count;
+                if (cp < 0x80) {
+                    utf8 = cp;
+                    count = 1;
+                } else {
+                    if (Character.isSurrogate((char) cp)) {
+                        if (Character.isHighSurrogate((char) cp) && i + 1 < n && Character.isLowSurrogate(s.charAt(i + 1))) {
+                            cp = Character.toCodePoint((char) cp, s.charAt(++i));
+                        } else {
+                            cp = '?';
+                        }
+                    }
+                    if (cp < 0x80) {
+                        utf8 = cp;
+                        count = 1;
+                    } else if (cp < 0x800) {
+                        utf8 = (0xC0 | (cp >>> 6)) | (0x80 | (cp & 0x3F)) << 8;
+                        count = 2;
+                    } else if (cp < 0x10000) {
+                        utf8 = (0xE0 | (cp >>> 12)) | (0x80 | ((cp >>> 6) & 0x3F)) << 8 | (0x80 | (cp & 0x3F)) << 16;
+                        count = 3;
+                    } else {
+                        utf8 = (0xF0 | (cp >>> 18)) | (0x80 | ((cp >>> 12) & 0x3F)) << 8
+                                | (0x80 | ((cp >>> 6) & 0x3F)) << 16 | (0x80 | (cp & 0x3F)) << 24;
+                        count = 4;
+                    }
+                }
+
+                length += count;
+                for (int b = 0; b < count; b++) {
+                    k1 |= ((utf8 >>> (8 * b)) & 0xFF) << shift;
+                    shift += 8;
+                    if (shift == 32) {
+                        h1 = mixH1(h1, mixK1(k1));
+                        k1 = 0;
+                        shift = 0;
+                    }
+                }
+            }
+        }
+
+        if (shift > 0) h1 ^= mixK1(k1);
+        return fmix32(h1 ^ length);
+    }
+
+    private static int mixK1(int k1) {
+        k1 *= C1;
+        k1 = Integer.rotateLeft(k1, 15);
+        return k1 * C2;
+    }
+
+    private static int mixH1(int h1, int k1) {
+        h1 ^= k1;
+        h1 = Integer.rotateLeft(h1, 13);
+        return h1 * 5 + 0xe6546b64;
+    }
+
+    private static int fmix32(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+}
@@ -0,0 +1,39 @@
+package com.shotaroi.featureflags.service;
+
+import com.shotaroi.featureflags.domain.Environment;
+import com.shotaroi.featureflags.domain.FeatureFlag;
+
+import java.time.Instant;
+
+/**
+ * Immutable, detached copy of a {@link FeatureFlag} as seen by the evaluation path.
+ * Safe to share between threads; never tied to a persistence context.
+ */
+public record CachedFlag(
+        Long id,
+        String featureKey,
+        Environment environment,
+        boolean enabled,
+        int rolloutPercent,
+        int bucketingVersion,
+        Instant updatedAt
+) {
+
+    public static CachedFlag of(FeatureFlag flag) {
+        return new CachedFlag(
+                flag.getId(),
+                flag.getFeatureKey(),
+                flag.getEnvironment(),
+                flag.isEnabled(),
+                flag.getRolloutPercent(),
+                flag.getBucketingVersion(),
+                flag.getUpdatedAt()
+        );
+    }
+
+    /** True if this copy is more recent than {@code other}; on equal timestamps the copy already held wins. */
+    boolean isNewerThan(CachedFlag other) {
+        if (updatedAt == null || other.updatedAt == null) return true;
+        return updatedAt.isAfter(other.updatedAt);
+    }
+}
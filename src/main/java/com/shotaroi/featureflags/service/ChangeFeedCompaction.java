@@ -0,0 +1,37 @@
+package com.shotaroi.featureflags.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * Scheduled compaction of the change feed: deletes changes older than {@code feature-flags.changes.retention}
+ * every {@code feature-flags.changes.compaction-interval}.
+ * <p>
+ * Not registered on evaluation-only nodes, which do not write to the shared database; the full nodes compact.
+ */
+@Component
+@ConditionalOnProperty(name = "feature-flags.evaluation-only.enabled", havingValue = "false", matchIfMissing = true)
+public class ChangeFeedCompaction {
+
+    private final ChangeFeedService changeFeed;
+    private final Duration retention;
+
+    public ChangeFeedCompaction(
+            ChangeFeedService changeFeed,
+            @Value("${feature-flags.changes.retention:7d}") Duration retention
+    ) {
+        this.changeFeed = changeFeed;
+        this.retention = retention;
+    }
+
+    @Scheduled(initialDelayString = "${feature-flags.changes.compaction-interval:1h}",
+            fixedDelayString = "${feature-flags.changes.compaction-interval:1h}")
+    public void compact() {
+        changeFeed.compactBefore(Instant.now().minus(retention));
+    }
+}
@@ -0,0 +1,252 @@
+package com.shotaroi.featureflags.service;
+
+import com.shotaroi.featureflags.domain.Environment;
+import com.shotaroi.featureflags.domain.EnvironmentRevision;
+import com.shotaroi.featureflags.domain.FlagChange;
+import com.shotaroi.featureflags.domain.FlagChangeType;
+import com.shotaroi.featureflags.repository.EnvironmentRevisionRepository;
+import com.shotaroi.featureflags.repository.FeatureFlagRepository;
+import com.shotaroi.featureflags.repository.FlagChangeRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.UUID;
+
+/**
+ * Database-backed change feed per environment.
+ * <p>
+ * {@link #record} runs inside the admin transaction: it locks the environment's revision row, increments it and
+ * inserts a {@code flag_changes} row. Writers of one environment are serialized by the row lock, so revisions
+ * become visible strictly in order and a reader never skips a revision that commits later.
+ * <p>
+ * Rows older than {@code feature-flags.changes.retention} are compacted ({@link ChangeFeedCompaction}); asking for
+ * changes since a compacted revision returns {@code resetRequired} and the client reloads the snapshot.
+ * <p>
+ * Every row carries the {@link #origin} of the node that wrote it, so {@link RevisionPoller} can tell changes
+ * made through other nodes from its own.
+ */
+@Service
+public class ChangeFeedService {
+
+    private static final Logger log = LoggerFactory.getLogger(ChangeFeedService.class);
+
+    private final EnvironmentRevisionRepository revisionRepo;
+    private final FlagChangeRepository changeRepo;
+    private final FeatureFlagRepository flagRepo;
+    private final JdbcTemplate jdbc;
+    private final int pageSize;
+    private final String origin = UUID.randomUUID().toString();
+
+    public ChangeFeedService(
+            EnvironmentRevisionRepository revisionRepo,
+            FlagChangeRepository changeRepo,
+            FeatureFlagRepository flagRepo,
+            JdbcTemplate jdbc,
+            @Value("${feature-flags.changes.page-size:10000}") int pageSize
+    ) {
+        this.revisionRepo = revisionRepo;
+        this.changeRepo = changeRepo;
+        this.flagRepo = flagRepo;
+        this.jdbc = jdbc;
+        this.pageSize = pageSize;
+    }
+
+    /**
+     * Assigns the next revision of the environment to this change. Must run in the transaction that makes the change.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public long record(Environment environment, String featureKey, FlagChangeType changeType, String userId) {
+        EnvironmentRevision row = lockOrCreate(environment);
+        long revision = row.getRevision() + 1;
+        row.setRevision(revision);
+
+        FlagChange change = new FlagChange();
+        change.setEnvironment(environment);
+        change.setRevision(revision);
+        change.setFeatureKey(featureKey);
+        change.setChangeType(changeType);
+        change.setUserId(userId);
+        change.setOrigin(origin);
+        changeRepo.save(change);
+        return revision;
+    }
+
+    /**
+     * Assigns consecutive revisions to one target change per user (bulk import/removal) and inserts their
+     * {@code flag_changes} rows in one JDBC batch. Must run in the transaction that makes the changes.
+     *
+     * @return revision of the first user; user {@code i} gets {@code first + i}
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public long recordAll(Environment environment, String featureKey, FlagChangeType changeType, List<String> userIds) {
+        EnvironmentRevision row = lockOrCreate(environment);
+        long first = row.getRevision() + 1;
+        row.setRevision(row.getRevision() + userIds.size());
+
+        OffsetDateTime now = OffsetDateTime.now(ZoneOffset.UTC);
+        jdbc.batchUpdate("insert into flag_changes (environment, revision, feature_key, change_type, user_id, created_at, origin) "
+                + "values (?, ?, ?, ?, ?, ?, ?)", new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                ps.setString(1, environment.name());
+                ps.setLong(2, first + i);
+                ps.setString(3, featureKey);
+                ps.setString(4, changeType.name());
+                ps.setString(5, userIds.get(i));
+                ps.setObject(6, now);
+                ps.setString(7, origin);
+            }
+
+            @Override
+            public int getBatchSize() {
+                return userIds.size();
+            }
+        });
+        return first;
+    }
+
+    /** Random id of this node, stored with every change it records. */
+    public String origin() {
+        return origin;
+    }
+
+    /**
+     * Relay mode: stores a change replicated from upstream under the upstream's revision instead of assigning one.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void recordReplicated(Environment environment, String featureKey, FlagChangeType changeType, String userId, long revision) {
+        EnvironmentRevision row = lockOrCreate(environment);
+        row.setRevision(revision);
+
+        FlagChange change = new FlagChange();
+        change.setEnvironment(environment);
+        change.setRevision(revision);
+        change.setFeatureKey(featureKey);
+        change.setChangeType(changeType);
+        change.setUserId(userId);
+        changeRepo.save(change);
+    }
+
+    /**
+     * Relay mode: the environment was replaced by an upstream snapshot, so no earlier change can be served.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void resetTo(Environment environment, long revision) {
+        EnvironmentRevision row = lockOrCreate(environment);
+        changeRepo.deleteUpToRevision(environment, Long.MAX_VALUE);
+        row.setRevision(revision);
+        row.setMinRevision(revision);
+    }
+
+    /** Committed revision of every environment. */
+    @Transactional(readOnly = true)
+    public Map<Environment, Long> currentRevisions() {
+        Map<Environment, Long> revisions = new LinkedHashMap<>();
+        for (EnvironmentRevision row : revisionRepo.findAll()) {
+            revisions.put(row.getEnvironment(), row.getRevision());
+        }
+        return revisions;
+    }
+
+    /**
+     * Net effect of the changes after {@code sinceRevision}: the current state of every flag that was created or
+     * updated, and the last add/remove per (flag, user). At most {@code feature-flags.changes.page-size} changes
+     * are read; if there are more, {@code hasMore} is set and {@code revision} is the last one included.
+     */
+    @Transactional(readOnly = true)
+    public Changes changesSince(Environment environment, long sinceRevision) {
+        EnvironmentRevision row = revisionRepo.findById(environment).orElse(null);
+        long current = row != null ? row.getRevision() : 0;
+        long minRevision = row != null ? row.getMinRevision() : 0;
+        if (sinceRevision < minRevision || sinceRevision > current) {
+            return new Changes(environment, current, true, false, List.of(), List.of());
+        }
+
+        List<FlagChange> changes = changeRepo.findByEnvironmentAndRevisionBetweenOrderByRevision(
+                environment, sinceRevision + 1, current, Limit.of(pageSize + 1));
+        boolean hasMore = changes.size() > pageSize;
+        if (hasMore) changes = changes.subList(0, pageSize);
+        long revision = changes.isEmpty() ? sinceRevision : changes.get(changes.size() - 1).getRevision();
+
+        var flagKeys = new TreeSet<String>();
+        Map<String, TargetChange> targets = new LinkedHashMap<>();
+        for (FlagChange change : changes) {
+            switch (change.getChangeType()) {
+                case FLAG_CREATED, FLAG_UPDATED -> flagKeys.add(change.getFeatureKey());
+                case TARGET_ADDED, TARGET_REMOVED -> {
+                    String key = change.getFeatureKey() + '\n' + change.getUserId();
+                    targets.remove(key); // keep order of the last change
+                    targets.put(key, new TargetChange(change.getFeatureKey(), change.getUserId(), change.getChangeType()));
+                }
+            }
+        }
+
+        List<SnapshotService.FlagConfig> flags = flagKeys.isEmpty() ? List.of()
+                : flagRepo.findAllByEnvironmentAndFeatureKeyIn(environment, flagKeys).stream()
+                        .map(flag -> SnapshotService.FlagConfig.of(CachedFlag.of(flag), null))
+                        .sorted(Comparator.comparing(SnapshotService.FlagConfig::featureKey))
+                        .toList();
+        return new Changes(environment, revision, false, hasMore, flags, new ArrayList<>(targets.values()));
+    }
+
+    /**
+     * Deletes changes created before {@code before} and raises each environment's {@code min_revision}.
+     */
+    @Transactional
+    public void compactBefore(Instant before) {
+        for (Environment environment : Environment.values()) {
+            EnvironmentRevision row = revisionRepo.lockByEnvironment(environment);
+            if (row == null) continue;
+            Long upTo = changeRepo.findMaxRevisionCreatedBefore(environment, before);
+            if (upTo == null || upTo <= row.getMinRevision()) continue;
+            int deleted = changeRepo.deleteUpToRevision(environment, upTo);
+            row.setMinRevision(upTo);
+            log.info("Compacted {} flag changes of {} up to revision {}", deleted, environment, upTo);
+        }
+    }
+
+    private EnvironmentRevision lockOrCreate(Environment environment) {
+        EnvironmentRevision row = revisionRepo.lockByEnvironment(environment);
+        if (row == null) {
+            // Seeded by the migration; only missing if the schema was created some other way
+            row = new EnvironmentRevision();
+            row.setEnvironment(environment);
+            row = revisionRepo.save(row);
+        }
+        return row;
+    }
+
+    /**
+     * Response of {@code GET /api/flags/changes}. When {@code resetRequired} is true the requested revision is
+     * no longer (or not yet) available and the client must reload {@code GET /api/flags/snapshot}.
+     */
+    public record Changes(
+            Environment environment,
+            long revision,
+            boolean resetRequired,
+            boolean hasMore,
+            List<SnapshotService.FlagConfig> flags,
+            List<TargetChange> targets
+    ) {}
+
+    /** {@code type} is TARGET_ADDED or TARGET_REMOVED: the last change for this user since the requested revision. */
+    public record TargetChange(String featureKey, String userId, FlagChangeType type) {}
+}
@@ -0,0 +1,203 @@
+package com.shotaroi.featureflags.service;
+
+import com.shotaroi.featureflags.domain.Environment;
+import com.shotaroi.featureflags.domain.FlagChangeType;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import tools.jackson.core.StreamWriteFeature;
+import tools.jackson.databind.ObjectMapper;
+import tools.jackson.databind.ObjectWriter;
+import tools.jackson.databind.SequenceWriter;
+
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * Reads {@code flag_change_logs} without loading a flag's whole history.
+ * <p>
+ * Pages use keyset pagination over {@code (created_at, id)}, newest first: the cursor is the position of the last
+ * entry returned, and the next page starts strictly after it. Page cost therefore depends on the page size, not
+ * on how deep the page is, and entries added meanwhile do not shift later pages. Per-flag queries run on
+ * {@code idx_change_log_feature_env_created}, cross-flag time ranges on {@code idx_change_log_created_at}.
+ * <p>
+ * {@link #export} streams every matching entry as NDJSON, oldest first, reading through a JDBC cursor of
+ * {@link #EXPORT_FETCH_SIZE} rows so memory stays constant regardless of the number of entries. {@link #writeAll}
+ * streams the same way as one JSON array, newest first, for clients of the unpaged flag history.
+ */
+@Service
+@ConditionalOnProperty(name = "feature-flags.evaluation-only.enabled", havingValue = "false", matchIfMissing = true)
+public class ChangeHistoryService {
+
+    public static final int DEFAULT_LIMIT = 100;
+    public static final int MAX_LIMIT = 1000;
+    static final int EXPORT_FETCH_SIZE = 1000;
+
+    private static final String SELECT = "select id, feature_key, environment, change_type, changed_by, details, created_at "
+            + "from flag_change_logs";
+
+    private static final RowMapper<HistoryEntry> ROW_MAPPER = (rs, n) -> new HistoryEntry(
+            rs.getLong("id"),
+            rs.getString("feature_key"),
+            Environment.valueOf(rs.getString("environment")),
+            FlagChangeType.valueOf(rs.getString("change_type")),
+            rs.getString("changed_by"),
+            rs.getString("details"),
+            rs.getObject("created_at", OffsetDateTime.class).toInstant()
+    );
+
+    private final JdbcTemplate jdbc;
+    private final ObjectWriter lineWriter;
+    private final ObjectWriter arrayWriter;
+
+    public ChangeHistoryService(JdbcTemplate jdbc, ObjectMapper objectMapper) {
+        this.jdbc = jdbc;
+        this.lineWriter = objectMapper.writerFor(HistoryEntry.class)
+                .withRootValueSeparator("\n")
+                .without(StreamWriteFeature.AUTO_CLOSE_TARGET);
+        this.arrayWriter = objectMapper.writerFor(HistoryEntry.class)
+                .without(StreamWriteFeature.AUTO_CLOSE_TARGET);
+    }
+
+    /**
+     * One page of entries matching {@code query}, newest first.
+     *
+     * @param cursor {@code nextCursor} of the previous page, or null for the first page
+     * @param limit  page size, 1 to {@link #MAX_LIMIT}
+     */
+    @Transactional(readOnly = true)
+    public HistoryPage page(HistoryQuery query, String cursor, int limit) {
+        if (limit < 1 || limit > MAX_LIMIT) {
+            throw new IllegalArgumentException("limit must be between 1 and " + MAX_LIMIT);
+        }
+        Where where = where(query);
+        if (cursor != null && !cursor.isBlank()) {
+            Position after = Position.decode(cursor);
+            where.add("(created_at < ? or (created_at = ? and id < ?))", utc(after.createdAt()), utc(after.createdAt()), after.id());
+        }
+        where.args.add(limit + 1);
+        List<HistoryEntry> entries = jdbc.query(SELECT + where.sql() + " order by created_at desc, id desc limit ?",
+                ROW_MAPPER, where.args.toArray());
+
+        if (entries.size() <= limit) return new HistoryPage(entries, null);
+        entries = entries.subList(0, limit);
+        HistoryEntry last = entries.getLast();
+        return new HistoryPage(List.copyOf(entries), new Position(last.createdAt(), last.id()).encode());
+    }
+
+    /**
+     * Writes every entry matching {@code query} to {@code out}, one JSON object per line, oldest first.
+     *
+     * @return number of entries written
+     */
+    @Transactional(readOnly = true)
+    public long export(HistoryQuery query, OutputStream out) {
+        try (SequenceWriter writer = lineWriter.writeValues(out)) {
+            return stream(query, " order by created_at, id", writer);
+        }
+    }
+
+    /**
+     * Writes every entry matching {@code query} to {@code out} as one JSON array, newest first, with constant memory.
+     *
+     * @return number of entries written
+     */
+    @Transactional(readOnly = true)
+    public long writeAll(HistoryQuery query, OutputStream out) {
+        try (SequenceWriter writer = arrayWriter.writeValuesAsArray(out)) {
+            return stream(query, " order by created_at desc, id desc", writer);
+        }
+    }
+
+    private long stream(HistoryQuery query, String orderBy, SequenceWriter writer) {
+        Where where = where(query);
+        long[] count = {0};
+        jdbc.query(con -> {
+            var ps = con.prepareStatement(SELECT + where.sql() + orderBy);
+            // PostgreSQL only streams with a fetch size inside a transaction; otherwise it reads the whole result
+            ps.setFetchSize(EXPORT_FETCH_SIZE);
+            for (int i = 0; i < where.args.size(); i++) ps.setObject(i + 1, where.args.get(i));
+            return ps;
+        }, rs -> {
+            writer.write(ROW_MAPPER.mapRow(rs, 0));
+            if (++count[0] % EXPORT_FETCH_SIZE == 0) writer.flush();
+        });
+        return count[0];
+    }
+
+    private static Where where(HistoryQuery query) {
+        Where where = new Where();
+        if (query.featureKey() != null) where.add("feature_key = ?", query.featureKey());
+        if (query.environment() != null) where.add("environment = ?", query.environment().name());
+        if (query.from() != null) where.add("created_at >= ?", utc(query.from()));
+        if (query.to() != null) where.add("created_at < ?", utc(query.to()));
+        return where;
+    }
+
+    private static OffsetDateTime utc(Instant instant) {
+        return OffsetDateTime.ofInstant(instant, ZoneOffset.UTC);
+    }
+
+    /**
+     * Filter for {@link #page} and {@link #export}; null fields match everything.
+     *
+     * @param from inclusive lower bound on {@code createdAt}
+     * @param to   exclusive upper bound on {@code createdAt}
+     */
+    public record HistoryQuery(String featureKey, Environment environment, Instant from, Instant to) {
+        public HistoryQuery {
+            if (from != null && to != null && !from.isBefore(to)) {
+                throw new IllegalArgumentException("from must be before to");
+            }
+        }
+    }
+
+    /** Same fields as {@link com.shotaroi.featureflags.domain.FlagChangeLog}. */
+    public record HistoryEntry(long id, String featureKey, Environment environment, FlagChangeType changeType,
+                               String changedBy, String details, Instant createdAt) {}
+
+    /** @param nextCursor null on the last page */
+    public record HistoryPage(List<HistoryEntry> entries, String nextCursor) {}
+
+    /** Keyset position, encoded as an opaque URL-safe cursor. */
+    record Position(Instant createdAt, long id) {
+
+        String encode() {
+            String raw = createdAt + "/" + id;
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+        }
+
+        static Position decode(String cursor) {
+            try {
+                String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+                int slash = raw.lastIndexOf('/');
+                return new Position(Instant.parse(raw.substring(0, slash)), Long.parseLong(raw.substring(slash + 1)));
+            } catch (IllegalArgumentException | IndexOutOfBoundsException | DateTimeParseException e) {
+                throw new IllegalArgumentException("Invalid cursor");
+            }
+        }
+    }
+
+    private static final class Where {
+        final StringBuilder sql = new StringBuilder();
+        final List<Object> args = new ArrayList<>();
+
+        void add(String condition, Object... values) {
+            sql.append(sql.isEmpty() ? " where " : " and ").append(condition);
+            args.addAll(List.of(values));
+        }
+
+        String sql() {
+            return sql.toString();
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package com.shotaroi.featureflags.service;
+
+import com.shotaroi.featureflags.domain.Environment;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.stream.Collectors;
+
+/**
+ * Meter handles for the evaluation path, cached per (featureKey, environment) so an evaluation only
+ * increments a counter and records a timer, with no registry lookup or tag allocation.
+ * <p>
+ * Series are bounded:
+ * <ul>
+ *   <li>{@code reason} is one of {@link #REASONS}; rollout buckets collapse to {@code ROLLOUT_BUCKET}.</li>
+ *   <li>Keys that do not exist are tagged {@value #UNKNOWN_KEY}, so random keys from a client add no series.</li>
+ *   <li>Existing keys outside {@code feature-flags.metrics.feature-key-allowlist} (when set), or beyond
+ *       {@code feature-flags.metrics.max-feature-keys} distinct keys, are tagged {@value #OTHER_KEY}.</li>
+ * </ul>
+ */
+@Component
+public class EvaluationMetrics {
+
+    static final String METRIC_EVALUATIONS = "feature.flag.evaluations";
+    static final String METRIC_EVALUATION_DURATION = "feature.flag.evaluation.duration";
+
+    static final String UNKNOWN_KEY = "__unknown__";
+    static final String OTHER_KEY = "__other__";
+
+    static final int FLAG_NOT_FOUND = 0;
+    static final int FLAG_DISABLED = 1;
+    static final int TARGETED_USER = 2;
+    static final int ROLLOUT_0 = 3;
+    static final int ROLLOUT_100 = 4;
+    static final int ROLLOUT_BUCKET = 5;
+
+    /** {@code reason} tag values, indexed by the constants above. */
+    static final List<String> REASONS = List.of(
+            "FLAG_NOT_FOUND", "FLAG_DISABLED", "TARGETED_USER", "ROLLOUT_0", "ROLLOUT_100", "ROLLOUT_BUCKET");
+
+    private final MeterRegistry meterRegistry;
+    private final int maxFeatureKeys;
+    private final Set<String> allowlist;
+
+    private final Map<Environment, ConcurrentHashMap<String, FlagMeters>> byKey = new EnumMap<>(Environment.class);
+    private final Map<Environment, FlagMeters> unknown = new EnumMap<>(Environment.class);
+    private final Map<Environment, FlagMeters> other = new EnumMap<>(Environment.class);
+    private final Set<String> taggedKeys = ConcurrentHashMap.newKeySet();
+
+    public EvaluationMetrics(
+            MeterRegistry meterRegistry,
+            @Value("${feature-flags.metrics.max-feature-keys:1000}") int maxFeatureKeys,
+            @Value("${feature-flags.metrics.feature-key-allowlist:}") List<String> allowlist
+    ) {
+        this.meterRegistry = meterRegistry;
+        this.maxFeatureKeys = maxFeatureKeys;
+        this.allowlist = allowlist.stream().map(String::trim).filter(k -> !k.isEmpty()).collect(Collectors.toUnmodifiableSet());
+        for (Environment env : Environment.values()) {
+            byKey.put(env, new ConcurrentHashMap<>());
+            unknown.put(env, new FlagMeters(UNKNOWN_KEY, env));
+            other.put(env, new FlagMeters(OTHER_KEY, env));
+        }
+    }
+
+    /**
+     * Meters for an evaluation of {@code featureKey}. {@code exists} is false when the flag was not found;
+     * such keys are never used as tag values.
+     */
+    FlagMeters forFlag(String featureKey, Environment environment, boolean exists) {
+        if (!exists) return unknown.get(environment);
+        FlagMeters meters = byKey.get(environment).get(featureKey);
+        if (meters != null) return meters;
+        // Keys only get here once the flag exists, so the map is bounded by the number of flags.
+        return byKey.get(environment).computeIfAbsent(featureKey, key -> mayTag(key) ? new FlagMeters(key, environment) : other.get(environment));
+    }
+
+    private boolean mayTag(String featureKey) {
+        if (!allowlist.isEmpty()) return allowlist.contains(featureKey);
+        if (taggedKeys.contains(featureKey)) return true;
+        synchronized (taggedKeys) {
+            if (taggedKeys.size() >= maxFeatureKeys) return false;
+            taggedKeys.add(featureKey);
+            return true;
+        }
+    }
+
+    /** Timer and counters for one {@code feature_key} tag value in one environment. */
+    final class FlagMeters {
+
+        private final String tagKey;
+        private final Environment environment;
+        // meters are registered on first use so unused combinations are not exported
+        private volatile Timer timer;
+        // [reason * 2 + (on ? 1 : 0)]
+        private final AtomicReferenceArray<Counter> counters = new AtomicReferenceArray<>(REASONS.size() * 2);
+
+        private FlagMeters(String tagKey, Environment environment) {
+            this.tagKey = tagKey;
+            this.environment = environment;
+        }
+
+        void count(int reason, boolean enabled) {
+            int slot = reason * 2 + (enabled ? 1 : 0);
+            Counter counter = counters.get(slot);
+            if (counter == null) {
+                counter = Counter.builder(METRIC_EVALUATIONS)
+                        .tag("feature_key", tagKey)
+                        .tag("environment", environment.name())
+                        .tag("result", enabled ? "on" : "off")
+                        .tag("reason", REASONS.get(reason))
+                        .register(meterRegistry);
+                counters.set(slot, counter);
+            }
+            counter.increment();
+        }
+
+        void recordDuration(long nanos) {
+            Timer t = timer;
+            if (t == null) {
+                t = Timer.builder(METRIC_EVALUATION_DURATION)
+                        .tag("feature_key", tagKey)
+                        .tag("environment", environment.name())
+                        .register(meterRegistry);
+                timer = t;
+            }
+            t.record(nanos, TimeUnit.NANOSECONDS);
+        }
+    }
+}
@@ -2,13 +2,13 @@ package com.shotaroi.featureflags.service;
 
 import com.shotaroi.featureflags.domain.Environment;
 import com.shotaroi.featureflags.domain.FeatureFlag;
-import com.shotaroi.featureflags.domain.FlagChangeLog;
 import com.shotaroi.featureflags.domain.FlagChangeType;
 import com.shotaroi.featureflags.domain.FeatureTarget;
 import com.shotaroi.featureflags.dto.AdminDtos;
 import com.shotaroi.featureflags.repository.FeatureFlagRepository;
 import com.shotaroi.featureflags.repository.FeatureTargetRepository;
-import com.shotaroi.featureflags.repository.FlagChangeLogRepository;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -16,20 +16,27 @@ import org.springframework.transaction.annotation.Transactional;
 import java.util.List;
 
 @Service
+@ConditionalOnProperty(name = "feature-flags.evaluation-only.enabled", havingValue = "false", matchIfMissing = true)
 public class FeatureAdminService {
 
     private final FeatureFlagRepository flagRepo;
     private final FeatureTargetRepository targetRepo;
-    private final FlagChangeLogRepository changeLogRepo;
+    private final AuditLogWriter auditLog;
+    private final ChangeFeedService changeFeed;
+    private final ApplicationEventPublisher events;
 
     public FeatureAdminService(
             FeatureFlagRepository flagRepo,
             FeatureTargetRepository targetRepo,
-            FlagChangeLogRepository changeLogRepo
+            AuditLogWriter auditLog,
+            ChangeFeedService changeFeed,
+            ApplicationEventPublisher events
     ) {
         this.flagRepo = flagRepo;
         this.targetRepo = targetRepo;
-        this.changeLogRepo = changeLogRepo;
+        this.auditLog = auditLog;
+        this.changeFeed = changeFeed;
+        this.events = events;
     }
 
     @Transactional(readOnly = true)
@@ -54,10 +61,13 @@ public class FeatureAdminService {
         flag.setEnvironment(req.environment());
         flag.setEnabled(req.enabled());
         flag.setRolloutPercent(req.rolloutPercent());
+        flag.setBucketingVersion(req.bucketingVersion() != null ? req.bucketingVersion() : Bucketing.CURRENT);
         flag = flagRepo.save(flag);
 
         logChange(flag.getFeatureKey(), flag.getEnvironment(), FlagChangeType.FLAG_CREATED, changedBy,
-                "enabled=" + req.enabled() + ", rolloutPercent=" + req.rolloutPercent());
+                "enabled=" + req.enabled() + ", rolloutPercent=" + req.rolloutPercent()
+                        + ", bucketingVersion=" + flag.getBucketingVersion());
+        publishChange(FlagChangeType.FLAG_CREATED, flag, null);
         return flag;
     }
 
@@ -68,12 +78,20 @@ public class FeatureAdminService {
 
         boolean oldEnabled = flag.isEnabled();
         int oldRollout = flag.getRolloutPercent();
+        int oldBucketing = flag.getBucketingVersion();
         flag.setEnabled(req.enabled());
         flag.setRolloutPercent(req.rolloutPercent());
+        if (req.bucketingVersion() != null) {
+            flag.setBucketingVersion(req.bucketingVersion());
+        }
         flag = flagRepo.save(flag);
 
         String details = String.format("enabled: %s -> %s, rolloutPercent: %d -> %d", oldEnabled, req.enabled(), oldRollout, req.rolloutPercent());
+        if (oldBucketing != flag.getBucketingVersion()) {
+            details += String.format(", bucketingVersion: %d -> %d", oldBucketing, flag.getBucketingVersion());
+        }
         logChange(featureKey, environment, FlagChangeType.FLAG_UPDATED, changedBy, details);
+        publishChange(FlagChangeType.FLAG_UPDATED, flag, null);
         return flag;
     }
 
@@ -92,6 +110,7 @@ public class FeatureAdminService {
             throw new IllegalArgumentException("Target already exists for user: " + userId);
         }
         logChange(featureKey, environment, FlagChangeType.TARGET_ADDED, changedBy, "userId=" + userId);
+        publishChange(FlagChangeType.TARGET_ADDED, flag, userId);
     }
 
     @Transactional
@@ -101,20 +120,17 @@ public class FeatureAdminService {
 
         targetRepo.deleteByFeatureFlag_IdAndUserId(flag.getId(), userId);
         logChange(featureKey, environment, FlagChangeType.TARGET_REMOVED, changedBy, "userId=" + userId);
+        publishChange(FlagChangeType.TARGET_REMOVED, flag, userId);
     }
 
-    @Transactional(readOnly = true)
-    public List<FlagChangeLog> listHistory(String featureKey, Environment environment) {
-        return changeLogRepo.findByFeatureKeyAndEnvironmentOrderByCreatedAtDesc(featureKey, environment);
+    /** Assigns the change its environment revision and notifies listeners once the transaction commits. */
+    private void publishChange(FlagChangeType changeType, FeatureFlag flag, String userId) {
+        long revision = changeFeed.record(flag.getEnvironment(), flag.getFeatureKey(), changeType, userId);
+        events.publishEvent(new FlagChangedEvent(changeType, flag, userId, revision));
     }
 
+    /** Written in a batch when the transaction commits; see {@link AuditLogWriter}. */
     private void logChange(String featureKey, Environment environment, FlagChangeType changeType, String changedBy, String details) {
-        FlagChangeLog log = new FlagChangeLog();
-        log.setFeatureKey(featureKey);
-        log.setEnvironment(environment);
-        log.setChangeType(changeType);
-        log.setChangedBy(changedBy != null ? changedBy : "system");
-        log.setDetails(details);
-        changeLogRepo.save(log);
+        auditLog.append(featureKey, environment, changeType, changedBy, details);
     }
 }
@@ -1,107 +1,161 @@
 package com.shotaroi.featureflags.service;
 
 import com.shotaroi.featureflags.domain.Environment;
-import com.shotaroi.featureflags.domain.FeatureFlag;
-import com.shotaroi.featureflags.repository.FeatureFlagRepository;
-import com.shotaroi.featureflags.repository.FeatureTargetRepository;
-import io.micrometer.core.instrument.Counter;
-import io.micrometer.core.instrument.MeterRegistry;
-import io.micrometer.core.instrument.Timer;
 import org.springframework.stereotype.Service;
 
-import java.nio.charset.StandardCharsets;
-import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 
 @Service
 public class FeatureEvaluationService {
 
-    private static final String METRIC_EVALUATIONS = "feature.flag.evaluations";
-    private static final String METRIC_EVALUATION_DURATION = "feature.flag.evaluation.duration";
-
-    private final FeatureFlagRepository flagRepo;
-    private final FeatureTargetRepository targetRepo;
-    private final MeterRegistry meterRegistry;
+    private final FlagCache flagCache;
+    private final TargetIndex targetIndex;
+    private final EvaluationMetrics metrics;
 
     public FeatureEvaluationService(
-            FeatureFlagRepository flagRepo,
-            FeatureTargetRepository targetRepo,
-            MeterRegistry meterRegistry
+            FlagCache flagCache,
+            TargetIndex targetIndex,
+            EvaluationMetrics metrics
     ) {
-        this.flagRepo = flagRepo;
-        this.targetRepo = targetRepo;
-        this.meterRegistry = meterRegistry;
+        this.flagCache = flagCache;
+        this.targetIndex = targetIndex;
+        this.metrics = metrics;
     }
 
     public EvaluationResult evaluate(String featureKey, Environment environment, String userId) {
-        return Timer.builder(METRIC_EVALUATION_DURATION)
-                .tag("feature_key", featureKey)
-                .tag("environment", environment.name())
-                .register(meterRegistry)
-                .record(() -> doEvaluate(featureKey, environment, userId));
+        long start = System.nanoTime();
+        CachedFlag flag = flagCache.get(featureKey, environment).orElse(null);
+        return evaluate(featureKey, environment, flag, userId, start);
+    }
+
+    private EvaluationResult evaluate(String featureKey, Environment environment, CachedFlag flag, String userId, long start) {
+        EvaluationMetrics.FlagMeters meters = metrics.forFlag(featureKey, environment, flag != null);
+        EvaluationResult result = doEvaluate(meters, flag, userId);
+        meters.recordDuration(System.nanoTime() - start);
+        return result;
+    }
+
+    /**
+     * Evaluates every flag of the environment for one user, or only {@code featureKeys} if given
+     * (unknown keys yield FLAG_NOT_FOUND). Results are keyed and sorted by featureKey. Requested flags that are
+     * not in memory yet are loaded with one query.
+     */
+    public Map<String, EvaluationResult> evaluateAll(Environment environment, String userId, Collection<String> featureKeys) {
+        Map<String, EvaluationResult> results = new TreeMap<>();
+        if (featureKeys == null || featureKeys.isEmpty()) {
+            for (CachedFlag flag : flagCache.all(environment)) {
+                results.put(flag.featureKey(), evaluate(flag, userId));
+            }
+        } else {
+            Map<String, CachedFlag> flags = flagCache.getAll(featureKeys, environment);
+            for (String featureKey : featureKeys) {
+                results.computeIfAbsent(featureKey, key -> evaluate(key, environment, flags.get(key), userId, System.nanoTime()));
+            }
+        }
+        return results;
+    }
+
+    private EvaluationResult evaluate(CachedFlag flag, String userId) {
+        long start = System.nanoTime();
+        EvaluationMetrics.FlagMeters meters = metrics.forFlag(flag.featureKey(), flag.environment(), true);
+        EvaluationResult result = doEvaluate(meters, flag, userId);
+        meters.recordDuration(System.nanoTime() - start);
+        return result;
+    }
+
+    /**
+     * Loads the targets of a resolved flag before it is evaluated from many threads, so no evaluation does the
+     * first (database) load. No-op for a missing or disabled flag, which never consults its targets.
+     */
+    void preloadTargets(CachedFlag flag) {
+        if (flag != null && flag.enabled()) targetIndex.preload(flag);
     }
 
-    private EvaluationResult doEvaluate(String featureKey, Environment environment, String userId) {
-        FeatureFlag flag = flagRepo.findByFeatureKeyAndEnvironment(featureKey, environment).orElse(null);
+    /**
+     * Evaluates an already resolved flag ({@code null} if it does not exist) without the latency timer.
+     * Used by batch evaluation; counters and results are the same as {@link #evaluate}.
+     */
+    EvaluationResult evaluateFlag(String featureKey, Environment environment, CachedFlag flag, String userId) {
+        return doEvaluate(metrics.forFlag(featureKey, environment, flag != null), flag, userId);
+    }
 
+    private EvaluationResult doEvaluate(EvaluationMetrics.FlagMeters meters, CachedFlag flag, String userId) {
         if (flag == null) {
-            recordEvaluation(featureKey, environment, false, "FLAG_NOT_FOUND");
-            return EvaluationResult.off("FLAG_NOT_FOUND");
+            meters.count(EvaluationMetrics.FLAG_NOT_FOUND, false);
+            return EvaluationResult.FLAG_NOT_FOUND;
         }
 
-        if (!flag.isEnabled()) {
-            recordEvaluation(featureKey, environment, false, "FLAG_DISABLED");
-            return EvaluationResult.off("FLAG_DISABLED");
+        if (!flag.enabled()) {
+            meters.count(EvaluationMetrics.FLAG_DISABLED, false);
+            return EvaluationResult.FLAG_DISABLED;
         }
 
         if (userId != null && !userId.isBlank()) {
-            boolean targeted =
-                    targetRepo.existsByFeatureFlag_IdAndUserId(flag.getId(), userId);
-            if (targeted) {
-                recordEvaluation(featureKey, environment, true, "TARGETED_USER");
-                return EvaluationResult.on("TARGETED_USER");
+            if (targetIndex.isTargeted(flag, userId)) {
+                meters.count(EvaluationMetrics.TARGETED_USER, true);
+                return EvaluationResult.TARGETED_USER;
             }
         }
 
-        int rollout = flag.getRolloutPercent();
+        int rollout = flag.rolloutPercent();
         if (rollout <= 0) {
-            recordEvaluation(featureKey, environment, false, "ROLLOUT_0");
-            return EvaluationResult.off("ROLLOUT_0");
+            meters.count(EvaluationMetrics.ROLLOUT_0, false);
+            return EvaluationResult.ROLLOUT_0;
         }
         if (rollout >= 100) {
-            recordEvaluation(featureKey, environment, true, "ROLLOUT_100");
-            return EvaluationResult.on("ROLLOUT_100");
+            meters.count(EvaluationMetrics.ROLLOUT_100, true);
+            return EvaluationResult.ROLLOUT_100;
         }
 
-        int bucket = stableBucket(featureKey, userId);
+        int bucket = Bucketing.bucket(flag.bucketingVersion(), flag.featureKey(), userId);
         boolean on = bucket < rollout;
-        String reason = "ROLLOUT_BUCKET_" + bucket;
-        recordEvaluation(featureKey, environment, on, reason);
-        return on ? EvaluationResult.on(reason) : EvaluationResult.off(reason);
+        meters.count(EvaluationMetrics.ROLLOUT_BUCKET, on);
+        return EvaluationResult.bucket(bucket, on);
     }
 
-    private void recordEvaluation(String featureKey, Environment environment, boolean enabled, String reason) {
-        Counter.builder(METRIC_EVALUATIONS)
-                .tag("feature_key", featureKey)
-                .tag("environment", environment.name())
-                .tag("result", enabled ? "on" : "off")
-                .tag("reason", reason)
-                .register(meterRegistry)
-                .increment();
-    }
+    /**
+     * Result of an evaluation. There are only a few hundred distinct results (on/off × reason × bucket), so
+     * evaluations return shared instances from {@link #all()} and allocate nothing; the controller writes
+     * pre-encoded JSON for each of them.
+     */
+    public record EvaluationResult(boolean enabled, String reason) {
 
-    int stableBucket(String featureKey, String userId) {
-        try {
-            String input = featureKey + ":" + (userId == null ? "" : userId);
-            MessageDigest md = MessageDigest.getInstance("SHA-256");
-            byte[] hash = md.digest(input.getBytes(StandardCharsets.UTF_8));
-            return (hash[0] & 0xFF) % 100;
-        } catch (Exception e) {
-            return Math.abs((featureKey + userId).hashCode()) % 100;
+        static final EvaluationResult FLAG_NOT_FOUND = off("FLAG_NOT_FOUND");
+        static final EvaluationResult FLAG_DISABLED = off("FLAG_DISABLED");
+        static final EvaluationResult TARGETED_USER = on("TARGETED_USER");
+        static final EvaluationResult ROLLOUT_0 = off("ROLLOUT_0");
+        static final EvaluationResult ROLLOUT_100 = on("ROLLOUT_100");
+
+        private static final EvaluationResult[] BUCKET_ON = new EvaluationResult[Bucketing.BUCKETS];
+        private static final EvaluationResult[] BUCKET_OFF = new EvaluationResult[Bucketing.BUCKETS];
+        private static final List<EvaluationResult> ALL;
+
+        static {
+            List<EvaluationResult> all = new ArrayList<>(List.of(FLAG_NOT_FOUND, FLAG_DISABLED, TARGETED_USER, ROLLOUT_0, ROLLOUT_100));
+            for (int bucket = 0; bucket < Bucketing.BUCKETS; bucket++) {
+                String reason = "ROLLOUT_BUCKET_" + bucket;
+                BUCKET_ON[bucket] = on(reason);
+                BUCKET_OFF[bucket] = off(reason);
+                all.add(BUCKET_ON[bucket]);
+                all.add(BUCKET_OFF[bucket]);
+            }
+            ALL = List.copyOf(all);
         }
-    }
 
-    public record EvaluationResult(boolean enabled, String reason) {
         static EvaluationResult on(String r) { return new EvaluationResult(true, r); }
         static EvaluationResult off(String r) { return new EvaluationResult(false, r); }
+
+        static EvaluationResult bucket(int bucket, boolean on) {
+            return on ? BUCKET_ON[bucket] : BUCKET_OFF[bucket];
+        }
+
+        /** Every result an evaluation can return, as the shared instances it returns. */
+        public static List<EvaluationResult> all() {
+            return ALL;
+        }
     }
 }
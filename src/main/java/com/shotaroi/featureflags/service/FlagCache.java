@@ -0,0 +1,257 @@
+package com.shotaroi.featureflags.service;
+
+import com.shotaroi.featureflags.domain.Environment;
+import com.shotaroi.featureflags.domain.FlagChangeType;
+import com.shotaroi.featureflags.repository.FeatureFlagRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.annotation.Order;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.TransactionException;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+/**
+ * In-process, per-environment cache of feature flags for the evaluation path.
+ * <p>
+ * Reads are lock-free ({@link ConcurrentHashMap#get}); a flag is loaded from the database the first
+ * time it is asked for and afterwards served from memory. Admin writes replace the cached copy once
+ * their transaction has committed, so readers never see uncommitted state.
+ * <p>
+ * Keys that do not exist are remembered for a short TTL (bounded per environment), and concurrent
+ * misses for the same key share a single database lookup.
+ * <p>
+ * An environment can be {@linkplain #restore restored} from a {@link SnapshotFile} at startup. Once all of an
+ * environment's flags are in memory, a lookup that fails because the database is unreachable answers "not
+ * found" from memory instead of failing the evaluation.
+ */
+@Component
+public class FlagCache {
+
+    private final FeatureFlagRepository flagRepo;
+    private final long negativeTtlNanos;
+    private final int negativeMaxSize;
+    private final LongSupplier nanoClock;
+
+    private final Map<Environment, ConcurrentHashMap<String, CachedFlag>> flags = new EnumMap<>(Environment.class);
+    /** featureKey → expiry (nanoTime) for keys known not to exist. */
+    private final Map<Environment, ConcurrentHashMap<String, Long>> missing = new EnumMap<>(Environment.class);
+    private final Map<Environment, ConcurrentHashMap<String, CompletableFuture<Optional<CachedFlag>>>> loads =
+            new EnumMap<>(Environment.class);
+    /** Environments whose flags have all been loaded, so {@link #all} can be served from memory. */
+    private final Set<Environment> complete = ConcurrentHashMap.newKeySet();
+    /** Not a monitor: the load queries the database, which must not pin a virtual thread's carrier. */
+    private final ReentrantLock completeLoad = new ReentrantLock();
+
+    @Autowired
+    public FlagCache(
+            FeatureFlagRepository flagRepo,
+            @Value("${feature-flags.cache.negative-ttl:30s}") Duration negativeTtl,
+            @Value("${feature-flags.cache.negative-max-size:10000}") int negativeMaxSize
+    ) {
+        this(flagRepo, negativeTtl, negativeMaxSize, System::nanoTime);
+    }
+
+    FlagCache(FeatureFlagRepository flagRepo, Duration negativeTtl, int negativeMaxSize, LongSupplier nanoClock) {
+        this.flagRepo = flagRepo;
+        this.negativeTtlNanos = negativeTtl.toNanos();
+        this.negativeMaxSize = negativeMaxSize;
+        this.nanoClock = nanoClock;
+        for (Environment env : Environment.values()) {
+            flags.put(env, new ConcurrentHashMap<>());
+            missing.put(env, new ConcurrentHashMap<>());
+            loads.put(env, new ConcurrentHashMap<>());
+        }
+    }
+
+    /**
+     * Returns the flag for the key and environment, loading it from the database on a cache miss.
+     */
+    public Optional<CachedFlag> get(String featureKey, Environment environment) {
+        CachedFlag cached = flags.get(environment).get(featureKey);
+        if (cached != null) return Optional.of(cached);
+        if (isKnownMissing(featureKey, environment)) return Optional.empty();
+
+        return load(featureKey, environment);
+    }
+
+    /**
+     * The flags of {@code featureKeys} that exist, keyed by featureKey. Keys that are neither cached nor known
+     * missing are loaded together with one query; the ones it does not return are remembered as missing.
+     */
+    public Map<String, CachedFlag> getAll(Collection<String> featureKeys, Environment environment) {
+        Map<String, CachedFlag> found = new HashMap<>();
+        Set<String> misses = new LinkedHashSet<>();
+        for (String featureKey : featureKeys) {
+            CachedFlag cached = flags.get(environment).get(featureKey);
+            if (cached != null) found.put(featureKey, cached);
+            else if (!isKnownMissing(featureKey, environment)) misses.add(featureKey);
+        }
+        if (misses.size() == 1) {
+            get(misses.iterator().next(), environment).ifPresent(flag -> found.put(flag.featureKey(), flag));
+        } else if (!misses.isEmpty()) {
+            try {
+                flagRepo.findAllByEnvironmentAndFeatureKeyIn(environment, misses)
+                        .forEach(flag -> found.put(flag.getFeatureKey(), put(CachedFlag.of(flag))));
+            } catch (DataAccessException | TransactionException e) {
+                if (!complete.contains(environment)) throw e;
+                // Database unreachable: a complete environment answers from memory (last known good)
+                misses.forEach(key -> {
+                    CachedFlag known = flags.get(environment).get(key);
+                    if (known != null) found.put(key, known);
+                });
+                return found;
+            }
+            misses.stream().filter(key -> !found.containsKey(key)).forEach(key -> rememberMissing(key, environment));
+        }
+        return found;
+    }
+
+    /**
+     * All flags of the environment. The first call loads them with one query; later calls (and flags created
+     * since) are served from memory. The returned view is weakly consistent and must not be modified.
+     */
+    public Collection<CachedFlag> all(Environment environment) {
+        if (!complete.contains(environment)) {
+            completeLoad.lock();
+            try {
+                if (!complete.contains(environment)) {
+                    flagRepo.findAllByEnvironment(environment).forEach(flag -> put(CachedFlag.of(flag)));
+                    complete.add(environment);
+                }
+            } finally {
+                completeLoad.unlock();
+            }
+        }
+        return flags.get(environment).values();
+    }
+
+    /** Runs before {@link FlagStreamService}, so a change is in memory before it gets a stream revision. */
+    @Order(0)
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT)
+    public void onFlagChanged(FlagChangedEvent event) {
+        if (event.changeType() == FlagChangeType.FLAG_CREATED || event.changeType() == FlagChangeType.FLAG_UPDATED) {
+            CachedFlag flag = put(CachedFlag.of(event.flag()));
+            missing.get(flag.environment()).remove(flag.featureKey());
+        }
+    }
+
+    /**
+     * Puts every flag of the environment, e.g. from a {@link SnapshotFile}, and marks it complete, so {@link #all}
+     * and lookups of unknown keys during a database outage are served from memory.
+     */
+    public void restore(Environment environment, Collection<CachedFlag> restored) {
+        completeLoad.lock();
+        try {
+            restored.forEach(this::put);
+            complete.add(environment);
+        } finally {
+            completeLoad.unlock();
+        }
+    }
+
+    /**
+     * Drops every cached flag of the environment, so the next reads load the committed state. Used when this node
+     * can no longer replay the changes it missed ({@link RevisionPoller}).
+     *
+     * @return ids of the dropped flags
+     */
+    public Set<Long> invalidate(Environment environment) {
+        completeLoad.lock();
+        try {
+            complete.remove(environment);
+            missing.get(environment).clear();
+            Set<Long> ids = new HashSet<>();
+            flags.get(environment).values().removeIf(flag -> ids.add(flag.id()));
+            return ids;
+        } finally {
+            completeLoad.unlock();
+        }
+    }
+
+    /**
+     * Stores the flag unless the cached copy is at least as recent (a loader may race with a committed admin
+     * write) and returns whichever copy won.
+     */
+    CachedFlag put(CachedFlag flag) {
+        return flags.get(flag.environment()).merge(flag.featureKey(), flag,
+                (current, incoming) -> incoming.isNewerThan(current) ? incoming : current);
+    }
+
+    /**
+     * Single-flight load: the first caller queries the database, concurrent callers for the same key wait for
+     * its result instead of issuing their own query.
+     */
+    private Optional<CachedFlag> load(String featureKey, Environment environment) {
+        var inFlight = loads.get(environment);
+        var mine = new CompletableFuture<Optional<CachedFlag>>();
+        var running = inFlight.putIfAbsent(featureKey, mine);
+        if (running != null) return join(running);
+
+        try {
+            Optional<CachedFlag> loaded = find(featureKey, environment).map(this::put);
+            if (loaded.isEmpty()) rememberMissing(featureKey, environment);
+            mine.complete(loaded);
+            return loaded;
+        } catch (RuntimeException e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(featureKey, mine);
+        }
+    }
+
+    /** Database lookup; if the database is unreachable, a complete environment answers from memory (last known good). */
+    private Optional<CachedFlag> find(String featureKey, Environment environment) {
+        try {
+            return flagRepo.findByFeatureKeyAndEnvironment(featureKey, environment).map(CachedFlag::of);
+        } catch (DataAccessException | TransactionException e) {
+            if (!complete.contains(environment)) throw e;
+            return Optional.ofNullable(flags.get(environment).get(featureKey));
+        }
+    }
+
+    private boolean isKnownMissing(String featureKey, Environment environment) {
+        Long expiresAt = missing.get(environment).get(featureKey);
+        if (expiresAt == null) return false;
+        if (nanoClock.getAsLong() - expiresAt < 0) return true;
+        missing.get(environment).remove(featureKey, expiresAt);
+        return false;
+    }
+
+    private void rememberMissing(String featureKey, Environment environment) {
+        var byKey = missing.get(environment);
+        long now = nanoClock.getAsLong();
+        if (byKey.size() >= negativeMaxSize) {
+            byKey.values().removeIf(expiresAt -> now - expiresAt >= 0);
+            // Still full of live entries (e.g. a client sending random keys): don't grow, just stop caching misses
+            if (byKey.size() >= negativeMaxSize) return;
+        }
+        byKey.put(featureKey, now + negativeTtlNanos);
+    }
+
+    private static Optional<CachedFlag> join(CompletableFuture<Optional<CachedFlag>> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException re) throw re;
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package com.shotaroi.featureflags.service;
+
+import com.shotaroi.featureflags.domain.FeatureFlag;
+import com.shotaroi.featureflags.domain.FlagChangeType;
+
+/**
+ * Published by {@link FeatureAdminService} for every mutation. Listeners that keep derived
+ * state (caches, indexes) should consume it after the transaction commits.
+ *
+ * @param changeType what happened
+ * @param flag       the affected flag (managed entity; read it only after commit)
+ * @param userId     the target user for TARGET_ADDED / TARGET_REMOVED, otherwise null
+ * @param revision   the environment revision assigned to this change by {@link ChangeFeedService}
+ */
+public record FlagChangedEvent(FlagChangeType changeType, FeatureFlag flag, String userId, long revision) {
+}
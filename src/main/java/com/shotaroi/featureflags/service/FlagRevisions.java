@@ -0,0 +1,117 @@
+package com.shotaroi.featureflags.service;
+
+import com.shotaroi.featureflags.domain.Environment;
+import com.shotaroi.featureflags.domain.EnvironmentRevision;
+import com.shotaroi.featureflags.repository.EnvironmentRevisionRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.TransactionException;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Revision per environment that this node's caches reflect. Revisions are assigned in the database by
+ * {@link ChangeFeedService#record}, so they are the same on every node; this holder starts at the committed
+ * revision and is advanced by {@link FlagStreamService} after the caches hold a change, so state read from the
+ * caches at revision r always includes change r.
+ * <p>
+ * Separately, it holds the revision up to which {@link RevisionPoller} has replayed the change feed. The two
+ * differ: a local change at r + 1 advances the caches' revision while a change at r made through another node
+ * may not have been polled yet, so the poller must read from its own cursor, not from {@link #current}.
+ * <p>
+ * If the database cannot be reached at startup, every environment starts at 0 (or at the revision of its
+ * {@link SnapshotFileStore snapshot file}); {@link RevisionPoller} catches up once the database is back.
+ */
+@Component
+public class FlagRevisions {
+
+    private static final Logger log = LoggerFactory.getLogger(FlagRevisions.class);
+
+    private final Map<Environment, AtomicLong> revisions = new EnumMap<>(Environment.class);
+    private final Map<Environment, AtomicLong> replayed = new EnumMap<>(Environment.class);
+    private final Map<Environment, AtomicLong> applied = new EnumMap<>(Environment.class);
+    private final boolean committedAtStartup;
+
+    @Autowired
+    public FlagRevisions(EnvironmentRevisionRepository revisionRepo) {
+        init();
+        boolean read = false;
+        try {
+            for (EnvironmentRevision row : revisionRepo.findAll()) {
+                revisions.get(row.getEnvironment()).set(row.getRevision());
+                replayed.get(row.getEnvironment()).set(row.getRevision());
+            }
+            read = true;
+        } catch (DataAccessException | TransactionException e) {
+            log.warn("Cannot read the committed revisions, starting at 0: {}", e.toString());
+        }
+        this.committedAtStartup = read;
+    }
+
+    FlagRevisions() {
+        init();
+        this.committedAtStartup = true;
+    }
+
+    private void init() {
+        for (Environment env : Environment.values()) {
+            revisions.put(env, new AtomicLong());
+            replayed.put(env, new AtomicLong());
+            applied.put(env, new AtomicLong());
+        }
+    }
+
+    /** Whether the revisions were read from the database at startup, i.e. are the committed ones until the first change. */
+    boolean committedAtStartup() {
+        return committedAtStartup;
+    }
+
+    public long current(Environment environment) {
+        return revisions.get(environment).get();
+    }
+
+    /**
+     * Sets the revision the caches were restored at ({@link SnapshotFileStore}), which may be behind the database.
+     * Only at startup, before anything is served; changes after it are then replayed by {@link RevisionPoller}.
+     */
+    void restore(Environment environment, long revision) {
+        revisions.get(environment).set(revision);
+        replayed.get(environment).set(revision);
+        applied.get(environment).incrementAndGet();
+    }
+
+    /**
+     * Revision up to which every change in the feed is in the caches, either applied by this node's own listeners
+     * or replayed by {@link RevisionPoller}. The poller continues from here.
+     */
+    long replayedUpTo(Environment environment) {
+        return replayed.get(environment).get();
+    }
+
+    /** Moves the poller's cursor to {@code revision}; never moves it backwards. */
+    void replayedTo(Environment environment, long revision) {
+        replayed.get(environment).accumulateAndGet(revision, Math::max);
+    }
+
+    /**
+     * Number of changes applied to the environment's caches so far. Unlike {@link #current}, it moves with every
+     * change, including one whose listener runs after that of a later revision.
+     */
+    public long applied(Environment environment) {
+        return applied.get(environment).get();
+    }
+
+    /**
+     * Moves the environment to {@code revision}; never moves it backwards. Call once per applied change, once the
+     * caches hold it.
+     */
+    public void advanceTo(Environment environment, long revision) {
+        revisions.get(environment).accumulateAndGet(revision, Math::max);
+        applied.get(environment).incrementAndGet();
+    }
+}
@@ -0,0 +1,390 @@
+package com.shotaroi.featureflags.service;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.shotaroi.featureflags.domain.Environment;
+import com.shotaroi.featureflags.domain.FeatureFlag;
+import com.shotaroi.featureflags.domain.FlagChangeType;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter.DataWithMediaType;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import tools.jackson.databind.ObjectMapper;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Server-Sent Events stream of flag state per environment, for clients that cache and evaluate flags locally.
+ * <p>
+ * On connect a client gets a {@code snapshot} event (all flags with their allowlists), then one {@code change}
+ * event per committed admin mutation. Every event id is the environment revision assigned in the database by
+ * {@link ChangeFeedService}, so ids mean the same on every node and across restarts. A client that reconnects
+ * with {@code Last-Event-ID} gets only the changes it missed if every one of them is still in this node's replay
+ * buffer; otherwise it gets a fresh snapshot. Applying a change is idempotent (flags are sent whole, targets
+ * as add/remove), so a change that is also reflected in a snapshot does no harm.
+ * <p>
+ * Connections are async servlet requests: an idle client holds no thread. Writes go through a per-client queue
+ * drained on a virtual thread, so a slow client never blocks the admin request that made the change, and a client
+ * that stops reading blocks only its own writer. A client whose queue overflows, or whose write has not completed
+ * within {@code feature-flags.stream.write-timeout}, is disconnected and resumes on reconnect. Snapshots are built on a separate thread and
+ * queued as futures, so a rebuild never occupies a stream's writer. One scheduler thread sends heartbeats.
+ */
+@Service
+public class FlagStreamService {
+
+    private static final Logger log = LoggerFactory.getLogger(FlagStreamService.class);
+
+    static final String EVENT_SNAPSHOT = "snapshot";
+    static final String EVENT_CHANGE = "change";
+
+    private final SnapshotService snapshots;
+    private final FlagRevisions revisions;
+    private final ObjectMapper objectMapper;
+    private final long timeoutMillis;
+    private final int replaySize;
+    private final int maxQueuedEvents;
+    private final long writeTimeoutNanos;
+
+    private final Map<Environment, Channel> channels = new EnumMap<>(Environment.class);
+    private final ExecutorService sender;
+    private final ExecutorService snapshotBuilder;
+    private final ScheduledExecutorService heartbeats;
+
+    public FlagStreamService(
+            SnapshotService snapshots,
+            FlagRevisions revisions,
+            ObjectMapper objectMapper,
+            @Value("${feature-flags.stream.timeout:30m}") Duration timeout,
+            @Value("${feature-flags.stream.heartbeat:15s}") Duration heartbeat,
+            @Value("${feature-flags.stream.replay-size:1024}") int replaySize,
+            @Value("${feature-flags.stream.max-queued-events:1000}") int maxQueuedEvents,
+            @Value("${feature-flags.stream.write-timeout:10s}") Duration writeTimeout
+    ) {
+        this.snapshots = snapshots;
+        this.revisions = revisions;
+        this.objectMapper = objectMapper;
+        this.timeoutMillis = timeout.toMillis();
+        this.replaySize = replaySize;
+        this.maxQueuedEvents = maxQueuedEvents;
+        this.writeTimeoutNanos = writeTimeout.toNanos();
+        for (Environment env : Environment.values()) {
+            channels.put(env, new Channel(env));
+        }
+        // A socket write blocks while the client's TCP window is full; on a virtual thread that holds no carrier
+        this.sender = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("flag-stream-", 0).factory());
+        // One thread is enough: SnapshotService builds once per change and serves every other request from memory
+        this.snapshotBuilder = Executors.newSingleThreadExecutor(Thread.ofPlatform().name("flag-stream-snapshot").daemon().factory());
+        this.heartbeats = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform().name("flag-stream-heartbeat").daemon().factory());
+        long period = heartbeat.toMillis();
+        heartbeats.scheduleAtFixedRate(this::sendHeartbeats, period, period, TimeUnit.MILLISECONDS);
+        long check = Math.max(1, Math.min(period, writeTimeout.toMillis() / 2));
+        heartbeats.scheduleAtFixedRate(this::closeStalledWriters, check, check, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Opens a stream for the environment. {@code lastEventId} is the id of the last event the client applied
+     * (from the {@code Last-Event-ID} header), or null for a fresh snapshot.
+     */
+    public SseEmitter subscribe(Environment environment, String lastEventId) {
+        SseEmitter emitter = new SseEmitter(timeoutMillis);
+        Channel channel = channels.get(environment);
+        Subscriber subscriber = new Subscriber(channel, emitter);
+        emitter.onCompletion(subscriber::close);
+        emitter.onTimeout(subscriber::close);
+        emitter.onError(e -> subscriber.close());
+
+        long resumeFrom = parseRevision(lastEventId);
+        synchronized (channel) {
+            List<Change> missed = resumeFrom < 0 ? null : missedChanges(channel, resumeFrom);
+            if (missed != null) {
+                for (Change change : missed) subscriber.enqueue(change.event);
+            } else {
+                subscriber.enqueue(snapshotEvent(channel));
+            }
+            channel.subscribers.add(subscriber);
+        }
+        return emitter;
+    }
+
+    /** Runs after {@link FlagCache} and {@link TargetIndex}, so a snapshot at revision r includes change r. */
+    @Order(Ordered.LOWEST_PRECEDENCE)
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT)
+    public void onFlagChanged(FlagChangedEvent event) {
+        FeatureFlag flag = event.flag();
+        Channel channel = channels.get(flag.getEnvironment());
+        synchronized (channel) {
+            revisions.advanceTo(flag.getEnvironment(), event.revision());
+            boolean targetChange = event.changeType() == FlagChangeType.TARGET_ADDED
+                    || event.changeType() == FlagChangeType.TARGET_REMOVED;
+            append(channel, new ChangePayload(event.revision(), event.changeType(), flag.getFeatureKey(),
+                    targetChange ? null : SnapshotService.FlagConfig.of(CachedFlag.of(flag), null),
+                    targetChange ? event.userId() : null));
+        }
+    }
+
+    /**
+     * A bulk chunk is sent as one change event per user, like single changes, unless it has more users than the
+     * replay buffer holds or a client may have queued. Then every open stream gets a fresh snapshot instead, and
+     * clients resuming from before the chunk get one too.
+     */
+    @Order(Ordered.LOWEST_PRECEDENCE)
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT)
+    public void onTargetsChanged(FlagTargetsChangedEvent event) {
+        FeatureFlag flag = event.flag();
+        Channel channel = channels.get(flag.getEnvironment());
+        synchronized (channel) {
+            revisions.advanceTo(flag.getEnvironment(), event.lastRevision());
+            if (event.userIds().size() > Math.min(replaySize, maxQueuedEvents)) {
+                resnapshot(channel, event.lastRevision());
+                return;
+            }
+            long revision = event.firstRevision();
+            for (String userId : event.userIds()) {
+                append(channel, new ChangePayload(revision++, event.changeType(), flag.getFeatureKey(), null, userId));
+            }
+        }
+    }
+
+    /**
+     * The caches were reloaded up to {@code revision} without individual changes ({@link RevisionPoller} fell
+     * behind the change feed's retention): every open stream and every resuming client gets a fresh snapshot.
+     */
+    public void resync(Environment environment, long revision) {
+        Channel channel = channels.get(environment);
+        synchronized (channel) {
+            revisions.advanceTo(environment, revision);
+            resnapshot(channel, revision);
+        }
+    }
+
+    /** Drops the replay buffer up to {@code revision} and queues a snapshot for every open stream. Caller holds the channel's monitor. */
+    private void resnapshot(Channel channel, long revision) {
+        channel.recent.clear();
+        channel.evicted = Math.max(channel.evicted, revision);
+        if (channel.subscribers.isEmpty()) return;
+        CompletableFuture<Set<DataWithMediaType>> snapshot = snapshotEvent(channel);
+        for (Subscriber subscriber : channel.subscribers) {
+            subscriber.enqueue(snapshot);
+        }
+    }
+
+    /** Adds a change to the replay buffer and every open stream. Caller holds the channel's monitor. */
+    private void append(Channel channel, ChangePayload payload) {
+        var change = new Change(payload.revision(), SseEmitter.event()
+                .id(eventId(payload.revision()))
+                .name(EVENT_CHANGE)
+                .data(objectMapper.writeValueAsString(payload))
+                .build());
+        channel.recent.addLast(change);
+        if (channel.recent.size() > replaySize) {
+            channel.evicted = Math.max(channel.evicted, channel.recent.removeFirst().revision);
+        }
+        for (Subscriber subscriber : channel.subscribers) {
+            subscriber.enqueue(change.event);
+        }
+    }
+
+    /** Open streams for the environment. */
+    public int subscriberCount(Environment environment) {
+        return channels.get(environment).subscribers.size();
+    }
+
+    @PreDestroy
+    void shutdown() {
+        heartbeats.shutdownNow();
+        for (Channel channel : channels.values()) {
+            channel.subscribers.forEach(s -> s.emitter.complete());
+        }
+        sender.shutdown();
+        snapshotBuilder.shutdown();
+    }
+
+    private void sendHeartbeats() {
+        Set<DataWithMediaType> heartbeat = SseEmitter.event().comment("heartbeat").build();
+        for (Channel channel : channels.values()) {
+            for (Subscriber subscriber : channel.subscribers) {
+                subscriber.enqueue(heartbeat);
+            }
+        }
+    }
+
+    /** Disconnects clients whose current write has been blocked for longer than the write timeout. */
+    private void closeStalledWriters() {
+        long now = System.nanoTime();
+        for (Channel channel : channels.values()) {
+            for (Subscriber subscriber : channel.subscribers) {
+                long started = subscriber.writeStarted;
+                if (started != 0 && now - started > writeTimeoutNanos) {
+                    log.debug("Closing flag stream: write blocked for more than {} ms", TimeUnit.NANOSECONDS.toMillis(writeTimeoutNanos));
+                    subscriber.close();
+                    // Completing waits for the emitter's write lock, which the blocked write holds: not on this thread
+                    sender.execute(subscriber.emitter::complete);
+                }
+            }
+        }
+    }
+
+    /** Starts building the environment's snapshot event on the snapshot thread; queued in place of the event. */
+    private CompletableFuture<Set<DataWithMediaType>> snapshotEvent(Channel channel) {
+        return CompletableFuture.supplyAsync(() -> snapshotEvent(channel.environment), snapshotBuilder);
+    }
+
+    private Set<DataWithMediaType> snapshotEvent(Environment environment) {
+        SnapshotService.Snapshot snapshot = snapshots.snapshot(environment);
+        return SseEmitter.event()
+                .id(eventId(snapshot.revision()))
+                .name(EVENT_SNAPSHOT)
+                .data(snapshot.json(), MediaType.APPLICATION_JSON)
+                .build();
+    }
+
+    /**
+     * Changes after {@code resumeFrom} in revision order, or null if the buffer does not hold all of them.
+     * Listeners of concurrently committed changes may run out of order, so the buffer is not assumed sorted.
+     * A relay applying an upstream snapshot publishes several changes under one revision.
+     */
+    private List<Change> missedChanges(Channel channel, long resumeFrom) {
+        long revision = revisions.current(channel.environment);
+        if (resumeFrom > revision || resumeFrom < channel.evicted) return null;
+        List<Change> missed = new ArrayList<>();
+        for (Change change : channel.recent) {
+            if (change.revision > resumeFrom && change.revision <= revision) missed.add(change);
+        }
+        missed.sort(Comparator.comparingLong(Change::revision));
+        long distinct = 0;
+        long previous = resumeFrom;
+        for (Change change : missed) {
+            if (change.revision != previous) distinct++;
+            previous = change.revision;
+        }
+        return distinct == revision - resumeFrom ? missed : null;
+    }
+
+    private static String eventId(long revision) {
+        return Long.toString(revision);
+    }
+
+    /** Revision from a {@code Last-Event-ID}, or -1 if absent or not a revision. */
+    private static long parseRevision(String lastEventId) {
+        if (lastEventId == null) return -1;
+        try {
+            return Long.parseLong(lastEventId);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /** Per-environment state; {@code recent} and revision advances are guarded by the channel's monitor. */
+    private static final class Channel {
+        final Environment environment;
+        final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+        final ArrayDeque<Change> recent = new ArrayDeque<>();
+        /** Highest revision dropped from {@code recent}; resuming from before it could miss changes. */
+        long evicted;
+
+        Channel(Environment environment) {
+            this.environment = environment;
+        }
+    }
+
+    private record Change(long revision, Set<DataWithMediaType> event) {}
+
+    /** One connection. Events are sent in queue order by at most one sender thread at a time. */
+    private final class Subscriber {
+        final Channel channel;
+        final SseEmitter emitter;
+        final ConcurrentLinkedQueue<Object> queue = new ConcurrentLinkedQueue<>();
+        final AtomicInteger queued = new AtomicInteger();
+        final AtomicBoolean draining = new AtomicBoolean();
+        volatile boolean closed;
+        /** {@link System#nanoTime} when the write in progress started, 0 between writes. */
+        volatile long writeStarted;
+
+        Subscriber(Channel channel, SseEmitter emitter) {
+            this.channel = channel;
+            this.emitter = emitter;
+        }
+
+        void enqueue(Object item) {
+            if (closed) return;
+            if (queued.incrementAndGet() > maxQueuedEvents) {
+                // Too slow to keep up: drop the connection; it resumes or re-snapshots on reconnect
+                close();
+                emitter.complete();
+                return;
+            }
+            queue.add(item);
+            if (draining.compareAndSet(false, true)) {
+                sender.execute(this::drain);
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private void drain() {
+            do {
+                Object item;
+                while (!closed && (item = queue.peek()) != null) {
+                    if (item instanceof CompletableFuture<?> snapshot && !snapshot.isDone()) {
+                        // Still being built: end this writer and resume on a new one when the snapshot is ready
+                        draining.set(false);
+                        snapshot.whenComplete((event, e) -> resume());
+                        return;
+                    }
+                    queue.poll();
+                    queued.decrementAndGet();
+                    try {
+                        Set<DataWithMediaType> event = item instanceof CompletableFuture<?> snapshot
+                                ? (Set<DataWithMediaType>) snapshot.join()
+                                : (Set<DataWithMediaType>) item;
+                        writeStarted = System.nanoTime() | 1;
+                        emitter.send(event);
+                    } catch (Exception e) {
+                        log.debug("Closing flag stream: {}", e.toString());
+                        close();
+                        emitter.completeWithError(e);
+                    } finally {
+                        writeStarted = 0;
+                    }
+                }
+                draining.set(false);
+            } while (!closed && !queue.isEmpty() && draining.compareAndSet(false, true));
+        }
+
+        private void resume() {
+            if (!closed && !queue.isEmpty() && draining.compareAndSet(false, true)) {
+                sender.execute(this::drain);
+            }
+        }
+
+        void close() {
+            closed = true;
+            channel.subscribers.remove(this);
+        }
+    }
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    record ChangePayload(long revision, FlagChangeType type, String featureKey, SnapshotService.FlagConfig flag, String userId) {}
+}
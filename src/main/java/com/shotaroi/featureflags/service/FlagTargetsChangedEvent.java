@@ -0,0 +1,22 @@
+package com.shotaroi.featureflags.service;
+
+import com.shotaroi.featureflags.domain.FeatureFlag;
+import com.shotaroi.featureflags.domain.FlagChangeType;
+
+import java.util.List;
+
+/**
+ * Published by {@link TargetImportService} for each committed chunk of a bulk import or removal, in place of one
+ * {@link FlagChangedEvent} per user. Listeners consume it after the transaction commits.
+ *
+ * @param changeType    TARGET_ADDED or TARGET_REMOVED
+ * @param flag          the affected flag (managed entity; read it only after commit)
+ * @param userIds       the users actually added or removed, never empty
+ * @param firstRevision revision of {@code userIds.get(0)}; user {@code i} has revision {@code firstRevision + i}
+ */
+public record FlagTargetsChangedEvent(FlagChangeType changeType, FeatureFlag flag, List<String> userIds, long firstRevision) {
+
+    public long lastRevision() {
+        return firstRevision + userIds.size() - 1;
+    }
+}
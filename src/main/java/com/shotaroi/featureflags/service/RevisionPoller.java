@@ -0,0 +1,264 @@
+package com.shotaroi.featureflags.service;
+
+import com.shotaroi.featureflags.domain.Environment;
+import com.shotaroi.featureflags.domain.FeatureFlag;
+import com.shotaroi.featureflags.domain.FlagChange;
+import com.shotaroi.featureflags.domain.FlagChangeType;
+import com.shotaroi.featureflags.repository.ApiKeyRepository;
+import com.shotaroi.featureflags.repository.FeatureFlagRepository;
+import com.shotaroi.featureflags.repository.FlagChangeRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.domain.Limit;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Keeps this node's caches ({@link FlagCache}, {@link TargetIndex}, {@link ApiKeyCache}) coherent with changes
+ * made through other nodes, using nothing but the shared database.
+ * <p>
+ * Every {@code feature-flags.coherence.poll-interval} one query reads the revision of each environment and of
+ * {@code cache_revisions}. An environment whose revision is ahead of the poller's cursor
+ * ({@link FlagRevisions#replayedUpTo}) is caught up from the change feed, a page at a time: changes recorded by other nodes are re-published as {@link FlagChangedEvent}s
+ * (and {@link FlagTargetsChangedEvent}s for runs of target changes), so the caches, the snapshot and the SSE
+ * stream apply them exactly like local admin writes. Changes this node made itself ({@link ChangeFeedService#origin})
+ * are skipped; its listeners already applied them. If the missed changes have been compacted away, the
+ * environment's caches are dropped and reloaded on demand, and stream clients get a fresh snapshot.
+ * <p>
+ * A change of the {@code api_keys} revision evicts every disabled key from {@link ApiKeyCache}.
+ * <p>
+ * The time from a change's commit on another node to its application here is recorded as
+ * {@code feature.flag.coherence.convergence}. Not active in relay mode, which follows its upstream instead.
+ */
+@Component
+@ConditionalOnExpression("${feature-flags.coherence.enabled:true} and !${feature-flags.relay.enabled:false}")
+public class RevisionPoller {
+
+    private static final Logger log = LoggerFactory.getLogger(RevisionPoller.class);
+
+    static final String METRIC_CONVERGENCE = "feature.flag.coherence.convergence";
+    static final String METRIC_CHANGES = "feature.flag.coherence.changes";
+    static final String METRIC_RESYNCS = "feature.flag.coherence.resyncs";
+    static final String API_KEYS = "api_keys";
+
+    // The union takes its column type from the first branch, which is an ENUM on a schema generated by Hibernate
+    static final String REVISIONS = "select cast(environment as varchar(50)), revision, min_revision from environment_revisions "
+            + "union all select cast(name as varchar(50)), revision, 0 from cache_revisions";
+
+    private final JdbcTemplate jdbc;
+    private final FlagChangeRepository changeRepo;
+    private final FeatureFlagRepository flagRepo;
+    private final ApiKeyRepository apiKeyRepo;
+    private final ChangeFeedService changeFeed;
+    private final FlagRevisions revisions;
+    private final FlagCache flagCache;
+    private final TargetIndex targetIndex;
+    private final FlagStreamService stream;
+    private final ApiKeyCache apiKeyCache;
+    private final ApplicationEventPublisher events;
+    private final TransactionTemplate tx;
+    private final int pageSize;
+
+    private final Map<Environment, Timer> convergence = new EnumMap<>(Environment.class);
+    private final Map<Environment, Counter> changes = new EnumMap<>(Environment.class);
+    private final Map<Environment, Counter> resyncs = new EnumMap<>(Environment.class);
+    /** Last seen {@code api_keys} revision; -1 until the first poll. */
+    private long apiKeysRevision = -1;
+    private boolean unreachable;
+
+    public RevisionPoller(
+            JdbcTemplate jdbc,
+            FlagChangeRepository changeRepo,
+            FeatureFlagRepository flagRepo,
+            ApiKeyRepository apiKeyRepo,
+            ChangeFeedService changeFeed,
+            FlagRevisions revisions,
+            FlagCache flagCache,
+            TargetIndex targetIndex,
+            FlagStreamService stream,
+            ApiKeyCache apiKeyCache,
+            ApplicationEventPublisher events,
+            PlatformTransactionManager transactionManager,
+            MeterRegistry meterRegistry,
+            @Value("${feature-flags.coherence.page-size:1000}") int pageSize
+    ) {
+        this.jdbc = jdbc;
+        this.changeRepo = changeRepo;
+        this.flagRepo = flagRepo;
+        this.apiKeyRepo = apiKeyRepo;
+        this.changeFeed = changeFeed;
+        this.revisions = revisions;
+        this.flagCache = flagCache;
+        this.targetIndex = targetIndex;
+        this.stream = stream;
+        this.apiKeyCache = apiKeyCache;
+        this.events = events;
+        this.tx = new TransactionTemplate(transactionManager);
+        this.tx.setReadOnly(true);
+        this.pageSize = pageSize;
+        for (Environment env : Environment.values()) {
+            convergence.put(env, Timer.builder(METRIC_CONVERGENCE)
+                    .description("Time from a change's commit on another node to its application on this node")
+                    .tag("environment", env.name())
+                    .publishPercentileHistogram()
+                    .register(meterRegistry));
+            changes.put(env, Counter.builder(METRIC_CHANGES)
+                    .description("Changes made through other nodes and applied to this node's caches")
+                    .tag("environment", env.name())
+                    .register(meterRegistry));
+            resyncs.put(env, Counter.builder(METRIC_RESYNCS)
+                    .description("Caches dropped because the missed changes had been compacted")
+                    .tag("environment", env.name())
+                    .register(meterRegistry));
+        }
+    }
+
+    @Scheduled(initialDelayString = "${feature-flags.coherence.poll-interval:250ms}",
+            fixedDelayString = "${feature-flags.coherence.poll-interval:250ms}")
+    public void poll() {
+        List<RevisionRow> rows;
+        try {
+            rows = jdbc.query(REVISIONS, (rs, i) -> new RevisionRow(rs.getString(1), rs.getLong(2), rs.getLong(3)));
+        } catch (DataAccessException e) {
+            // Logged once per outage; the caches keep serving what they hold
+            if (!unreachable) log.warn("Revision poll failed, caches are not updated until the database is back: {}", e.toString());
+            unreachable = true;
+            return;
+        }
+        if (unreachable) {
+            log.info("Revision poll succeeded again");
+            unreachable = false;
+        }
+        for (RevisionRow row : rows) {
+            if (API_KEYS.equals(row.name())) {
+                onApiKeysRevision(row.revision());
+            } else {
+                catchUp(Environment.valueOf(row.name()), row.revision(), row.minRevision());
+            }
+        }
+    }
+
+    /**
+     * Applies the changes of other nodes between the poller's cursor and {@code target}. Each page is one
+     * read-only transaction; its events are applied by the listeners when it commits. The cursor, not the caches'
+     * revision, is the starting point: a local change may have advanced the latter past changes not polled yet.
+     */
+    void catchUp(Environment environment, long target, long minRevision) {
+        long from = revisions.replayedUpTo(environment);
+        if (target <= from) return;
+        if (from < minRevision) {
+            resync(environment, target);
+            return;
+        }
+        while (from < target) {
+            long after = from;
+            PolledPage page = tx.execute(status -> {
+                List<FlagChange> changes = changeRepo.findByEnvironmentAndRevisionBetweenOrderByRevision(
+                        environment, after + 1, target, Limit.of(pageSize));
+                if (changes.isEmpty()) return null;
+                return new PolledPage(changes.get(changes.size() - 1).getRevision(), publish(environment, changes));
+            });
+            if (page == null) return;
+            if (page.oldest() != null) {
+                convergence.get(environment).record(Duration.between(page.oldest(), Instant.now()));
+            }
+            from = page.lastRevision();
+            revisions.replayedTo(environment, from);
+        }
+    }
+
+    /** @return commit time of the oldest change published, or null if every change was this node's own */
+    private Instant publish(Environment environment, List<FlagChange> page) {
+        String origin = changeFeed.origin();
+        List<FlagChange> remote = page.stream().filter(c -> !origin.equals(c.getOrigin())).toList();
+        if (remote.isEmpty()) return null;
+
+        Set<String> keys = remote.stream().map(FlagChange::getFeatureKey).collect(Collectors.toSet());
+        Map<String, FeatureFlag> flags = flagRepo.findAllByEnvironmentAndFeatureKeyIn(environment, keys).stream()
+                .collect(Collectors.toMap(FeatureFlag::getFeatureKey, Function.identity()));
+
+        Instant oldest = remote.get(0).getCreatedAt();
+        int i = 0;
+        while (i < remote.size()) {
+            FlagChange change = remote.get(i);
+            FeatureFlag flag = flags.get(change.getFeatureKey());
+            oldest = change.getCreatedAt().isBefore(oldest) ? change.getCreatedAt() : oldest;
+            if (flag == null) {
+                // Flags are never deleted; only a database reset gets here
+                log.warn("Change {} of {} refers to unknown flag {}", change.getRevision(), environment, change.getFeatureKey());
+                i++;
+                continue;
+            }
+            if (change.getChangeType() == FlagChangeType.FLAG_CREATED || change.getChangeType() == FlagChangeType.FLAG_UPDATED) {
+                events.publishEvent(new FlagChangedEvent(change.getChangeType(), flag, null, change.getRevision()));
+                i++;
+                continue;
+            }
+            // A run of target changes to the same flag at consecutive revisions (e.g. a bulk import chunk) is one event
+            List<String> userIds = new ArrayList<>();
+            int j = i;
+            while (j < remote.size() && isSameRun(change, remote.get(j), j - i)) {
+                userIds.add(remote.get(j).getUserId());
+                j++;
+            }
+            if (userIds.size() == 1) {
+                events.publishEvent(new FlagChangedEvent(change.getChangeType(), flag, change.getUserId(), change.getRevision()));
+            } else {
+                events.publishEvent(new FlagTargetsChangedEvent(change.getChangeType(), flag, userIds, change.getRevision()));
+            }
+            i = j;
+        }
+        changes.get(environment).increment(remote.size());
+        return oldest;
+    }
+
+    private static boolean isSameRun(FlagChange first, FlagChange candidate, int offset) {
+        return candidate.getChangeType() == first.getChangeType()
+                && candidate.getFeatureKey().equals(first.getFeatureKey())
+                && candidate.getRevision() == first.getRevision() + offset;
+    }
+
+    /** The missed changes were compacted: reload the environment from the database instead of replaying them. */
+    private void resync(Environment environment, long target) {
+        log.warn("Changes of {} after revision {} were compacted; reloading its caches at revision {}",
+                environment, revisions.replayedUpTo(environment), target);
+        Set<Long> flagIds = flagCache.invalidate(environment);
+        targetIndex.invalidate(flagIds);
+        stream.resync(environment, target);
+        revisions.replayedTo(environment, target);
+        resyncs.get(environment).increment();
+    }
+
+    private void onApiKeysRevision(long revision) {
+        if (revision == apiKeysRevision) return;
+        // Also on the first poll: a key may have been cached here just before another node revoked it
+        apiKeyCache.evict(new HashSet<>(apiKeyRepo.findDisabledIds()));
+        apiKeysRevision = revision;
+    }
+
+    private record RevisionRow(String name, long revision, long minRevision) {}
+
+    /** Last revision of a polled page, and the commit time of its oldest change from another node (or null). */
+    private record PolledPage(long lastRevision, Instant oldest) {}
+}
@@ -0,0 +1,185 @@
+package com.shotaroi.featureflags.service;
+
+import com.shotaroi.featureflags.domain.Environment;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Binary file with the evaluation config of one environment: flags, their allowlists and the enabled API keys,
+ * at a revision. Written by {@link SnapshotFileStore} and memory-mapped when it is read back at startup.
+ * <p>
+ * Layout (big-endian; {@code str} is an unsigned 16-bit byte length followed by UTF-8):
+ * <pre>
+ * int    magic "FFSN"
+ * short  format version
+ * str    environment
+ * long   revision
+ * long   written at (epoch millis)
+ * int    flag count, then per flag:
+ *          long id, str featureKey, byte enabled, int rolloutPercent, int bucketingVersion,
+ *          long updatedAt seconds ({@link Long#MIN_VALUE} if unknown), int updatedAt nanos,
+ *          int n, n × long numeric user IDs (ascending), int m, m × str other user IDs
+ * int    API key count, then per key: long id, str name, str environment ("" for all), str SHA-256 key hash (hex)
+ * int    CRC-32 of everything before it
+ * </pre>
+ * Numeric user IDs take 8 bytes, like in {@link SortedLongSet}. A reader rejects other magic numbers, other
+ * format versions and checksum mismatches, so a torn or foreign file is never applied.
+ */
+final class SnapshotFile {
+
+    static final int MAGIC = 0x4646534E;
+    static final short FORMAT_VERSION = 1;
+
+    private static final long NO_TIMESTAMP = Long.MIN_VALUE;
+
+    private SnapshotFile() {
+    }
+
+    /**
+     * Writes {@code contents} to {@code file} through a temporary file and an atomic rename, so a crash while
+     * writing leaves the previous file in place.
+     */
+    static void write(Path file, Contents contents) throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (OutputStream os = Files.newOutputStream(tmp)) {
+            write(os, contents);
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    static void write(OutputStream os, Contents contents) throws IOException {
+        var checked = new CheckedOutputStream(new BufferedOutputStream(os, 64 * 1024), new CRC32());
+        var out = new DataOutputStream(checked);
+        out.writeInt(MAGIC);
+        out.writeShort(FORMAT_VERSION);
+        writeString(out, contents.environment().name());
+        out.writeLong(contents.revision());
+        out.writeLong(contents.writtenAt().toEpochMilli());
+        out.writeInt(contents.flags().size());
+        for (Flag entry : contents.flags()) {
+            CachedFlag flag = entry.flag();
+            out.writeLong(flag.id());
+            writeString(out, flag.featureKey());
+            out.writeBoolean(flag.enabled());
+            out.writeInt(flag.rolloutPercent());
+            out.writeInt(flag.bucketingVersion());
+            out.writeLong(flag.updatedAt() == null ? NO_TIMESTAMP : flag.updatedAt().getEpochSecond());
+            out.writeInt(flag.updatedAt() == null ? 0 : flag.updatedAt().getNano());
+            out.writeInt(entry.numericTargets().length);
+            for (long id : entry.numericTargets()) out.writeLong(id);
+            out.writeInt(entry.otherTargets().size());
+            for (String userId : entry.otherTargets()) writeString(out, userId);
+        }
+        out.writeInt(contents.apiKeys().size());
+        for (Key key : contents.apiKeys()) {
+            out.writeLong(key.id());
+            writeString(out, key.name());
+            writeString(out, key.environment() == null ? "" : key.environment().name());
+            writeString(out, key.keyHash());
+        }
+        out.flush();
+        int crc = (int) checked.getChecksum().getValue();
+        new DataOutputStream(os).writeInt(crc);
+        os.flush();
+    }
+
+    /** Maps the file read-only and decodes it; the mapping is only used during this call. */
+    static Contents read(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return read(buffer);
+        }
+    }
+
+    static Contents read(ByteBuffer buffer) throws IOException {
+        if (buffer.remaining() < 10) throw new IOException("Snapshot file truncated");
+        int end = buffer.limit() - 4;
+        var crc = new CRC32();
+        crc.update(buffer.duplicate().limit(end));
+        if ((int) crc.getValue() != buffer.getInt(end)) throw new IOException("Snapshot file checksum mismatch");
+        buffer = buffer.duplicate().limit(end);
+
+        if (buffer.getInt() != MAGIC) throw new IOException("Not a snapshot file");
+        short version = buffer.getShort();
+        if (version != FORMAT_VERSION) throw new IOException("Unsupported snapshot file version " + version);
+        try {
+            Environment environment = Environment.valueOf(readString(buffer));
+            long revision = buffer.getLong();
+            Instant writtenAt = Instant.ofEpochMilli(buffer.getLong());
+
+            int flagCount = buffer.getInt();
+            List<Flag> flags = new ArrayList<>(flagCount);
+            for (int i = 0; i < flagCount; i++) {
+                long id = buffer.getLong();
+                String featureKey = readString(buffer);
+                boolean enabled = buffer.get() != 0;
+                int rolloutPercent = buffer.getInt();
+                int bucketingVersion = buffer.getInt();
+                long seconds = buffer.getLong();
+                int nanos = buffer.getInt();
+                Instant updatedAt = seconds == NO_TIMESTAMP ? null : Instant.ofEpochSecond(seconds, nanos);
+                long[] numeric = new long[buffer.getInt()];
+                buffer.asLongBuffer().get(numeric);
+                buffer.position(buffer.position() + numeric.length * Long.BYTES);
+                int otherCount = buffer.getInt();
+                List<String> other = new ArrayList<>(otherCount);
+                for (int j = 0; j < otherCount; j++) other.add(readString(buffer));
+                flags.add(new Flag(new CachedFlag(id, featureKey, environment, enabled, rolloutPercent, bucketingVersion, updatedAt),
+                        numeric, other));
+            }
+
+            int keyCount = buffer.getInt();
+            List<Key> keys = new ArrayList<>(keyCount);
+            for (int i = 0; i < keyCount; i++) {
+                long id = buffer.getLong();
+                String name = readString(buffer);
+                String keyEnvironment = readString(buffer);
+                keys.add(new Key(id, name, keyEnvironment.isEmpty() ? null : Environment.valueOf(keyEnvironment), readString(buffer)));
+            }
+            return new Contents(environment, revision, writtenAt, flags, keys);
+        } catch (BufferUnderflowException | IllegalArgumentException | NegativeArraySizeException e) {
+            throw new IOException("Malformed snapshot file", e);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > 0xFFFF) throw new IOException("String too long for snapshot file: " + bytes.length + " bytes");
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = Short.toUnsignedInt(buffer.getShort());
+        if (length > buffer.remaining()) throw new BufferUnderflowException();
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /** Everything in one file. */
+    record Contents(Environment environment, long revision, Instant writtenAt, List<Flag> flags, List<Key> apiKeys) {}
+
+    /** A flag and its allowlist, numeric IDs (as in {@link SortedLongSet#parseId}) separate from the others. */
+    record Flag(CachedFlag flag, long[] numericTargets, List<String> otherTargets) {}
+
+    /** An enabled API key valid for the environment; {@code environment} is null for a key valid in all of them. */
+    record Key(long id, String name, Environment environment, String keyHash) {}
+}
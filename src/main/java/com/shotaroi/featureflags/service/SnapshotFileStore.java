@@ -0,0 +1,194 @@
+package com.shotaroi.featureflags.service;
+
+import com.shotaroi.featureflags.domain.ApiKey;
+import com.shotaroi.featureflags.domain.Environment;
+import com.shotaroi.featureflags.repository.ApiKeyRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.TransactionException;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+/**
+ * Keeps a {@link SnapshotFile} per environment on local disk ({@code feature-flags.snapshot-file.dir}) and restores
+ * the caches from it at startup.
+ * <p>
+ * <b>Restore</b> runs when this bean is created, before the application serves requests: flags, allowlists and
+ * API keys go into {@link FlagCache}, {@link TargetIndex} and {@link ApiKeyCache}, so the first evaluations need
+ * no database query. The file is used if its revision is the database's, or if it is older and
+ * {@link RevisionPoller} will replay the changes since, or if the database cannot be reached (last known good).
+ * <p>
+ * <b>Writes</b> happen every {@code write-interval} if the environment's revision or the set of enabled API keys
+ * changed since the last write. The file is built from the caches, which loads every allowlist of the environment
+ * into memory once (as {@link SnapshotService} does), and replaced atomically. Nothing is written while the
+ * database is unreachable.
+ */
+@Component
+@ConditionalOnProperty(name = "feature-flags.snapshot-file.enabled", havingValue = "true")
+public class SnapshotFileStore {
+
+    private static final Logger log = LoggerFactory.getLogger(SnapshotFileStore.class);
+
+    private final FlagCache flagCache;
+    private final TargetIndex targetIndex;
+    private final FlagRevisions revisions;
+    private final ApiKeyCache apiKeyCache;
+    private final ApiKeyRepository apiKeyRepo;
+    private final Path dir;
+    private final boolean replaysChanges;
+
+    private final Map<Environment, Long> writtenRevisions = new EnumMap<>(Environment.class);
+    private final Map<Environment, Set<Long>> writtenKeyIds = new EnumMap<>(Environment.class);
+
+    public SnapshotFileStore(
+            FlagCache flagCache,
+            TargetIndex targetIndex,
+            FlagRevisions revisions,
+            ApiKeyCache apiKeyCache,
+            ApiKeyRepository apiKeyRepo,
+            ObjectProvider<RevisionPoller> revisionPoller,
+            @Value("${feature-flags.snapshot-file.dir:./data/snapshots}") Path dir
+    ) {
+        this.flagCache = flagCache;
+        this.targetIndex = targetIndex;
+        this.revisions = revisions;
+        this.apiKeyCache = apiKeyCache;
+        this.apiKeyRepo = apiKeyRepo;
+        this.dir = dir;
+        this.replaysChanges = revisionPoller.getIfAvailable() != null;
+        try {
+            Files.createDirectories(dir);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot create snapshot file directory " + dir, e);
+        }
+        restore();
+    }
+
+    /** File of the environment's snapshot. */
+    Path file(Environment environment) {
+        return dir.resolve(environment.name() + ".flags");
+    }
+
+    private void restore() {
+        // FlagRevisions read the committed revisions just before, unless the database was unreachable
+        boolean committed = revisions.committedAtStartup();
+        if (!committed) {
+            log.warn("Database unreachable at startup, serving the snapshot files as last known good");
+        }
+        for (Environment environment : Environment.values()) {
+            Path file = file(environment);
+            if (!Files.exists(file)) continue;
+            SnapshotFile.Contents contents;
+            try {
+                contents = SnapshotFile.read(file);
+            } catch (IOException e) {
+                log.warn("Ignoring snapshot file {}: {}", file, e.getMessage());
+                continue;
+            }
+            if (contents.environment() != environment) {
+                log.warn("Ignoring snapshot file {}: it holds {}", file, contents.environment());
+                continue;
+            }
+            if (committed) {
+                long current = revisions.current(environment);
+                // Newer than the database (e.g. the database was restored from a backup), or stale with nothing to replay the gap
+                if (contents.revision() > current || (contents.revision() < current && !replaysChanges)) {
+                    log.info("Not restoring {} from {}: file revision {}, database revision {}",
+                            environment, file, contents.revision(), current);
+                    continue;
+                }
+            }
+            apply(contents);
+            writtenRevisions.put(environment, contents.revision());
+            writtenKeyIds.put(environment, contents.apiKeys().stream().map(SnapshotFile.Key::id).collect(Collectors.toSet()));
+            log.info("Restored {} flags of {} at revision {} from {} (written {})",
+                    contents.flags().size(), environment, contents.revision(), file, contents.writtenAt());
+        }
+    }
+
+    private void apply(SnapshotFile.Contents contents) {
+        List<CachedFlag> flags = new ArrayList<>(contents.flags().size());
+        for (SnapshotFile.Flag flag : contents.flags()) {
+            targetIndex.restore(flag.flag(), flag.numericTargets(), flag.otherTargets());
+            flags.add(flag.flag());
+        }
+        flagCache.restore(contents.environment(), flags);
+        revisions.restore(contents.environment(), contents.revision());
+
+        Map<String, ValidatedKey> keys = new HashMap<>();
+        for (SnapshotFile.Key key : contents.apiKeys()) {
+            keys.put(key.keyHash(), new ValidatedKey(key.id(), key.name(), key.environment()));
+        }
+        apiKeyCache.restore(keys);
+    }
+
+    @Scheduled(initialDelayString = "${feature-flags.snapshot-file.write-interval:10s}",
+            fixedDelayString = "${feature-flags.snapshot-file.write-interval:10s}")
+    public void writeChanged() {
+        List<SnapshotFile.Key> keys;
+        try {
+            keys = apiKeyRepo.findAllByEnabledTrue().stream()
+                    .sorted(Comparator.comparing(ApiKey::getId))
+                    .map(k -> new SnapshotFile.Key(k.getId(), k.getName(), k.getEnvironment(), k.getKeyHash()))
+                    .toList();
+        } catch (DataAccessException | TransactionException e) {
+            log.debug("Database unreachable, not writing snapshot files: {}", e.toString());
+            return;
+        }
+        Set<Long> keyIds = keys.stream().map(SnapshotFile.Key::id).collect(Collectors.toSet());
+        for (Environment environment : Environment.values()) {
+            try {
+                write(environment, keys, keyIds);
+            } catch (IOException | RuntimeException e) {
+                log.warn("Could not write snapshot file for {}: {}", environment, e.toString());
+            }
+        }
+    }
+
+    /** Writes the environment's file unless neither its revision nor the enabled keys changed since the last write. */
+    void write(Environment environment, List<SnapshotFile.Key> keys, Set<Long> keyIds) throws IOException {
+        // Read the revision before the caches: the file includes at least every change up to it
+        long revision = revisions.current(environment);
+        Long written = writtenRevisions.get(environment);
+        if (written != null && written == revision && keyIds.equals(writtenKeyIds.get(environment))) return;
+
+        List<SnapshotFile.Flag> flags = new ArrayList<>();
+        flagCache.all(environment).stream()
+                .sorted(Comparator.comparing(CachedFlag::featureKey))
+                .forEach(flag -> flags.add(entry(flag)));
+        SnapshotFile.write(file(environment), new SnapshotFile.Contents(environment, revision, Instant.now(), flags, keys));
+        writtenRevisions.put(environment, revision);
+        writtenKeyIds.put(environment, keyIds);
+        log.debug("Wrote snapshot file of {} at revision {} ({} flags)", environment, revision, flags.size());
+    }
+
+    private SnapshotFile.Flag entry(CachedFlag flag) {
+        LongStream.Builder numeric = LongStream.builder();
+        List<String> others = new ArrayList<>();
+        targetIndex.forEachTarget(flag, userId -> {
+            long id = SortedLongSet.parseId(userId);
+            if (id >= 0) numeric.add(id);
+            else others.add(userId);
+        });
+        return new SnapshotFile.Flag(flag, numeric.build().sorted().toArray(), others);
+    }
+}
@@ -0,0 +1,144 @@
+package com.shotaroi.featureflags.service;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.shotaroi.featureflags.domain.Environment;
+import org.springframework.stereotype.Service;
+import tools.jackson.databind.ObjectMapper;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Full evaluation config of an environment (flags, rollout, bucketing version, targets) at a revision.
+ * <p>
+ * The JSON, its gzip form and the binary form are built once per applied change, on the first request after it,
+ * and then served as-is to every poller. The ETags are hashes of the JSON and of the binary form (both include
+ * the revision).
+ */
+@Service
+public class SnapshotService {
+
+    private final FlagCache flagCache;
+    private final TargetIndex targetIndex;
+    private final FlagRevisions revisions;
+    private final ObjectMapper objectMapper;
+
+    /** Not monitors: a rebuild may load flags and targets from the database, which must not pin a virtual thread. */
+    private final Map<Environment, ReentrantLock> locks = new EnumMap<>(Environment.class);
+    private final Map<Environment, Built> current = new EnumMap<>(Environment.class);
+
+    public SnapshotService(FlagCache flagCache, TargetIndex targetIndex, FlagRevisions revisions, ObjectMapper objectMapper) {
+        this.flagCache = flagCache;
+        this.targetIndex = targetIndex;
+        this.revisions = revisions;
+        this.objectMapper = objectMapper;
+        for (Environment env : Environment.values()) {
+            locks.put(env, new ReentrantLock());
+        }
+    }
+
+    /**
+     * Snapshot with every change applied to the caches so far. Concurrent callers after a change wait for a
+     * single rebuild.
+     * <p>
+     * Reuse is keyed on {@link FlagRevisions#applied}, not on the revision: listeners of concurrent commits may run
+     * out of order, so the revision can reach r + 1 before change r is in the caches. A snapshot built then is
+     * replaced as soon as change r is applied.
+     */
+    public Snapshot snapshot(Environment environment) {
+        long applied = revisions.applied(environment);
+        Built built = cached(environment);
+        if (built != null && built.applied() == applied) return built.snapshot();
+        ReentrantLock lock = locks.get(environment);
+        lock.lock();
+        try {
+            built = cached(environment);
+            if (built != null && built.applied() == revisions.applied(environment)) return built.snapshot();
+            // Read the counters before the caches: the built state includes at least every change counted
+            applied = revisions.applied(environment);
+            built = new Built(build(environment, revisions.current(environment)), applied);
+            synchronized (current) {
+                current.put(environment, built);
+            }
+            return built.snapshot();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Built cached(Environment environment) {
+        synchronized (current) {
+            return current.get(environment);
+        }
+    }
+
+    private Snapshot build(Environment environment, long revision) {
+        List<FlagConfig> flags = new ArrayList<>();
+        flagCache.all(environment).stream()
+                .sorted(Comparator.comparing(CachedFlag::featureKey))
+                .forEach(flag -> {
+                    List<String> targets = new ArrayList<>();
+                    targetIndex.forEachTarget(flag, targets::add);
+                    flags.add(FlagConfig.of(flag, targets));
+                });
+        byte[] json = objectMapper.writeValueAsBytes(new SnapshotPayload(environment, revision, flags));
+        byte[] binary = BinarySnapshot.encode(environment, revision, flags);
+        return new Snapshot(environment, revision, etag(json), json, gzip(json), etag(binary), binary);
+    }
+
+    private static String etag(byte[] body) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(body);
+            return "\"" + HexFormat.of().formatHex(hash, 0, 16) + "\"";
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 unavailable", e);
+        }
+    }
+
+    private static byte[] gzip(byte[] json) {
+        var out = new ByteArrayOutputStream(json.length / 4 + 64);
+        try (var gz = new GZIPOutputStream(out)) {
+            gz.write(json);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Serialized config at {@code revision}: JSON, its gzip form and the {@link BinarySnapshot} encoding, each with
+     * its own ETag. The arrays are shared and must not be modified.
+     */
+    public record Snapshot(Environment environment, long revision, String etag, byte[] json, byte[] gzip,
+                           String binaryEtag, byte[] binary) {
+
+        /** ETag of {@link #gzip}: a different representation of the same JSON, so a different strong validator. */
+        public String gzipEtag() {
+            return etag.substring(0, etag.length() - 1) + "-gzip\"";
+        }
+    }
+
+    /** One flag as sent to clients; {@code targets} is omitted in change events. */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public record FlagConfig(String featureKey, boolean enabled, int rolloutPercent, int bucketingVersion, List<String> targets) {
+        public static FlagConfig of(CachedFlag flag, List<String> targets) {
+            return new FlagConfig(flag.featureKey(), flag.enabled(), flag.rolloutPercent(), flag.bucketingVersion(), targets);
+        }
+    }
+
+    /** A snapshot and the number of applied changes it was built after. */
+    private record Built(Snapshot snapshot, long applied) {}
+
+    record SnapshotPayload(Environment environment, long revision, List<FlagConfig> flags) {}
+}
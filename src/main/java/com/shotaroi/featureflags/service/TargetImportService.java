@@ -0,0 +1,278 @@
+package com.shotaroi.featureflags.service;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.shotaroi.featureflags.domain.Environment;
+import com.shotaroi.featureflags.domain.FeatureFlag;
+import com.shotaroi.featureflags.domain.FlagChangeType;
+import com.shotaroi.featureflags.repository.FeatureFlagRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import tools.jackson.core.JacksonException;
+import tools.jackson.databind.MappingIterator;
+import tools.jackson.databind.ObjectMapper;
+import tools.jackson.databind.ObjectReader;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+/**
+ * Adds or removes a large list of users on a flag's allowlist in one request (beta lists, migrations).
+ * <p>
+ * The user IDs are read from the request body as a stream and processed in chunks of
+ * {@code feature-flags.targets.import-chunk-size} distinct IDs. Each chunk is one transaction: one JDBC batch
+ * of {@code insert ... on conflict do nothing} (or {@code delete}), whose per-row update counts tell which users
+ * were actually changed, one batch of change-feed rows for those users, and one {@link FlagTargetsChangedEvent}.
+ * Memory is bounded by the chunk size, not by the size of the list. Users already present (or, for removal,
+ * not present) and repeats within a chunk are counted as skipped; repeats across chunks hit the conflict clause.
+ * <p>
+ * The whole request is summarized in one audit entry, written in its own transaction after the last chunk (or after
+ * a failure, if chunks had committed). Committed chunks stay committed if a later chunk fails; since an import is
+ * idempotent, the same list can simply be sent again. Rows whose update count the driver does not report
+ * ({@link Statement#SUCCESS_NO_INFO}) are counted as {@code unknown}, not as changed.
+ */
+@Service
+@ConditionalOnProperty(name = "feature-flags.evaluation-only.enabled", havingValue = "false", matchIfMissing = true)
+public class TargetImportService {
+
+    /** Same limit as {@code feature_targets.user_id}. */
+    static final int MAX_USER_ID_LENGTH = 255;
+
+    private static final String INSERT = "insert into feature_targets (feature_flag_id, user_id) values (?, ?) on conflict do nothing";
+    private static final String DELETE = "delete from feature_targets where feature_flag_id = ? and user_id = ?";
+
+    private final FeatureFlagRepository flagRepo;
+    private final ChangeFeedService changeFeed;
+    private final AuditLogWriter auditLog;
+    private final ApplicationEventPublisher events;
+    private final JdbcTemplate jdbc;
+    private final TransactionTemplate tx;
+    private final ObjectReader lineReader;
+    private final int chunkSize;
+
+    public TargetImportService(
+            FeatureFlagRepository flagRepo,
+            ChangeFeedService changeFeed,
+            AuditLogWriter auditLog,
+            ApplicationEventPublisher events,
+            JdbcTemplate jdbc,
+            TransactionTemplate tx,
+            ObjectMapper objectMapper,
+            @Value("${feature-flags.targets.import-chunk-size:5000}") int chunkSize
+    ) {
+        this.flagRepo = flagRepo;
+        this.changeFeed = changeFeed;
+        this.auditLog = auditLog;
+        this.events = events;
+        this.jdbc = jdbc;
+        this.tx = tx;
+        this.lineReader = objectMapper.readerFor(TargetLine.class);
+        this.chunkSize = chunkSize;
+    }
+
+    /** Adds every user in {@code in} to the allowlist. */
+    public BulkTargetResult importTargets(String featureKey, Environment environment, Format format, InputStream in, String changedBy) {
+        return apply(featureKey, environment, FlagChangeType.TARGET_ADDED, format, in, changedBy);
+    }
+
+    /** Removes every user in {@code in} from the allowlist. */
+    public BulkTargetResult removeTargets(String featureKey, Environment environment, Format format, InputStream in, String changedBy) {
+        return apply(featureKey, environment, FlagChangeType.TARGET_REMOVED, format, in, changedBy);
+    }
+
+    private BulkTargetResult apply(String featureKey, Environment environment, FlagChangeType changeType,
+                                   Format format, InputStream in, String changedBy) {
+        Long flagId = findFlag(featureKey, environment).getId();
+        long received = 0;
+        long changed = 0;
+        long unknown = 0;
+        try (UserIds userIds = format == Format.NDJSON ? new NdjsonUserIds(lineReader, in) : new CsvUserIds(in)) {
+            var chunk = new LinkedHashSet<String>();
+            String userId;
+            do {
+                userId = userIds.next();
+                if (userId != null) {
+                    if (userId.length() > MAX_USER_ID_LENGTH) {
+                        throw new IllegalArgumentException("userId longer than " + MAX_USER_ID_LENGTH + " characters: "
+                                + userId.substring(0, 32) + "...");
+                    }
+                    received++;
+                    chunk.add(userId);
+                }
+                if (chunk.size() == chunkSize || (userId == null && !chunk.isEmpty())) {
+                    List<String> batch = new ArrayList<>(chunk);
+                    ChunkResult result = tx.execute(status -> applyChunk(featureKey, environment, flagId, changeType, batch));
+                    changed += result.changed();
+                    unknown += result.unknown();
+                    chunk.clear();
+                }
+            } while (userId != null);
+        } catch (RuntimeException e) {
+            if (changed > 0 || unknown > 0) {
+                try {
+                    audit(featureKey, environment, changeType, changedBy, received, changed, unknown, false);
+                } catch (RuntimeException auditFailure) {
+                    e.addSuppressed(auditFailure);
+                }
+            }
+            throw e;
+        }
+        audit(featureKey, environment, changeType, changedBy, received, changed, unknown, true);
+        Long unknownCount = unknown > 0 ? unknown : null;
+        return changeType == FlagChangeType.TARGET_ADDED
+                ? new BulkTargetResult(received, changed, null, received - changed - unknown, unknownCount)
+                : new BulkTargetResult(received, null, changed, received - changed - unknown, unknownCount);
+    }
+
+    private void audit(String featureKey, Environment environment, FlagChangeType changeType, String changedBy,
+                       long received, long changed, long unknown, boolean completed) {
+        String verb = changeType == FlagChangeType.TARGET_ADDED ? "inserted" : "removed";
+        String details = "bulk: received=" + received + ", " + verb + "=" + changed + ", skipped=" + (received - changed - unknown)
+                + (unknown > 0 ? ", unknown=" + unknown : "") + (completed ? "" : ", incomplete");
+        tx.executeWithoutResult(status -> auditLog.append(featureKey, environment, changeType, changedBy, details));
+    }
+
+    /** Users of one chunk that were added or removed, and those the driver reported no count for. */
+    private record ChunkResult(int changed, int unknown) {}
+
+    private ChunkResult applyChunk(String featureKey, Environment environment, Long flagId, FlagChangeType changeType, List<String> userIds) {
+        int[] counts = jdbc.batchUpdate(changeType == FlagChangeType.TARGET_ADDED ? INSERT : DELETE, new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                ps.setLong(1, flagId);
+                ps.setString(2, userIds.get(i));
+            }
+
+            @Override
+            public int getBatchSize() {
+                return userIds.size();
+            }
+        });
+        List<String> changed = new ArrayList<>();
+        int unknown = 0;
+        for (int i = 0; i < counts.length; i++) {
+            // SUCCESS_NO_INFO (e.g. PostgreSQL with reWriteBatchedInserts): the user may or may not have changed.
+            // It is published like a change, since re-applying is harmless for every listener, but counted apart.
+            if (counts[i] == Statement.SUCCESS_NO_INFO) unknown++;
+            if (counts[i] > 0 || counts[i] == Statement.SUCCESS_NO_INFO) changed.add(userIds.get(i));
+        }
+        if (changed.isEmpty()) return new ChunkResult(0, 0);
+
+        long firstRevision = changeFeed.recordAll(environment, featureKey, changeType, changed);
+        events.publishEvent(new FlagTargetsChangedEvent(changeType, findFlag(featureKey, environment), changed, firstRevision));
+        return new ChunkResult(changed.size() - unknown, unknown);
+    }
+
+    private FeatureFlag findFlag(String featureKey, Environment environment) {
+        return flagRepo.findByFeatureKeyAndEnvironment(featureKey, environment)
+                .orElseThrow(() -> new IllegalArgumentException("Not found: " + featureKey + " in " + environment));
+    }
+
+    /** Request body formats. */
+    public enum Format {
+        /** One userId per line, in the first column; an optional {@code userId} header line is skipped. */
+        CSV,
+        /** One {@code {"userId":"..."}} object per line. */
+        NDJSON
+    }
+
+    /**
+     * Response of the bulk endpoints: {@code inserted} for an import, {@code removed} for a removal.
+     * {@code skipped} counts users that were already in the requested state, including repeats in the input.
+     * {@code unknown} (only present if non-zero) counts users the driver reported no update count for: they are in
+     * the requested state, but whether this request changed them is not known.
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public record BulkTargetResult(long received, Long inserted, Long removed, long skipped, Long unknown) {}
+
+    record TargetLine(String userId) {}
+
+    /** Non-blank, trimmed user IDs in input order; {@code next()} returns null at the end. */
+    private interface UserIds extends AutoCloseable {
+        String next();
+
+        @Override
+        void close();
+    }
+
+    private static final class CsvUserIds implements UserIds {
+        private final BufferedReader reader;
+        private boolean first = true;
+
+        CsvUserIds(InputStream in) {
+            this.reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        }
+
+        @Override
+        public String next() {
+            try {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    int comma = line.indexOf(',');
+                    String userId = (comma >= 0 ? line.substring(0, comma) : line).strip();
+                    if (userId.length() >= 2 && userId.startsWith("\"") && userId.endsWith("\"")) {
+                        userId = userId.substring(1, userId.length() - 1).replace("\"\"", "\"").strip();
+                    }
+                    boolean header = first && userId.equalsIgnoreCase("userId");
+                    first = false;
+                    if (!userId.isEmpty() && !header) return userId;
+                }
+                return null;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public void close() {
+            try {
+                reader.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    private static final class NdjsonUserIds implements UserIds {
+        private final MappingIterator<TargetLine> lines;
+
+        NdjsonUserIds(ObjectReader reader, InputStream in) {
+            this.lines = reader.readValues(in);
+        }
+
+        @Override
+        public String next() {
+            while (lines.hasNextValue()) {
+                TargetLine line;
+                try {
+                    line = lines.nextValue();
+                } catch (JacksonException e) {
+                    throw new IllegalArgumentException("Line " + lines.currentLocation().getLineNr() + ": " + e.getOriginalMessage());
+                }
+                // Like a blank userId, a line without one is skipped
+                String userId = line == null || line.userId() == null ? "" : line.userId().strip();
+                if (!userId.isEmpty()) return userId;
+            }
+            return null;
+        }
+
+        @Override
+        public void close() {
+            lines.close();
+        }
+    }
+}
@@ -0,0 +1,348 @@
+package com.shotaroi.featureflags.service;
+
+import com.shotaroi.featureflags.domain.FlagChangeType;
+import com.shotaroi.featureflags.repository.FeatureTargetRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.annotation.Order;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Memory-resident allowlist (feature_targets) per flag, replacing the per-evaluation database lookup.
+ * <p>
+ * A flag's targets are loaded once, on the first evaluation with a userId, and then kept in sync by the
+ * committed TARGET_ADDED / TARGET_REMOVED events (one per user, or one per chunk of a bulk import). Membership checks are lock-free. A flag without targets
+ * is answered from an empty set without hashing the userId.
+ * <p>
+ * Concurrent first reads of the same flag share one paged load, outside any map lock, so it blocks neither other
+ * flags nor the commit listeners. Changes committed while a load runs are queued on it and applied before the
+ * loaded targets are published.
+ * <p>
+ * Canonical numeric user IDs are stored in a {@link SortedLongSet} (8 bytes each) unless
+ * {@code feature-flags.targets.compact-numeric-ids} is false; everything else stays in a string set.
+ * <p>
+ * Each flag tracks an estimate of the heap it holds, exposed as the {@code feature.flag.targets.index.bytes}
+ * gauge (see docs/CACHING.md for the per-entry model).
+ */
+@Component
+public class TargetIndex {
+
+    private static final String METRIC_INDEX_BYTES = "feature.flag.targets.index.bytes";
+    private static final String METRIC_INDEX_SIZE = "feature.flag.targets.index.size";
+    private static final int LOAD_PAGE_SIZE = 10_000;
+
+    private final FeatureTargetRepository targetRepo;
+    private final MeterRegistry meterRegistry;
+    private final boolean compactNumericIds;
+    private final ConcurrentHashMap<Long, FlagTargets> byFlagId = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Long, Load> loads = new ConcurrentHashMap<>();
+
+    public TargetIndex(
+            FeatureTargetRepository targetRepo,
+            MeterRegistry meterRegistry,
+            @Value("${feature-flags.targets.compact-numeric-ids:true}") boolean compactNumericIds
+    ) {
+        this.targetRepo = targetRepo;
+        this.meterRegistry = meterRegistry;
+        this.compactNumericIds = compactNumericIds;
+    }
+
+    /**
+     * True if the user is on the flag's allowlist. Loads the flag's targets on first use.
+     */
+    public boolean isTargeted(CachedFlag flag, String userId) {
+        FlagTargets targets = targetsOf(flag);
+        return !targets.isEmpty() && targets.contains(userId);
+    }
+
+    /**
+     * Visits every user on the flag's allowlist (numeric IDs in ascending order, then the others).
+     * Loads the flag's targets on first use.
+     */
+    public void forEachTarget(CachedFlag flag, Consumer<String> action) {
+        targetsOf(flag).forEach(action);
+    }
+
+    /** Loads the flag's targets now if they are not in memory yet, so later lookups do not query the database. */
+    public void preload(CachedFlag flag) {
+        targetsOf(flag);
+    }
+
+    /**
+     * Estimated heap held for the flag's targets, or 0 if they have not been loaded.
+     */
+    public long estimatedBytes(Long flagId) {
+        FlagTargets targets = byFlagId.get(flagId);
+        return targets == null ? 0 : targets.estimatedBytes();
+    }
+
+    /**
+     * Number of targets held in memory for the flag, or 0 if they have not been loaded.
+     */
+    public int size(Long flagId) {
+        FlagTargets targets = byFlagId.get(flagId);
+        return targets == null ? 0 : targets.size();
+    }
+
+    /** Runs before {@link FlagStreamService}, so a change is in memory before it gets a stream revision. */
+    @Order(0)
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT)
+    public void onFlagChanged(FlagChangedEvent event) {
+        // Only flags already in memory (or being loaded) need updating; others load the committed state on first use
+        if (event.changeType() == FlagChangeType.TARGET_ADDED) {
+            apply(event.flag().getId(), targets -> targets.add(event.userId()));
+        } else if (event.changeType() == FlagChangeType.TARGET_REMOVED) {
+            apply(event.flag().getId(), targets -> targets.remove(event.userId()));
+        }
+    }
+
+    /** Bulk counterpart of {@link #onFlagChanged}: applies a committed chunk in one update of the flag's entry. */
+    @Order(0)
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT)
+    public void onTargetsChanged(FlagTargetsChangedEvent event) {
+        boolean added = event.changeType() == FlagChangeType.TARGET_ADDED;
+        apply(event.flag().getId(), targets -> {
+            for (String userId : event.userIds()) {
+                if (added) targets.add(userId);
+                else targets.remove(userId);
+            }
+        });
+    }
+
+    /**
+     * Sets the flag's allowlist without a database query, e.g. from a {@link SnapshotFile} at startup.
+     * {@code numeric} holds canonical numeric IDs (the array is taken over), {@code others} the remaining user IDs.
+     */
+    public void restore(CachedFlag flag, long[] numeric, List<String> others) {
+        byFlagId.put(flag.id(), targets(numeric, numeric.length, others));
+        registerGauges(flag);
+    }
+
+    /** Drops the flags' allowlists; they are loaded again on next use. */
+    public void invalidate(Collection<Long> flagIds) {
+        for (Long flagId : flagIds) {
+            Load running = loads.remove(flagId);
+            if (running != null) running.discard();
+            byFlagId.remove(flagId);
+        }
+    }
+
+    /** Applies a committed change to a loaded flag, or queues it on the flag's running load. */
+    private void apply(Long flagId, Consumer<FlagTargets> change) {
+        Load running = loads.get(flagId);
+        if (running != null && running.defer(change)) return;
+        byFlagId.computeIfPresent(flagId, (id, targets) -> {
+            change.accept(targets);
+            return targets;
+        });
+    }
+
+    private FlagTargets targetsOf(CachedFlag flag) {
+        FlagTargets targets = byFlagId.get(flag.id());
+        if (targets != null) return targets;
+        return load(flag);
+    }
+
+    /**
+     * Single-flight load: the first caller pages through the database, concurrent callers for the same flag wait
+     * for its result instead of issuing their own queries.
+     */
+    private FlagTargets load(CachedFlag flag) {
+        var mine = new Load();
+        Load running = loads.putIfAbsent(flag.id(), mine);
+        if (running != null) return join(running.result);
+        try {
+            // A load that finished between the first get and putIfAbsent has already published the flag
+            FlagTargets targets = byFlagId.get(flag.id());
+            if (targets == null) {
+                targets = mine.publish(flag.id(), query(flag));
+                registerGauges(flag);
+            }
+            mine.result.complete(targets);
+            return targets;
+        } catch (RuntimeException e) {
+            mine.result.completeExceptionally(e);
+            throw e;
+        } finally {
+            loads.remove(flag.id(), mine);
+        }
+    }
+
+    private FlagTargets query(CachedFlag flag) {
+        long[] numeric = new long[1024];
+        int numericCount = 0;
+        var strings = new ArrayList<String>();
+
+        String after = "";
+        List<String> page;
+        do {
+            page = targetRepo.findUserIdPage(flag.id(), after, Limit.of(LOAD_PAGE_SIZE));
+            for (String userId : page) {
+                long id = compactNumericIds ? SortedLongSet.parseId(userId) : -1;
+                if (id >= 0) {
+                    if (numericCount == numeric.length) numeric = Arrays.copyOf(numeric, numericCount * 2);
+                    numeric[numericCount++] = id;
+                } else {
+                    strings.add(userId);
+                }
+            }
+            if (!page.isEmpty()) after = page.get(page.size() - 1);
+        } while (page.size() == LOAD_PAGE_SIZE);
+
+        return targets(numeric, numericCount, strings);
+    }
+
+    /** {@code numeric} holds canonical numeric IDs ({@link SortedLongSet#parseId}), {@code strings} everything else. */
+    private FlagTargets targets(long[] numeric, int numericCount, List<String> strings) {
+        FlagTargets targets;
+        if (compactNumericIds) {
+            targets = new FlagTargets(SortedLongSet.of(numeric, numericCount));
+        } else {
+            targets = new FlagTargets(null);
+            for (int i = 0; i < numericCount; i++) targets.add(Long.toString(numeric[i]));
+        }
+        strings.forEach(targets::add);
+        return targets;
+    }
+
+    private static FlagTargets join(CompletableFuture<FlagTargets> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException re) throw re;
+            throw e;
+        }
+    }
+
+    /**
+     * A running load of one flag. Changes committed meanwhile are queued and applied to the loaded targets before
+     * they are published; re-applying a change the query already saw is a no-op.
+     */
+    private final class Load {
+
+        final CompletableFuture<FlagTargets> result = new CompletableFuture<>();
+        private final List<Consumer<FlagTargets>> pending = new ArrayList<>();
+        private boolean done;
+        private boolean discarded;
+
+        /** Queues a change; false once the targets are published, then the change goes to the map. */
+        synchronized boolean defer(Consumer<FlagTargets> change) {
+            if (done) return false;
+            pending.add(change);
+            return true;
+        }
+
+        /** Stops the load from publishing, e.g. after {@link #invalidate}; its callers still get the loaded targets. */
+        synchronized void discard() {
+            discarded = true;
+        }
+
+        synchronized FlagTargets publish(Long flagId, FlagTargets loaded) {
+            pending.forEach(change -> change.accept(loaded));
+            pending.clear();
+            done = true;
+            if (!discarded) byFlagId.put(flagId, loaded);
+            return loaded;
+        }
+    }
+
+    /** Gauges read through the index (held strongly by this bean), so they stay valid across reloads. */
+    private void registerGauges(CachedFlag flag) {
+        Long flagId = flag.id();
+        Gauge.builder(METRIC_INDEX_BYTES, this, index -> index.estimatedBytes(flagId))
+                .tag("feature_key", flag.featureKey())
+                .tag("environment", flag.environment().name())
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder(METRIC_INDEX_SIZE, this, index -> index.size(flagId))
+                .tag("feature_key", flag.featureKey())
+                .tag("environment", flag.environment().name())
+                .register(meterRegistry);
+    }
+
+    /**
+     * Targets of one flag plus a running heap estimate, maintained on every add/remove so reporting is O(1).
+     */
+    static final class FlagTargets {
+
+        /** ConcurrentHashMap.Node (32) + share of the table (8) + String object (24). */
+        static final long BYTES_PER_ENTRY = 64;
+        /** Empty ConcurrentHashMap + KeySetView + this holder. */
+        static final long BASE_BYTES = 128;
+
+        private final Set<String> userIds = ConcurrentHashMap.newKeySet();
+        private final AtomicLong stringBytes = new AtomicLong(BASE_BYTES);
+        /** Canonical numeric IDs; null when compact storage is disabled. */
+        private final SortedLongSet numericIds;
+
+        FlagTargets(SortedLongSet numericIds) {
+            this.numericIds = numericIds;
+        }
+
+        boolean isEmpty() {
+            return userIds.isEmpty() && (numericIds == null || numericIds.size() == 0);
+        }
+
+        boolean contains(String userId) {
+            if (numericIds != null) {
+                long id = SortedLongSet.parseId(userId);
+                if (id >= 0) return numericIds.contains(id);
+            }
+            return userIds.contains(userId);
+        }
+
+        int size() {
+            return userIds.size() + (numericIds == null ? 0 : numericIds.size());
+        }
+
+        long estimatedBytes() {
+            return stringBytes.get() + (numericIds == null ? 0 : numericIds.estimatedBytes());
+        }
+
+        void forEach(Consumer<String> action) {
+            if (numericIds != null) numericIds.forEach(id -> action.accept(Long.toString(id)));
+            userIds.forEach(action);
+        }
+
+        FlagTargets add(String userId) {
+            long id = numericIds == null ? -1 : SortedLongSet.parseId(userId);
+            if (id >= 0) {
+                numericIds.add(id);
+            } else if (userIds.add(userId)) {
+                stringBytes.addAndGet(entryBytes(userId));
+            }
+            return this;
+        }
+
+        FlagTargets remove(String userId) {
+            long id = numericIds == null ? -1 : SortedLongSet.parseId(userId);
+            if (id >= 0) {
+                numericIds.remove(id);
+            } else if (userIds.remove(userId)) {
+                stringBytes.addAndGet(-entryBytes(userId));
+            }
+            return this;
+        }
+
+        /** Entry overhead plus the String's backing byte[] (16-byte header, padded to 8; UTF-16 if not Latin-1). */
+        static long entryBytes(String userId) {
+            long chars = userId.chars().allMatch(c -> c < 256) ? userId.length() : 2L * userId.length();
+            return BYTES_PER_ENTRY + ((16 + chars + 7) & ~7L);
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package com.shotaroi.featureflags.service;
+
+import com.shotaroi.featureflags.domain.ApiKey;
+import com.shotaroi.featureflags.domain.Environment;
+
+/**
+ * Immutable, detached view of an enabled {@link ApiKey}, as returned by {@link ApiKeyService#validate}.
+ */
+public record ValidatedKey(Long id, String name, Environment environment) {
+
+    static ValidatedKey of(ApiKey apiKey) {
+        return new ValidatedKey(apiKey.getId(), apiKey.getName(), apiKey.getEnvironment());
+    }
+}
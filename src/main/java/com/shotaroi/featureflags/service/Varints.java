@@ -0,0 +1,58 @@
+package com.shotaroi.featureflags.service;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Unsigned LEB128 varints and varint-length-prefixed UTF-8 strings, shared by the binary wire formats
+ * ({@link BinaryBatchResults}, {@link BinarySnapshot}).
+ */
+final class Varints {
+
+    private Varints() {
+    }
+
+    static void write(OutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    static long read(InputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.read();
+            if (b < 0) throw new EOFException("Truncated varint");
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return value;
+        }
+        throw new IOException("Varint longer than 64 bits");
+    }
+
+    /** Reads a varint that must fit a non-negative int, e.g. a count or a length. */
+    static int readCount(InputStream in) throws IOException {
+        long value = read(in);
+        if (value > Integer.MAX_VALUE) throw new IOException("Count out of range: " + value);
+        return (int) value;
+    }
+
+    static void writeString(OutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        write(out, bytes.length);
+        out.write(bytes);
+    }
+
+    /** Reads a string written by {@link #writeString}; feature keys and user IDs are short, so longer ones are rejected. */
+    static String readString(InputStream in) throws IOException {
+        int length = readCount(in);
+        if (length > 0xFFFF) throw new IOException("String of " + length + " bytes");
+        byte[] bytes = in.readNBytes(length);
+        if (bytes.length < length) throw new EOFException("Truncated string");
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
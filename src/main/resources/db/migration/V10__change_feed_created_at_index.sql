@@ -0,0 +1,4 @@
+-- Compaction looks up the last revision created before the retention cutoff while it holds the environment's
+-- environment_revisions row lock. With this index that is a range read of the expired rows instead of a scan
+-- of the environment's whole feed.
+CREATE INDEX idx_flag_changes_env_created ON flag_changes (environment, created_at, revision);
@@ -0,0 +1,4 @@
+-- Record which rollout hash each flag uses so the algorithm can change without reshuffling users.
+-- Existing rows get version 1 (SHA-256), which is what they were rolled out with.
+ALTER TABLE feature_flags
+    ADD COLUMN bucketing_version INT NOT NULL DEFAULT 1;
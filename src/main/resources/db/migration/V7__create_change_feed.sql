@@ -0,0 +1,24 @@
+-- Revision per environment, incremented in the same transaction as every flag/target change.
+-- min_revision: changes up to and including it have been compacted away.
+CREATE TABLE environment_revisions (
+    environment VARCHAR(50) PRIMARY KEY,
+    revision BIGINT NOT NULL,
+    min_revision BIGINT NOT NULL
+);
+
+INSERT INTO environment_revisions (environment, revision, min_revision) VALUES ('DEV', 0, 0);
+INSERT INTO environment_revisions (environment, revision, min_revision) VALUES ('STAGING', 0, 0);
+INSERT INTO environment_revisions (environment, revision, min_revision) VALUES ('PROD', 0, 0);
+
+-- One row per change, read by GET /api/flags/changes?sinceRevision=
+CREATE TABLE flag_changes (
+    id BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    environment VARCHAR(50) NOT NULL,
+    revision BIGINT NOT NULL,
+    feature_key VARCHAR(255) NOT NULL,
+    change_type VARCHAR(50) NOT NULL,
+    user_id VARCHAR(255),
+    created_at TIMESTAMP WITH TIME ZONE NOT NULL
+);
+
+CREATE UNIQUE INDEX idx_flag_changes_env_revision ON flag_changes (environment, revision);
@@ -0,0 +1,5 @@
+-- Keyset pagination of one flag's history: GET /api/admin/flags/{featureKey}/history?cursor=
+-- reads (feature_key, environment) in (created_at desc, id desc) order straight from this index.
+-- It also covers every query the old (feature_key, environment) index served.
+CREATE INDEX idx_change_log_feature_env_created ON flag_change_logs (feature_key, environment, created_at, id);
+DROP INDEX idx_change_log_feature_env;
@@ -0,0 +1,12 @@
+-- Node that assigned the revision (random per process), so a node's revision poller can skip the changes
+-- its own caches already applied after commit. Null for changes replicated by a relay.
+ALTER TABLE flag_changes ADD COLUMN origin VARCHAR(64);
+
+-- Revision per cached entity type without a change feed of its own; bumped in the transaction of every
+-- change that must evict other nodes' cache entries (e.g. an API key revoke).
+CREATE TABLE cache_revisions (
+    name VARCHAR(50) PRIMARY KEY,
+    revision BIGINT NOT NULL
+);
+
+INSERT INTO cache_revisions (name, revision) VALUES ('api_keys', 0);
@@ -0,0 +1,66 @@
+package com.shotaroi.featureflags;
+
+import com.shotaroi.featureflags.domain.Environment;
+import com.shotaroi.featureflags.domain.FlagChangeLog;
+import com.shotaroi.featureflags.domain.FlagChangeType;
+import com.shotaroi.featureflags.repository.FlagChangeLogRepository;
+import com.shotaroi.featureflags.service.AuditLogWriter;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Sort;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+@TestPropertySource(properties = {
+        "spring.datasource.url=jdbc:h2:mem:auditdb;MODE=PostgreSQL;DB_CLOSE_DELAY=-1",
+        "feature-flags.audit.batch-size=2",
+})
+class AuditLogIntegrationTest {
+
+    @Autowired
+    AuditLogWriter auditLog;
+
+    @Autowired
+    FlagChangeLogRepository changeLogRepo;
+
+    @Autowired
+    TransactionTemplate tx;
+
+    @Test
+    void entries_areWrittenOnCommit_inOrder() {
+        tx.executeWithoutResult(status -> {
+            for (int i = 0; i < 5; i++) {
+                auditLog.append("committed", Environment.DEV, FlagChangeType.TARGET_ADDED, "admin", "userId=u" + i);
+            }
+        });
+
+        List<FlagChangeLog> logs = changeLogRepo.findAll(Sort.by("id")).stream()
+                .filter(l -> l.getFeatureKey().equals("committed"))
+                .toList();
+        assertEquals(5, logs.size());
+        for (int i = 0; i < 5; i++) {
+            assertEquals("userId=u" + i, logs.get(i).getDetails());
+            assertEquals("admin", logs.get(i).getChangedBy());
+            assertNotNull(logs.get(i).getCreatedAt());
+        }
+    }
+
+    @Test
+    void rollback_discardsEntries_evenAfterAnIntermediateBatch() {
+        assertThrows(IllegalStateException.class, () -> tx.executeWithoutResult(status -> {
+            // batch-size=2: the first two are already inserted when the transaction fails
+            for (int i = 0; i < 3; i++) {
+                auditLog.append("rolled_back", Environment.DEV, FlagChangeType.TARGET_ADDED, null, "userId=u" + i);
+            }
+            throw new IllegalStateException("change failed");
+        }));
+
+        assertTrue(changeLogRepo.findAll().stream().noneMatch(l -> l.getFeatureKey().equals("rolled_back")));
+    }
+}
@@ -0,0 +1,83 @@
+package com.shotaroi.featureflags;
+
+import com.shotaroi.featureflags.domain.Environment;
+import com.shotaroi.featureflags.domain.FlagChangeLog;
+import com.shotaroi.featureflags.domain.FlagChangeType;
+import com.shotaroi.featureflags.repository.FlagChangeLogRepository;
+import com.shotaroi.featureflags.service.AuditLogWriter;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Audit rows per second: one JPA {@code save} per row (the previous {@code FeatureAdminService.logChange}) vs.
+ * {@link AuditLogWriter}, for a bulk transaction and for one-row transactions.
+ * Not a unit test; run with:
+ * <pre>
+ * mvn -q test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=com.shotaroi.featureflags.AuditWriteBenchmark -Dexec.args="20000"
+ * </pre>
+ * Arguments after the row count are passed to the application, e.g. {@code --spring.datasource.url=...}.
+ */
+public class AuditWriteBenchmark {
+
+    public static void main(String[] args) {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 20_000;
+        String[] appArgs = new String[Math.max(0, args.length - 1) + 3];
+        System.arraycopy(args, Math.min(1, args.length), appArgs, 0, Math.max(0, args.length - 1));
+        appArgs[appArgs.length - 3] = "--server.port=0";
+        appArgs[appArgs.length - 2] = "--logging.level.org.hibernate.SQL=WARN";
+        appArgs[appArgs.length - 1] = "--spring.main.banner-mode=off";
+
+        try (ConfigurableApplicationContext app = new SpringApplicationBuilder(FeatureFlagApplication.class).run(appArgs)) {
+            var repo = app.getBean(FlagChangeLogRepository.class);
+            var writer = app.getBean(AuditLogWriter.class);
+            var tx = app.getBean(TransactionTemplate.class);
+
+            System.out.printf("%-32s %12s%n", "", "rows/s");
+            for (int round = 0; round < 3; round++) { // first rounds are warm-up
+                boolean print = round == 2;
+                run("jpa save, one transaction", rows, print, () -> tx.executeWithoutResult(s -> {
+                    for (int i = 0; i < rows; i++) repo.save(entity(i));
+                }));
+                run("batch writer, one transaction", rows, print, () -> tx.executeWithoutResult(s -> {
+                    for (int i = 0; i < rows; i++) append(writer, i);
+                }));
+                int single = rows / 10;
+                run("jpa save, 1 row/transaction", single, print, () -> {
+                    for (int i = 0; i < single; i++) {
+                        int n = i;
+                        tx.executeWithoutResult(s -> repo.save(entity(n)));
+                    }
+                });
+                run("batch writer, 1 row/transaction", single, print, () -> {
+                    for (int i = 0; i < single; i++) {
+                        int n = i;
+                        tx.executeWithoutResult(s -> append(writer, n));
+                    }
+                });
+            }
+        }
+    }
+
+    private static void run(String label, int rows, boolean print, Runnable work) {
+        long start = System.nanoTime();
+        work.run();
+        double seconds = (System.nanoTime() - start) / 1e9;
+        if (print) System.out.printf("%-32s %12.0f%n", label, rows / seconds);
+    }
+
+    private static FlagChangeLog entity(int i) {
+        FlagChangeLog log = new FlagChangeLog();
+        log.setFeatureKey("bench");
+        log.setEnvironment(Environment.DEV);
+        log.setChangeType(FlagChangeType.TARGET_ADDED);
+        log.setChangedBy("admin");
+        log.setDetails("userId=" + i);
+        return log;
+    }
+
+    private static void append(AuditLogWriter writer, int i) {
+        writer.append("bench", Environment.DEV, FlagChangeType.TARGET_ADDED, "admin", "userId=" + i);
+    }
+}
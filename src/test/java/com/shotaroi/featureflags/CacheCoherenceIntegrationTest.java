@@ -0,0 +1,190 @@
+package com.shotaroi.featureflags;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.test.context.TestPropertySource;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.function.Predicate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Two nodes on one shared database: this test's context is node A, and a second application context (node B)
+ * is started against the same in-memory H2 database. Changes are made through either node and must reach the
+ * other node's caches. B polls less often than A, so B's own writes can overtake A's changes it has not polled yet.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@TestPropertySource(properties = {
+        "spring.datasource.url=jdbc:h2:mem:coherencedb;MODE=PostgreSQL;DB_CLOSE_DELAY=-1",
+        "feature-flags.coherence.poll-interval=100ms",
+})
+class CacheCoherenceIntegrationTest {
+
+    private static final String ADMIN = "Basic " + Base64.getEncoder().encodeToString("admin:admin123".getBytes(StandardCharsets.UTF_8));
+
+    @LocalServerPort
+    int portA;
+
+    @Autowired
+    MeterRegistry metersA;
+
+    final HttpClient http = HttpClient.newHttpClient();
+    final JsonMapper json = JsonMapper.builder().build();
+
+    ConfigurableApplicationContext nodeB;
+    int portB;
+    String apiKey;
+
+    @BeforeEach
+    void startSecondNode() throws Exception {
+        nodeB = new SpringApplicationBuilder(FeatureFlagApplication.class).run(
+                "--server.port=0",
+                "--spring.datasource.url=jdbc:h2:mem:coherencedb;MODE=PostgreSQL;DB_CLOSE_DELAY=-1",
+                "--feature-flags.coherence.poll-interval=1s");
+        portB = Integer.parseInt(nodeB.getEnvironment().getProperty("local.server.port"));
+        apiKey = json.readTree(send(portA, "POST", "/api/admin/api-keys",
+                "{\"name\":\"coherence\",\"environment\":\"PROD\"}").body()).get("rawKey").asString();
+    }
+
+    @AfterEach
+    void stopSecondNode() {
+        if (nodeB != null) nodeB.close();
+    }
+
+    @Test
+    void changesThroughOneNode_reachTheOtherNodesCaches() throws Exception {
+        assertEquals(201, send(portA, "POST", "/api/admin/flags",
+                "{\"featureKey\":\"shared\",\"environment\":\"PROD\",\"enabled\":true,\"rolloutPercent\":0}").statusCode());
+        // B loads the flag and its (empty) allowlist into memory
+        awaitEvaluation("vip", body -> body.contains("ROLLOUT_0"));
+
+        send(portA, "POST", "/api/admin/flags/shared/targets?environment=PROD", "{\"userId\":\"vip\"}");
+        awaitEvaluation("vip", body -> body.contains("TARGETED_USER"));
+
+        // A bulk chunk arrives as one run of consecutive target changes
+        assertEquals(200, send(portA, "POST", "/api/admin/flags/shared/targets/import?environment=PROD",
+                "b1\nb2\nb3\n", "text/csv").statusCode());
+        awaitEvaluation("b3", body -> body.contains("TARGETED_USER"));
+        assertTrue(evaluate(portB, "b1").contains("TARGETED_USER"));
+
+        send(portA, "PATCH", "/api/admin/flags/shared?environment=PROD", "{\"enabled\":false,\"rolloutPercent\":0}");
+        awaitEvaluation("vip", body -> body.contains("FLAG_DISABLED"));
+
+        assertEquals(snapshot(portA), snapshot(portB));
+
+        Timer convergence = nodeB.getBean(MeterRegistry.class)
+                .get("feature.flag.coherence.convergence").tag("environment", "PROD").timer();
+        assertTrue(convergence.count() >= 3, "samples: " + convergence.count());
+        // A only skips its own changes
+        assertEquals(0, metersA.get("feature.flag.coherence.changes").tag("environment", "PROD").counter().count());
+    }
+
+    @Test
+    void interleavedWritesOnBothNodes_missNoChange() throws Exception {
+        for (String key : new String[]{"interleaved", "local"}) {
+            assertEquals(201, send(portA, "POST", "/api/admin/flags",
+                    "{\"featureKey\":\"" + key + "\",\"environment\":\"PROD\",\"enabled\":true,\"rolloutPercent\":0}").statusCode());
+        }
+        awaitEvaluation("interleaved", "u1", body -> body.contains("ROLLOUT_0"));
+
+        for (int i = 1; i <= 5; i++) {
+            // Revision r through A (not polled by B yet), then r + 1 through B
+            send(portA, "PATCH", "/api/admin/flags/interleaved?environment=PROD", "{\"enabled\":true,\"rolloutPercent\":" + (i % 2 == 0 ? 0 : 100) + "}");
+            assertEquals(200, send(portB, "PATCH", "/api/admin/flags/local?environment=PROD",
+                    "{\"enabled\":true,\"rolloutPercent\":" + i + "}").statusCode());
+        }
+        awaitEvaluation("interleaved", "u1", body -> body.contains("ROLLOUT_100"));
+
+        // Both nodes end up with the same config, whichever node each change went through
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!snapshot(portA).equals(snapshot(portB))) {
+            if (System.currentTimeMillis() > deadline) fail("Snapshots differ:\n" + snapshot(portA) + "\n" + snapshot(portB));
+            Thread.sleep(50);
+        }
+    }
+
+    @Test
+    void revokeThroughOneNode_evictsTheKeyOnTheOtherNode() throws Exception {
+        send(portA, "POST", "/api/admin/flags",
+                "{\"featureKey\":\"keyed\",\"environment\":\"PROD\",\"enabled\":true,\"rolloutPercent\":100}");
+        // Cached on B for the TTL (30s) unless B hears about the revoke
+        assertEquals(200, evaluateStatus(portB, "keyed"));
+
+        long id = json.readTree(send(portA, "GET", "/api/admin/api-keys", null).body()).findValues("id").stream()
+                .mapToLong(n -> n.asLong()).max().orElseThrow();
+        assertEquals(204, send(portA, "DELETE", "/api/admin/api-keys/" + id, null).statusCode());
+
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (evaluateStatus(portB, "keyed") != 401) {
+            if (System.currentTimeMillis() > deadline) fail("Revoked key still accepted by node B");
+            Thread.sleep(50);
+        }
+    }
+
+    private void awaitEvaluation(String userId, Predicate<String> condition) throws Exception {
+        awaitEvaluation("shared", userId, condition);
+    }
+
+    private void awaitEvaluation(String featureKey, String userId, Predicate<String> condition) throws Exception {
+        long deadline = System.currentTimeMillis() + 10_000;
+        String body;
+        while (!condition.test(body = evaluate(portB, featureKey, userId))) {
+            if (System.currentTimeMillis() > deadline) fail("Node B did not converge: " + body);
+            Thread.sleep(50);
+        }
+    }
+
+    private String evaluate(int port, String userId) throws Exception {
+        return evaluate(port, "shared", userId);
+    }
+
+    private String evaluate(int port, String featureKey, String userId) throws Exception {
+        var request = HttpRequest.newBuilder(URI.create("http://localhost:" + port
+                        + "/api/flags/" + featureKey + "/evaluate?environment=PROD&userId=" + userId))
+                .header("X-API-Key", apiKey).build();
+        var response = http.send(request, HttpResponse.BodyHandlers.ofString());
+        assertEquals(200, response.statusCode(), response.body());
+        return response.body();
+    }
+
+    private int evaluateStatus(int port, String featureKey) throws Exception {
+        var request = HttpRequest.newBuilder(URI.create("http://localhost:" + port
+                        + "/api/flags/" + featureKey + "/evaluate?environment=PROD&userId=u1"))
+                .header("X-API-Key", apiKey).build();
+        return http.send(request, HttpResponse.BodyHandlers.ofString()).statusCode();
+    }
+
+    private String snapshot(int port) throws Exception {
+        var request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/api/flags/snapshot?environment=PROD"))
+                .header("X-API-Key", apiKey).build();
+        return http.send(request, HttpResponse.BodyHandlers.ofString()).body();
+    }
+
+    private HttpResponse<String> send(int port, String method, String path, String body) throws Exception {
+        return send(port, method, path, body, "application/json");
+    }
+
+    private HttpResponse<String> send(int port, String method, String path, String body, String contentType) throws Exception {
+        var request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + path))
+                .method(method, body == null ? HttpRequest.BodyPublishers.noBody() : HttpRequest.BodyPublishers.ofString(body))
+                .header("Content-Type", contentType)
+                .header("Authorization", ADMIN)
+                .build();
+        return http.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+}
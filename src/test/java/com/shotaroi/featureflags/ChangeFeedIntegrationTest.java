@@ -0,0 +1,120 @@
+package com.shotaroi.featureflags;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.shotaroi.featureflags.service.ChangeFeedService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.webmvc.test.autoconfigure.AutoConfigureMockMvc;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.user;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+@TestPropertySource(properties = {
+        "spring.datasource.url=jdbc:h2:mem:changesdb;MODE=PostgreSQL;DB_CLOSE_DELAY=-1",
+        "feature-flags.changes.page-size=3",
+})
+class ChangeFeedIntegrationTest {
+
+    @Autowired
+    MockMvc mvc;
+
+    @Autowired
+    ChangeFeedService changeFeed;
+
+    String apiKey;
+
+    @BeforeEach
+    void createApiKey() throws Exception {
+        String body = mvc.perform(post("/api/admin/api-keys")
+                        .with(user("admin").roles("ADMIN"))
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"name\":\"changes-test\",\"environment\":\"DEV\"}"))
+                .andExpect(status().isCreated())
+                .andReturn().getResponse().getContentAsString();
+        apiKey = new ObjectMapper().readTree(body).get("rawKey").asText();
+    }
+
+    @Test
+    void changesSince_returnsNetEffectInPages_andResetsAfterCompaction() throws Exception {
+        long start = changes(0).get("revision").asLong();
+
+        mvc.perform(post("/api/admin/flags")
+                        .with(user("admin").roles("ADMIN"))
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"featureKey\":\"fed\",\"environment\":\"DEV\",\"enabled\":true,\"rolloutPercent\":5}"))
+                .andExpect(status().isCreated());
+        addTarget("fed", "alice");
+        addTarget("fed", "bob");
+        mvc.perform(delete("/api/admin/flags/fed/targets/alice")
+                        .with(user("admin").roles("ADMIN"))
+                        .param("environment", "DEV"))
+                .andExpect(status().isOk());
+
+        // Page size is 3: created, +alice, +bob
+        JsonNode page = changes(start);
+        assertFalse(page.get("resetRequired").asBoolean());
+        assertTrue(page.get("hasMore").asBoolean());
+        assertEquals(start + 3, page.get("revision").asLong());
+        assertEquals("fed", page.at("/flags/0/featureKey").asText());
+        assertEquals(5, page.at("/flags/0/rolloutPercent").asInt());
+        assertEquals(2, page.get("targets").size());
+
+        // Rest: -alice
+        JsonNode rest = changes(page.get("revision").asLong());
+        assertFalse(rest.get("hasMore").asBoolean());
+        assertEquals(start + 4, rest.get("revision").asLong());
+        assertEquals(0, rest.get("flags").size());
+        assertEquals("alice", rest.at("/targets/0/userId").asText());
+        assertEquals("TARGET_REMOVED", rest.at("/targets/0/type").asText());
+
+        // Up to date: nothing
+        JsonNode none = changes(start + 4);
+        assertEquals(start + 4, none.get("revision").asLong());
+        assertEquals(0, none.get("targets").size());
+
+        changeFeed.compactBefore(Instant.now().plusSeconds(1));
+
+        JsonNode reset = changes(start);
+        assertTrue(reset.get("resetRequired").asBoolean());
+        assertEquals(start + 4, reset.get("revision").asLong());
+        assertFalse(changes(start + 4).get("resetRequired").asBoolean());
+        assertTrue(changes(start + 5).get("resetRequired").asBoolean());
+    }
+
+    @Test
+    void changes_requiresApiKey() throws Exception {
+        mvc.perform(get("/api/flags/changes").param("environment", "DEV").param("sinceRevision", "0"))
+                .andExpect(status().isUnauthorized());
+    }
+
+    private JsonNode changes(long sinceRevision) throws Exception {
+        String body = mvc.perform(get("/api/flags/changes")
+                        .header("X-API-Key", apiKey)
+                        .param("environment", "DEV")
+                        .param("sinceRevision", Long.toString(sinceRevision)))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        return new ObjectMapper().readTree(body);
+    }
+
+    private void addTarget(String featureKey, String userId) throws Exception {
+        mvc.perform(post("/api/admin/flags/" + featureKey + "/targets")
+                        .with(user("admin").roles("ADMIN"))
+                        .param("environment", "DEV")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"userId\":\"" + userId + "\"}"))
+                .andExpect(status().isCreated());
+    }
+}
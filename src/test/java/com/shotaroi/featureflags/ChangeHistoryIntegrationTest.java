@@ -0,0 +1,152 @@
+package com.shotaroi.featureflags;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.shotaroi.featureflags.service.ChangeHistoryService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.webmvc.test.autoconfigure.AutoConfigureMockMvc;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.user;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+@TestPropertySource(properties = {
+        "spring.datasource.url=jdbc:h2:mem:historydb;MODE=PostgreSQL;DB_CLOSE_DELAY=-1",
+})
+class ChangeHistoryIntegrationTest {
+
+    private static final Instant T0 = Instant.parse("2024-03-01T10:00:00Z");
+
+    @Autowired
+    MockMvc mvc;
+
+    @Autowired
+    JdbcTemplate jdbc;
+
+    final ObjectMapper json = new ObjectMapper();
+
+    @Test
+    void flagHistory_pagesByCursor_withoutGapsOrDuplicates() throws Exception {
+        // Three entries share a timestamp, and the first page ends between them: ties are broken by id
+        List<Long> inserted = new ArrayList<>();
+        for (int second : new int[]{0, 1, 2, 2, 2, 5, 6}) {
+            inserted.add(insert("paged", "DEV", T0.plusSeconds(second)));
+        }
+        insert("paged", "PROD", T0);
+
+        List<Long> seen = new ArrayList<>();
+        String cursor = null;
+        int pages = 0;
+        do {
+            MockHttpServletRequestBuilder request = get("/api/admin/flags/paged/history")
+                    .param("environment", "DEV").param("limit", "3");
+            if (cursor != null) request.param("cursor", cursor);
+            MvcResult result = mvc.perform(request.with(user("admin").roles("ADMIN")))
+                    .andExpect(status().isOk())
+                    .andReturn();
+            for (JsonNode entry : json.readTree(result.getResponse().getContentAsString())) {
+                assertEquals("DEV", entry.get("environment").asText());
+                seen.add(entry.get("id").asLong());
+            }
+            cursor = result.getResponse().getHeader("X-Next-Cursor");
+            pages++;
+        } while (cursor != null);
+
+        assertEquals(3, pages);
+        assertEquals(inserted.reversed(), seen);
+    }
+
+    @Test
+    void flagHistory_withoutLimitOrCursor_returnsEverything() throws Exception {
+        List<Long> inserted = new ArrayList<>();
+        for (int second = 0; second < ChangeHistoryService.DEFAULT_LIMIT + 5; second++) {
+            inserted.add(insert("unpaged", "DEV", T0.plusSeconds(second)));
+        }
+
+        MvcResult result = mvc.perform(get("/api/admin/flags/unpaged/history").with(user("admin").roles("ADMIN"))
+                        .param("environment", "DEV"))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist("X-Next-Cursor"))
+                .andReturn();
+
+        List<Long> seen = new ArrayList<>();
+        for (JsonNode entry : json.readTree(result.getResponse().getContentAsString())) seen.add(entry.get("id").asLong());
+        assertEquals(inserted.reversed(), seen);
+    }
+
+    @Test
+    void crossFlagHistory_filtersByTimeRange() throws Exception {
+        Instant base = T0.plusSeconds(3600);
+        insert("range_a", "PROD", base.minusSeconds(1));
+        long a = insert("range_a", "PROD", base);
+        long b = insert("range_b", "STAGING", base.plusSeconds(1));
+        long c = insert("range_c", "PROD", base.plusSeconds(2));
+        insert("range_b", "PROD", base.plusSeconds(10));
+
+        mvc.perform(get("/api/admin/history").with(user("admin").roles("ADMIN"))
+                        .param("from", base.toString()).param("to", base.plusSeconds(10).toString()))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(3))
+                .andExpect(jsonPath("$[0].id").value(c))
+                .andExpect(jsonPath("$[1].id").value(b))
+                .andExpect(jsonPath("$[2].id").value(a))
+                .andExpect(header().doesNotExist("X-Next-Cursor"));
+
+        mvc.perform(get("/api/admin/history").with(user("admin").roles("ADMIN"))
+                        .param("environment", "PROD")
+                        .param("from", base.toString()).param("to", base.plusSeconds(10).toString()))
+                .andExpect(jsonPath("$.length()").value(2))
+                .andExpect(jsonPath("$[0].featureKey").value("range_c"));
+    }
+
+    @Test
+    void export_streamsNdjson_oldestFirst() throws Exception {
+        Instant base = T0.plusSeconds(7200);
+        for (int i = 0; i < 2500; i++) insert("exported", "PROD", base.plusMillis(i));
+        insert("not_exported", "PROD", base);
+
+        MvcResult result = mvc.perform(get("/api/admin/history/export").with(user("admin").roles("ADMIN"))
+                        .param("featureKey", "exported").param("environment", "PROD"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Content-Type", org.hamcrest.Matchers.startsWith("application/x-ndjson")))
+                .andReturn();
+
+        String[] lines = result.getResponse().getContentAsString().split("\n");
+        assertEquals(2500, lines.length);
+        assertEquals(base.toString(), json.readTree(lines[0]).get("createdAt").asText());
+        assertTrue(Arrays.stream(lines).allMatch(l -> l.contains("\"featureKey\":\"exported\"")));
+    }
+
+    @Test
+    void invalidCursorOrLimit_isBadRequest() throws Exception {
+        mvc.perform(get("/api/admin/flags/paged/history").with(user("admin").roles("ADMIN"))
+                        .param("environment", "DEV").param("cursor", "not-a-cursor"))
+                .andExpect(status().isBadRequest());
+        mvc.perform(get("/api/admin/history").with(user("admin").roles("ADMIN")).param("limit", "5000"))
+                .andExpect(status().isBadRequest());
+    }
+
+    private long insert(String featureKey, String environment, Instant createdAt) {
+        jdbc.update("insert into flag_change_logs (feature_key, environment, change_type, changed_by, details, created_at) "
+                        + "values (?, ?, 'TARGET_ADDED', 'admin', 'userId=x', ?)",
+                featureKey, environment, OffsetDateTime.ofInstant(createdAt, ZoneOffset.UTC));
+        return jdbc.queryForObject("select max(id) from flag_change_logs", Long.class);
+    }
+}
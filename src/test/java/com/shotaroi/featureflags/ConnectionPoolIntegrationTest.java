@@ -0,0 +1,112 @@
+package com.shotaroi.featureflags;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.webmvc.test.autoconfigure.AutoConfigureMockMvc;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.ResultActions;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.user;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+/**
+ * Virtual-thread mode: with every pool connection taken, database-bound requests (including the lookup of an
+ * API key that is not cached) fail fast with 503 while cached evaluations keep being served.
+ */
+@SpringBootTest
+@AutoConfigureMockMvc
+@TestPropertySource(properties = {
+        "spring.datasource.url=jdbc:h2:mem:pooldb;MODE=PostgreSQL;DB_CLOSE_DELAY=-1",
+        "spring.threads.virtual.enabled=true",
+        "spring.datasource.hikari.maximum-pool-size=2",
+        "spring.datasource.hikari.connection-timeout=250",
+})
+class ConnectionPoolIntegrationTest {
+
+    @Autowired
+    MockMvc mvc;
+
+    @Autowired
+    DataSource dataSource;
+
+    @Test
+    void exhaustedPool_returns503_butCachedEvaluationsSucceed() throws Exception {
+        String body = mvc.perform(post("/api/admin/api-keys")
+                        .with(user("admin").roles("ADMIN"))
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"name\":\"pool-test\",\"environment\":\"PROD\"}"))
+                .andExpect(status().isCreated())
+                .andReturn().getResponse().getContentAsString();
+        String apiKey = new ObjectMapper().readTree(body).get("rawKey").asText();
+        mvc.perform(post("/api/admin/flags")
+                        .with(user("admin").roles("ADMIN"))
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"featureKey\":\"pooled\",\"environment\":\"PROD\",\"enabled\":true,\"rolloutPercent\":100}"))
+                .andExpect(status().isCreated());
+        evaluate(apiKey).andExpect(status().isOk());
+
+        List<Connection> held = new ArrayList<>();
+        try {
+            held.add(dataSource.getConnection());
+            held.add(dataSource.getConnection());
+
+            evaluate(apiKey)
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$.reason").value("ROLLOUT_100"));
+            mvc.perform(get("/api/admin/flags").with(user("admin").roles("ADMIN")).param("environment", "PROD"))
+                    .andExpect(status().isServiceUnavailable())
+                    .andExpect(header().string("Retry-After", "1"))
+                    .andExpect(jsonPath("$.error").value("DATABASE_UNAVAILABLE"));
+        } finally {
+            for (Connection c : held) c.close();
+        }
+
+        mvc.perform(get("/api/admin/flags").with(user("admin").roles("ADMIN")).param("environment", "PROD"))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    void uncachedApiKey_withNoConnectionAvailable_returns503() throws Exception {
+        String body = mvc.perform(post("/api/admin/api-keys")
+                        .with(user("admin").roles("ADMIN"))
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"name\":\"pool-test-uncached\",\"environment\":\"PROD\"}"))
+                .andExpect(status().isCreated())
+                .andReturn().getResponse().getContentAsString();
+        String apiKey = new ObjectMapper().readTree(body).get("rawKey").asText();
+
+        List<Connection> held = new ArrayList<>();
+        try {
+            held.add(dataSource.getConnection());
+            held.add(dataSource.getConnection());
+
+            // Rejected by the API key filter, before any controller or advice
+            evaluate(apiKey)
+                    .andExpect(status().isServiceUnavailable())
+                    .andExpect(header().string("Retry-After", "1"))
+                    .andExpect(jsonPath("$.status").value(503))
+                    .andExpect(jsonPath("$.error").value("DATABASE_UNAVAILABLE"));
+        } finally {
+            for (Connection c : held) c.close();
+        }
+
+        evaluate(apiKey).andExpect(status().isOk());
+    }
+
+    private ResultActions evaluate(String apiKey) throws Exception {
+        return mvc.perform(get("/api/flags/pooled/evaluate")
+                .header("X-API-Key", apiKey)
+                .param("environment", "PROD")
+                .param("userId", "alice"));
+    }
+}
@@ -0,0 +1,271 @@
+package com.shotaroi.featureflags;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.shotaroi.featureflags.service.BinaryBatchResults;
+import com.shotaroi.featureflags.service.BinarySnapshot;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.webmvc.test.autoconfigure.AutoConfigureMockMvc;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.io.ByteArrayInputStream;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.user;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+@TestPropertySource(properties = {
+        "spring.datasource.url=jdbc:h2:mem:evaldb;MODE=PostgreSQL;DB_CLOSE_DELAY=-1",
+})
+class EvaluationIntegrationTest {
+
+    @Autowired
+    MockMvc mvc;
+
+    String apiKey;
+
+    @BeforeEach
+    void createApiKey() throws Exception {
+        String body = mvc.perform(post("/api/admin/api-keys")
+                        .with(user("admin").roles("ADMIN"))
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"name\":\"eval-test\",\"environment\":\"PROD\"}"))
+                .andExpect(status().isCreated())
+                .andReturn().getResponse().getContentAsString();
+        apiKey = new ObjectMapper().readTree(body).get("rawKey").asText();
+    }
+
+    @Test
+    void newFlags_useCurrentBucketing_andUpdateCanMigrateThem() throws Exception {
+        mvc.perform(post("/api/admin/flags")
+                        .with(user("admin").roles("ADMIN"))
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"featureKey\":\"bucketing\",\"environment\":\"PROD\",\"enabled\":true,\"rolloutPercent\":50}"))
+                .andExpect(status().isCreated())
+                .andExpect(jsonPath("$.bucketingVersion").value(2));
+
+        mvc.perform(patch("/api/admin/flags/bucketing")
+                        .with(user("admin").roles("ADMIN"))
+                        .param("environment", "PROD")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"enabled\":true,\"rolloutPercent\":50}"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.bucketingVersion").value(2));
+
+        mvc.perform(patch("/api/admin/flags/bucketing")
+                        .with(user("admin").roles("ADMIN"))
+                        .param("environment", "PROD")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"enabled\":true,\"rolloutPercent\":50,\"bucketingVersion\":1}"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.bucketingVersion").value(1));
+
+        mvc.perform(patch("/api/admin/flags/bucketing")
+                        .with(user("admin").roles("ADMIN"))
+                        .param("environment", "PROD")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"enabled\":true,\"rolloutPercent\":50,\"bucketingVersion\":3}"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void adminUpdate_isVisibleToNextEvaluation() throws Exception {
+        mvc.perform(post("/api/admin/flags")
+                        .with(user("admin").roles("ADMIN"))
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"featureKey\":\"cache_update\",\"environment\":\"PROD\",\"enabled\":true,\"rolloutPercent\":100}"))
+                .andExpect(status().isCreated());
+
+        mvc.perform(get("/api/flags/cache_update/evaluate")
+                        .header("X-API-Key", apiKey)
+                        .param("environment", "PROD")
+                        .param("userId", "alice"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.enabled").value(true))
+                .andExpect(jsonPath("$.reason").value("ROLLOUT_100"));
+
+        mvc.perform(patch("/api/admin/flags/cache_update")
+                        .with(user("admin").roles("ADMIN"))
+                        .param("environment", "PROD")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"enabled\":false,\"rolloutPercent\":100}"))
+                .andExpect(status().isOk());
+
+        mvc.perform(get("/api/flags/cache_update/evaluate")
+                        .header("X-API-Key", apiKey)
+                        .param("environment", "PROD")
+                        .param("userId", "alice"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.enabled").value(false))
+                .andExpect(jsonPath("$.reason").value("FLAG_DISABLED"));
+    }
+
+    @Test
+    void evaluate_writesTheSameJsonAsBefore() throws Exception {
+        mvc.perform(post("/api/admin/flags")
+                        .with(user("admin").roles("ADMIN"))
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"featureKey\":\"pre_encoded\",\"environment\":\"PROD\",\"enabled\":true,\"rolloutPercent\":100}"))
+                .andExpect(status().isCreated());
+
+        mvc.perform(get("/api/flags/pre_encoded/evaluate")
+                        .header("X-API-Key", apiKey)
+                        .param("environment", "PROD")
+                        .param("userId", "alice"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON))
+                .andExpect(content().string("{\"enabled\":true,\"reason\":\"ROLLOUT_100\"}"));
+    }
+
+    @Test
+    void targetChanges_areVisibleToNextEvaluation() throws Exception {
+        mvc.perform(post("/api/admin/flags")
+                        .with(user("admin").roles("ADMIN"))
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"featureKey\":\"target_update\",\"environment\":\"PROD\",\"enabled\":true,\"rolloutPercent\":0}"))
+                .andExpect(status().isCreated());
+        expectReason("target_update", "bob", "ROLLOUT_0");
+
+        mvc.perform(post("/api/admin/flags/target_update/targets")
+                        .with(user("admin").roles("ADMIN"))
+                        .param("environment", "PROD")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"userId\":\"bob\"}"))
+                .andExpect(status().isCreated());
+        expectReason("target_update", "bob", "TARGETED_USER");
+
+        mvc.perform(delete("/api/admin/flags/target_update/targets/bob")
+                        .with(user("admin").roles("ADMIN"))
+                        .param("environment", "PROD"))
+                .andExpect(status().isOk());
+        expectReason("target_update", "bob", "ROLLOUT_0");
+    }
+
+    @Test
+    void evaluateAll_returnsEveryFlagForTheUser() throws Exception {
+        for (String body : new String[]{
+                "{\"featureKey\":\"all_on\",\"environment\":\"STAGING\",\"enabled\":true,\"rolloutPercent\":100}",
+                "{\"featureKey\":\"all_off\",\"environment\":\"STAGING\",\"enabled\":false,\"rolloutPercent\":100}"}) {
+            mvc.perform(post("/api/admin/flags")
+                            .with(user("admin").roles("ADMIN"))
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .content(body))
+                    .andExpect(status().isCreated());
+        }
+
+        mvc.perform(get("/api/flags/evaluate")
+                        .header("X-API-Key", apiKey)
+                        .param("environment", "STAGING")
+                        .param("userId", "alice"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.all_on.enabled").value(true))
+                .andExpect(jsonPath("$.all_on.reason").value("ROLLOUT_100"))
+                .andExpect(jsonPath("$.all_off.reason").value("FLAG_DISABLED"));
+
+        mvc.perform(get("/api/flags/evaluate")
+                        .header("X-API-Key", apiKey)
+                        .param("environment", "STAGING")
+                        .param("userId", "alice")
+                        .param("keys", "all_on,unknown"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(2))
+                .andExpect(jsonPath("$.all_on.enabled").value(true))
+                .andExpect(jsonPath("$.unknown.reason").value("FLAG_NOT_FOUND"));
+    }
+
+    @Test
+    void batchEvaluate_streamsOneLinePerUser() throws Exception {
+        mvc.perform(post("/api/admin/flags")
+                        .with(user("admin").roles("ADMIN"))
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"featureKey\":\"batch_flag\",\"environment\":\"PROD\",\"enabled\":true,\"rolloutPercent\":100}"))
+                .andExpect(status().isCreated());
+
+        String body = mvc.perform(post("/api/flags/batch/evaluate")
+                        .header("X-API-Key", apiKey)
+                        .param("environment", "PROD")
+                        .param("keys", "batch_flag")
+                        .contentType(MediaType.APPLICATION_NDJSON)
+                        .content("{\"userId\":\"alice\"}\n{\"userId\":\"bob\"}\n"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON))
+                .andReturn().getResponse().getContentAsString();
+
+        assertEquals(List.of(
+                "{\"userId\":\"alice\",\"results\":{\"batch_flag\":{\"enabled\":true,\"reason\":\"ROLLOUT_100\"}}}",
+                "{\"userId\":\"bob\",\"results\":{\"batch_flag\":{\"enabled\":true,\"reason\":\"ROLLOUT_100\"}}}"),
+                body.lines().toList());
+    }
+
+    @Test
+    void batchAndSnapshot_negotiateTheBinaryFormat() throws Exception {
+        mvc.perform(post("/api/admin/flags")
+                        .with(user("admin").roles("ADMIN"))
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"featureKey\":\"binary_flag\",\"environment\":\"PROD\",\"enabled\":true,\"rolloutPercent\":100}"))
+                .andExpect(status().isCreated());
+
+        byte[] batch = mvc.perform(post("/api/flags/batch/evaluate")
+                        .header("X-API-Key", apiKey)
+                        .accept(BinaryBatchResults.MEDIA_TYPE)
+                        .param("environment", "PROD")
+                        .param("keys", "binary_flag,missing")
+                        .param("reasons", "true")
+                        .contentType(MediaType.APPLICATION_NDJSON)
+                        .content("{\"userId\":\"alice\"}\n{\"userId\":\"bob\"}\n"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(BinaryBatchResults.MEDIA_TYPE))
+                .andReturn().getResponse().getContentAsByteArray();
+        var reader = new BinaryBatchResults.Reader(new ByteArrayInputStream(batch));
+        assertEquals(List.of("binary_flag", "missing"), reader.featureKeys());
+        assertEquals(2, reader.nextFrame());
+        assertTrue(reader.enabled(1, 0));
+        assertEquals("ROLLOUT_100", reader.result(1, 0).reason());
+        assertEquals("FLAG_NOT_FOUND", reader.result(1, 1).reason());
+        assertEquals(0, reader.nextFrame());
+
+        var snapshot = mvc.perform(get("/api/flags/snapshot")
+                        .header("X-API-Key", apiKey)
+                        .accept(BinarySnapshot.MEDIA_TYPE)
+                        .param("environment", "PROD"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(BinarySnapshot.MEDIA_TYPE))
+                .andExpect(header().string("Vary", "Accept, Accept-Encoding"))
+                .andReturn().getResponse();
+        var contents = BinarySnapshot.read(snapshot.getContentAsByteArray());
+        assertTrue(contents.flags().stream().anyMatch(f -> f.featureKey().equals("binary_flag") && f.rolloutPercent() == 100));
+
+        String etag = snapshot.getHeader("ETag");
+        mvc.perform(get("/api/flags/snapshot")
+                        .header("X-API-Key", apiKey)
+                        .header("If-None-Match", etag)
+                        .accept(BinarySnapshot.MEDIA_TYPE)
+                        .param("environment", "PROD"))
+                .andExpect(status().isNotModified());
+        // The JSON representation has its own ETag
+        mvc.perform(get("/api/flags/snapshot")
+                        .header("X-API-Key", apiKey)
+                        .header("If-None-Match", etag)
+                        .param("environment", "PROD"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_JSON));
+    }
+
+    private void expectReason(String featureKey, String userId, String reason) throws Exception {
+        mvc.perform(get("/api/flags/" + featureKey + "/evaluate")
+                        .header("X-API-Key", apiKey)
+                        .param("environment", "PROD")
+                        .param("userId", userId))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.reason").value(reason));
+    }
+}
@@ -0,0 +1,281 @@
+package com.shotaroi.featureflags;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.FileOutputStream;
+import java.io.PrintStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Open-model load test of {@code GET /api/flags/{featureKey}/evaluate} through the full stack (Tomcat, security
+ * chain, API key filter, controller, cache, database on misses).
+ * <p>
+ * Requests are started at a fixed arrival rate, each on its own virtual thread, whether or not earlier ones have
+ * completed. Latency is measured from the time a request was <em>scheduled</em> to start, not from when it was
+ * sent, so a stalled server or generator shows up in the percentiles instead of silently lowering the rate
+ * (coordinated omission). The uncorrected service time is reported next to it for comparison.
+ * <p>
+ * Not a unit test; run with:
+ * <pre>
+ * mvn -q test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=com.shotaroi.featureflags.EvaluationLoadGenerator \
+ *     -Dexec.args="--rate=2000 --duration=60s --flags=100 --targets=100 --keys=10"
+ * </pre>
+ * Without {@code --url} the application is started in the same JVM on a random port with its default (H2)
+ * configuration; {@code --spring.*}, {@code --server.*}, {@code --logging.*} and {@code --feature-flags.*}
+ * arguments are passed to it. With {@code --url=http://host:8080} an already running node is tested (use
+ * {@code --admin=user:password} if it does not have the default admin user). See docs/LOAD_TESTING.md.
+ */
+public class EvaluationLoadGenerator {
+
+    private static final long MAX_LATENCY_NANOS = TimeUnit.MINUTES.toNanos(1);
+    private static final long USER_ID_BASE = 10_000_000L;
+
+    private final Map<String, String> options;
+    private final HttpClient http;
+    private final ObjectMapper json = new ObjectMapper();
+
+    private URI baseUrl;
+    private String adminAuthorization;
+    private final List<String> featureKeys = new ArrayList<>();
+    private final List<String> apiKeys = new ArrayList<>();
+
+    private final Recorder corrected = new Recorder(MAX_LATENCY_NANOS, 3);
+    private final Recorder uncorrected = new Recorder(MAX_LATENCY_NANOS, 3);
+    private final AtomicLong errors = new AtomicLong();
+    private final AtomicLong completed = new AtomicLong();
+
+    EvaluationLoadGenerator(Map<String, String> options) {
+        this.options = options;
+        this.http = HttpClient.newBuilder()
+                .executor(Executors.newVirtualThreadPerTaskExecutor())
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        List<String> appArgs = new ArrayList<>();
+        for (String arg : args) {
+            String name = arg.substring(2, arg.contains("=") ? arg.indexOf('=') : arg.length());
+            if (name.startsWith("spring.") || name.startsWith("feature-flags.") || name.startsWith("server.")
+                    || name.startsWith("logging.")) {
+                appArgs.add(arg);
+            } else {
+                options.put(name, arg.contains("=") ? arg.substring(arg.indexOf('=') + 1) : "true");
+            }
+        }
+
+        ConfigurableApplicationContext app = null;
+        try {
+            var generator = new EvaluationLoadGenerator(options);
+            if (options.containsKey("url")) {
+                generator.baseUrl = URI.create(options.get("url"));
+            } else {
+                appArgs.add("--server.port=0");
+                app = new SpringApplicationBuilder(FeatureFlagApplication.class).run(appArgs.toArray(String[]::new));
+                generator.baseUrl = URI.create("http://localhost:" + app.getEnvironment().getProperty("local.server.port"));
+            }
+            generator.run();
+        } finally {
+            if (app != null) app.close();
+        }
+    }
+
+    void run() throws Exception {
+        int flags = intOption("flags", 100);
+        int targets = intOption("targets", 100);
+        int keys = intOption("keys", 10);
+        int users = intOption("users", 100_000);
+        int rate = intOption("rate", 1000);
+        Duration warmup = durationOption("warmup", Duration.ofSeconds(10));
+        Duration duration = durationOption("duration", Duration.ofSeconds(30));
+        Duration timeout = durationOption("timeout", Duration.ofSeconds(5));
+        adminAuthorization = "Basic " + Base64.getEncoder().encodeToString(
+                options.getOrDefault("admin", "admin:admin123").getBytes(StandardCharsets.UTF_8));
+
+        long seedStart = System.nanoTime();
+        seed(flags, targets, keys, users);
+        System.out.printf("Seeded %d flags x %d targets and %d API keys against %s in %.1fs%n",
+                flags, targets, keys, baseUrl, (System.nanoTime() - seedStart) / 1e9);
+
+        System.out.printf("Warm-up: %d req/s for %ds%n", rate, warmup.toSeconds());
+        drive(rate, warmup, timeout, users);
+        corrected.reset();
+        uncorrected.reset();
+        errors.set(0);
+        completed.set(0);
+
+        System.out.printf("Measuring: %d req/s for %ds%n", rate, duration.toSeconds());
+        long start = System.nanoTime();
+        long sent = drive(rate, duration, timeout, users);
+        double elapsed = (System.nanoTime() - start) / 1e9;
+
+        Histogram correctedHistogram = corrected.getIntervalHistogram();
+        Histogram uncorrectedHistogram = uncorrected.getIntervalHistogram();
+        report(sent, elapsed, rate, correctedHistogram, uncorrectedHistogram);
+        if (options.containsKey("hgrm")) {
+            try (var out = new PrintStream(new FileOutputStream(options.get("hgrm")))) {
+                correctedHistogram.outputPercentileDistribution(out, 1e6);
+            }
+            System.out.println("Corrected latency distribution (ms) written to " + options.get("hgrm"));
+        }
+    }
+
+    /**
+     * Starts {@code rate} requests per second for {@code duration} and waits for the last one to finish.
+     * Returns the number of requests started.
+     */
+    private long drive(int rate, Duration duration, Duration timeout, int users) throws InterruptedException {
+        long intervalNanos = TimeUnit.SECONDS.toNanos(1) / rate;
+        long total = duration.toSeconds() * rate;
+        // Bounds memory if the server stops answering; a request that cannot start is an error, not a delay
+        Semaphore inFlight = new Semaphore(rate * (int) Math.max(1, timeout.toSeconds()) * 2);
+        SplittableRandom random = new SplittableRandom(42);
+
+        try (ExecutorService requests = Executors.newVirtualThreadPerTaskExecutor()) {
+            long start = System.nanoTime();
+            for (long i = 0; i < total; i++) {
+                long intended = start + i * intervalNanos;
+                long wait = intended - System.nanoTime();
+                if (wait > 0) LockSupport.parkNanos(wait);
+
+                String featureKey = featureKeys.get(random.nextInt(featureKeys.size()));
+                String apiKey = apiKeys.get(random.nextInt(apiKeys.size()));
+                String userId = Long.toString(USER_ID_BASE + random.nextInt(users));
+                if (!inFlight.tryAcquire()) {
+                    errors.incrementAndGet();
+                    continue;
+                }
+                requests.execute(() -> {
+                    try {
+                        evaluate(featureKey, apiKey, userId, intended, timeout);
+                    } finally {
+                        inFlight.release();
+                    }
+                });
+            }
+        }
+        return total;
+    }
+
+    private void evaluate(String featureKey, String apiKey, String userId, long intended, Duration timeout) {
+        long sent = System.nanoTime();
+        boolean ok;
+        try {
+            HttpRequest request = HttpRequest.newBuilder(baseUrl.resolve("/api/flags/" + featureKey
+                            + "/evaluate?environment=PROD&userId=" + userId))
+                    .timeout(timeout)
+                    .header("X-API-Key", apiKey)
+                    .build();
+            ok = http.send(request, HttpResponse.BodyHandlers.discarding()).statusCode() == 200;
+        } catch (Exception e) {
+            ok = false;
+        }
+        long done = System.nanoTime();
+        corrected.recordValue(Math.min(done - intended, MAX_LATENCY_NANOS));
+        uncorrected.recordValue(Math.min(done - sent, MAX_LATENCY_NANOS));
+        completed.incrementAndGet();
+        if (!ok) errors.incrementAndGet();
+    }
+
+    private void report(long sent, double elapsedSeconds, int rate, Histogram correctedHistogram, Histogram uncorrectedHistogram) {
+        long failed = errors.get();
+        System.out.println();
+        System.out.printf("Requests       %d sent, %d completed, %d errors (%.3f%%)%n",
+                sent, completed.get(), failed, 100.0 * failed / Math.max(1, sent));
+        System.out.printf("Throughput     %.0f req/s successful (target %d req/s)%n", (completed.get() - failed) / elapsedSeconds, rate);
+        System.out.printf("%-14s %10s %10s %10s %10s %10s%n", "latency (ms)", "p50", "p99", "p99.9", "max", "mean");
+        printLatency("corrected", correctedHistogram);
+        printLatency("uncorrected", uncorrectedHistogram);
+    }
+
+    private static void printLatency(String label, Histogram histogram) {
+        System.out.printf("%-14s %10.2f %10.2f %10.2f %10.2f %10.2f%n", label,
+                histogram.getValueAtPercentile(50) / 1e6,
+                histogram.getValueAtPercentile(99) / 1e6,
+                histogram.getValueAtPercentile(99.9) / 1e6,
+                histogram.getMaxValue() / 1e6,
+                histogram.getMean() / 1e6);
+    }
+
+    /** Creates the flags, allowlists and API keys through the admin API. Existing flags and targets are reused. */
+    private void seed(int flags, int targets, int keys, int users) throws Exception {
+        SplittableRandom random = new SplittableRandom(7);
+        for (int i = 0; i < flags; i++) {
+            String featureKey = "load_" + i;
+            featureKeys.add(featureKey);
+            int rollout = (i * 37) % 101;
+            int status = admin("POST", "/api/admin/flags", "{\"featureKey\":\"" + featureKey
+                    + "\",\"environment\":\"PROD\",\"enabled\":true,\"rolloutPercent\":" + rollout + "}").statusCode();
+            if (status != 201 && status != 400 && status != 409) {
+                throw new IllegalStateException("Creating flag " + featureKey + " returned " + status);
+            }
+        }
+
+        // One bulk import per flag; users already on the allowlist are skipped
+        for (String featureKey : featureKeys) {
+            StringBuilder csv = new StringBuilder();
+            for (int t = 0; t < targets; t++) {
+                csv.append(USER_ID_BASE + random.nextInt(users)).append('\n');
+            }
+            var response = admin("POST", "/api/admin/flags/" + featureKey + "/targets/import?environment=PROD", csv.toString(), "text/csv");
+            if (response.statusCode() != 200) {
+                throw new IllegalStateException("Importing targets of " + featureKey + " returned " + response.statusCode());
+            }
+        }
+
+        for (int i = 0; i < keys; i++) {
+            var response = admin("POST", "/api/admin/api-keys", "{\"name\":\"load-" + i + "\",\"environment\":\"PROD\"}");
+            if (response.statusCode() != 201) {
+                throw new IllegalStateException("Creating API key returned " + response.statusCode() + ": " + response.body());
+            }
+            apiKeys.add(json.readTree(response.body()).get("rawKey").asText());
+        }
+    }
+
+    private HttpResponse<String> admin(String method, String path, String body) throws Exception {
+        return admin(method, path, body, "application/json");
+    }
+
+    private HttpResponse<String> admin(String method, String path, String body, String contentType) throws Exception {
+        HttpRequest request = HttpRequest.newBuilder(baseUrl.resolve(path))
+                .method(method, HttpRequest.BodyPublishers.ofString(body))
+                .header("Content-Type", contentType)
+                .header("Authorization", adminAuthorization)
+                .build();
+        return http.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private int intOption(String name, int defaultValue) {
+        return options.containsKey(name) ? Integer.parseInt(options.get(name)) : defaultValue;
+    }
+
+    private Duration durationOption(String name, Duration defaultValue) {
+        String value = options.get(name);
+        if (value == null) return defaultValue;
+        return value.endsWith("ms") ? Duration.ofMillis(Long.parseLong(value.substring(0, value.length() - 2)))
+                : Duration.ofSeconds(Long.parseLong(value.replace("s", "")));
+    }
+}
@@ -0,0 +1,159 @@
+package com.shotaroi.featureflags;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.shotaroi.featureflags.service.ChangeFeedCompaction;
+import com.shotaroi.featureflags.service.ChangeHistoryService;
+import com.shotaroi.featureflags.service.FeatureAdminService;
+import com.shotaroi.featureflags.service.SnapshotFileStore;
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Base64;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * This test's context is a full node that writes the snapshot files; the {@code evaluation} profile is started
+ * next to it as a second context, once on the shared database and once with no database at all.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+class EvaluationProfileIntegrationTest {
+
+    private static final String ADMIN = "Basic " + Base64.getEncoder().encodeToString("admin:admin123".getBytes(StandardCharsets.UTF_8));
+    private static final String DB_URL = "jdbc:h2:mem:evaluationprofiledb;MODE=PostgreSQL;DB_CLOSE_DELAY=-1";
+    private static final Path DIR = tempDir();
+
+    @DynamicPropertySource
+    static void properties(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", () -> DB_URL);
+        registry.add("feature-flags.snapshot-file.enabled", () -> "true");
+        registry.add("feature-flags.snapshot-file.dir", DIR::toString);
+        // Written explicitly by the test
+        registry.add("feature-flags.snapshot-file.write-interval", () -> "1h");
+    }
+
+    @LocalServerPort
+    int port;
+
+    @Autowired
+    SnapshotFileStore store;
+
+    final HttpClient http = HttpClient.newHttpClient();
+    final ObjectMapper json = new ObjectMapper();
+
+    String apiKey;
+    ConfigurableApplicationContext edge;
+
+    @BeforeEach
+    void seed() throws Exception {
+        apiKey = json.readTree(send(port, "POST", "/api/admin/api-keys",
+                "{\"name\":\"edge\",\"environment\":\"PROD\"}", "application/json").body()).get("rawKey").asText();
+        send(port, "POST", "/api/admin/flags",
+                "{\"featureKey\":\"edge\",\"environment\":\"PROD\",\"enabled\":true,\"rolloutPercent\":0}", "application/json");
+        send(port, "POST", "/api/admin/flags/edge/targets/import?environment=PROD", "42\nvip\n", "text/csv");
+        store.writeChanged();
+    }
+
+    @AfterEach
+    void stop() {
+        if (edge != null) edge.close();
+    }
+
+    @Test
+    void evaluationProfile_servesFlags_withoutAdminBeans_andFollowsTheFullNodes() throws Exception {
+        // No dialect configured: Hibernate detects it from the database
+        edge = startEdge(DB_URL);
+        int edgePort = port(edge);
+
+        assertNull(edge.getBeanProvider(FeatureAdminService.class).getIfAvailable());
+        assertNull(edge.getBeanProvider(ChangeHistoryService.class).getIfAvailable());
+        assertNull(edge.getBeanProvider(Flyway.class).getIfAvailable());
+        assertNull(edge.getBeanProvider(ChangeFeedCompaction.class).getIfAvailable());
+
+        assertEquals("TARGETED_USER", evaluate(edgePort, "edge", "vip"));
+        assertEquals("ROLLOUT_0", evaluate(edgePort, "edge", "7"));
+        assertEquals(403, send(edgePort, "GET", "/api/admin/flags?environment=PROD", "", "application/json").statusCode());
+        assertEquals(403, send(edgePort, "GET", "/v3/api-docs", "", "application/json").statusCode());
+
+        // A change made through a full node reaches the edge node through the revision poller
+        send(port, "PATCH", "/api/admin/flags/edge?environment=PROD", "{\"enabled\":true,\"rolloutPercent\":100}", "application/json");
+        long deadline = System.currentTimeMillis() + 10_000;
+        String reason;
+        while (!(reason = evaluate(edgePort, "edge", "7")).equals("ROLLOUT_100")) {
+            if (System.currentTimeMillis() > deadline) fail("Edge node did not converge: " + reason);
+            Thread.sleep(50);
+        }
+    }
+
+    @Test
+    void evaluationProfile_startsWithoutADatabase_fromTheSnapshotFile() throws Exception {
+        // IFEXISTS: connecting fails instead of creating an empty database
+        edge = startEdge("jdbc:h2:mem:evaluationprofile-missing;IFEXISTS=TRUE",
+                "--spring.jpa.database-platform=org.hibernate.dialect.H2Dialect");
+        int edgePort = port(edge);
+
+        assertEquals("TARGETED_USER", evaluate(edgePort, "edge", "42"));
+        assertEquals("FLAG_NOT_FOUND", evaluate(edgePort, "edge-unknown", "42"));
+    }
+
+    private ConfigurableApplicationContext startEdge(String dbUrl, String... args) {
+        var common = Stream.of(
+                "--server.port=0",
+                "--spring.datasource.url=" + dbUrl,
+                "--spring.datasource.hikari.connection-timeout=250",
+                "--feature-flags.snapshot-file.dir=" + DIR,
+                "--feature-flags.snapshot-file.write-interval=1h",
+                "--feature-flags.coherence.poll-interval=100ms");
+        return new SpringApplicationBuilder(FeatureFlagApplication.class).profiles("evaluation")
+                .run(Stream.concat(common, Stream.of(args)).toArray(String[]::new));
+    }
+
+    private static int port(ConfigurableApplicationContext context) {
+        return Integer.parseInt(context.getEnvironment().getProperty("local.server.port"));
+    }
+
+    private String evaluate(int port, String featureKey, String userId) throws Exception {
+        var request = HttpRequest.newBuilder(URI.create("http://localhost:" + port
+                        + "/api/flags/" + featureKey + "/evaluate?environment=PROD&userId=" + userId))
+                .header("X-API-Key", apiKey).build();
+        var response = http.send(request, HttpResponse.BodyHandlers.ofString());
+        assertEquals(200, response.statusCode(), response.body());
+        return json.readTree(response.body()).get("reason").asText();
+    }
+
+    private HttpResponse<String> send(int port, String method, String path, String body, String contentType) throws Exception {
+        var request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + path))
+                .method(method, HttpRequest.BodyPublishers.ofString(body))
+                .header("Content-Type", contentType)
+                .header("Authorization", ADMIN)
+                .build();
+        return http.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private static Path tempDir() {
+        try {
+            return Files.createTempDirectory("edge-snapshots");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
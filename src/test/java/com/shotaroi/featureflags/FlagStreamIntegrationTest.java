@@ -0,0 +1,196 @@
+package com.shotaroi.featureflags;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.webmvc.test.autoconfigure.AutoConfigureMockMvc;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.io.ByteArrayInputStream;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.user;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+@TestPropertySource(properties = {
+        "spring.datasource.url=jdbc:h2:mem:streamdb;MODE=PostgreSQL;DB_CLOSE_DELAY=-1",
+})
+class FlagStreamIntegrationTest {
+
+    private static final Pattern EVENT_ID = Pattern.compile("id:(\\S+)\\nevent:(\\w+)");
+
+    @Autowired
+    MockMvc mvc;
+
+    String apiKey;
+
+    @BeforeEach
+    void createApiKey() throws Exception {
+        String body = mvc.perform(post("/api/admin/api-keys")
+                        .with(user("admin").roles("ADMIN"))
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"name\":\"stream-test\",\"environment\":\"STAGING\"}"))
+                .andExpect(status().isCreated())
+                .andReturn().getResponse().getContentAsString();
+        apiKey = new ObjectMapper().readTree(body).get("rawKey").asText();
+    }
+
+    @Test
+    void stream_sendsSnapshotThenChanges_andResumesFromLastEventId() throws Exception {
+        mvc.perform(post("/api/admin/flags")
+                        .with(user("admin").roles("ADMIN"))
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"featureKey\":\"streamed\",\"environment\":\"STAGING\",\"enabled\":true,\"rolloutPercent\":0}"))
+                .andExpect(status().isCreated());
+        addTarget("streamed", "42");
+        addTarget("streamed", "alice");
+
+        MvcResult first = connect(null);
+        String snapshot = await(first, "event:snapshot");
+        assertTrue(snapshot.contains("\"featureKey\":\"streamed\""), snapshot);
+        assertTrue(snapshot.contains("\"targets\":[\"42\",\"alice\"]"), snapshot);
+        String snapshotId = lastEventId(snapshot);
+
+        mvc.perform(patch("/api/admin/flags/streamed")
+                        .with(user("admin").roles("ADMIN"))
+                        .param("environment", "STAGING")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"enabled\":false,\"rolloutPercent\":0}"))
+                .andExpect(status().isOk());
+        addTarget("streamed", "bob");
+
+        String live = await(first, "\"userId\":\"bob\"");
+        assertTrue(live.contains("\"type\":\"FLAG_UPDATED\""), live);
+        assertTrue(live.contains("\"enabled\":false"), live);
+
+        // Reconnect after the snapshot: only the two missed changes, no new snapshot
+        MvcResult resumed = connect(snapshotId);
+        String replay = await(resumed, "\"userId\":\"bob\"");
+        assertFalse(replay.contains("event:snapshot"), replay);
+        assertTrue(replay.contains("\"type\":\"FLAG_UPDATED\""), replay);
+        assertEquals(lastEventId(live), lastEventId(replay));
+
+        // An id that is not a revision falls back to a snapshot
+        String fresh = await(connect("elsewhere-3"), "event:snapshot");
+        assertTrue(fresh.contains("\"bob\""), fresh);
+        assertTrue(fresh.contains("\"enabled\":false"), fresh);
+    }
+
+    @Test
+    void snapshot_supportsEtagAndGzip() throws Exception {
+        mvc.perform(post("/api/admin/flags")
+                        .with(user("admin").roles("ADMIN"))
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"featureKey\":\"polled\",\"environment\":\"STAGING\",\"enabled\":true,\"rolloutPercent\":10}"))
+                .andExpect(status().isCreated());
+
+        MvcResult first = mvc.perform(get("/api/flags/snapshot")
+                        .header("X-API-Key", apiKey)
+                        .param("environment", "STAGING"))
+                .andExpect(status().isOk())
+                .andExpect(header().exists("ETag"))
+                .andExpect(header().exists("X-Revision"))
+                .andExpect(jsonPath("$.environment").value("STAGING"))
+                .andExpect(jsonPath("$.flags[?(@.featureKey == 'polled')].rolloutPercent").value(10))
+                .andReturn();
+        String etag = first.getResponse().getHeader("ETag");
+
+        mvc.perform(get("/api/flags/snapshot")
+                        .header("X-API-Key", apiKey)
+                        .header("If-None-Match", etag)
+                        .param("environment", "STAGING"))
+                .andExpect(status().isNotModified())
+                .andExpect(content().bytes(new byte[0]));
+
+        byte[] gzipped = mvc.perform(get("/api/flags/snapshot")
+                        .header("X-API-Key", apiKey)
+                        .header("Accept-Encoding", "gzip, deflate")
+                        .param("environment", "STAGING"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Content-Encoding", "gzip"))
+                .andExpect(header().string("ETag", etag.substring(0, etag.length() - 1) + "-gzip\""))
+                .andReturn().getResponse().getContentAsByteArray();
+        try (var in = new GZIPInputStream(new ByteArrayInputStream(gzipped))) {
+            assertArrayEquals(first.getResponse().getContentAsByteArray(), in.readAllBytes());
+        }
+
+        mvc.perform(get("/api/flags/snapshot")
+                        .header("X-API-Key", apiKey)
+                        .header("Accept-Encoding", "gzip")
+                        .header("If-None-Match", etag)
+                        .param("environment", "STAGING"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Content-Encoding", "gzip"));
+
+        mvc.perform(get("/api/flags/snapshot")
+                        .header("X-API-Key", apiKey)
+                        .header("Accept-Encoding", "gzip;q=0, *;q=0.5")
+                        .param("environment", "STAGING"))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist("Content-Encoding"))
+                .andExpect(header().string("ETag", etag));
+
+        addTarget("polled", "carol");
+
+        mvc.perform(get("/api/flags/snapshot")
+                        .header("X-API-Key", apiKey)
+                        .header("If-None-Match", etag)
+                        .param("environment", "STAGING"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.flags[?(@.featureKey == 'polled')].targets[0]").value("carol"));
+    }
+
+    @Test
+    void stream_requiresApiKey() throws Exception {
+        mvc.perform(get("/api/flags/stream").param("environment", "STAGING"))
+                .andExpect(status().isUnauthorized());
+    }
+
+    private MvcResult connect(String lastEventId) throws Exception {
+        var request = get("/api/flags/stream")
+                .header("X-API-Key", apiKey)
+                .param("environment", "STAGING")
+                .accept(MediaType.TEXT_EVENT_STREAM);
+        if (lastEventId != null) request.header("Last-Event-ID", lastEventId);
+        return mvc.perform(request)
+                .andExpect(request().asyncStarted())
+                .andReturn();
+    }
+
+    private void addTarget(String featureKey, String userId) throws Exception {
+        mvc.perform(post("/api/admin/flags/" + featureKey + "/targets")
+                        .with(user("admin").roles("ADMIN"))
+                        .param("environment", "STAGING")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"userId\":\"" + userId + "\"}"))
+                .andExpect(status().isCreated());
+    }
+
+    private static String await(MvcResult result, String expected) throws Exception {
+        long deadline = System.currentTimeMillis() + 5_000;
+        String content;
+        while (!(content = result.getResponse().getContentAsString()).contains(expected)) {
+            if (System.currentTimeMillis() > deadline) fail("Timed out waiting for " + expected + " in:\n" + content);
+            Thread.sleep(20);
+        }
+        return content;
+    }
+
+    private static String lastEventId(String content) {
+        Matcher m = EVENT_ID.matcher(content);
+        String id = null;
+        while (m.find()) id = m.group(1);
+        return id;
+    }
+}
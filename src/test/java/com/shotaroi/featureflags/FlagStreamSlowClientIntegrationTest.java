@@ -0,0 +1,124 @@
+package com.shotaroi.featureflags;
+
+import com.shotaroi.featureflags.domain.Environment;
+import com.shotaroi.featureflags.service.FlagStreamService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.test.context.TestPropertySource;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Clients that connect to the stream and never read: their writes block once the TCP buffers are full. Other
+ * streams must keep getting events, and the stalled connections are dropped after the write timeout.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@TestPropertySource(properties = {
+        "spring.datasource.url=jdbc:h2:mem:slowclientdb;MODE=PostgreSQL;DB_CLOSE_DELAY=-1",
+        "feature-flags.stream.replay-size=3",
+        "feature-flags.stream.heartbeat=200ms",
+        "feature-flags.stream.write-timeout=1s",
+})
+class FlagStreamSlowClientIntegrationTest {
+
+    private static final String ADMIN = "Basic " + Base64.getEncoder().encodeToString("admin:admin123".getBytes(StandardCharsets.UTF_8));
+
+    @LocalServerPort
+    int port;
+
+    @Autowired
+    FlagStreamService streamService;
+
+    final HttpClient http = HttpClient.newHttpClient();
+    final JsonMapper json = JsonMapper.builder().build();
+    final List<Socket> stalled = new ArrayList<>();
+
+    @AfterEach
+    void closeSockets() throws Exception {
+        for (Socket socket : stalled) socket.close();
+    }
+
+    @Test
+    void clientsThatStopReading_doNotHoldUpOtherStreams_andAreDisconnected() throws Exception {
+        String apiKey = json.readTree(send("POST", "/api/admin/api-keys",
+                "{\"name\":\"slow\",\"environment\":\"PROD\"}", "application/json").body()).get("rawKey").asString();
+        for (String key : new String[]{"big", "marker"}) {
+            assertEquals(201, send("POST", "/api/admin/flags",
+                    "{\"featureKey\":\"" + key + "\",\"environment\":\"PROD\",\"enabled\":true,\"rolloutPercent\":0}",
+                    "application/json").statusCode());
+        }
+        // About 1.5 MB per snapshot
+        String targets = String.join("\n", IntStream.range(0, 100_000).mapToObj(i -> "slow-client-user-" + i).toList());
+        assertEquals(200, send("POST", "/api/admin/flags/big/targets/import?environment=PROD", targets, "text/csv").statusCode());
+
+        // More stalled clients than the old fixed sender pool had threads
+        for (int i = 0; i < 3; i++) stalled.add(connectWithoutReading(apiKey));
+
+        var marker = new CountDownLatch(1);
+        var request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/api/flags/stream?environment=PROD"))
+                .header("X-API-Key", apiKey).header("Accept", "text/event-stream").build();
+        http.sendAsync(request, HttpResponse.BodyHandlers.ofLines()).thenAccept(response ->
+                response.body().filter(line -> line.contains("\"featureKey\":\"marker\"")).findFirst().ifPresent(line -> marker.countDown()));
+        awaitSubscribers(4);
+
+        // Each chunk is larger than the replay buffer, so every stream gets a full snapshot: far more than the
+        // stalled clients' socket buffers hold
+        for (int i = 0; i < 10; i++) {
+            assertEquals(200, send("POST", "/api/admin/flags/big/targets/import?environment=PROD",
+                    "extra-" + i + "-a\nextra-" + i + "-b\nextra-" + i + "-c\nextra-" + i + "-d\n", "text/csv").statusCode());
+        }
+        send("PATCH", "/api/admin/flags/marker?environment=PROD", "{\"enabled\":true,\"rolloutPercent\":50}", "application/json");
+
+        assertTrue(marker.await(10, TimeUnit.SECONDS), "the reading client did not get the change");
+        awaitSubscribers(1);
+    }
+
+    private Socket connectWithoutReading(String apiKey) throws Exception {
+        var socket = new Socket();
+        socket.setReceiveBufferSize(4096);
+        socket.connect(new InetSocketAddress("localhost", port));
+        OutputStream out = socket.getOutputStream();
+        out.write(("GET /api/flags/stream?environment=PROD HTTP/1.1\r\nHost: localhost\r\nX-API-Key: " + apiKey
+                + "\r\nAccept: text/event-stream\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+        out.flush();
+        return socket;
+    }
+
+    private void awaitSubscribers(int count) throws Exception {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (streamService.subscriberCount(Environment.PROD) != count) {
+            if (System.currentTimeMillis() > deadline) {
+                fail("Expected " + count + " streams, got " + streamService.subscriberCount(Environment.PROD));
+            }
+            Thread.sleep(50);
+        }
+    }
+
+    private HttpResponse<String> send(String method, String path, String body, String contentType) throws Exception {
+        var request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + path))
+                .header("Authorization", ADMIN)
+                .header("Content-Type", contentType)
+                .method(method, HttpRequest.BodyPublishers.ofString(body))
+                .build();
+        return http.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+}
@@ -0,0 +1,146 @@
+package com.shotaroi.featureflags;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.test.context.TestPropertySource;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.function.Predicate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Two instances on localhost: this test's context is the upstream, and a second application context is
+ * started in relay mode against it.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@TestPropertySource(properties = {
+        "spring.datasource.url=jdbc:h2:mem:upstreamdb;MODE=PostgreSQL;DB_CLOSE_DELAY=-1",
+})
+class RelayIntegrationTest {
+
+    private static final String ADMIN = "Basic " + Base64.getEncoder().encodeToString("admin:admin123".getBytes(StandardCharsets.UTF_8));
+
+    @LocalServerPort
+    int upstreamPort;
+
+    final HttpClient http = HttpClient.newHttpClient();
+    final ObjectMapper json = new ObjectMapper();
+
+    String apiKey;
+    ConfigurableApplicationContext relay;
+    int relayPort;
+
+    @BeforeEach
+    void startRelay() throws Exception {
+        apiKey = json.readTree(send(upstreamPort, "POST", "/api/admin/api-keys",
+                "{\"name\":\"relay\",\"environment\":\"PROD\"}", ADMIN).body()).get("rawKey").asText();
+        // Command-line arguments, so they take precedence over application.yml
+        relay = new SpringApplicationBuilder(FeatureFlagApplication.class).run(
+                "--server.port=0",
+                "--spring.datasource.url=jdbc:h2:mem:relaydb;MODE=PostgreSQL;DB_CLOSE_DELAY=-1",
+                "--feature-flags.relay.enabled=true",
+                "--feature-flags.relay.upstream-url=http://localhost:" + upstreamPort,
+                "--feature-flags.relay.api-key=" + apiKey,
+                "--feature-flags.relay.environments=PROD",
+                "--feature-flags.relay.lag-check-interval=200ms",
+                "--feature-flags.relay.reconnect-delay=100ms");
+        relayPort = Integer.parseInt(relay.getEnvironment().getProperty("local.server.port"));
+    }
+
+    @AfterEach
+    void stopRelay() {
+        if (relay != null) relay.close();
+    }
+
+    @Test
+    void relay_servesSameResultsAsUpstream_andFollowsChanges() throws Exception {
+        assertEquals(201, send(upstreamPort, "POST", "/api/admin/flags",
+                "{\"featureKey\":\"relayed\",\"environment\":\"PROD\",\"enabled\":true,\"rolloutPercent\":40}", ADMIN).statusCode());
+        send(upstreamPort, "POST", "/api/admin/flags/relayed/targets?environment=PROD", "{\"userId\":\"vip\"}", ADMIN);
+
+        String[] users = {"vip", "alice", "bob", "carol", "12345", ""};
+        awaitEvaluation("vip", body -> body.contains("TARGETED_USER"));
+        for (String user : users) {
+            assertEquals(evaluate(upstreamPort, user), evaluate(relayPort, user), user);
+        }
+
+        send(upstreamPort, "PATCH", "/api/admin/flags/relayed?environment=PROD",
+                "{\"enabled\":false,\"rolloutPercent\":40}", ADMIN);
+        send(upstreamPort, "POST", "/api/admin/flags/relayed/targets?environment=PROD", "{\"userId\":\"late\"}", ADMIN);
+
+        awaitEvaluation("alice", body -> body.contains("FLAG_DISABLED"));
+        assertEquals(evaluate(upstreamPort, "late"), evaluate(relayPort, "late"));
+
+        // Snapshot and revision match the upstream once caught up
+        awaitHealth(h -> h.at("/components/relay/details/PROD/lag").asLong(-1) == 0
+                && h.at("/components/relay/details/PROD/upstreamRevision").asLong() > 0);
+        assertEquals(snapshot(upstreamPort), snapshot(relayPort));
+    }
+
+    @Test
+    void relay_rejectsAdminWrites_andUnknownApiKeys() throws Exception {
+        assertEquals(403, send(relayPort, "POST", "/api/admin/flags",
+                "{\"featureKey\":\"local\",\"environment\":\"PROD\",\"enabled\":true,\"rolloutPercent\":0}", ADMIN).statusCode());
+
+        var request = HttpRequest.newBuilder(URI.create("http://localhost:" + relayPort + "/api/flags/relayed/evaluate?environment=PROD"))
+                .header("X-API-Key", "fk_not_a_key").build();
+        assertEquals(401, http.send(request, HttpResponse.BodyHandlers.ofString()).statusCode());
+    }
+
+    private String evaluate(int port, String userId) throws Exception {
+        var request = HttpRequest.newBuilder(URI.create("http://localhost:" + port
+                        + "/api/flags/relayed/evaluate?environment=PROD&userId=" + userId))
+                .header("X-API-Key", apiKey).build();
+        var response = http.send(request, HttpResponse.BodyHandlers.ofString());
+        assertEquals(200, response.statusCode(), response.body());
+        return response.body();
+    }
+
+    private String snapshot(int port) throws Exception {
+        var request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/api/flags/snapshot?environment=PROD"))
+                .header("X-API-Key", apiKey).build();
+        return http.send(request, HttpResponse.BodyHandlers.ofString()).body();
+    }
+
+    private void awaitEvaluation(String userId, Predicate<String> condition) throws Exception {
+        long deadline = System.currentTimeMillis() + 10_000;
+        String body;
+        while (!condition.test(body = evaluate(relayPort, userId))) {
+            if (System.currentTimeMillis() > deadline) fail("Relay did not catch up: " + body);
+            Thread.sleep(50);
+        }
+    }
+
+    private void awaitHealth(Predicate<JsonNode> condition) throws Exception {
+        long deadline = System.currentTimeMillis() + 10_000;
+        JsonNode health;
+        do {
+            health = json.readTree(send(relayPort, "GET", "/actuator/health", null, ADMIN).body());
+            if (condition.test(health)) return;
+            Thread.sleep(50);
+        } while (System.currentTimeMillis() < deadline);
+        fail("Unexpected relay health: " + health);
+    }
+
+    private HttpResponse<String> send(int port, String method, String path, String body, String authorization) throws Exception {
+        var request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + path))
+                .method(method, body == null ? HttpRequest.BodyPublishers.noBody() : HttpRequest.BodyPublishers.ofString(body))
+                .header("Content-Type", "application/json")
+                .header("Authorization", authorization)
+                .build();
+        return http.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+}
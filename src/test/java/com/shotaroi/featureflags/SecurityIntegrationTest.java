@@ -59,6 +59,34 @@ class SecurityIntegrationTest {
                 .andExpect(status().isOk());
     }
 
+    @Test
+    void revokedApiKey_isRejectedImmediately() throws Exception {
+        ObjectMapper mapper = new ObjectMapper();
+        String createBody = mvc.perform(post("/api/admin/api-keys")
+                        .with(user("admin").roles("ADMIN"))
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"name\":\"revoke-key\",\"environment\":\"PROD\"}"))
+                .andExpect(status().isCreated())
+                .andReturn().getResponse().getContentAsString();
+        JsonNode created = mapper.readTree(createBody);
+        String rawKey = created.get("rawKey").asText();
+
+        // First request caches the validated key
+        mvc.perform(get("/api/flags/some_feature/evaluate")
+                        .header("X-API-Key", rawKey)
+                        .param("environment", "PROD"))
+                .andExpect(status().isOk());
+
+        mvc.perform(delete("/api/admin/api-keys/" + created.get("apiKey").get("id").asLong())
+                        .with(user("admin").roles("ADMIN")))
+                .andExpect(status().is2xxSuccessful());
+
+        mvc.perform(get("/api/flags/some_feature/evaluate")
+                        .header("X-API-Key", rawKey)
+                        .param("environment", "PROD"))
+                .andExpect(status().isUnauthorized());
+    }
+
     @Test
     void adminEndpoints_requireAuthentication() throws Exception {
         mvc.perform(get("/api/admin/flags"))
@@ -0,0 +1,128 @@
+package com.shotaroi.featureflags;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.shotaroi.featureflags.service.SnapshotFileStore;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Base64;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * This test's context writes the snapshot files; a second context started on the same database and directory
+ * restores them, and keeps evaluating once the database is gone.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+class SnapshotFileIntegrationTest {
+
+    private static final String ADMIN = "Basic " + Base64.getEncoder().encodeToString("admin:admin123".getBytes(StandardCharsets.UTF_8));
+    private static final String DB_URL = "jdbc:h2:mem:snapshotfiledb;MODE=PostgreSQL;DB_CLOSE_DELAY=-1";
+    private static final Path DIR = tempDir();
+
+    @DynamicPropertySource
+    static void properties(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", () -> DB_URL);
+        registry.add("feature-flags.snapshot-file.enabled", () -> "true");
+        registry.add("feature-flags.snapshot-file.dir", DIR::toString);
+        // Written explicitly by the test
+        registry.add("feature-flags.snapshot-file.write-interval", () -> "1h");
+    }
+
+    @LocalServerPort
+    int port;
+
+    @Autowired
+    SnapshotFileStore store;
+
+    @Autowired
+    JdbcTemplate jdbc;
+
+    final HttpClient http = HttpClient.newHttpClient();
+    final ObjectMapper json = new ObjectMapper();
+
+    ConfigurableApplicationContext restarted;
+
+    @AfterEach
+    void stop() {
+        if (restarted != null) restarted.close();
+    }
+
+    @Test
+    void restartedNode_restoresSnapshotFile_andServesItWhileTheDatabaseIsDown() throws Exception {
+        String apiKey = json.readTree(send(port, "POST", "/api/admin/api-keys",
+                "{\"name\":\"edge\",\"environment\":\"PROD\"}", "application/json").body()).get("rawKey").asText();
+        assertEquals(201, send(port, "POST", "/api/admin/flags",
+                "{\"featureKey\":\"persisted\",\"environment\":\"PROD\",\"enabled\":true,\"rolloutPercent\":0}", "application/json").statusCode());
+        assertEquals(200, send(port, "POST", "/api/admin/flags/persisted/targets/import?environment=PROD",
+                "42\nvip\n007\n", "text/csv").statusCode());
+
+        store.writeChanged();
+        assertTrue(Files.size(DIR.resolve("PROD.flags")) > 0);
+
+        restarted = new SpringApplicationBuilder(FeatureFlagApplication.class).run(
+                "--server.port=0",
+                "--spring.datasource.url=" + DB_URL,
+                "--feature-flags.snapshot-file.enabled=true",
+                "--feature-flags.snapshot-file.dir=" + DIR,
+                "--feature-flags.snapshot-file.write-interval=1h");
+        int restartedPort = Integer.parseInt(restarted.getEnvironment().getProperty("local.server.port"));
+
+        // The database disappears: every query fails from now on (a fresh, empty in-memory database)
+        jdbc.execute("SHUTDOWN");
+
+        assertEquals("TARGETED_USER", evaluate(restartedPort, apiKey, "persisted", "42"));
+        assertEquals("TARGETED_USER", evaluate(restartedPort, apiKey, "persisted", "vip"));
+        assertEquals("TARGETED_USER", evaluate(restartedPort, apiKey, "persisted", "007"));
+        assertEquals("ROLLOUT_0", evaluate(restartedPort, apiKey, "persisted", "7"));
+        assertEquals("FLAG_NOT_FOUND", evaluate(restartedPort, apiKey, "unknown", "42"));
+
+        var unknownKey = HttpRequest.newBuilder(URI.create("http://localhost:" + restartedPort
+                        + "/api/flags/persisted/evaluate?environment=PROD&userId=1"))
+                .header("X-API-Key", "fk_not_a_key").build();
+        assertNotEquals(200, http.send(unknownKey, HttpResponse.BodyHandlers.ofString()).statusCode());
+    }
+
+    private String evaluate(int port, String apiKey, String featureKey, String userId) throws Exception {
+        var request = HttpRequest.newBuilder(URI.create("http://localhost:" + port
+                        + "/api/flags/" + featureKey + "/evaluate?environment=PROD&userId=" + userId))
+                .header("X-API-Key", apiKey).build();
+        var response = http.send(request, HttpResponse.BodyHandlers.ofString());
+        assertEquals(200, response.statusCode(), response.body());
+        return json.readTree(response.body()).get("reason").asText();
+    }
+
+    private HttpResponse<String> send(int port, String method, String path, String body, String contentType) throws Exception {
+        var request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + path))
+                .method(method, HttpRequest.BodyPublishers.ofString(body))
+                .header("Content-Type", contentType)
+                .header("Authorization", ADMIN)
+                .build();
+        return http.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private static Path tempDir() {
+        try {
+            return Files.createTempDirectory("flag-snapshots");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
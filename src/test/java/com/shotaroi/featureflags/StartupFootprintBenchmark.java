@@ -0,0 +1,204 @@
+package com.shotaroi.featureflags;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Startup time and resident memory of the full application vs. the {@code evaluation} profile, each in its own JVM
+ * started from the executable jar.
+ * <p>
+ * A full node first seeds an H2 file database (API key, flags, one large allowlist) and writes the snapshot files.
+ * Then each profile is started {@code runs} times on that database. Startup is the time from launching the JVM
+ * until {@code GET /api/flags/{featureKey}/evaluate} first answers 200; memory is {@code VmRSS} right after it
+ * (Linux only). The full profile runs with its defaults, i.e. without the snapshot file.
+ * <p>
+ * Not a unit test; run with:
+ * <pre>
+ * mvn -q package -DskipTests
+ * mvn -q test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=com.shotaroi.featureflags.StartupFootprintBenchmark \
+ *     -Dexec.args="target/Feature-Flag-0.0.1-SNAPSHOT.jar 3"
+ * </pre>
+ * Arguments after the run count are JVM options for the measured runs, e.g. {@code -XX:SharedArchiveFile=app.jsa}.
+ * See docs/EVALUATION_PROFILE.md.
+ */
+public class StartupFootprintBenchmark {
+
+    private static final String ADMIN = "Basic " + Base64.getEncoder().encodeToString("admin:admin123".getBytes(StandardCharsets.UTF_8));
+    private static final int FLAGS = 100;
+    private static final int TARGETS = 10_000;
+    private static final Duration START_TIMEOUT = Duration.ofMinutes(3);
+
+    private final HttpClient http = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(1)).build();
+    private final ObjectMapper json = new ObjectMapper();
+    private final String java = ProcessHandle.current().info().command().orElse("java");
+    private final Path jar;
+    private final Path dir;
+    private final List<String> jvmOptions;
+    private String apiKey;
+
+    StartupFootprintBenchmark(Path jar, Path dir, List<String> jvmOptions) {
+        this.jar = jar;
+        this.dir = dir;
+        this.jvmOptions = jvmOptions;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Path jar = Path.of(args.length > 0 ? args[0] : "target/Feature-Flag-0.0.1-SNAPSHOT.jar");
+        int runs = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+        List<String> jvmOptions = args.length > 2 ? Arrays.asList(args).subList(2, args.length) : List.of();
+        if (!Files.isRegularFile(jar)) throw new IllegalArgumentException("No application jar at " + jar + "; run mvn package first");
+
+        var benchmark = new StartupFootprintBenchmark(jar, Files.createTempDirectory("startup-footprint"), jvmOptions);
+        benchmark.seed();
+
+        System.out.printf("%-12s %16s %12s%n", "profile", "first 200 (ms)", "RSS (MB)");
+        for (String profile : List.of("full", "evaluation")) {
+            List<long[]> samples = new ArrayList<>();
+            for (int run = 0; run < runs; run++) samples.add(benchmark.measure(profile));
+            System.out.printf("%-12s %16d %12d%n", profile,
+                    median(samples.stream().mapToLong(s -> s[0]).toArray()),
+                    median(samples.stream().mapToLong(s -> s[1]).toArray()) / 1024);
+        }
+    }
+
+    /** Creates the data on a full node and waits until it has written the snapshot files. */
+    private void seed() throws Exception {
+        int port = freePort();
+        Process node = start(port, List.of(), List.of(
+                "--feature-flags.snapshot-file.enabled=true",
+                "--feature-flags.snapshot-file.write-interval=500ms"));
+        try {
+            awaitHealthy(port, node);
+            apiKey = json.readTree(send(port, "/api/admin/api-keys",
+                    "{\"name\":\"startup\",\"environment\":\"PROD\"}", "application/json")).get("rawKey").asText();
+            for (int i = 0; i < FLAGS; i++) {
+                send(port, "/api/admin/flags", "{\"featureKey\":\"flag-" + i
+                        + "\",\"environment\":\"PROD\",\"enabled\":true,\"rolloutPercent\":50}", "application/json");
+            }
+            send(port, "/api/admin/flags/flag-0/targets/import?environment=PROD",
+                    IntStream.range(0, TARGETS).mapToObj(Integer::toString).collect(Collectors.joining("\n")), "text/csv");
+            Path file = dir.resolve("snapshots").resolve("PROD.flags");
+            long deadline = System.nanoTime() + Duration.ofSeconds(30).toNanos();
+            while (!Files.exists(file) || Files.size(file) < (long) TARGETS * Long.BYTES) {
+                if (System.nanoTime() > deadline) throw new IllegalStateException("No snapshot file written to " + file);
+                Thread.sleep(100);
+            }
+        } finally {
+            stop(node);
+        }
+    }
+
+    /** Starts the profile, returns {milliseconds until the first evaluation, RSS in kB}. */
+    private long[] measure(String profile) throws Exception {
+        int port = freePort();
+        List<String> args = profile.equals("evaluation")
+                ? List.of("--spring.profiles.active=evaluation", "--spring.jpa.database-platform=org.hibernate.dialect.H2Dialect")
+                : List.of();
+        long start = System.nanoTime();
+        Process node = start(port, jvmOptions, args);
+        try {
+            var request = HttpRequest.newBuilder(URI.create("http://localhost:" + port
+                    + "/api/flags/flag-0/evaluate?environment=PROD&userId=42")).header("X-API-Key", apiKey).build();
+            while (status(request) != 200) {
+                if (!node.isAlive()) throw new IllegalStateException(profile + " exited, see " + dir.resolve("node.log"));
+                if (System.nanoTime() - start > START_TIMEOUT.toNanos()) throw new IllegalStateException(profile + " did not start");
+                Thread.sleep(20);
+            }
+            long millis = (System.nanoTime() - start) / 1_000_000;
+            return new long[]{millis, residentKb(node.pid())};
+        } finally {
+            stop(node);
+        }
+    }
+
+    private Process start(int port, List<String> jvm, List<String> args) throws IOException {
+        List<String> command = new ArrayList<>();
+        command.add(java);
+        command.addAll(jvm);
+        command.addAll(List.of("-jar", jar.toString(),
+                "--server.port=" + port,
+                "--spring.datasource.url=jdbc:h2:file:" + dir.resolve("flags") + ";MODE=PostgreSQL",
+                "--feature-flags.snapshot-file.dir=" + dir.resolve("snapshots"),
+                "--spring.main.banner-mode=off"));
+        command.addAll(args);
+        return new ProcessBuilder(command)
+                .redirectErrorStream(true)
+                .redirectOutput(dir.resolve("node.log").toFile())
+                .start();
+    }
+
+    private void awaitHealthy(int port, Process node) throws Exception {
+        var request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/actuator/health")).build();
+        long deadline = System.nanoTime() + START_TIMEOUT.toNanos();
+        while (status(request) != 200) {
+            if (!node.isAlive() || System.nanoTime() > deadline) {
+                throw new IllegalStateException("Seeding node did not start, see " + dir.resolve("node.log"));
+            }
+            Thread.sleep(100);
+        }
+    }
+
+    private int status(HttpRequest request) throws InterruptedException {
+        try {
+            return http.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+        } catch (IOException e) {
+            return -1; // not listening yet
+        }
+    }
+
+    private String send(int port, String path, String body, String contentType) throws Exception {
+        var request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + path))
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .header("Content-Type", contentType)
+                .header("Authorization", ADMIN)
+                .build();
+        var response = http.send(request, HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() >= 300) throw new IllegalStateException(path + ": " + response.statusCode() + " " + response.body());
+        return response.body();
+    }
+
+    private static void stop(Process node) throws InterruptedException {
+        node.destroy();
+        if (!node.waitFor(30, TimeUnit.SECONDS)) node.destroyForcibly().waitFor();
+    }
+
+    /** {@code VmRSS} from /proc, or -1 where that does not exist. */
+    private static long residentKb(long pid) throws IOException {
+        Path status = Path.of("/proc", Long.toString(pid), "status");
+        if (!Files.exists(status)) return -1;
+        for (String line : Files.readAllLines(status)) {
+            if (line.startsWith("VmRSS:")) return Long.parseLong(line.replaceAll("\\D", ""));
+        }
+        return -1;
+    }
+
+    private static int freePort() throws IOException {
+        try (var socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private static long median(long[] values) {
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+}
@@ -0,0 +1,225 @@
+package com.shotaroi.featureflags;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.webmvc.test.autoconfigure.AutoConfigureMockMvc;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.ResultActions;
+
+import java.util.List;
+
+import static org.hamcrest.Matchers.startsWith;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.user;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+@TestPropertySource(properties = {
+        "spring.datasource.url=jdbc:h2:mem:importdb;MODE=PostgreSQL;DB_CLOSE_DELAY=-1",
+        "feature-flags.targets.import-chunk-size=4",
+        "feature-flags.stream.replay-size=3",
+})
+class TargetImportIntegrationTest {
+
+    @Autowired
+    MockMvc mvc;
+
+    final ObjectMapper json = new ObjectMapper();
+    String apiKey;
+
+    @BeforeEach
+    void createApiKey() throws Exception {
+        String body = mvc.perform(post("/api/admin/api-keys")
+                        .with(user("admin").roles("ADMIN"))
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"name\":\"import-test\",\"environment\":\"PROD\"}"))
+                .andExpect(status().isCreated())
+                .andReturn().getResponse().getContentAsString();
+        apiKey = json.readTree(body).get("rawKey").asText();
+    }
+
+    @Test
+    void csvImport_insertsNewUsers_skipsExistingAndRepeats() throws Exception {
+        createFlag("beta");
+        mvc.perform(post("/api/admin/flags/beta/targets").with(user("admin").roles("ADMIN"))
+                        .param("environment", "PROD")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"userId\":\"alice\"}"))
+                .andExpect(status().isCreated());
+        // Loads the allowlist into memory, so the import has to update it
+        evaluate("beta", "carol").andExpect(jsonPath("$.reason").value("ROLLOUT_0"));
+        long revision = changes(0).get("revision").asLong();
+
+        // Chunk size 4: {alice, bob, carol, dave}, then {bob, erin}; the second bob hits the conflict clause
+        mvc.perform(post("/api/admin/flags/beta/targets/import").with(user("admin").roles("ADMIN"))
+                        .param("environment", "PROD")
+                        .contentType("text/csv")
+                        .content("userId\nalice\nbob\ncarol\n\"dave\",2024-01-01\nbob\n\n  erin  \n"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.received").value(6))
+                .andExpect(jsonPath("$.inserted").value(4))
+                .andExpect(jsonPath("$.skipped").value(2))
+                .andExpect(jsonPath("$.removed").doesNotExist());
+
+        evaluate("beta", "carol").andExpect(jsonPath("$.reason").value("TARGETED_USER"));
+        evaluate("beta", "erin").andExpect(jsonPath("$.reason").value("TARGETED_USER"));
+
+        JsonNode changes = changes(revision);
+        assertEquals(revision + 4, changes.get("revision").asLong());
+        assertEquals(4, changes.get("targets").size());
+        assertEquals("dave", changes.at("/targets/2/userId").asText());
+
+        mvc.perform(get("/api/admin/flags/beta/history").with(user("admin").roles("ADMIN")).param("environment", "PROD"))
+                .andExpect(jsonPath("$.length()").value(3))
+                .andExpect(jsonPath("$[0].changeType").value("TARGET_ADDED"))
+                .andExpect(jsonPath("$[0].details").value("bulk: received=6, inserted=4, skipped=2"));
+    }
+
+    @Test
+    void failureAfterACommittedChunk_isAuditedAsIncomplete() throws Exception {
+        createFlag("partial");
+        // The first chunk of 4 commits, then the over-long userId fails the request
+        mvc.perform(post("/api/admin/flags/partial/targets/import").with(user("admin").roles("ADMIN"))
+                        .param("environment", "PROD")
+                        .contentType("text/csv")
+                        .content("a1\na2\na3\na4\n" + "x".repeat(300) + "\n"))
+                .andExpect(status().isBadRequest());
+
+        evaluate("partial", "a4").andExpect(jsonPath("$.reason").value("TARGETED_USER"));
+        mvc.perform(get("/api/admin/flags/partial/history").with(user("admin").roles("ADMIN")).param("environment", "PROD"))
+                .andExpect(jsonPath("$[0].details").value("bulk: received=4, inserted=4, skipped=0, incomplete"));
+    }
+
+    @Test
+    void ndjsonRemoval_removesPresentUsers() throws Exception {
+        createFlag("sunset");
+        mvc.perform(post("/api/admin/flags/sunset/targets/import").with(user("admin").roles("ADMIN"))
+                        .param("environment", "PROD")
+                        .contentType(MediaType.APPLICATION_NDJSON)
+                        .content("{\"userId\":\"bob\"}\n{\"userId\":\"carol\"}\n"))
+                .andExpect(jsonPath("$.inserted").value(2));
+        evaluate("sunset", "bob").andExpect(jsonPath("$.reason").value("TARGETED_USER"));
+
+        mvc.perform(post("/api/admin/flags/sunset/targets/remove").with(user("admin").roles("ADMIN"))
+                        .param("environment", "PROD")
+                        .contentType(MediaType.APPLICATION_NDJSON)
+                        .content("{\"userId\":\"bob\"}\n{\"userId\":\"zed\"}\n"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.received").value(2))
+                .andExpect(jsonPath("$.removed").value(1))
+                .andExpect(jsonPath("$.skipped").value(1));
+
+        evaluate("sunset", "bob").andExpect(jsonPath("$.reason").value("ROLLOUT_0"));
+        evaluate("sunset", "carol").andExpect(jsonPath("$.reason").value("TARGETED_USER"));
+    }
+
+    @Test
+    void ndjsonLineWithoutUserId_isSkipped_andANullOrMalformedLineIsBadRequest() throws Exception {
+        createFlag("lenient");
+        mvc.perform(post("/api/admin/flags/lenient/targets/import").with(user("admin").roles("ADMIN"))
+                        .param("environment", "PROD")
+                        .contentType(MediaType.APPLICATION_NDJSON)
+                        .content("{\"userId\":\"bob\"}\n{}\n{\"userId\":null}\n{\"userId\":\"carol\"}\n"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.received").value(2))
+                .andExpect(jsonPath("$.inserted").value(2));
+
+        for (String line : List.of("null", "[1, 2]")) {
+            mvc.perform(post("/api/admin/flags/lenient/targets/import").with(user("admin").roles("ADMIN"))
+                            .param("environment", "PROD")
+                            .contentType(MediaType.APPLICATION_NDJSON)
+                            .content("{\"userId\":\"dave\"}\n" + line + "\n"))
+                    .andExpect(status().isBadRequest())
+                    .andExpect(jsonPath("$.message").value(startsWith("Line 2: ")));
+        }
+    }
+
+    @Test
+    void stream_getsOneChangePerUser_orASnapshotWhenLargerThanTheReplayBuffer() throws Exception {
+        createFlag("streamed");
+        MvcResult stream = mvc.perform(get("/api/flags/stream")
+                        .header("X-API-Key", apiKey)
+                        .param("environment", "PROD")
+                        .accept(MediaType.TEXT_EVENT_STREAM))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        String snapshot = await(stream, "event:snapshot");
+
+        importCsv("streamed", "dora\neve\n");
+        String changes = await(stream, "\"userId\":\"eve\"");
+        assertTrue(changes.substring(snapshot.length()).contains("\"userId\":\"dora\""), changes);
+
+        // A chunk of 4 is more than the replay buffer (3) holds: one snapshot instead of a change per user
+        importCsv("streamed", "u1\nu2\nu3\nu4\n");
+        String after = await(stream, "\"u4\"").substring(changes.length());
+        assertTrue(after.contains("event:snapshot"), after);
+        assertFalse(after.contains("event:change"), after);
+    }
+
+    @Test
+    void unknownFlagOrOverlongUserId_isBadRequest() throws Exception {
+        mvc.perform(post("/api/admin/flags/missing/targets/import").with(user("admin").roles("ADMIN"))
+                        .param("environment", "PROD")
+                        .contentType("text/csv")
+                        .content("alice\n"))
+                .andExpect(status().isBadRequest());
+
+        createFlag("strict");
+        mvc.perform(post("/api/admin/flags/strict/targets/import").with(user("admin").roles("ADMIN"))
+                        .param("environment", "PROD")
+                        .contentType("text/csv")
+                        .content("x".repeat(256) + "\n"))
+                .andExpect(status().isBadRequest());
+    }
+
+    private void importCsv(String featureKey, String csv) throws Exception {
+        mvc.perform(post("/api/admin/flags/" + featureKey + "/targets/import").with(user("admin").roles("ADMIN"))
+                        .param("environment", "PROD")
+                        .contentType("text/csv")
+                        .content(csv))
+                .andExpect(status().isOk());
+    }
+
+    private static String await(MvcResult result, String expected) throws Exception {
+        long deadline = System.currentTimeMillis() + 5_000;
+        String content;
+        while (!(content = result.getResponse().getContentAsString()).contains(expected)) {
+            if (System.currentTimeMillis() > deadline) fail("Timed out waiting for " + expected);
+            Thread.sleep(20);
+        }
+        return content;
+    }
+
+    private void createFlag(String featureKey) throws Exception {
+        mvc.perform(post("/api/admin/flags").with(user("admin").roles("ADMIN"))
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"featureKey\":\"" + featureKey + "\",\"environment\":\"PROD\",\"enabled\":true,\"rolloutPercent\":0}"))
+                .andExpect(status().isCreated());
+    }
+
+    private ResultActions evaluate(String featureKey, String userId) throws Exception {
+        return mvc.perform(get("/api/flags/" + featureKey + "/evaluate")
+                        .header("X-API-Key", apiKey)
+                        .param("environment", "PROD")
+                        .param("userId", userId))
+                .andExpect(status().isOk());
+    }
+
+    private JsonNode changes(long sinceRevision) throws Exception {
+        return json.readTree(mvc.perform(get("/api/flags/changes")
+                        .header("X-API-Key", apiKey)
+                        .param("environment", "PROD")
+                        .param("sinceRevision", Long.toString(sinceRevision)))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString());
+    }
+}
@@ -0,0 +1,132 @@
+package com.shotaroi.featureflags.service;
+
+import com.shotaroi.featureflags.domain.ApiKey;
+import com.shotaroi.featureflags.domain.Environment;
+import com.shotaroi.featureflags.repository.ApiKeyRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import org.springframework.jdbc.CannotGetJdbcConnectionException;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+class ApiKeyCacheTest {
+
+    private ApiKeyRepository apiKeyRepo;
+    private AtomicLong clock;
+    private ApiKeyCache cache;
+
+    @BeforeEach
+    void setUp() {
+        apiKeyRepo = mock(ApiKeyRepository.class);
+        clock = new AtomicLong();
+        cache = new ApiKeyCache(apiKeyRepo, Duration.ofSeconds(30), 2, clock::get);
+    }
+
+    @Test
+    void validKey_isLoadedOnceWithinTtl() {
+        stubKey("fk_a", 1L);
+
+        var first = cache.get("fk_a");
+        var second = cache.get("fk_a");
+
+        assertEquals(Optional.of(new ValidatedKey(1L, "key-1", Environment.PROD)), first);
+        assertSame(first.get(), second.get());
+        verify(apiKeyRepo, times(1)).findByKeyHashAndEnabledTrue(ApiKeyService.hashKey("fk_a"));
+    }
+
+    @Test
+    void expiredEntry_isReloaded_andDroppedIfNoLongerValid() {
+        stubKey("fk_a", 1L);
+        cache.get("fk_a");
+
+        clock.addAndGet(Duration.ofSeconds(31).toNanos());
+        when(apiKeyRepo.findByKeyHashAndEnabledTrue(ApiKeyService.hashKey("fk_a"))).thenReturn(Optional.empty());
+
+        assertTrue(cache.get("fk_a").isEmpty());
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void invalidKeys_areNotCached() {
+        when(apiKeyRepo.findByKeyHashAndEnabledTrue(anyString())).thenReturn(Optional.empty());
+
+        cache.get("fk_nope");
+        cache.get("fk_nope");
+
+        verify(apiKeyRepo, times(2)).findByKeyHashAndEnabledTrue(anyString());
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void revoke_evictsAllEntriesOfThatKey_andBlocksRacingLoads() {
+        stubKey("fk_a", 1L);
+        stubKey("fk_b", 2L);
+        cache.get("fk_a");
+        cache.get("fk_b");
+
+        cache.onApiKeyRevoked(new ApiKeyRevokedEvent(1L));
+        assertEquals(1, cache.size());
+
+        // A load that read the row before the revoke committed must not put it back
+        cache.get("fk_a");
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    void sizeIsBounded() {
+        stubKey("fk_a", 1L);
+        stubKey("fk_b", 2L);
+        stubKey("fk_c", 3L);
+
+        cache.get("fk_a");
+        cache.get("fk_b");
+        assertTrue(cache.get("fk_c").isPresent());
+        assertEquals(2, cache.size());
+
+        clock.addAndGet(Duration.ofSeconds(31).toNanos());
+        cache.get("fk_c");
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    void databaseUnreachable_servesExpiredEntryAndRestoredKeys_butNotUnknownOrRevokedOnes() {
+        stubKey("fk_a", 1L);
+        cache.get("fk_a");
+        cache.restore(Map.of(ApiKeyService.hashKey("fk_b"), new ValidatedKey(2L, "restored", Environment.PROD),
+                ApiKeyService.hashKey("fk_c"), new ValidatedKey(3L, "revoked", Environment.PROD)));
+        cache.evict(Set.of(3L));
+
+        clock.addAndGet(Duration.ofSeconds(31).toNanos());
+        when(apiKeyRepo.findByKeyHashAndEnabledTrue(anyString())).thenThrow(new CannotGetJdbcConnectionException("down"));
+
+        assertEquals(1L, cache.get("fk_a").orElseThrow().id());
+        assertEquals("restored", cache.get("fk_b").orElseThrow().name());
+        assertThrows(CannotGetJdbcConnectionException.class, () -> cache.get("fk_c"));
+        assertThrows(CannotGetJdbcConnectionException.class, () -> cache.get("fk_unknown"));
+    }
+
+    @Test
+    void restoredKeys_areIgnoredWhileTheDatabaseAnswers() {
+        cache.restore(Map.of(ApiKeyService.hashKey("fk_b"), new ValidatedKey(2L, "restored", Environment.PROD)));
+        when(apiKeyRepo.findByKeyHashAndEnabledTrue(anyString())).thenReturn(Optional.empty());
+
+        assertTrue(cache.get("fk_b").isEmpty());
+    }
+
+    private void stubKey(String rawKey, long id) {
+        ApiKey apiKey = new ApiKey();
+        apiKey.setId(id);
+        apiKey.setName("key-" + id);
+        apiKey.setEnvironment(Environment.PROD);
+        when(apiKeyRepo.findByKeyHashAndEnabledTrue(ApiKeyService.hashKey(rawKey))).thenReturn(Optional.of(apiKey));
+    }
+}
@@ -0,0 +1,172 @@
+package com.shotaroi.featureflags.service;
+
+import com.shotaroi.featureflags.domain.Environment;
+import com.shotaroi.featureflags.domain.FeatureFlag;
+import com.shotaroi.featureflags.repository.FeatureFlagRepository;
+import com.shotaroi.featureflags.repository.FeatureTargetRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import tools.jackson.databind.JsonNode;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class BatchEvaluationServiceTest {
+
+    private final JsonMapper mapper = new JsonMapper();
+    private FeatureTargetRepository targetRepo;
+    private FeatureEvaluationService evaluationService;
+    private BatchEvaluationService batchService;
+
+    @BeforeEach
+    void setUp() {
+        FeatureFlagRepository flagRepo = mock(FeatureFlagRepository.class);
+        targetRepo = mock(FeatureTargetRepository.class);
+        when(flagRepo.findByFeatureKeyAndEnvironment("new-pricing", Environment.PROD))
+                .thenReturn(Optional.of(flag("new-pricing", 1L, 30)));
+        when(flagRepo.findByFeatureKeyAndEnvironment("other", Environment.PROD))
+                .thenReturn(Optional.of(flag("other", 2L, 70)));
+        when(flagRepo.findByFeatureKeyAndEnvironment("missing", Environment.PROD)).thenReturn(Optional.empty());
+        when(flagRepo.findAllByEnvironmentAndFeatureKeyIn(eq(Environment.PROD), any())).thenAnswer(inv -> {
+            Collection<String> keys = inv.getArgument(1);
+            return keys.stream().filter(key -> !key.equals("missing"))
+                    .map(key -> flagRepo.findByFeatureKeyAndEnvironment(key, Environment.PROD).orElseThrow())
+                    .toList();
+        });
+        when(targetRepo.findUserIdPage(eq(1L), eq(""), any())).thenReturn(List.of("vip"));
+
+        var meterRegistry = new SimpleMeterRegistry();
+        var flagCache = new FlagCache(flagRepo, Duration.ofSeconds(30), 100);
+        evaluationService = new FeatureEvaluationService(flagCache, new TargetIndex(targetRepo, meterRegistry, true),
+                new EvaluationMetrics(meterRegistry, 1000, List.of()));
+        batchService = new BatchEvaluationService(flagCache, evaluationService, mapper);
+    }
+
+    @Test
+    void resultsMatchSingleEvaluation_inInputOrder_acrossChunks() {
+        int users = BatchEvaluationService.CHUNK_SIZE * 2 + 17;
+        var input = new StringBuilder("{\"userId\":\"vip\"}\n");
+        for (int i = 1; i < users; i++) input.append("{\"userId\":\"user-").append(i).append("\"}\n");
+
+        List<String> lines = run(input.toString(), List.of("new-pricing", "other", "missing"));
+
+        assertEquals(users, lines.size());
+        for (int i = 0; i < users; i++) {
+            JsonNode line = mapper.readTree(lines.get(i));
+            String userId = i == 0 ? "vip" : "user-" + i;
+            assertEquals(userId, line.get("userId").asString());
+            for (String key : List.of("new-pricing", "other", "missing")) {
+                var expected = evaluationService.evaluate(key, Environment.PROD, userId);
+                JsonNode actual = line.get("results").get(key);
+                assertEquals(expected.enabled(), actual.get("enabled").asBoolean(), userId + " " + key);
+                assertEquals(expected.reason(), actual.get("reason").asString(), userId + " " + key);
+            }
+        }
+        assertEquals("TARGETED_USER", mapper.readTree(lines.get(0)).get("results").get("new-pricing").get("reason").asString());
+    }
+
+    @Test
+    void binary_matchesSingleEvaluation_acrossFrames() throws Exception {
+        int users = BatchEvaluationService.CHUNK_SIZE + 5;
+        var input = new StringBuilder("{\"userId\":\"vip\"}\n");
+        for (int i = 1; i < users; i++) input.append("{\"userId\":\"user-").append(i).append("\"}\n");
+        List<String> keys = List.of("new-pricing", "other", "missing");
+
+        var out = new ByteArrayOutputStream();
+        long total = batchService.evaluateBinary(Environment.PROD, keys, true,
+                new ByteArrayInputStream(input.toString().getBytes(StandardCharsets.UTF_8)), out);
+
+        assertEquals(users, total);
+        var reader = new BinaryBatchResults.Reader(new ByteArrayInputStream(out.toByteArray()));
+        assertEquals(keys, reader.featureKeys());
+        assertTrue(reader.hasReasons());
+        int user = 0;
+        for (int frame = reader.nextFrame(); frame > 0; frame = reader.nextFrame()) {
+            for (int i = 0; i < frame; i++, user++) {
+                String userId = user == 0 ? "vip" : "user-" + user;
+                for (int f = 0; f < keys.size(); f++) {
+                    var expected = evaluationService.evaluate(keys.get(f), Environment.PROD, userId);
+                    assertEquals(expected.enabled(), reader.enabled(i, f), userId + " " + keys.get(f));
+                    assertSame(expected, reader.result(i, f), userId + " " + keys.get(f));
+                }
+            }
+        }
+        assertEquals(users, user);
+    }
+
+    @Test
+    void binary_withoutReasons_packsOneBitPerResult() throws Exception {
+        var out = new ByteArrayOutputStream();
+        batchService.evaluateBinary(Environment.PROD, List.of("new-pricing"), false,
+                new ByteArrayInputStream("{\"userId\":\"a\"}\n".repeat(16).getBytes(StandardCharsets.UTF_8)), out);
+
+        // header: magic, version, options, 1 key "new-pricing"; one frame: count and 2 bytes of bits; end marker
+        assertEquals(4 + 1 + 1 + 1 + 1 + "new-pricing".length() + 1 + 2 + 1, out.size());
+        var reader = new BinaryBatchResults.Reader(new ByteArrayInputStream(out.toByteArray()));
+        assertFalse(reader.hasReasons());
+        assertEquals(16, reader.nextFrame());
+        assertThrows(IllegalStateException.class, () -> reader.result(0, 0));
+        assertEquals(0, reader.nextFrame());
+    }
+
+    @Test
+    void targets_areLoadedOnTheCallingThread_notInTheParallelSection() {
+        var loadedOn = new CopyOnWriteArrayList<Thread>();
+        when(targetRepo.findUserIdPage(eq(1L), eq(""), any())).thenAnswer(inv -> {
+            loadedOn.add(Thread.currentThread());
+            return List.of("vip");
+        });
+        var input = new StringBuilder();
+        for (int i = 0; i < 1000; i++) input.append("{\"userId\":\"user-").append(i).append("\"}\n");
+
+        run(input.toString(), List.of("new-pricing"));
+
+        assertEquals(List.of(Thread.currentThread()), loadedOn);
+    }
+
+    @Test
+    void lineWithoutUserId_isRejectedWithItsLineNumber() {
+        for (String bad : List.of("null", "{}", "{\"userId\":null}")) {
+            var e = assertThrows(IllegalArgumentException.class,
+                    () -> run("{\"userId\":\"a\"}\n" + bad + "\n{\"userId\":\"b\"}\n", List.of("new-pricing")));
+            assertTrue(e.getMessage().startsWith("Line 2: "), e.getMessage());
+        }
+    }
+
+    @Test
+    void emptyInput_producesEmptyOutput() {
+        assertEquals(List.of(), run("", List.of("new-pricing")));
+    }
+
+    private List<String> run(String ndjson, List<String> keys) {
+        var out = new ByteArrayOutputStream();
+        batchService.evaluate(Environment.PROD, keys,
+                new ByteArrayInputStream(ndjson.getBytes(StandardCharsets.UTF_8)), out);
+        String body = out.toString(StandardCharsets.UTF_8);
+        assertTrue(body.isEmpty() || body.endsWith("\n"));
+        return body.lines().toList();
+    }
+
+    private static FeatureFlag flag(String key, long id, int rollout) {
+        FeatureFlag f = new FeatureFlag();
+        f.setId(id);
+        f.setFeatureKey(key);
+        f.setEnvironment(Environment.PROD);
+        f.setEnabled(true);
+        f.setRolloutPercent(rollout);
+        return f;
+    }
+}
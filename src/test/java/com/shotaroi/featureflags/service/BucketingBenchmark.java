@@ -0,0 +1,42 @@
+package com.shotaroi.featureflags.service;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Cost per rollout-bucket computation for each bucketing version.
+ * Not a unit test; run with:
+ * <pre>
+ * mvn -q test-compile
+ * java -cp target/classes:target/test-classes com.shotaroi.featureflags.service.BucketingBenchmark
+ * </pre>
+ */
+public class BucketingBenchmark {
+
+    private static final int USERS = 1_000_000;
+
+    public static void main(String[] args) {
+        String[] users = new String[USERS];
+        for (int i = 0; i < USERS; i++) users[i] = "user-" + (10_000_000 + i);
+
+        System.out.printf("%-10s %12s %14s%n", "version", "ns/bucket", "bytes/bucket");
+        for (int round = 0; round < 3; round++) { // first rounds are warm-up
+            for (int version : new int[]{Bucketing.LEGACY_SHA256, Bucketing.MURMUR3}) {
+                run(version, users, round == 2);
+            }
+        }
+    }
+
+    private static void run(int version, String[] users, boolean print) {
+        var threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long allocBefore = threads.getCurrentThreadAllocatedBytes();
+        long start = System.nanoTime();
+        long sum = 0;
+        for (String user : users) sum += Bucketing.bucket(version, "new_checkout_flow", user);
+        long elapsed = System.nanoTime() - start;
+        long allocated = threads.getCurrentThreadAllocatedBytes() - allocBefore;
+        if (print) {
+            System.out.printf("%-10d %12.1f %14.2f%s%n", version, (double) elapsed / users.length,
+                    (double) allocated / users.length, sum < 0 ? "!" : "");
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package com.shotaroi.featureflags.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BucketingTest {
+
+    @Test
+    void referenceMurmur3_matchesPublishedVectors() {
+        assertEquals(0, referenceMurmur3(new byte[0]));
+        assertEquals(0x248bfa47, referenceMurmur3("hello".getBytes(StandardCharsets.UTF_8)));
+        assertEquals(0x2e4ff723, referenceMurmur3("The quick brown fox jumps over the lazy dog".getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /** The client SDK checks the same file, so local evaluation buckets users exactly like the server. */
+    @Test
+    void goldenVectors_sharedWithClientSdk() throws Exception {
+        var lines = Files.readAllLines(Path.of("feature-flag-client/src/test/resources/bucketing-vectors.tsv"));
+        int checked = 0;
+        for (String line : lines) {
+            if (line.startsWith("#")) continue;
+            String[] f = line.split("\t", -1);
+            assertEquals(Integer.parseInt(f[3]), Bucketing.bucket(Integer.parseInt(f[0]), f[1], f[2]), line);
+            checked++;
+        }
+        assertTrue(checked > 100);
+    }
+
+    @Test
+    void murmur3_matchesHashOfConcatenatedUtf8Bytes() {
+        String[][] pairs = {
+                {"", ""}, {"a", ""}, {"", "b"}, {"new_dashboard", "alice"}, {"checkout", "12345678"},
+                {"flag", "ユーザー"}, {"ключ", "user"}, {"emoji", "😀x"}, {"lone", "\uD83Dz"},
+                {"tail\uD800", "\uDC00head"}, {"\uDC00", "\uD800"}
+        };
+        for (String[] p : pairs) {
+            assertEquals(referenceMurmur3((p[0] + ":" + p[1]).getBytes(StandardCharsets.UTF_8)),
+                    Bucketing.murmur3(p[0], p[1]), p[0] + ":" + p[1]);
+        }
+
+        Random random = new Random(42);
+        for (int i = 0; i < 10_000; i++) {
+            String key = randomString(random);
+            String user = randomString(random);
+            assertEquals(referenceMurmur3((key + ":" + user).getBytes(StandardCharsets.UTF_8)),
+                    Bucketing.murmur3(key, user));
+        }
+    }
+
+    @Test
+    void legacyVersion_isBitIdenticalToSha256FirstByte() throws Exception {
+        Random random = new Random(7);
+        for (int i = 0; i < 1_000; i++) {
+            String user = "user-" + random.nextInt(1_000_000);
+            byte[] hash = MessageDigest.getInstance("SHA-256")
+                    .digest(("new_dashboard:" + user).getBytes(StandardCharsets.UTF_8));
+            assertEquals((hash[0] & 0xFF) % 100, Bucketing.bucket(Bucketing.LEGACY_SHA256, "new_dashboard", user));
+        }
+        assertEquals(Bucketing.bucket(Bucketing.LEGACY_SHA256, "f", ""), Bucketing.bucket(Bucketing.LEGACY_SHA256, "f", null));
+    }
+
+    @Test
+    void murmur3Buckets_areInRangeAndEvenlySpread() {
+        int users = 1_000_000;
+        int[] counts = new int[100];
+        for (int i = 0; i < users; i++) {
+            int bucket = Bucketing.bucket(Bucketing.MURMUR3, "checkout", Integer.toString(i));
+            assertTrue(bucket >= 0 && bucket < 100);
+            counts[bucket]++;
+        }
+        // Each bucket expects 10_000 users; 5 sigma is about +-500.
+        for (int count : counts) {
+            assertTrue(Math.abs(count - users / 100) < 500, "bucket count " + count);
+        }
+    }
+
+    @Test
+    void unknownVersion_isRejected() {
+        assertThrows(IllegalArgumentException.class, () -> Bucketing.bucket(3, "f", "u"));
+        assertFalse(Bucketing.isSupported(0));
+        assertTrue(Bucketing.isSupported(Bucketing.CURRENT));
+    }
+
+    private static String randomString(Random random) {
+        int length = random.nextInt(12);
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            sb.append(switch (random.nextInt(4)) {
+                case 0 -> (char) (0x20 + random.nextInt(0x5F));
+                case 1 -> (char) (0x80 + random.nextInt(0x780));
+                case 2 -> (char) (0x800 + random.nextInt(0xF000));
+                default -> (char) (0xD800 + random.nextInt(0x800)); // surrogates, paired or not
+            });
+        }
+        return sb.toString();
+    }
+
+    /** Straightforward MurmurHash3 x86_32, seed 0, over a byte array. */
+    private static int referenceMurmur3(byte[] data) {
+        int h1 = 0;
+        int blocks = data.length / 4;
+        for (int i = 0; i < blocks; i++) {
+            int k1 = (data[4 * i] & 0xFF) | (data[4 * i + 1] & 0xFF) << 8
+                    | (data[4 * i + 2] & 0xFF) << 16 | (data[4 * i + 3] & 0xFF) << 24;
+            k1 *= 0xcc9e2d51;
+            k1 = Integer.rotateLeft(k1, 15);
+            k1 *= 0x1b873593;
+            h1 ^= k1;
+            h1 = Integer.rotateLeft(h1, 13);
+            h1 = h1 * 5 + 0xe6546b64;
+        }
+        int k1 = 0;
+        int tail = blocks * 4;
+        switch (data.length & 3) {
+            case 3: k1 ^= (data[tail + 2] & 0xFF) << 16;
+            case 2: k1 ^= (data[tail + 1] & 0xFF) << 8;
+            case 1:
+                k1 ^= data[tail] & 0xFF;
+                k1 *= 0xcc9e2d51;
+                k1 = Integer.rotateLeft(k1, 15);
+                k1 *= 0x1b873593;
+                h1 ^= k1;
+        }
+        h1 ^= data.length;
+        h1 ^= h1 >>> 16;
+        h1 *= 0x85ebca6b;
+        h1 ^= h1 >>> 13;
+        h1 *= 0xc2b2ae35;
+        h1 ^= h1 >>> 16;
+        return h1;
+    }
+}
@@ -0,0 +1,95 @@
+package com.shotaroi.featureflags.service;
+
+import com.shotaroi.featureflags.domain.Environment;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EvaluationMetricsTest {
+
+    private SimpleMeterRegistry registry;
+
+    @BeforeEach
+    void setUp() {
+        registry = new SimpleMeterRegistry();
+    }
+
+    @Test
+    void handlesAreCachedPerKeyAndEnvironment() {
+        var metrics = new EvaluationMetrics(registry, 10, List.of());
+
+        var prod = metrics.forFlag("checkout", Environment.PROD, true);
+
+        assertSame(prod, metrics.forFlag("checkout", Environment.PROD, true));
+        assertNotSame(prod, metrics.forFlag("checkout", Environment.DEV, true));
+    }
+
+    @Test
+    void rolloutBuckets_shareOneReasonSeries() {
+        var metrics = new EvaluationMetrics(registry, 10, List.of());
+        var meters = metrics.forFlag("checkout", Environment.PROD, true);
+
+        for (int i = 0; i < 50; i++) meters.count(EvaluationMetrics.ROLLOUT_BUCKET, i % 2 == 0);
+
+        assertEquals(Set.of("ROLLOUT_BUCKET"), tagValues("reason"));
+        assertEquals(25, counter("checkout", "on").count());
+        assertEquals(25, counter("checkout", "off").count());
+    }
+
+    @Test
+    void unknownKeys_areNeverTagged() {
+        var metrics = new EvaluationMetrics(registry, 10, List.of());
+
+        for (int i = 0; i < 100; i++) {
+            var meters = metrics.forFlag("random-" + i, Environment.PROD, false);
+            meters.count(EvaluationMetrics.FLAG_NOT_FOUND, false);
+            meters.recordDuration(1_000);
+        }
+
+        assertEquals(Set.of(EvaluationMetrics.UNKNOWN_KEY), tagValues("feature_key"));
+        assertEquals(100, counter(EvaluationMetrics.UNKNOWN_KEY, "off").count());
+    }
+
+    @Test
+    void keysBeyondCap_shareOtherSeries() {
+        var metrics = new EvaluationMetrics(registry, 2, List.of());
+
+        for (String key : List.of("a", "b", "c", "d")) {
+            metrics.forFlag(key, Environment.PROD, true).count(EvaluationMetrics.ROLLOUT_100, true);
+        }
+        metrics.forFlag("a", Environment.DEV, true).count(EvaluationMetrics.ROLLOUT_100, true);
+
+        assertEquals(Set.of("a", "b", EvaluationMetrics.OTHER_KEY), tagValues("feature_key"));
+        assertEquals(2, counter(EvaluationMetrics.OTHER_KEY, "on").count());
+    }
+
+    @Test
+    void allowlist_limitsTaggedKeys() {
+        var metrics = new EvaluationMetrics(registry, 1000, List.of("checkout", " search "));
+
+        for (String key : List.of("checkout", "search", "beta")) {
+            metrics.forFlag(key, Environment.PROD, true).count(EvaluationMetrics.FLAG_DISABLED, false);
+        }
+
+        assertEquals(Set.of("checkout", "search", EvaluationMetrics.OTHER_KEY), tagValues("feature_key"));
+    }
+
+    private Set<String> tagValues(String tag) {
+        return registry.find(EvaluationMetrics.METRIC_EVALUATIONS).meters().stream()
+                .map(Meter::getId)
+                .map(id -> id.getTag(tag))
+                .collect(Collectors.toSet());
+    }
+
+    private Counter counter(String featureKey, String result) {
+        return registry.get(EvaluationMetrics.METRIC_EVALUATIONS).tag("feature_key", featureKey).tag("result", result).counter();
+    }
+}
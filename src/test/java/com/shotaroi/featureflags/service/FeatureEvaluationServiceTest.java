@@ -2,28 +2,40 @@ package com.shotaroi.featureflags.service;
 
 import com.shotaroi.featureflags.domain.Environment;
 import com.shotaroi.featureflags.domain.FeatureFlag;
+import com.shotaroi.featureflags.domain.FlagChangeType;
 import com.shotaroi.featureflags.repository.FeatureFlagRepository;
 import com.shotaroi.featureflags.repository.FeatureTargetRepository;
 import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.time.Duration;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
 class FeatureEvaluationServiceTest {
 
     private FeatureFlagRepository flagRepo;
     private FeatureTargetRepository targetRepo;
+    private FlagCache flagCache;
     private FeatureEvaluationService service;
 
     @BeforeEach
     void setUp() {
         flagRepo = mock(FeatureFlagRepository.class);
         targetRepo = mock(FeatureTargetRepository.class);
-        service = new FeatureEvaluationService(flagRepo, targetRepo, new SimpleMeterRegistry());
+        flagCache = new FlagCache(flagRepo, Duration.ofSeconds(30), 100);
+        var meterRegistry = new SimpleMeterRegistry();
+        service = new FeatureEvaluationService(flagCache, new TargetIndex(targetRepo, meterRegistry, true),
+                new EvaluationMetrics(meterRegistry, 1000, List.of()));
     }
 
     @Test
@@ -40,7 +52,7 @@ class FeatureEvaluationServiceTest {
     void disabledFlag_returnsOff_evenIfTargeted() {
         FeatureFlag flag = flag("new_dashboard", Environment.DEV, false, 100, 1L);
         when(flagRepo.findByFeatureKeyAndEnvironment("new_dashboard", Environment.DEV)).thenReturn(Optional.of(flag));
-        when(targetRepo.existsByFeatureFlag_IdAndUserId(1L, "alice")).thenReturn(true);
+        when(targetRepo.findUserIdPage(eq(1L), eq(""), any())).thenReturn(List.of("alice"));
 
         var res = service.evaluate("new_dashboard", Environment.DEV, "alice");
 
@@ -52,7 +64,7 @@ class FeatureEvaluationServiceTest {
     void targetedUser_returnsOn_whenEnabled() {
         FeatureFlag flag = flag("new_dashboard", Environment.STAGING, true, 0, 1L);
         when(flagRepo.findByFeatureKeyAndEnvironment("new_dashboard", Environment.STAGING)).thenReturn(Optional.of(flag));
-        when(targetRepo.existsByFeatureFlag_IdAndUserId(1L, "alice")).thenReturn(true);
+        when(targetRepo.findUserIdPage(eq(1L), eq(""), any())).thenReturn(List.of("alice"));
 
         var res = service.evaluate("new_dashboard", Environment.STAGING, "alice");
 
@@ -64,7 +76,7 @@ class FeatureEvaluationServiceTest {
     void rollout0_returnsOff_whenNotTargeted() {
         FeatureFlag flag = flag("new_dashboard", Environment.PROD, true, 0, 1L);
         when(flagRepo.findByFeatureKeyAndEnvironment("new_dashboard", Environment.PROD)).thenReturn(Optional.of(flag));
-        when(targetRepo.existsByFeatureFlag_IdAndUserId(1L, "alice")).thenReturn(false);
+        when(targetRepo.findUserIdPage(eq(1L), eq(""), any())).thenReturn(List.of());
 
         var res = service.evaluate("new_dashboard", Environment.PROD, "alice");
 
@@ -76,7 +88,7 @@ class FeatureEvaluationServiceTest {
     void rollout100_returnsOn_whenNotTargeted() {
         FeatureFlag flag = flag("new_dashboard", Environment.PROD, true, 100, 1L);
         when(flagRepo.findByFeatureKeyAndEnvironment("new_dashboard", Environment.PROD)).thenReturn(Optional.of(flag));
-        when(targetRepo.existsByFeatureFlag_IdAndUserId(1L, "alice")).thenReturn(false);
+        when(targetRepo.findUserIdPage(eq(1L), eq(""), any())).thenReturn(List.of());
 
         var res = service.evaluate("new_dashboard", Environment.PROD, "alice");
 
@@ -88,7 +100,7 @@ class FeatureEvaluationServiceTest {
     void deterministicBucket_sameUserSameResult() {
         FeatureFlag flag = flag("new_dashboard", Environment.PROD, true, 30, 1L);
         when(flagRepo.findByFeatureKeyAndEnvironment("new_dashboard", Environment.PROD)).thenReturn(Optional.of(flag));
-        when(targetRepo.existsByFeatureFlag_IdAndUserId(1L, "alice")).thenReturn(false);
+        when(targetRepo.findUserIdPage(eq(1L), eq(""), any())).thenReturn(List.of());
 
         var r1 = service.evaluate("new_dashboard", Environment.PROD, "alice");
         var r2 = service.evaluate("new_dashboard", Environment.PROD, "alice");
@@ -97,6 +109,99 @@ class FeatureEvaluationServiceTest {
         assertEquals(r1.reason(), r2.reason());
     }
 
+    @Test
+    void rolloutBucket_usesFlagsBucketingVersion() {
+        FeatureFlag legacy = flag("legacy_flag", Environment.PROD, true, 50, 1L);
+        legacy.setBucketingVersion(Bucketing.LEGACY_SHA256);
+        FeatureFlag current = flag("current_flag", Environment.PROD, true, 50, 2L);
+        current.setBucketingVersion(Bucketing.MURMUR3);
+        when(flagRepo.findByFeatureKeyAndEnvironment("legacy_flag", Environment.PROD)).thenReturn(Optional.of(legacy));
+        when(flagRepo.findByFeatureKeyAndEnvironment("current_flag", Environment.PROD)).thenReturn(Optional.of(current));
+        when(targetRepo.findUserIdPage(any(), eq(""), any())).thenReturn(List.of());
+
+        var legacyRes = service.evaluate("legacy_flag", Environment.PROD, "alice");
+        var currentRes = service.evaluate("current_flag", Environment.PROD, "alice");
+
+        assertEquals("ROLLOUT_BUCKET_" + Bucketing.legacyBucket("legacy_flag", "alice"), legacyRes.reason());
+        assertEquals("ROLLOUT_BUCKET_" + Bucketing.bucket(Bucketing.MURMUR3, "current_flag", "alice"), currentRes.reason());
+    }
+
+    @Test
+    void results_areSharedInstances() {
+        FeatureFlag flag = flag("new_dashboard", Environment.PROD, true, 50, 1L);
+        when(flagRepo.findByFeatureKeyAndEnvironment("new_dashboard", Environment.PROD)).thenReturn(Optional.of(flag));
+        when(targetRepo.findUserIdPage(eq(1L), eq(""), any())).thenReturn(List.of());
+        Set<FeatureEvaluationService.EvaluationResult> shared = Collections.newSetFromMap(new IdentityHashMap<>());
+        shared.addAll(FeatureEvaluationService.EvaluationResult.all());
+
+        assertEquals(5 + 2 * Bucketing.BUCKETS, shared.size());
+        for (int i = 0; i < 1000; i++) {
+            var result = service.evaluate("new_dashboard", Environment.PROD, "user-" + i);
+            assertTrue(shared.contains(result), result.toString());
+            assertEquals(result.enabled(), Integer.parseInt(result.reason().substring("ROLLOUT_BUCKET_".length())) < 50);
+        }
+        assertTrue(shared.contains(service.evaluate("missing", Environment.PROD, "alice")));
+    }
+
+    @Test
+    void cachedFlag_isLoadedOnce() {
+        FeatureFlag flag = flag("new_dashboard", Environment.PROD, true, 100, 1L);
+        when(flagRepo.findByFeatureKeyAndEnvironment("new_dashboard", Environment.PROD)).thenReturn(Optional.of(flag));
+
+        service.evaluate("new_dashboard", Environment.PROD, "alice");
+        service.evaluate("new_dashboard", Environment.PROD, "bob");
+
+        verify(flagRepo, times(1)).findByFeatureKeyAndEnvironment("new_dashboard", Environment.PROD);
+    }
+
+    @Test
+    void committedUpdate_replacesCachedFlag() {
+        FeatureFlag flag = flag("new_dashboard", Environment.PROD, true, 100, 1L);
+        when(flagRepo.findByFeatureKeyAndEnvironment("new_dashboard", Environment.PROD)).thenReturn(Optional.of(flag));
+        assertTrue(service.evaluate("new_dashboard", Environment.PROD, "alice").enabled());
+
+        FeatureFlag disabled = flag("new_dashboard", Environment.PROD, false, 100, 1L);
+        flagCache.onFlagChanged(new FlagChangedEvent(FlagChangeType.FLAG_UPDATED, disabled, null, 1L));
+
+        var res = service.evaluate("new_dashboard", Environment.PROD, "alice");
+        assertFalse(res.enabled());
+        assertEquals("FLAG_DISABLED", res.reason());
+        verify(flagRepo, times(1)).findByFeatureKeyAndEnvironment("new_dashboard", Environment.PROD);
+    }
+
+    @Test
+    void evaluateAll_loadsEnvironmentOnceAndEvaluatesEveryFlag() {
+        when(flagRepo.findAllByEnvironment(Environment.PROD)).thenReturn(List.of(
+                flag("b_off", Environment.PROD, false, 100, 2L),
+                flag("a_on", Environment.PROD, true, 100, 1L)));
+
+        var first = service.evaluateAll(Environment.PROD, "alice", null);
+        var second = service.evaluateAll(Environment.PROD, "alice", List.of());
+
+        assertEquals(List.of("a_on", "b_off"), List.copyOf(first.keySet()));
+        assertEquals("ROLLOUT_100", first.get("a_on").reason());
+        assertEquals("FLAG_DISABLED", first.get("b_off").reason());
+        assertEquals(first, second);
+        verify(flagRepo, times(1)).findAllByEnvironment(Environment.PROD);
+        verify(flagRepo, never()).findByFeatureKeyAndEnvironment(any(), any());
+    }
+
+    @Test
+    void evaluateAll_withKeys_returnsOnlyRequestedKeys_loadedWithOneQuery() {
+        FeatureFlag flag = flag("a_on", Environment.PROD, true, 100, 1L);
+        when(flagRepo.findAllByEnvironmentAndFeatureKeyIn(eq(Environment.PROD), any())).thenReturn(List.of(flag));
+
+        var res = service.evaluateAll(Environment.PROD, "alice", List.of("missing", "a_on", "a_on"));
+        var again = service.evaluateAll(Environment.PROD, "alice", List.of("missing", "a_on"));
+
+        assertEquals(2, res.size());
+        assertEquals(service.evaluate("a_on", Environment.PROD, "alice"), res.get("a_on"));
+        assertEquals("FLAG_NOT_FOUND", res.get("missing").reason());
+        assertEquals(res, again);
+        verify(flagRepo, times(1)).findAllByEnvironmentAndFeatureKeyIn(Environment.PROD, Set.of("missing", "a_on"));
+        verify(flagRepo, never()).findByFeatureKeyAndEnvironment(any(), any());
+    }
+
     private FeatureFlag flag(String key, Environment env, boolean enabled, int rollout, long id) {
         FeatureFlag f = new FeatureFlag();
         f.setFeatureKey(key);
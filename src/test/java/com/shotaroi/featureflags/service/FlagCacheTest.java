@@ -0,0 +1,150 @@
+package com.shotaroi.featureflags.service;
+
+import com.shotaroi.featureflags.domain.Environment;
+import com.shotaroi.featureflags.domain.FeatureFlag;
+import com.shotaroi.featureflags.domain.FlagChangeType;
+import com.shotaroi.featureflags.repository.FeatureFlagRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.CannotGetJdbcConnectionException;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class FlagCacheTest {
+
+    private FeatureFlagRepository flagRepo;
+    private AtomicLong now;
+    private FlagCache cache;
+
+    @BeforeEach
+    void setUp() {
+        flagRepo = mock(FeatureFlagRepository.class);
+        now = new AtomicLong();
+        cache = new FlagCache(flagRepo, Duration.ofSeconds(30), 2, now::get);
+    }
+
+    @Test
+    void unknownKey_isLookedUpOnceWithinTtl() {
+        when(flagRepo.findByFeatureKeyAndEnvironment("nope", Environment.PROD)).thenReturn(Optional.empty());
+
+        assertTrue(cache.get("nope", Environment.PROD).isEmpty());
+        assertTrue(cache.get("nope", Environment.PROD).isEmpty());
+
+        verify(flagRepo, times(1)).findByFeatureKeyAndEnvironment("nope", Environment.PROD);
+    }
+
+    @Test
+    void unknownKey_isLookedUpAgainAfterTtl() {
+        when(flagRepo.findByFeatureKeyAndEnvironment("nope", Environment.PROD)).thenReturn(Optional.empty());
+
+        cache.get("nope", Environment.PROD);
+        now.addAndGet(Duration.ofSeconds(31).toNanos());
+        cache.get("nope", Environment.PROD);
+
+        verify(flagRepo, times(2)).findByFeatureKeyAndEnvironment("nope", Environment.PROD);
+    }
+
+    @Test
+    void negativeEntries_areBounded() {
+        when(flagRepo.findByFeatureKeyAndEnvironment(anyString(), eq(Environment.PROD))).thenReturn(Optional.empty());
+
+        cache.get("a", Environment.PROD);
+        cache.get("b", Environment.PROD);
+        cache.get("c", Environment.PROD); // cache is full: not remembered
+        cache.get("c", Environment.PROD);
+
+        verify(flagRepo, times(1)).findByFeatureKeyAndEnvironment("a", Environment.PROD);
+        verify(flagRepo, times(2)).findByFeatureKeyAndEnvironment("c", Environment.PROD);
+    }
+
+    @Test
+    void createdFlag_evictsNegativeEntryImmediately() {
+        when(flagRepo.findByFeatureKeyAndEnvironment("later", Environment.DEV)).thenReturn(Optional.empty());
+        assertTrue(cache.get("later", Environment.DEV).isEmpty());
+
+        cache.onFlagChanged(new FlagChangedEvent(FlagChangeType.FLAG_CREATED, flag("later", Environment.DEV), null, 1L));
+
+        assertTrue(cache.get("later", Environment.DEV).isPresent());
+    }
+
+    @Test
+    void databaseUnreachable_completeEnvironmentAnswersFromMemory() {
+        cache.restore(Environment.PROD, List.of(CachedFlag.of(flag("restored", Environment.PROD))));
+        when(flagRepo.findByFeatureKeyAndEnvironment(anyString(), any())).thenThrow(new CannotGetJdbcConnectionException("down"));
+
+        assertEquals(1, cache.all(Environment.PROD).size());
+        assertTrue(cache.get("restored", Environment.PROD).isPresent());
+        assertTrue(cache.get("unknown", Environment.PROD).isEmpty());
+        // Not all of DEV is in memory, so "not found" would be a guess
+        assertThrows(CannotGetJdbcConnectionException.class, () -> cache.get("unknown", Environment.DEV));
+        verify(flagRepo, never()).findAllByEnvironment(Environment.PROD);
+    }
+
+    @Test
+    void put_keepsTheCachedCopy_unlessTheIncomingOneIsNewer() {
+        Instant t = Instant.parse("2026-01-01T00:00:00Z");
+        CachedFlag fresh = new CachedFlag(1L, "raced", Environment.PROD, true, 100, 1, t);
+        cache.put(fresh);
+
+        // A loader that read the row before the last write, with the same timestamp or an older one
+        assertSame(fresh, cache.put(new CachedFlag(1L, "raced", Environment.PROD, false, 0, 1, t)));
+        assertSame(fresh, cache.put(new CachedFlag(1L, "raced", Environment.PROD, false, 0, 1, t.minusMillis(1))));
+
+        CachedFlag newer = new CachedFlag(1L, "raced", Environment.PROD, false, 0, 1, t.plusMillis(1));
+        assertSame(newer, cache.put(newer));
+        assertSame(newer, cache.get("raced", Environment.PROD).orElseThrow());
+    }
+
+    @Test
+    void concurrentMisses_shareOneLookup() throws Exception {
+        var release = new CountDownLatch(1);
+        when(flagRepo.findByFeatureKeyAndEnvironment("hot", Environment.PROD)).thenAnswer(inv -> {
+            release.await(5, TimeUnit.SECONDS);
+            return Optional.empty();
+        });
+
+        int callers = 8;
+        var started = new CountDownLatch(callers);
+        ExecutorService pool = Executors.newFixedThreadPool(callers);
+        try {
+            List<Future<Optional<CachedFlag>>> results = new ArrayList<>();
+            for (int i = 0; i < callers; i++) {
+                results.add(pool.submit(() -> {
+                    started.countDown();
+                    return cache.get("hot", Environment.PROD);
+                }));
+            }
+            started.await(5, TimeUnit.SECONDS);
+            Thread.sleep(100);
+            release.countDown();
+            for (var r : results) assertTrue(r.get(5, TimeUnit.SECONDS).isEmpty());
+        } finally {
+            pool.shutdownNow();
+        }
+
+        verify(flagRepo, times(1)).findByFeatureKeyAndEnvironment("hot", Environment.PROD);
+    }
+
+    private static FeatureFlag flag(String key, Environment env) {
+        FeatureFlag f = new FeatureFlag();
+        f.setId(1L);
+        f.setFeatureKey(key);
+        f.setEnvironment(env);
+        f.setEnabled(true);
+        f.setRolloutPercent(100);
+        return f;
+    }
+}
@@ -0,0 +1,178 @@
+package com.shotaroi.featureflags.service;
+
+import com.shotaroi.featureflags.domain.Environment;
+import com.shotaroi.featureflags.domain.FeatureFlag;
+import com.shotaroi.featureflags.domain.FlagChange;
+import com.shotaroi.featureflags.domain.FlagChangeType;
+import com.shotaroi.featureflags.repository.ApiKeyRepository;
+import com.shotaroi.featureflags.repository.FeatureFlagRepository;
+import com.shotaroi.featureflags.repository.FlagChangeRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class RevisionPollerTest {
+
+    private FlagChangeRepository changeRepo;
+    private FeatureFlagRepository flagRepo;
+    private FlagRevisions revisions;
+    private FlagCache flagCache;
+    private TargetIndex targetIndex;
+    private FlagStreamService stream;
+    private ApplicationEventPublisher events;
+    private SimpleMeterRegistry meters;
+    private RevisionPoller poller;
+
+    @BeforeEach
+    void setUp() {
+        changeRepo = mock(FlagChangeRepository.class);
+        flagRepo = mock(FeatureFlagRepository.class);
+        ChangeFeedService changeFeed = mock(ChangeFeedService.class);
+        when(changeFeed.origin()).thenReturn("this-node");
+        revisions = new FlagRevisions();
+        flagCache = new FlagCache(flagRepo, Duration.ofSeconds(30), 100);
+        targetIndex = mock(TargetIndex.class);
+        stream = mock(FlagStreamService.class);
+        events = mock(ApplicationEventPublisher.class);
+        meters = new SimpleMeterRegistry();
+        poller = new RevisionPoller(mock(JdbcTemplate.class), changeRepo, flagRepo, mock(ApiKeyRepository.class), changeFeed,
+                revisions, flagCache, targetIndex, stream, mock(ApiKeyCache.class), events,
+                mock(PlatformTransactionManager.class), meters, 2);
+        when(flagRepo.findAllByEnvironmentAndFeatureKeyIn(eq(Environment.PROD), any())).thenReturn(List.of(flag()));
+    }
+
+    @Test
+    void catchUp_publishesOtherNodesChanges_groupingConsecutiveTargetChanges() {
+        when(changeRepo.findByEnvironmentAndRevisionBetweenOrderByRevision(eq(Environment.PROD), eq(1L), eq(5L), any()))
+                .thenReturn(List.of(change(1, FlagChangeType.FLAG_UPDATED, null, "other"),
+                        change(2, FlagChangeType.TARGET_ADDED, "a", "this-node")));
+        when(changeRepo.findByEnvironmentAndRevisionBetweenOrderByRevision(eq(Environment.PROD), eq(3L), eq(5L), any()))
+                .thenReturn(List.of(change(3, FlagChangeType.TARGET_ADDED, "b", "other"),
+                        change(4, FlagChangeType.TARGET_ADDED, "c", "other")));
+        when(changeRepo.findByEnvironmentAndRevisionBetweenOrderByRevision(eq(Environment.PROD), eq(5L), eq(5L), any()))
+                .thenReturn(List.of(change(5, FlagChangeType.TARGET_REMOVED, "b", "other")));
+
+        poller.catchUp(Environment.PROD, 5, 0);
+
+        var published = ArgumentCaptor.forClass(Object.class);
+        verify(events, times(3)).publishEvent(published.capture());
+        var updated = assertInstanceOf(FlagChangedEvent.class, published.getAllValues().get(0));
+        assertEquals(1, updated.revision());
+        var bulk = assertInstanceOf(FlagTargetsChangedEvent.class, published.getAllValues().get(1));
+        assertEquals(List.of("b", "c"), bulk.userIds());
+        assertEquals(3, bulk.firstRevision());
+        var removed = assertInstanceOf(FlagChangedEvent.class, published.getAllValues().get(2));
+        assertEquals("b", removed.userId());
+
+        assertEquals(4, meters.get(RevisionPoller.METRIC_CHANGES).tag("environment", "PROD").counter().count());
+        assertEquals(3, meters.get(RevisionPoller.METRIC_CONVERGENCE).tag("environment", "PROD").timer().count());
+    }
+
+    @Test
+    void catchUp_ownChangesOnly_publishesNothing() {
+        when(changeRepo.findByEnvironmentAndRevisionBetweenOrderByRevision(eq(Environment.PROD), eq(1L), eq(1L), any()))
+                .thenReturn(List.of(change(1, FlagChangeType.FLAG_UPDATED, null, "this-node")));
+
+        poller.catchUp(Environment.PROD, 1, 0);
+
+        verifyNoInteractions(events);
+        assertEquals(0, meters.get(RevisionPoller.METRIC_CONVERGENCE).tag("environment", "PROD").timer().count());
+    }
+
+    @Test
+    void catchUp_behindCompaction_dropsCachesAndResyncsStream() {
+        flagCache.put(CachedFlag.of(flag()));
+
+        poller.catchUp(Environment.PROD, 10, 4);
+
+        verify(targetIndex).invalidate(Set.of(1L));
+        verify(stream).resync(Environment.PROD, 10);
+        verify(changeRepo, never()).findByEnvironmentAndRevisionBetweenOrderByRevision(any(), anyLong(), anyLong(), any());
+        verify(flagRepo, never()).findByFeatureKeyAndEnvironment(any(), any());
+        flagCache.get("beta", Environment.PROD);
+        verify(flagRepo).findByFeatureKeyAndEnvironment("beta", Environment.PROD);
+    }
+
+    @Test
+    void catchUp_upToDate_readsNothing() {
+        revisions.replayedTo(Environment.PROD, 7);
+
+        poller.catchUp(Environment.PROD, 7, 0);
+
+        verifyNoInteractions(changeRepo, events, stream);
+    }
+
+    @Test
+    void catchUp_afterALocalChangeAhead_stillReplaysTheEarlierRemoteChange() {
+        // This node committed revision 2 before polling revision 1 made through another node
+        revisions.advanceTo(Environment.PROD, 2);
+        when(changeRepo.findByEnvironmentAndRevisionBetweenOrderByRevision(eq(Environment.PROD), eq(1L), eq(2L), any()))
+                .thenReturn(List.of(change(1, FlagChangeType.FLAG_UPDATED, null, "other"),
+                        change(2, FlagChangeType.FLAG_UPDATED, null, "this-node")));
+
+        poller.catchUp(Environment.PROD, 2, 0);
+
+        var published = ArgumentCaptor.forClass(FlagChangedEvent.class);
+        verify(events).publishEvent(published.capture());
+        assertEquals(1, published.getValue().revision());
+        assertEquals(2, revisions.replayedUpTo(Environment.PROD));
+
+        poller.catchUp(Environment.PROD, 2, 0);
+        verify(changeRepo, times(1)).findByEnvironmentAndRevisionBetweenOrderByRevision(any(), anyLong(), anyLong(), any());
+    }
+
+    @Test
+    void revisionsQuery_worksWhenTheEnvironmentColumnIsAnEnum() {
+        // As generated by Hibernate for the Environment enum, instead of the VARCHAR of the migrations
+        var jdbc = new JdbcTemplate(new DriverManagerDataSource("jdbc:h2:mem:revisionpollerenum;MODE=PostgreSQL;DB_CLOSE_DELAY=-1"));
+        try {
+            jdbc.execute("create table environment_revisions (environment enum('DEV','STAGING','PROD') primary key, "
+                    + "revision bigint not null, min_revision bigint not null)");
+            jdbc.execute("create table cache_revisions (name varchar(50) primary key, revision bigint not null)");
+            jdbc.update("insert into environment_revisions values ('PROD', 3, 1)");
+            jdbc.update("insert into cache_revisions values ('api_keys', 2)");
+
+            assertEquals(List.of("PROD", "api_keys"), jdbc.queryForList(RevisionPoller.REVISIONS).stream()
+                    .map(row -> (String) row.values().iterator().next()).toList());
+        } finally {
+            jdbc.execute("shutdown");
+        }
+    }
+
+    private static FeatureFlag flag() {
+        FeatureFlag flag = new FeatureFlag();
+        flag.setId(1L);
+        flag.setFeatureKey("beta");
+        flag.setEnvironment(Environment.PROD);
+        flag.setEnabled(true);
+        return flag;
+    }
+
+    private static FlagChange change(long revision, FlagChangeType type, String userId, String origin) {
+        FlagChange change = new FlagChange();
+        change.setEnvironment(Environment.PROD);
+        change.setRevision(revision);
+        change.setFeatureKey("beta");
+        change.setChangeType(type);
+        change.setUserId(userId);
+        change.setOrigin(origin);
+        change.setCreatedAt(Instant.now().minusMillis(50));
+        return change;
+    }
+}
@@ -0,0 +1,89 @@
+package com.shotaroi.featureflags.service;
+
+import com.shotaroi.featureflags.domain.Environment;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SnapshotFileTest {
+
+    private static final Instant UPDATED = Instant.parse("2024-05-01T12:30:00.123456Z");
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void roundTrip_throughAMappedFile() throws IOException {
+        var contents = new SnapshotFile.Contents(Environment.PROD, 42, Instant.ofEpochMilli(1_700_000_000_000L),
+                List.of(new SnapshotFile.Flag(new CachedFlag(7L, "beta", Environment.PROD, true, 25, 2, UPDATED),
+                                new long[]{0, 42, 9_000_000_000L}, List.of("alice", "ünïcode", "007")),
+                        new SnapshotFile.Flag(new CachedFlag(8L, "empty", Environment.PROD, false, 0, 1, null),
+                                new long[0], List.of())),
+                List.of(new SnapshotFile.Key(3L, "edge", Environment.PROD, "ab".repeat(32)),
+                        new SnapshotFile.Key(4L, "any-env", null, "cd".repeat(32))));
+        Path file = dir.resolve("PROD.flags");
+
+        SnapshotFile.write(file, contents);
+        SnapshotFile.Contents read = SnapshotFile.read(file);
+
+        assertEquals(Environment.PROD, read.environment());
+        assertEquals(42, read.revision());
+        assertEquals(contents.writtenAt(), read.writtenAt());
+        assertEquals(contents.flags().get(0).flag(), read.flags().get(0).flag());
+        assertArrayEquals(new long[]{0, 42, 9_000_000_000L}, read.flags().get(0).numericTargets());
+        assertEquals(List.of("alice", "ünïcode", "007"), read.flags().get(0).otherTargets());
+        assertNull(read.flags().get(1).flag().updatedAt());
+        assertEquals(contents.apiKeys(), read.apiKeys());
+        assertFalse(Files.exists(dir.resolve("PROD.flags.tmp")));
+    }
+
+    @Test
+    void corruptedByte_isRejected() throws IOException {
+        byte[] bytes = encode(Environment.DEV, 1);
+        bytes[bytes.length / 2] ^= 1;
+
+        IOException e = assertThrows(IOException.class, () -> SnapshotFile.read(ByteBuffer.wrap(bytes)));
+        assertTrue(e.getMessage().contains("checksum"), e.getMessage());
+    }
+
+    @Test
+    void truncatedFile_isRejected() throws IOException {
+        byte[] bytes = encode(Environment.DEV, 1);
+
+        assertThrows(IOException.class, () -> SnapshotFile.read(ByteBuffer.wrap(bytes, 0, bytes.length - 3).slice()));
+        assertThrows(IOException.class, () -> SnapshotFile.read(ByteBuffer.wrap(new byte[3])));
+    }
+
+    @Test
+    void otherFormatVersion_isRejected() throws IOException {
+        byte[] bytes = encode(Environment.DEV, 1);
+        // Bump the version and fix up the checksum: a valid file of a format this reader does not know
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        buffer.putShort(4, (short) (SnapshotFile.FORMAT_VERSION + 1));
+        var crc = new CRC32();
+        crc.update(bytes, 0, bytes.length - 4);
+        buffer.putInt(bytes.length - 4, (int) crc.getValue());
+
+        IOException e = assertThrows(IOException.class, () -> SnapshotFile.read(ByteBuffer.wrap(bytes)));
+        assertTrue(e.getMessage().contains("version"), e.getMessage());
+    }
+
+    private static byte[] encode(Environment environment, long revision) throws IOException {
+        var out = new ByteArrayOutputStream();
+        SnapshotFile.write(out, new SnapshotFile.Contents(environment, revision, Instant.now(),
+                List.of(new SnapshotFile.Flag(new CachedFlag(1L, "a", environment, true, 100, 1, UPDATED),
+                        new long[]{1, 2, 3}, List.of("x"))),
+                List.of()));
+        return out.toByteArray();
+    }
+}
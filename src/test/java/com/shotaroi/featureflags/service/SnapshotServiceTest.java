@@ -0,0 +1,117 @@
+package com.shotaroi.featureflags.service;
+
+import com.shotaroi.featureflags.domain.Environment;
+import com.shotaroi.featureflags.domain.FeatureFlag;
+import com.shotaroi.featureflags.domain.FlagChangeType;
+import com.shotaroi.featureflags.repository.FeatureFlagRepository;
+import com.shotaroi.featureflags.repository.FeatureTargetRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class SnapshotServiceTest {
+
+    private FeatureFlagRepository flagRepo;
+    private FlagCache flagCache;
+    private FlagRevisions revisions;
+    private SnapshotService service;
+
+    @BeforeEach
+    void setUp() {
+        flagRepo = mock(FeatureFlagRepository.class);
+        FeatureTargetRepository targetRepo = mock(FeatureTargetRepository.class);
+        when(targetRepo.findUserIdPage(eq(1L), eq(""), any())).thenReturn(List.of("7", "alice"));
+        when(flagRepo.findAllByEnvironment(Environment.PROD)).thenReturn(List.of(flag(true)));
+        flagCache = new FlagCache(flagRepo, Duration.ofSeconds(30), 100);
+        revisions = new FlagRevisions();
+        service = new SnapshotService(flagCache, new TargetIndex(targetRepo, new SimpleMeterRegistry(), true),
+                revisions, JsonMapper.builder().build());
+    }
+
+    @Test
+    void snapshot_isBuiltOncePerRevision() {
+        var first = service.snapshot(Environment.PROD);
+        var second = service.snapshot(Environment.PROD);
+
+        assertSame(first, second);
+        String json = new String(first.json());
+        assertTrue(json.contains("\"revision\":0"), json);
+        assertTrue(json.contains("\"targets\":[\"7\",\"alice\"]"), json);
+        verify(flagRepo, times(1)).findAllByEnvironment(Environment.PROD);
+    }
+
+    @Test
+    void newRevision_rebuildsWithNewEtag() {
+        var before = service.snapshot(Environment.PROD);
+
+        flagCache.onFlagChanged(new FlagChangedEvent(FlagChangeType.FLAG_UPDATED, flag(false), null, 1L));
+        revisions.advanceTo(Environment.PROD, 1);
+        var after = service.snapshot(Environment.PROD);
+
+        assertEquals(1, after.revision());
+        assertNotEquals(before.etag(), after.etag());
+        assertTrue(new String(after.json()).contains("\"enabled\":false"));
+    }
+
+    @Test
+    void changeAppliedAfterALaterRevision_replacesTheSnapshot() {
+        // The listener of revision 2 ran first; change 1 (disabling the flag) is not in the caches yet
+        service.snapshot(Environment.PROD);
+        revisions.advanceTo(Environment.PROD, 2);
+        var early = service.snapshot(Environment.PROD);
+        assertEquals(2, early.revision());
+        assertTrue(new String(early.json()).contains("\"enabled\":true"));
+
+        flagCache.onFlagChanged(new FlagChangedEvent(FlagChangeType.FLAG_UPDATED, flag(false), null, 1L));
+        revisions.advanceTo(Environment.PROD, 1);
+        var complete = service.snapshot(Environment.PROD);
+
+        assertEquals(2, complete.revision());
+        assertTrue(new String(complete.json()).contains("\"enabled\":false"));
+        assertNotEquals(early.etag(), complete.etag());
+    }
+
+    @Test
+    void binary_holdsTheSameConfigAsJson() throws Exception {
+        var snapshot = service.snapshot(Environment.PROD);
+
+        var binary = BinarySnapshot.read(snapshot.binary());
+        assertEquals(Environment.PROD, binary.environment());
+        assertEquals(snapshot.revision(), binary.revision());
+        assertEquals(List.of(new SnapshotService.FlagConfig("checkout", true, 25, 1, List.of("7", "alice"))), binary.flags());
+        assertNotEquals(snapshot.etag(), snapshot.binaryEtag());
+    }
+
+    @Test
+    void binary_deltaEncodesNumericTargets() throws Exception {
+        List<String> targets = new ArrayList<>();
+        for (int id = 1_000_000; id < 1_010_000; id++) targets.add(Integer.toString(id));
+        targets.add("007");
+        var flags = List.of(new SnapshotService.FlagConfig("big", true, 0, 1, targets));
+
+        byte[] body = BinarySnapshot.encode(Environment.PROD, 3, flags);
+
+        assertTrue(body.length < 10_000 + 100, "bytes: " + body.length);
+        assertEquals(flags, BinarySnapshot.read(body).flags());
+    }
+
+    private static FeatureFlag flag(boolean enabled) {
+        FeatureFlag flag = new FeatureFlag();
+        flag.setId(1L);
+        flag.setFeatureKey("checkout");
+        flag.setEnvironment(Environment.PROD);
+        flag.setEnabled(enabled);
+        flag.setRolloutPercent(25);
+        return flag;
+    }
+}
@@ -0,0 +1,82 @@
+package com.shotaroi.featureflags.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SortedLongSetTest {
+
+    @Test
+    void parseId_acceptsOnlyCanonicalNonNegativeDecimals() {
+        assertEquals(0, SortedLongSet.parseId("0"));
+        assertEquals(123456789012345678L, SortedLongSet.parseId("123456789012345678"));
+        assertEquals(-1, SortedLongSet.parseId(""));
+        assertEquals(-1, SortedLongSet.parseId("007"));
+        assertEquals(-1, SortedLongSet.parseId("-1"));
+        assertEquals(-1, SortedLongSet.parseId("+1"));
+        assertEquals(-1, SortedLongSet.parseId("12a"));
+        assertEquals(-1, SortedLongSet.parseId("1234567890123456789")); // 19 digits: string path
+    }
+
+    @Test
+    void of_sortsAndDeduplicates() {
+        long[] ids = {5, 3, 5, 1, 3};
+        SortedLongSet set = SortedLongSet.of(ids, ids.length);
+
+        assertEquals(3, set.size());
+        assertTrue(set.contains(1));
+        assertTrue(set.contains(5));
+        assertFalse(set.contains(2));
+    }
+
+    @Test
+    void behavesLikeATreeSetUnderRandomEdits() {
+        Random random = new Random(42);
+        long[] initial = random.longs(5_000, 0, 20_000).toArray();
+        SortedLongSet set = SortedLongSet.of(initial.clone(), initial.length);
+        TreeSet<Long> expected = new TreeSet<>();
+        for (long id : initial) expected.add(id);
+
+        // enough edits to force several merges of the delta arrays into the base
+        for (int i = 0; i < 20_000; i++) {
+            long id = random.nextInt(20_000);
+            if (random.nextBoolean()) {
+                assertEquals(expected.add(id), set.add(id));
+            } else {
+                assertEquals(expected.remove(id), set.remove(id));
+            }
+        }
+
+        assertEquals(expected.size(), set.size());
+        for (long id = 0; id < 20_000; id++) {
+            assertEquals(expected.contains(id), set.contains(id), "id " + id);
+        }
+        List<Long> visited = new ArrayList<>();
+        set.forEach(visited::add);
+        assertEquals(List.copyOf(expected), visited);
+    }
+
+    @Test
+    void indexedBase_handlesSparseAndSkewedIds() {
+        Random random = new Random(7);
+        long[] ids = new long[50_000];
+        for (int i = 0; i < ids.length; i++) {
+            // half dense near zero, half spread over the whole 18-digit range
+            ids[i] = i % 2 == 0 ? random.nextInt(100_000) : random.nextLong(0, 999_999_999_999_999_999L);
+        }
+        TreeSet<Long> expected = new TreeSet<>();
+        for (long id : ids) expected.add(id);
+        SortedLongSet set = SortedLongSet.of(ids.clone(), ids.length);
+
+        for (long id : expected) assertTrue(set.contains(id), "id " + id);
+        for (int i = 0; i < 100_000; i++) {
+            long probe = i % 2 == 0 ? random.nextInt(200_000) : random.nextLong(0, Long.MAX_VALUE);
+            assertEquals(expected.contains(probe), set.contains(probe), "probe " + probe);
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package com.shotaroi.featureflags.service;
+
+import com.shotaroi.featureflags.domain.Environment;
+import com.shotaroi.featureflags.domain.FeatureFlag;
+import com.shotaroi.featureflags.domain.FlagChangeType;
+import com.shotaroi.featureflags.repository.FeatureTargetRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Limit;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class TargetIndexTest {
+
+    private static final CachedFlag FLAG = new CachedFlag(7L, "beta", Environment.PROD, true, 0, Bucketing.CURRENT, null);
+
+    private FeatureTargetRepository targetRepo;
+    private SimpleMeterRegistry meterRegistry;
+    private TargetIndex index;
+
+    @BeforeEach
+    void setUp() {
+        targetRepo = mock(FeatureTargetRepository.class);
+        meterRegistry = new SimpleMeterRegistry();
+        index = new TargetIndex(targetRepo, meterRegistry, true);
+    }
+
+    @Test
+    void targetsAreLoadedOncePerFlag() {
+        givenTargets(List.of("alice"));
+
+        assertTrue(index.isTargeted(FLAG, "alice"));
+        assertFalse(index.isTargeted(FLAG, "bob"));
+
+        verify(targetRepo, times(1)).findUserIdPage(eq(7L), any(), any());
+    }
+
+    @Test
+    void largeAllowlists_areReadInPages() {
+        List<String> first = IntStream.range(0, 10_000).mapToObj(i -> String.format("u%05d", i)).toList();
+        when(targetRepo.findUserIdPage(7L, "", Limit.of(10_000))).thenReturn(first);
+        when(targetRepo.findUserIdPage(7L, "u09999", Limit.of(10_000))).thenReturn(List.of("zed"));
+
+        assertTrue(index.isTargeted(FLAG, "u00000"));
+        assertTrue(index.isTargeted(FLAG, "zed"));
+        assertEquals(10_001, index.size(7L));
+    }
+
+    @Test
+    void committedTargetChanges_areApplied() {
+        givenTargets(List.of("alice", "100"));
+        assertFalse(index.isTargeted(FLAG, "bob"));
+
+        index.onFlagChanged(new FlagChangedEvent(FlagChangeType.TARGET_ADDED, entity(), "bob", 1L));
+        index.onFlagChanged(new FlagChangedEvent(FlagChangeType.TARGET_ADDED, entity(), "200", 1L));
+        index.onFlagChanged(new FlagChangedEvent(FlagChangeType.TARGET_REMOVED, entity(), "alice", 1L));
+        index.onFlagChanged(new FlagChangedEvent(FlagChangeType.TARGET_REMOVED, entity(), "100", 1L));
+
+        assertTrue(index.isTargeted(FLAG, "bob"));
+        assertTrue(index.isTargeted(FLAG, "200"));
+        assertFalse(index.isTargeted(FLAG, "alice"));
+        assertFalse(index.isTargeted(FLAG, "100"));
+        verify(targetRepo, times(1)).findUserIdPage(eq(7L), any(), any());
+    }
+
+    @Test
+    void changesForUnloadedFlags_areLeftToTheLoader() {
+        index.onFlagChanged(new FlagChangedEvent(FlagChangeType.TARGET_ADDED, entity(), "bob", 1L));
+        givenTargets(List.of("bob"));
+
+        assertTrue(index.isTargeted(FLAG, "bob"));
+        assertEquals(1, index.size(7L));
+    }
+
+    @Test
+    void changesCommittedDuringALoad_areAppliedWithoutWaitingForIt() throws Exception {
+        var loading = new CountDownLatch(1);
+        var release = new CountDownLatch(1);
+        when(targetRepo.findUserIdPage(eq(7L), eq(""), any())).thenAnswer(inv -> {
+            loading.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return List.of("alice", "bob");
+        });
+
+        int callers = 4;
+        ExecutorService pool = Executors.newFixedThreadPool(callers);
+        try {
+            List<Future<Boolean>> results = new ArrayList<>();
+            for (int i = 0; i < callers; i++) results.add(pool.submit(() -> index.isTargeted(FLAG, "carol")));
+            assertTrue(loading.await(5, TimeUnit.SECONDS));
+
+            // The listener returns while the load is still blocked in the database
+            index.onFlagChanged(new FlagChangedEvent(FlagChangeType.TARGET_ADDED, entity(), "carol", 1L));
+            index.onFlagChanged(new FlagChangedEvent(FlagChangeType.TARGET_REMOVED, entity(), "bob", 1L));
+            assertEquals(0, index.size(7L));
+
+            release.countDown();
+            for (var r : results) assertTrue(r.get(5, TimeUnit.SECONDS));
+        } finally {
+            pool.shutdownNow();
+        }
+
+        assertTrue(index.isTargeted(FLAG, "alice"));
+        assertFalse(index.isTargeted(FLAG, "bob"));
+        verify(targetRepo, times(1)).findUserIdPage(eq(7L), any(), any());
+    }
+
+    @Test
+    void numericIds_keepExactStringSemantics() {
+        givenTargets(List.of("42", "007", "0"));
+
+        assertTrue(index.isTargeted(FLAG, "42"));
+        assertTrue(index.isTargeted(FLAG, "007"));
+        assertTrue(index.isTargeted(FLAG, "0"));
+        assertFalse(index.isTargeted(FLAG, "7"));
+        assertFalse(index.isTargeted(FLAG, "042"));
+        assertFalse(index.isTargeted(FLAG, "-42"));
+    }
+
+    @Test
+    void footprint_growsWithTargetsAndIsExposedAsGauge() {
+        givenTargets(IntStream.range(0, 100_000).mapToObj(i -> "user-" + i).toList());
+
+        index.isTargeted(FLAG, "user-1");
+
+        long bytes = index.estimatedBytes(7L);
+        assertEquals(100_000, index.size(7L));
+        // 64 bytes of entry overhead + 32 for a short Latin-1 byte[] per user
+        assertTrue(bytes > 9_000_000 && bytes < 10_000_000, "estimated " + bytes);
+        assertEquals(bytes, meterRegistry.get("feature.flag.targets.index.bytes")
+                .tag("feature_key", "beta").gauge().value());
+    }
+
+    @Test
+    void numericIds_costEightBytesEachWhenCompact() {
+        List<String> ids = IntStream.range(0, 100_000).mapToObj(i -> Integer.toString(1_000_000 + i * 7)).toList();
+        givenTargets(ids);
+        index.isTargeted(FLAG, "1");
+        assertTrue(index.estimatedBytes(7L) < 900_000, "estimated " + index.estimatedBytes(7L));
+
+        var stringIndex = new TargetIndex(targetRepo, new SimpleMeterRegistry(), false);
+        stringIndex.isTargeted(FLAG, "1");
+        assertTrue(stringIndex.estimatedBytes(7L) > 8_000_000, "estimated " + stringIndex.estimatedBytes(7L));
+    }
+
+    private void givenTargets(List<String> userIds) {
+        when(targetRepo.findUserIdPage(eq(7L), eq(""), any())).thenReturn(userIds);
+    }
+
+    private static FeatureFlag entity() {
+        FeatureFlag f = new FeatureFlag();
+        f.setId(7L);
+        f.setFeatureKey("beta");
+        f.setEnvironment(Environment.PROD);
+        return f;
+    }
+}
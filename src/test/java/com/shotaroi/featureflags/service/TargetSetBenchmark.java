@@ -0,0 +1,77 @@
+package com.shotaroi.featureflags.service;
+
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+/**
+ * Memory and lookup cost of a flag allowlist held as strings vs. compact numeric IDs.
+ * Not a unit test; run with a large heap, e.g.:
+ * <pre>
+ * mvn -q test-compile
+ * java -Xmx3g -cp target/classes:target/test-classes com.shotaroi.featureflags.service.TargetSetBenchmark 1000000 10000000
+ * </pre>
+ */
+public class TargetSetBenchmark {
+
+    private static final int PROBES = 2_000_000;
+
+    public static void main(String[] args) {
+        int[] sizes = args.length == 0 ? new int[]{1_000_000, 10_000_000} : java.util.Arrays.stream(args).mapToInt(Integer::parseInt).toArray();
+        System.out.printf("%-10s %-8s %14s %14s %12s %14s%n", "targets", "layout", "estimated MB", "measured MB", "ns/lookup", "bytes/lookup");
+        for (int size : sizes) {
+            for (boolean compact : new boolean[]{false, true}) {
+                run(size, compact);
+            }
+        }
+    }
+
+    private static void run(int size, boolean compact) {
+        Random random = new Random(size);
+        // IDs spread over a 10x larger range, like user ids of a cohort
+        long base = 10_000_000L;
+        long before = usedHeap();
+        TargetIndex.FlagTargets targets = build(size, compact, base, random);
+        long measured = usedHeap() - before;
+
+        String[] probes = new String[PROBES];
+        for (int i = 0; i < PROBES; i++) {
+            probes[i] = Long.toString(base + random.nextInt(size * 10));
+        }
+        int hits = lookup(targets, probes); // warm-up
+        var threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long allocBefore = threads.getCurrentThreadAllocatedBytes();
+        long start = System.nanoTime();
+        hits += lookup(targets, probes);
+        long elapsed = System.nanoTime() - start;
+        long allocated = threads.getCurrentThreadAllocatedBytes() - allocBefore;
+
+        System.out.printf("%-10d %-8s %14.1f %14.1f %12.1f %14.2f%s%n", size, compact ? "compact" : "strings",
+                targets.estimatedBytes() / 1e6, measured / 1e6, (double) elapsed / PROBES, (double) allocated / PROBES,
+                hits < 0 ? "!" : "");
+    }
+
+    private static TargetIndex.FlagTargets build(int size, boolean compact, long base, Random random) {
+        long[] ids = new long[size];
+        for (int i = 0; i < size; i++) ids[i] = base + random.nextInt(size * 10);
+        if (compact) {
+            return new TargetIndex.FlagTargets(SortedLongSet.of(ids, size));
+        }
+        var targets = new TargetIndex.FlagTargets(null);
+        for (long id : ids) targets.add(Long.toString(id));
+        return targets;
+    }
+
+    private static int lookup(TargetIndex.FlagTargets targets, String[] probes) {
+        int hits = 0;
+        for (String probe : probes) {
+            if (targets.contains(probe)) hits++;
+        }
+        return hits;
+    }
+
+    private static long usedHeap() {
+        for (int i = 0; i < 3; i++) System.gc();
+        var heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+        return heap.getUsed();
+    }
+}